@@ -0,0 +1,133 @@
+package projects.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import projects.dao.DbConnection;
+import projects.dao.ProjectDao;
+import projects.dao.SchemaMigrator;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/*
+ * Shared setup for the benchmarks. The benchmarks run in forked JVMs started
+ * with -Dprojects.db.url pointing at an in-memory H2 database in MySQL
+ * compatibility mode, so DbConnection hands out H2 connections and no MySQL
+ * server is needed. Pass a different -Dprojects.db.url (for example with
+ * -jvmArgsAppend) to run the same benchmarks against a real MySQL server.
+ */
+public final class BenchmarkDatabase {
+
+	// JVM argument used by every @Fork in this module.
+	public static final String H2_URL_ARG = "-Dprojects.db.url="
+			+ "jdbc:h2:mem:projects;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+	private static final String SCHEMA_RESOURCE = "/projects-schema.sql";
+
+	// Projects per transaction when seeding, as in ProjectService.addProjects.
+	private static final int INSERT_CHUNK_SIZE = 500;
+
+	private BenchmarkDatabase() {
+	}
+
+	/*
+	 * Drops and recreates the tables by running projects-schema.sql from the main
+	 * jar, one statement at a time. Comment lines are dropped before the script is
+	 * split on semicolons, since a comment may contain one.
+	 * 
+	 * The schema migrations are applied afterwards, so the benchmarks run with the
+	 * same indexes and columns as the application. Their rollup triggers are
+	 * skipped because H2 does not accept MySQL trigger bodies. No benchmark reads
+	 * the rollup tables.
+	 */
+	public static void resetSchema() {
+		try (Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement()) {
+			for (String sql : readSchema().split(";")) {
+				if (!sql.isBlank()) {
+					stmt.execute(sql);
+				}
+			}
+		} catch (SQLException | IOException e) {
+			throw new DbException("Unable to create the benchmark schema", e);
+		}
+
+		new SchemaMigrator(false).migrate();
+	} // end resetSchema
+
+	/*
+	 * Inserts count projects, each with the given number of materials and steps,
+	 * through the bulk insert path. Returns the generated project IDs.
+	 * 
+	 * The rows are written with ProjectDao directly, not through ProjectService,
+	 * so seeding does not fill the service's search index or write its snapshot
+	 * file.
+	 */
+	public static List<Integer> seedProjects(int count, int childrenPerProject) {
+		ProjectDao projectDao = new ProjectDao();
+		List<Integer> ids = new ArrayList<>(count);
+		int chunk = 10_000;
+
+		for (int from = 0; from < count; from += chunk) {
+			List<Project> projects = new ArrayList<>();
+
+			for (int index = from; index < Math.min(from + chunk, count); index++) {
+				projects.add(newProject(index, childrenPerProject));
+			}
+
+			projectDao.insertProjects(projects, INSERT_CHUNK_SIZE);
+			projects.forEach(project -> ids.add(project.getProjectId()));
+		}
+		return ids;
+	} // end seedProjects
+
+	/*
+	 * Builds a project with realistic field sizes and the given number of
+	 * materials and steps.
+	 */
+	public static Project newProject(int index, int childrenPerProject) {
+		Project project = new Project();
+		project.setProjectName("Project " + index);
+		project.setEstimatedHours(new BigDecimal("12.50"));
+		project.setActualHours(new BigDecimal("10.25"));
+		project.setDifficulty(1 + index % 5);
+		project.setNotes("Notes for project " + index + ". Measure twice, cut once.");
+
+		for (int child = 0; child < childrenPerProject; child++) {
+			Material material = new Material();
+			material.setMaterialName("Material " + child);
+			material.setNumRequired(child + 1);
+			material.setCost(new BigDecimal("3.99"));
+			project.getMaterials().add(material);
+
+			Step step = new Step();
+			step.setStepText("Step " + child + " of project " + index);
+			project.getSteps().add(step);
+		}
+		return project;
+	} // end newProject
+
+	private static String readSchema() throws IOException {
+		try (InputStream in = BenchmarkDatabase.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+			if (in == null) {
+				throw new IOException(SCHEMA_RESOURCE + " not found on the classpath");
+			}
+
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+				return reader.lines().filter(line -> !line.strip().startsWith("--")).collect(Collectors.joining("\n"));
+			}
+		}
+	} // end readSchema
+
+} // end CLASS
@@ -0,0 +1,51 @@
+package projects.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import projects.dao.ProjectDao;
+import projects.entity.Project;
+
+/*
+ * Regression benchmark for insertProject latency as the project table grows.
+ * With generated keys the insert does not read the table, so the sampled
+ * latency should stay flat from an empty table up to a million rows. A rising
+ * curve across tableRows means an insert has started scanning the table again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { BenchmarkDatabase.H2_URL_ARG, "-Xmx4g" })
+public class InsertLatencyBenchmark {
+
+	@Param({ "0", "10000", "100000", "1000000" })
+	private int tableRows;
+
+	private final ProjectDao projectDao = new ProjectDao();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkDatabase.resetSchema();
+		BenchmarkDatabase.seedProjects(tableRows, 0);
+	} // end setUp
+
+	@Benchmark
+	public Project insertProject() {
+		return projectDao.insertProject(BenchmarkDatabase.newProject(0, 0));
+	} // end insertProject
+
+} // end CLASS
@@ -0,0 +1,110 @@
+package projects.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import projects.dao.DbConnection;
+import projects.entity.Project;
+import provided.util.DaoBase;
+import provided.util.RowMapper;
+
+/*
+ * Microbenchmarks for the mapping helpers in DaoBase and for Project.toString.
+ *
+ * The result set is a real (H2) scrollable result set parked on one project
+ * row, so extract and the cached RowMapper are measured without a network round
+ * trip. Run with -prof gc to see the allocation rate of each method.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.H2_URL_ARG)
+public class MappingBenchmark extends DaoBase {
+
+	private Connection conn;
+	private PreparedStatement selectStmt;
+	private PreparedStatement updateStmt;
+	private ResultSet rs;
+	private RowMapper<Project> mapper;
+	private Project project;
+
+	private final BigDecimal hours = new BigDecimal("12.50");
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		BenchmarkDatabase.resetSchema();
+		BenchmarkDatabase.seedProjects(1, 10);
+
+		conn = DbConnection.getConnection();
+		selectStmt = conn.prepareStatement("SELECT * FROM project", ResultSet.TYPE_SCROLL_INSENSITIVE,
+				ResultSet.CONCUR_READ_ONLY);
+		rs = selectStmt.executeQuery();
+		rs.first();
+		mapper = rowMapper(rs, Project.class);
+
+		updateStmt = conn.prepareStatement(
+				"UPDATE project SET project_name = ?, estimated_hours = ?, difficulty = ? WHERE project_id = ?");
+
+		project = BenchmarkDatabase.newProject(1, 10);
+		project.setProjectId(1);
+	} // end setUp
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		rs.close();
+		selectStmt.close();
+		updateStmt.close();
+		conn.close();
+	} // end tearDown
+
+	// The full extract call: mapper cache lookup (which reads the metadata) plus mapping.
+	@Benchmark
+	public Project extractProject() {
+		return extract(rs, Project.class);
+	} // end extractProject
+
+	// Mapping with a mapper obtained once, as the DAO list loops do.
+	@Benchmark
+	public Project mapProjectRow() {
+		return mapper.map(rs);
+	} // end mapProjectRow
+
+	@Benchmark
+	public PreparedStatement setParameters() throws SQLException {
+		setParameter(updateStmt, 1, "Project 1", String.class);
+		setParameter(updateStmt, 2, hours, BigDecimal.class);
+		setParameter(updateStmt, 3, null, Integer.class);
+		setParameter(updateStmt, 4, 1, Integer.class);
+		return updateStmt;
+	} // end setParameters
+
+	@Benchmark
+	public String convertCamelCase() {
+		return camelCaseToSnakeCase("estimatedHours");
+	} // end convertCamelCase
+
+	@Benchmark
+	public String projectToString() {
+		return project.toString();
+	} // end projectToString
+
+} // end CLASS
@@ -0,0 +1,65 @@
+package projects.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import projects.dao.ProjectDao;
+import projects.entity.Project;
+
+/*
+ * Compares loading batchSize full projects one fetchProjectByIdDao call at a
+ * time with a single fetchProjectsByIdsDao call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.H2_URL_ARG)
+public class MultiFetchBenchmark {
+
+	@Param({ "100", "1000" })
+	private int batchSize;
+
+	private final ProjectDao projectDao = new ProjectDao();
+	private List<Integer> requestedIds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkDatabase.resetSchema();
+		List<Integer> ids = new ArrayList<>(BenchmarkDatabase.seedProjects(5_000, 10));
+		Collections.shuffle(ids);
+		requestedIds = ids.subList(0, batchSize);
+	} // end setUp
+
+	@Benchmark
+	public List<Project> fetchOneAtATime() {
+		List<Project> projects = new ArrayList<>(requestedIds.size());
+
+		for (Integer projectId : requestedIds) {
+			projectDao.fetchProjectByIdDao(projectId).ifPresent(projects::add);
+		}
+		return projects;
+	} // end fetchOneAtATime
+
+	@Benchmark
+	public List<Project> fetchProjectsByIds() {
+		return projectDao.fetchProjectsByIdsDao(requestedIds);
+	} // end fetchProjectsByIds
+
+} // end CLASS
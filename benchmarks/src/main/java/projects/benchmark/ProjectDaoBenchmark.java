@@ -0,0 +1,133 @@
+package projects.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import projects.dao.FetchMode;
+import projects.dao.FetchPlan;
+import projects.dao.ProjectDao;
+import projects.dao.ProjectSortOrder;
+import projects.entity.Project;
+import projects.entity.ProjectSummary;
+
+/*
+ * End-to-end benchmarks of the ProjectDao CRUD methods, including connection
+ * borrowing, statement caching and row mapping.
+ *
+ * fetchMode compares the sequential four-query fetch with the single round trip
+ * fetch. The embedded H2 database does not return several result sets from one
+ * statement, so only SEQUENTIAL runs by default. Against MySQL use
+ * -p fetchMode=SEQUENTIAL,SINGLE_ROUND_TRIP together with a MySQL
+ * -Dprojects.db.url.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.H2_URL_ARG)
+public class ProjectDaoBenchmark {
+
+	@Param({ "1000" })
+	private int projectCount;
+
+	@Param({ "10" })
+	private int childrenPerProject;
+
+	@Param({ "SEQUENTIAL" })
+	private FetchMode fetchMode;
+
+	private static final int PAGE_SIZE = 50;
+	private static final int PURGE_BATCH_SIZE = 500;
+
+	private final ProjectDao projectDao = new ProjectDao();
+	private List<Integer> projectIds;
+	private ProjectSummary lastPageStart;
+
+	// The version each project was last saved with, which the next save must send.
+	private final Map<Integer, Integer> versions = new ConcurrentHashMap<>();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkDatabase.resetSchema();
+		projectIds = BenchmarkDatabase.seedProjects(projectCount, childrenPerProject);
+
+		for (Integer projectId : projectIds) {
+			versions.put(projectId, projectDao.fetchProjectByIdDao(projectId, FetchPlan.HEADER_ONLY).orElseThrow()
+					.getVersion());
+		}
+
+		lastPageStart = new ProjectSummary();
+		lastPageStart.setProjectId(projectIds.get(Math.max(0, projectIds.size() - PAGE_SIZE - 1)));
+	} // end setUp
+
+	@Benchmark
+	public Optional<Project> fetchProjectById() {
+		return projectDao.fetchProjectByIdDao(randomId(), fetchMode);
+	} // end fetchProjectById
+
+	@Benchmark
+	public List<Project> getAllProjectNames() {
+		return projectDao.getAllProjectNames();
+	} // end getAllProjectNames
+
+	// A page near the end of the listing, which costs the same as the first page
+	// because it seeks in the primary key instead of skipping rows.
+	@Benchmark
+	public List<ProjectSummary> fetchLastProjectPage() {
+		return projectDao.fetchProjectPageDao(ProjectSortOrder.ID, lastPageStart, PAGE_SIZE);
+	} // end fetchLastProjectPage
+
+	// Saves with the current version, so every save passes the version check. The
+	// save runs inside compute, so threads saving the same project take turns.
+	@Benchmark
+	public Project modifyProjectDetails() {
+		Project project = BenchmarkDatabase.newProject(0, 0);
+		project.setProjectId(randomId());
+
+		versions.compute(project.getProjectId(), (projectId, version) -> {
+			project.setVersion(version);
+			projectDao.modifyProjectDetailsDao(project);
+			return project.getVersion();
+		});
+		return project;
+	} // end modifyProjectDetails
+
+	// deleteProjectDao only marks the row deleted, so the purge is measured with
+	// the insert and delete; that keeps the table size constant.
+	@Benchmark
+	public int insertAndDeleteProject() {
+		Project project = projectDao.insertProject(BenchmarkDatabase.newProject(0, 0));
+		int removed = 0;
+		int rows;
+
+		projectDao.deleteProjectDao(project.getProjectId());
+
+		while ((rows = projectDao.purgeProjectDao(project.getProjectId(), PURGE_BATCH_SIZE)) > 0) {
+			removed += rows;
+		}
+		return removed;
+	} // end insertAndDeleteProject
+
+	private Integer randomId() {
+		return projectIds.get(ThreadLocalRandom.current().nextInt(projectIds.size()));
+	} // end randomId
+
+} // end CLASS
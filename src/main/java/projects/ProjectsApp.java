@@ -1,16 +1,34 @@
 package projects;
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
 
+import projects.dao.FetchPlan;
+import projects.dao.ProjectSortOrder;
+import projects.dao.SchemaMigrator;
 import projects.entity.Project;
+import projects.entity.ProjectCostRollup;
+import projects.entity.ProjectSummary;
 import projects.exception.DbException;
+import projects.exception.OptimisticLockException;
+import projects.io.ImportReport;
+import projects.io.ProjectExporter;
+import projects.io.ProjectImporter;
 import projects.service.ProjectService;
+import projects.service.PurgeStats;
+import projects.service.ProjectValidator;
 
 public class ProjectsApp {
 
+	// Projects listed at a time by menu option 2.
+	private static final int LIST_PAGE_SIZE = 50;
+
+	// Most projects listed by a search.
+	private static final int SEARCH_RESULT_LIMIT = 20;
+
 	// Instantiates a Scanner object for capturing user input using System.in
 	private Scanner scanner = new Scanner(System.in);
 
@@ -28,12 +46,38 @@ public class ProjectsApp {
 		"3) Select a project",
 		"4) Update project details",
 		"5) Delete a project",
+		"6) Import projects from a CSV or NDJSON file",
+		"7) Export all projects to a CSV or NDJSON file",
+		"8) Search project notes and steps",
+		"9) Show material cost and category hours",
+		"10) Add a step to the current project",
+		"11) Move a step in the current project",
+		"12) Log hours worked on the current project",
 		"99) Display the menu"
 	); // end operations
 	// @formatter:on
 
-	// Calls the processUerSelection method.
+	/*
+	 * Applies any new schema migrations, unless -Dprojects.migrate=false or the
+	 * in-memory repository is selected, then starts the purger, which resumes
+	 * removing projects deleted before the last shutdown, then calls the
+	 * processUerSelection method. A failed migration is reported but does not stop
+	 * the menu from starting.
+	 */
 	public static void main(String[] args) {
+		if (ProjectService.usesDatabase() && Boolean.parseBoolean(System.getProperty("projects.migrate", "true"))) {
+			try {
+				int applied = new SchemaMigrator().migrate();
+
+				if (applied > 0) {
+					System.out.println("\nApplied " + applied + " schema migration(s).");
+				}
+			} catch (DbException e) {
+				System.out.println("\nSchema migration failed: " + e.getMessage());
+			}
+		}
+
+		ProjectService.startPurger();
 		new ProjectsApp().processUserSelection();
 	} // end MAIN
 
@@ -85,6 +129,34 @@ public class ProjectsApp {
 					deleteProject();
 					break;
 
+				case 6:
+					importProjects();
+					break;
+
+				case 7:
+					exportProjects();
+					break;
+
+				case 8:
+					searchProjects();
+					break;
+
+				case 9:
+					showReports();
+					break;
+
+				case 10:
+					addStep();
+					break;
+
+				case 11:
+					moveStep();
+					break;
+
+				case 12:
+					logHours();
+					break;
+
 				// breaks out of the processUserSelection while loop to redisplay the menu at
 				// user's request
 				case 99:
@@ -247,31 +319,43 @@ public class ProjectsApp {
 	} // end createProject
 
 	// Validates difficulty input to be between 1 and 5 inclusive. If not, the user
-	// is prompted to try again.
+	// is prompted to try again. The rule lives in ProjectValidator so the importer
+	// applies the same check.
 	private void validateDifficulty(Integer difficulty) {
-		if (difficulty < 1 || difficulty > 5) {
-			throw new DbException(difficulty + " is not between 1 and 5. ");
-		}
+		ProjectValidator.validateDifficulty(difficulty);
 	} // end validateDifficulty
 
 	/*
-	 * Calls the getListOfProjectNames method in projectService. Receives a List of
-	 * available projects in return.
+	 * Calls the getProjectPageService method in projectService to list the
+	 * available projects in project ID order, LIST_PAGE_SIZE at a time. After
+	 * each full page the user presses Enter to see the next page, or enters any
+	 * text to stop.
 	 * 
 	 * Removes currentProject so the project information listing does not clutter
 	 * the console.
 	 * 
-	 * Prints the List of available projects using a Lambda expression.
+	 * Prints each page of available projects using a Lambda expression.
 	 */
 	private void getProjectNames() {
-		List<Project> projects = projectService.getListOfProjectNames();
-
 		currentProject = null;
 
 		System.out.println("\nAvailable projects:");
 
-		projects.forEach(
-				project -> System.out.println("  " + project.getProjectId() + ": " + project.getProjectName()));
+		ProjectSummary last = null;
+		List<ProjectSummary> page;
+
+		do {
+			page = projectService.getProjectPageService(ProjectSortOrder.ID, last, LIST_PAGE_SIZE);
+
+			page.forEach(
+					project -> System.out.println("  " + project.getProjectId() + ": " + project.getProjectName()));
+
+			if (page.isEmpty()) {
+				break;
+			}
+			last = page.get(page.size() - 1);
+		} while (page.size() == LIST_PAGE_SIZE
+				&& Objects.isNull(getStringInput("Press Enter to see more projects, or enter any text to stop")));
 	} // end listProjectNames
 
 	/*
@@ -313,19 +397,24 @@ public class ProjectsApp {
 	 * the user to enter the new value as well as displaying the value of the
 	 * parameter in the current project.
 	 * 
-	 * Instantiates a new project object and sets the project ID from the currently
-	 * selected project.
+	 * Copies the currently selected project, so the cached project it came from is
+	 * not changed.
 	 * 
 	 * Using a ternary conditional operator to determine if the user input for the
 	 * parameter is null or not. If the input for a given parameter is null, the
-	 * parameter value of the current project is set on the new project object. If
-	 * the input is not null, the user input for that parameter is set on the new
-	 * project object.
+	 * parameter value of the current project is set on the copy, which does not
+	 * count as a change. If the input is not null, the user input for that
+	 * parameter is set on the copy.
 	 * 
-	 * Calls modifyProjectDetailsService and passes the new project object.
+	 * Calls modifyProjectDetailsService and passes the copy, so only the changed
+	 * columns are updated.
 	 * 
-	 * If the modification is successful, fetchProjectByIdService is called to
-	 * update the currentProject.
+	 * If the modification is successful, the returned project becomes the
+	 * currentProject without fetching it from the database again.
+	 * 
+	 * If someone else saved the project after it was selected, nothing is changed.
+	 * The user is told, and the latest version of the project is loaded so the
+	 * changes can be entered again.
 	 */
 	private void updateProjectDetails() {
 		if (Objects.isNull(currentProject)) {
@@ -344,18 +433,21 @@ public class ProjectsApp {
 		}
 		String notes = getStringInput("Enter the project notes [" + currentProject.getNotes() + "]");
 
-		Project project = new Project();
+		Project project = currentProject.copy();
 
-		project.setProjectId(currentProject.getProjectId());
 		project.setProjectName(Objects.isNull(projectName) ? currentProject.getProjectName() : projectName);
 		project.setEstimatedHours(Objects.isNull(estimatedHours) ? currentProject.getEstimatedHours() : estimatedHours);
 		project.setActualHours(Objects.isNull(actualHours) ? currentProject.getActualHours() : actualHours);
 		project.setDifficulty(Objects.isNull(difficulty) ? currentProject.getDifficulty() : difficulty);
 		project.setNotes(Objects.isNull(notes) ? currentProject.getNotes() : notes);
 
-		projectService.modifyProjectDetailsService(project);
-
-		currentProject = projectService.fetchProjectByIdService(currentProject.getProjectId());
+		try {
+			currentProject = projectService.modifyProjectDetailsService(project);
+		} catch (OptimisticLockException e) {
+			System.out.println("\nThe project was changed by someone else and has not been updated."
+					+ " Its latest details have been loaded. Enter your changes again.");
+			currentProject = projectService.fetchProjectByIdService(project.getProjectId());
+		}
 	} // end updateProjectDetails
 
 	/*
@@ -367,7 +459,8 @@ public class ProjectsApp {
 	 * ID the user has selected for deletion.
 	 * 
 	 * If project is successfully deleted, user is informed that the project has
-	 * been deleted.
+	 * been deleted, and how many deleted projects are still waiting for the purger
+	 * to remove their rows.
 	 * 
 	 * Checks to see if currentProject is not null and is the same project that was
 	 * deleted. If so, currentProject is set to null.
@@ -382,12 +475,170 @@ public class ProjectsApp {
 
 			System.out.println("Project with ID=" + projectId + " has been deleted");
 
+			PurgeStats purgeStats = projectService.getPurgeStats();
+			int waiting = purgeStats.getBacklog() + (Objects.isNull(purgeStats.getCurrentProjectId()) ? 0 : 1);
+			System.out.println(waiting + " deleted project(s) waiting to be purged");
+
 			if (Objects.nonNull(currentProject) && currentProject.getProjectId().equals(projectId)) {
 				currentProject = null;
 			}
 		}
 	} // end deleteProject
 
+	/*
+	 * Prompts the user for the path of a .csv, .ndjson or .jsonl file and imports
+	 * the projects in it with the ProjectImporter class.
+	 * 
+	 * Displays the number of projects imported, the rows rejected and why, and the
+	 * import rate. If the import stops part way, running it again on the same file
+	 * resumes after the last committed chunk.
+	 */
+	private void importProjects() {
+		String fileName = getStringInput("Enter the path of the file to import");
+
+		if (Objects.nonNull(fileName)) {
+			ImportReport report = new ProjectImporter(projectService).importFile(Path.of(fileName));
+
+			System.out.println("Import of " + fileName + " finished:" + report);
+		}
+	} // end importProjects
+
+	/*
+	 * Prompts the user for the path of a .csv, .ndjson or .jsonl file and writes
+	 * every project, with its materials, steps and categories, to it with the
+	 * ProjectExporter class. The file can be imported again with menu option 6.
+	 */
+	private void exportProjects() {
+		String fileName = getStringInput("Enter the path of the file to export to");
+
+		if (Objects.nonNull(fileName)) {
+			long exported = new ProjectExporter(projectService).exportFile(Path.of(fileName));
+
+			System.out.println(exported + " projects were exported to " + fileName);
+		}
+	} // end exportProjects
+
+	/*
+	 * Prompts the user for one or more words and calls searchProjectsService to
+	 * find the projects whose notes or steps contain them, best match first.
+	 * 
+	 * Loads the matching projects with fetchProjectsByIdsService, without their
+	 * materials, steps or categories, and lists their IDs and names in ranked
+	 * order.
+	 */
+	private void searchProjects() {
+		String query = getStringInput("Enter the words to search for");
+
+		if (Objects.isNull(query)) {
+			return;
+		}
+
+		List<Project> projects = projectService.fetchProjectsByIdsService(
+				projectService.searchProjectsService(query, SEARCH_RESULT_LIMIT), FetchPlan.HEADER_ONLY);
+
+		if (projects.isEmpty()) {
+			System.out.println("\nNo projects match \"" + query + "\".");
+			return;
+		}
+
+		System.out.println("\nMatching projects:");
+
+		projects.forEach(
+				project -> System.out.println("  " + project.getProjectId() + ": " + project.getProjectName()));
+	} // end searchProjects
+
+	/*
+	 * Displays the total material cost of the current project, if one is
+	 * selected, and the estimated and actual hours of every category. Both come
+	 * from the rollup tables, so no materials or projects are loaded.
+	 */
+	private void showReports() {
+		if (Objects.nonNull(currentProject)) {
+			ProjectCostRollup cost = projectService.getProjectCostService(currentProject.getProjectId());
+
+			System.out.println("\nMaterial cost of " + currentProject.getProjectName() + ": "
+					+ cost.getMaterialCost() + " for " + cost.getMaterialCount() + " materials");
+		}
+
+		System.out.println("\nHours by category:");
+
+		projectService.getAllCategoryHoursService()
+				.forEach(rollup -> System.out.println("  " + rollup.getCategoryId() + ": " + rollup.getCategoryName()
+						+ " - " + rollup.getProjectCount() + " projects, estimated " + rollup.getEstimatedHours()
+						+ ", actual " + rollup.getActualHours()));
+	} // end showReports
+
+	/*
+	 * Prompts for the text of a new step and the ID of the step it goes before,
+	 * then calls addStepService. A blank step ID adds the step after the last
+	 * step. The current project is loaded again to show the new step.
+	 */
+	private void addStep() {
+		if (Objects.isNull(currentProject)) {
+			System.out.println("\nYou do not have an active project. Choose menu option 3 to select a project");
+			return;
+		}
+
+		String stepText = getStringInput("Enter the step text");
+
+		if (Objects.isNull(stepText)) {
+			return;
+		}
+
+		Integer beforeStepId = getIntInput("Enter the ID of the step to add it before, or press Enter to add it last");
+
+		projectService.addStepService(currentProject.getProjectId(), stepText, beforeStepId);
+		currentProject = projectService.fetchProjectByIdService(currentProject.getProjectId());
+	} // end addStep
+
+	/*
+	 * Prompts for the ID of a step of the current project and the ID of the step
+	 * it should go before, then calls moveStepService. A blank second ID moves the
+	 * step to the end. The current project is loaded again to show the new order.
+	 */
+	private void moveStep() {
+		if (Objects.isNull(currentProject)) {
+			System.out.println("\nYou do not have an active project. Choose menu option 3 to select a project");
+			return;
+		}
+
+		Integer stepId = getIntInput("Enter the ID of the step to move");
+
+		if (Objects.isNull(stepId)) {
+			return;
+		}
+
+		Integer beforeStepId = getIntInput("Enter the ID of the step to move it before, or press Enter to move it last");
+
+		projectService.moveStepService(currentProject.getProjectId(), stepId, beforeStepId);
+		currentProject = projectService.fetchProjectByIdService(currentProject.getProjectId());
+	} // end moveStep
+
+	/*
+	 * Prompts the user for the hours worked and passes them to
+	 * addActualHoursService, which adds them to the actual hours of the current
+	 * project with the next flush.
+	 * 
+	 * Logging hours does not change the project's version, so currentProject is
+	 * kept and its details can still be updated. The actual hours it shows do not
+	 * include the new hours until the project is selected again.
+	 */
+	private void logHours() {
+		if (Objects.isNull(currentProject)) {
+			System.out.println("\nYou do not have an active project. Choose menu option 3 to select a project");
+			return;
+		}
+
+		BigDecimal hours = getDecimalInput("Enter the hours worked (negative to correct an earlier entry)");
+
+		if (Objects.isNull(hours)) {
+			return;
+		}
+
+		projectService.addActualHoursService(currentProject.getProjectId(), hours);
+		System.out.println("\nLogged " + hours + " hours on project " + currentProject.getProjectId() + ".");
+	} // end logHours
+
 	/*
 	 * Tells the user that the program is exiting and returns True to
 	 * processUserSelection, which ends the while loop and ends the program.
@@ -0,0 +1,367 @@
+package projects.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.exception.DbException;
+
+/*
+ * A small, dependency-free JDBC connection pool used by the DbConnection class.
+ *
+ * Physical connections are opened through DriverManager only when no idle
+ * connection is available, and are handed out wrapped in a proxy whose close()
+ * method returns the connection to the pool instead of closing the socket. That
+ * means the DAO classes keep their try-with-resources blocks unchanged.
+ *
+ * The number of connections handed out at one time is limited to maxSize by a
+ * fair Semaphore. A caller that cannot get a permit within borrowTimeoutMillis
+ * gets a DbException instead of waiting forever.
+ *
+ * Idle connections are kept in a LIFO deque so the most recently used (warmest)
+ * connection is reused first. A background thread closes connections that have
+ * been idle longer than idleTimeoutMillis, while keeping at least minIdle
+ * connections open.
+ *
+ * Borrowers and the background thread both open connections, so each one first
+ * claims a place in totalConnections, and no more than maxSize connections are
+ * ever open or being opened.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	// How long a borrower waits on the idle deque before checking again whether
+	// it may open a connection, when every place in the pool is taken.
+	private static final long FULL_POOL_WAIT_MILLIS = 10;
+
+	private final String url;
+	private final int minIdle;
+	private final int maxSize;
+	private final long idleTimeoutMillis;
+	private final long borrowTimeoutMillis;
+	private final boolean validateOnBorrow;
+	private final int validationTimeoutSeconds;
+
+	private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final Semaphore permits;
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed;
+
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder createdCount = new LongAdder();
+	private final LongAdder destroyedCount = new LongAdder();
+	private final LongAdder timeoutCount = new LongAdder();
+	private final LongAdder validationFailureCount = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+
+	public ConnectionPool(String url, int minIdle, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis,
+			boolean validateOnBorrow, int validationTimeoutSeconds) {
+		if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: minIdle=" + minIdle + ", maxSize=" + maxSize);
+		}
+
+		this.url = url;
+		this.minIdle = minIdle;
+		this.maxSize = maxSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.validateOnBorrow = validateOnBorrow;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.permits = new Semaphore(maxSize, true);
+
+		this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "projects-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long interval = Math.max(1000, idleTimeoutMillis / 2);
+		evictor.scheduleWithFixedDelay(this::evictAndFill, 0, interval, TimeUnit.MILLISECONDS);
+	} // end CONSTRUCTOR
+
+	/*
+	 * Borrows a connection from the pool, opening a new physical connection if no
+	 * idle connection is available and the pool is below maxSize.
+	 *
+	 * Idle connections are checked with Connection.isValid before they are handed
+	 * out when validateOnBorrow is set. Broken connections are closed and the next
+	 * idle connection is tried.
+	 *
+	 * Throws a DbException if no connection becomes available within the borrow
+	 * timeout or a new connection cannot be opened.
+	 */
+	public Connection getConnection() {
+		if (closed) {
+			throw new DbException("The connection pool has been closed");
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeoutCount.increment();
+				throw new DbException("Timed out after " + borrowTimeoutMillis
+						+ " ms waiting for a connection from the pool (" + getStats() + ")");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for a connection from the pool", e);
+		}
+
+		try {
+			PooledConnection pooled = takeIdle(0);
+
+			// With maxSize connections open and this caller holding a permit, at least
+			// one of them is not borrowed: it is idle, being returned or being opened by
+			// the evictor. Wait for it to reach the idle deque.
+			while (pooled == null && (pooled = tryCreate()) == null) {
+				if (System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis)) {
+					timeoutCount.increment();
+					throw new DbException("Timed out after " + borrowTimeoutMillis
+							+ " ms waiting for a connection from the pool (" + getStats() + ")");
+				}
+				pooled = takeIdle(FULL_POOL_WAIT_MILLIS);
+			}
+
+			borrowCount.increment();
+			totalWaitNanos.add(System.nanoTime() - start);
+
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new ConnectionHandler(pooled));
+		} catch (InterruptedException e) {
+			permits.release();
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for a connection from the pool", e);
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	} // end getConnection
+
+	/*
+	 * Returns a snapshot of the pool counters.
+	 */
+	public PoolStats getStats() {
+		int total = totalConnections.get();
+		int idleCount = idle.size();
+
+		return new PoolStats(total, idleCount, maxSize - permits.availablePermits(), maxSize, borrowCount.sum(),
+				createdCount.sum(), destroyedCount.sum(), timeoutCount.sum(), validationFailureCount.sum(),
+				totalWaitNanos.sum());
+	} // end getStats
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/*
+	 * Stops the eviction thread and closes all idle connections. Connections that
+	 * are still borrowed are closed when they are returned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		evictor.shutdownNow();
+
+		PooledConnection pooled;
+
+		while ((pooled = idle.pollFirst()) != null) {
+			destroy(pooled);
+		}
+	} // end close
+
+	/*
+	 * Called by the connection proxy when the DAO closes it. Any transaction left
+	 * open by the caller is rolled back and auto-commit is restored, so the next
+	 * borrower starts from a clean session. Connections that cannot be reset are
+	 * closed instead of being returned.
+	 */
+	private void release(PooledConnection pooled) {
+		try {
+			Connection conn = pooled.connection;
+
+			if (closed || conn.isClosed()) {
+				destroy(pooled);
+				return;
+			}
+
+			if (!conn.getAutoCommit()) {
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+
+			pooled.lastUsedMillis = System.currentTimeMillis();
+			idle.offerFirst(pooled);
+		} catch (SQLException e) {
+			destroy(pooled);
+		} finally {
+			permits.release();
+		}
+	} // end release
+
+	/*
+	 * Closes connections that have been idle for longer than idleTimeoutMillis,
+	 * oldest first, then opens new connections until minIdle is reached. Runs on
+	 * the evictor thread. Failures to open a connection are ignored here; the next
+	 * borrower will report them.
+	 */
+	private void evictAndFill() {
+		long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+		PooledConnection oldest;
+
+		while (totalConnections.get() > minIdle && (oldest = idle.peekLast()) != null
+				&& oldest.lastUsedMillis < cutoff) {
+			if (idle.removeLastOccurrence(oldest)) {
+				destroy(oldest);
+			}
+		}
+
+		try {
+			PooledConnection pooled;
+
+			while (!closed && idle.size() < minIdle && (pooled = tryCreate()) != null) {
+				pooled.lastUsedMillis = System.currentTimeMillis();
+				idle.offerLast(pooled);
+			}
+		} catch (DbException e) {
+			// The database is unavailable. Try again on the next run.
+		}
+	} // end evictAndFill
+
+	/*
+	 * Takes the most recently used idle connection, waiting up to waitMillis for
+	 * one. With validateOnBorrow set, broken connections are closed and skipped.
+	 * Returns null if no connection became idle in time.
+	 */
+	private PooledConnection takeIdle(long waitMillis) throws InterruptedException {
+		PooledConnection pooled;
+
+		while ((pooled = idle.pollFirst(waitMillis, TimeUnit.MILLISECONDS)) != null) {
+			if (!validateOnBorrow || isValid(pooled)) {
+				return pooled;
+			}
+			validationFailureCount.increment();
+			destroy(pooled);
+		}
+		return null;
+	} // end takeIdle
+
+	/*
+	 * Opens a new physical connection if fewer than maxSize connections are open
+	 * or being opened. The place is claimed before the connection is opened and
+	 * given back if opening fails. Returns null if the pool is full.
+	 */
+	private PooledConnection tryCreate() {
+		int total;
+
+		do {
+			total = totalConnections.get();
+
+			if (total >= maxSize) {
+				return null;
+			}
+		} while (!totalConnections.compareAndSet(total, total + 1));
+
+		try {
+			PooledConnection pooled = new PooledConnection(DriverManager.getConnection(url));
+			createdCount.increment();
+			return pooled;
+		} catch (SQLException e) {
+			totalConnections.decrementAndGet();
+			throw new DbException("Unable to get connection at " + url, e);
+		}
+	} // end tryCreate
+
+	private boolean isValid(PooledConnection pooled) {
+		try {
+			return pooled.connection.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	} // end isValid
+
+	private void destroy(PooledConnection pooled) {
+		totalConnections.decrementAndGet();
+		destroyedCount.increment();
+
+		try {
+			pooled.connection.close();
+		} catch (SQLException e) {
+			// The connection is being discarded anyway.
+		}
+	} // end destroy
+
+	/*
+	 * A physical connection and the time it was last returned to the pool.
+	 */
+	private static class PooledConnection {
+		private final Connection connection;
+		private volatile long lastUsedMillis;
+
+		private PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+	} // end PooledConnection
+
+	/*
+	 * Handler for the Connection proxy handed to callers. close() returns the
+	 * physical connection to the pool exactly once. Any other call after close()
+	 * fails the same way a closed physical connection would.
+	 */
+	private class ConnectionHandler implements InvocationHandler {
+		private final PooledConnection pooled;
+		private boolean released;
+
+		private ConnectionHandler(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!released) {
+					released = true;
+					release(pooled);
+				}
+				return null;
+
+			case "isClosed":
+				return released || pooled.connection.isClosed();
+
+			case "equals":
+				return proxy == args[0];
+
+			case "hashCode":
+				return System.identityHashCode(proxy);
+
+			case "toString":
+				return "PooledConnection[" + pooled.connection + "]";
+
+			default:
+				if (released) {
+					throw new SQLException("Connection has already been returned to the pool");
+				}
+
+				try {
+					return method.invoke(pooled.connection, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	} // end ConnectionHandler
+
+} // end CLASS
@@ -1,10 +1,16 @@
 package projects.dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import projects.exception.DbException;
+import projects.metrics.DaoMetrics;
+import projects.metrics.OperationMetrics;
+import projects.metrics.SlowQueryLog;
+import provided.util.DaoBase;
 
 public class DbConnection {
 
@@ -14,23 +20,156 @@ public class DbConnection {
 	private static final String SCHEMA = "projects";
 	private static final String USER = "projects";
 
+	// Driver options. allowMultiQueries lets ProjectDao send several statements in
+	// one round trip, rewriteBatchedStatements sends a batch of inserts as one
+	// multi-row INSERT, and useServerPrepStmts makes the statements cached by
+	// DaoBase server-side prepared statements that are parsed only once.
+	// useCursorFetch reads statements that set a fetch size through server-side
+	// cursors, so the export can keep several large result sets open at once.
+	// @formatter:off
+	private static final String URL_OPTIONS = ""
+		+ "useSSL=false"
+		+ "&allowMultiQueries=true"
+		+ "&rewriteBatchedStatements=true"
+		+ "&useServerPrepStmts=true"
+		+ "&useCursorFetch=true";
+	// @formatter:on
+
+	// Pool settings. Each one can be overridden with a -D system property.
+	private static final int POOL_MIN_IDLE = Integer.getInteger("projects.pool.minIdle", 2);
+	private static final int POOL_MAX_SIZE = Integer.getInteger("projects.pool.maxSize", 10);
+	private static final long POOL_IDLE_TIMEOUT_MILLIS = Long.getLong("projects.pool.idleTimeoutMillis", 300_000);
+	private static final long POOL_BORROW_TIMEOUT_MILLIS = Long.getLong("projects.pool.borrowTimeoutMillis", 5_000);
+	private static final boolean POOL_VALIDATE_ON_BORROW = Boolean
+			.parseBoolean(System.getProperty("projects.pool.validateOnBorrow", "true"));
+	private static final int POOL_VALIDATION_TIMEOUT_SECONDS = Integer
+			.getInteger("projects.pool.validationTimeoutSeconds", 2);
+
+	// Slow query log settings. A negative threshold turns the log off.
+	private static final long SLOW_QUERY_THRESHOLD_MILLIS = Long.getLong("projects.slowQuery.thresholdMillis", 200);
+	private static final int SLOW_QUERY_BUFFER_SIZE = Integer.getInteger("projects.slowQuery.bufferSize", 1024);
+	private static final boolean SLOW_QUERY_EXPLAIN = Boolean
+			.parseBoolean(System.getProperty("projects.slowQuery.explain", "true"));
+
+	private static final OperationMetrics CONNECTION_ACQUIRE = DaoMetrics.connectionAcquire();
+
+	private static final Logger LOGGER = Logger.getLogger("projects.dao");
+
+	// Run by the shutdown hook, in the order they were added, before the pool is
+	// closed.
+	private static final List<Runnable> SHUTDOWN_TASKS = new CopyOnWriteArrayList<>();
+
+	private static volatile ConnectionPool pool;
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(DbConnection::shutdown, "projects-pool-shutdown"));
+	}
+
 	/*
-	 * Generates the url for the database connection, then tries to connect,
-	 * throwing execeptions if the connection is not made.
+	 * Borrows a connection from the connection pool. Closing the returned
+	 * connection hands it back to the pool, so callers keep using
+	 * try-with-resources exactly as before.
+	 *
+	 * Throws a DbException if the pool cannot supply a connection within the
+	 * borrow timeout or a new connection cannot be made.
+	 * 
+	 * The time taken to borrow the connection is recorded in the connectionAcquire
+	 * metrics.
 	 */
 	public static Connection getConnection() {
-		String url = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false", HOST, PORT, SCHEMA, USER,
-				PASSWORD);
+		ConnectionPool connectionPool = getPool();
+		long start = System.nanoTime();
 
 		try {
-			Connection conn = DriverManager.getConnection(url);
-			System.out.println("\nConnection to schema '" + SCHEMA + "' successfully obtained.");
+			Connection conn = connectionPool.getConnection();
+			CONNECTION_ACQUIRE.record(start, 0);
 			return conn;
-		} catch (SQLException e) {
-			System.out.println("Unable to get connection at " + url);
-			throw new DbException("Unable to get connection at " + url);
+		} catch (DbException e) {
+			CONNECTION_ACQUIRE.recordError(start);
+			throw e;
 		}
+	} // end getConnection
 
-	}
+	/*
+	 * Returns a snapshot of the connection pool statistics.
+	 */
+	public static PoolStats getPoolStats() {
+		return getPool().getStats();
+	} // end getPoolStats
+
+	/*
+	 * Returns the maximum number of connections the pool will hand out at once.
+	 */
+	public static int getPoolMaxSize() {
+		return POOL_MAX_SIZE;
+	} // end getPoolMaxSize
+
+	/*
+	 * Adds a task, such as a final flush of buffered writes, that still needs the
+	 * database when the JVM exits. The shutdown hook runs the tasks before it
+	 * closes the pool; shutdown hooks run in no set order, so a hook of its own
+	 * could find the pool already closed.
+	 */
+	public static void addShutdownTask(Runnable task) {
+		SHUTDOWN_TASKS.add(task);
+	} // end addShutdownTask
+
+	/*
+	 * Runs the shutdown tasks, then closes the pool if it was created. A failed
+	 * task is logged and the rest still run.
+	 */
+	private static void shutdown() {
+		for (Runnable task : SHUTDOWN_TASKS) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "A shutdown task failed", e);
+			}
+		}
+
+		ConnectionPool created = pool;
+
+		if (created != null) {
+			created.close();
+		}
+	} // end shutdown
+
+	/*
+	 * Creates the pool the first time it is needed. The url is generated the same
+	 * way as before unless a complete JDBC url is given with -Dprojects.db.url (the
+	 * benchmarks use this to run against an embedded database). The pool is closed
+	 * by the shutdown hook when the JVM exits, after the shutdown tasks.
+	 * 
+	 * The slow query log is installed in DaoBase at the same time, unless
+	 * -Dprojects.slowQuery.thresholdMillis is negative.
+	 */
+	private static ConnectionPool getPool() {
+		ConnectionPool result = pool;
+
+		if (result == null) {
+			synchronized (DbConnection.class) {
+				result = pool;
+
+				if (result == null) {
+					String url = System.getProperty("projects.db.url", String.format(
+							"jdbc:mysql://%s:%d/%s?user=%s&password=%s&%s", HOST, PORT, SCHEMA, USER, PASSWORD, URL_OPTIONS));
+
+					result = new ConnectionPool(url, POOL_MIN_IDLE, POOL_MAX_SIZE, POOL_IDLE_TIMEOUT_MILLIS,
+							POOL_BORROW_TIMEOUT_MILLIS, POOL_VALIDATE_ON_BORROW, POOL_VALIDATION_TIMEOUT_SECONDS);
+
+					pool = result;
+
+					if (SLOW_QUERY_THRESHOLD_MILLIS >= 0) {
+						SlowQueryLog slowQueryLog = new SlowQueryLog(SLOW_QUERY_BUFFER_SIZE,
+								DbConnection::getConnection, SLOW_QUERY_EXPLAIN);
+						DaoBase.setSlowStatementLog(slowQueryLog, SLOW_QUERY_THRESHOLD_MILLIS * 1_000_000);
+					}
+					System.out.println("\nConnection pool for schema '" + SCHEMA + "' created (max " + POOL_MAX_SIZE
+							+ " connections).");
+				}
+			}
+		}
+		return result;
+	} // end getPool
 
 } // end CLASS
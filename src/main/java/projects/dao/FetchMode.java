@@ -0,0 +1,15 @@
+package projects.dao;
+
+/*
+ * How ProjectDao loads a project together with its materials, steps and
+ * categories.
+ */
+public enum FetchMode {
+
+	// One query per table, four round trips to the database.
+	SEQUENTIAL,
+
+	// All four queries sent as one multi-statement request, one round trip.
+	SINGLE_ROUND_TRIP
+
+} // end ENUM
@@ -0,0 +1,62 @@
+package projects.dao;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import projects.entity.ProjectChild;
+
+/*
+ * Which child Lists ProjectDao loads together with a project. The children
+ * left out are not queried; the project loads each of them on the first call
+ * to its getter instead, through the DAO that fetched it. That load runs in a
+ * transaction of its own, so only the eager children are read together with
+ * the project row; use ALL when every child must come from the same snapshot.
+ */
+public final class FetchPlan {
+
+	// The project row only. Every child List is loaded on first access.
+	public static final FetchPlan HEADER_ONLY = new FetchPlan(EnumSet.noneOf(ProjectChild.class));
+
+	// The project with all of its materials, steps and categories.
+	public static final FetchPlan ALL = new FetchPlan(EnumSet.allOf(ProjectChild.class));
+
+	private final Set<ProjectChild> eagerChildren;
+
+	private FetchPlan(Set<ProjectChild> eagerChildren) {
+		this.eagerChildren = Collections.unmodifiableSet(eagerChildren);
+	}
+
+	/*
+	 * A plan that loads the given children with the project and defers the rest.
+	 */
+	public static FetchPlan of(ProjectChild... eagerChildren) {
+		Set<ProjectChild> children = EnumSet.noneOf(ProjectChild.class);
+		children.addAll(Arrays.asList(eagerChildren));
+		return new FetchPlan(children);
+	} // end of
+
+	public boolean isEager(ProjectChild child) {
+		return eagerChildren.contains(child);
+	}
+
+	public boolean isAll() {
+		return eagerChildren.size() == ProjectChild.values().length;
+	}
+
+	/*
+	 * The children this plan leaves to be loaded on first access.
+	 */
+	public Set<ProjectChild> getDeferredChildren() {
+		Set<ProjectChild> deferred = EnumSet.allOf(ProjectChild.class);
+		deferred.removeAll(eagerChildren);
+		return deferred;
+	}
+
+	@Override
+	public String toString() {
+		return "FetchPlan" + eagerChildren;
+	}
+
+} // end CLASS
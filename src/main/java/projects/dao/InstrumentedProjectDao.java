@@ -0,0 +1,497 @@
+package projects.dao;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import projects.entity.Category;
+import projects.entity.CategoryHoursRollup;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.ProjectChild;
+import projects.entity.ProjectCostRollup;
+import projects.entity.ProjectStamp;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
+import projects.metrics.DaoMetrics;
+import projects.metrics.OperationMetrics;
+
+/*
+ * A ProjectDao that records a latency histogram, a row count, an error count
+ * and the number of SQL statements run for every call of each public method.
+ * The metrics are published over JMX by the DaoMetrics class, under
+ * projects:type=Dao,name=<method name>.
+ *
+ * Each override only reads System.nanoTime() and the per-thread query counter
+ * around the call to super, so recording does not allocate.
+ *
+ * fetchProjectByIdDao(Integer) is not overridden because it calls the
+ * FetchMode version, which is. For the same reason
+ * fetchProjectsByIdsDao(Collection) is recorded by its FetchPlan version, and
+ * fetchProjectByIdDao with FetchPlan.ALL by the FetchMode version. Child Lists
+ * that a FetchPlan deferred are recorded when they are loaded, under
+ * fetchMaterialsDao, fetchStepsDao and fetchCategoriesDao. The queries counted for
+ * fetchProjectByIdParallelDao only include the project row query, because the
+ * child queries run on other threads.
+ */
+public class InstrumentedProjectDao extends ProjectDao {
+
+	private static final OperationMetrics INSERT_PROJECT = DaoMetrics.operation("insertProject");
+	private static final OperationMetrics INSERT_PROJECTS = DaoMetrics.operation("insertProjects");
+	private static final OperationMetrics INSERT_CATEGORY = DaoMetrics.operation("insertCategoryDao");
+	private static final OperationMetrics GET_ALL_PROJECT_NAMES = DaoMetrics.operation("getAllProjectNames");
+	private static final OperationMetrics FETCH_PROJECT_PAGE = DaoMetrics.operation("fetchProjectPageDao");
+	private static final OperationMetrics FETCH_PROJECT_BY_ID = DaoMetrics.operation("fetchProjectByIdDao");
+	private static final OperationMetrics FETCH_PROJECT_BY_ID_PARALLEL = DaoMetrics
+			.operation("fetchProjectByIdParallelDao");
+	private static final OperationMetrics FETCH_PROJECT_BY_ID_PLAN = DaoMetrics.operation("fetchProjectByIdPlanDao");
+	private static final OperationMetrics FETCH_MATERIALS = DaoMetrics.operation("fetchMaterialsDao");
+	private static final OperationMetrics FETCH_STEPS = DaoMetrics.operation("fetchStepsDao");
+	private static final OperationMetrics FETCH_CATEGORIES = DaoMetrics.operation("fetchCategoriesDao");
+	private static final OperationMetrics FETCH_PROJECTS_BY_IDS = DaoMetrics.operation("fetchProjectsByIdsDao");
+	private static final OperationMetrics STREAM_ALL_PROJECTS = DaoMetrics.operation("streamAllProjectsDao");
+	private static final OperationMetrics MODIFY_PROJECT_DETAILS = DaoMetrics.operation("modifyProjectDetailsDao");
+	private static final OperationMetrics ADD_ACTUAL_HOURS = DaoMetrics.operation("addActualHoursDao");
+	private static final OperationMetrics DELETE_PROJECT = DaoMetrics.operation("deleteProjectDao");
+	private static final OperationMetrics FETCH_DELETED_PROJECT_IDS = DaoMetrics
+			.operation("fetchDeletedProjectIdsDao");
+	private static final OperationMetrics PURGE_PROJECT = DaoMetrics.operation("purgeProjectDao");
+	private static final OperationMetrics INSERT_STEP = DaoMetrics.operation("insertStepDao");
+	private static final OperationMetrics MOVE_STEP = DaoMetrics.operation("moveStepDao");
+	private static final OperationMetrics REBALANCE_STEP_ORDER = DaoMetrics.operation("rebalanceStepOrderDao");
+	private static final OperationMetrics FETCH_PROJECT_COST = DaoMetrics.operation("fetchProjectCostDao");
+	private static final OperationMetrics FETCH_CATEGORY_HOURS = DaoMetrics.operation("fetchCategoryHoursDao");
+	private static final OperationMetrics FETCH_ALL_CATEGORY_HOURS = DaoMetrics
+			.operation("fetchAllCategoryHoursDao");
+	private static final OperationMetrics REBUILD_ROLLUPS = DaoMetrics.operation("rebuildRollupsDao");
+	private static final OperationMetrics FETCH_PROJECT_STAMP = DaoMetrics.operation("fetchProjectStampDao");
+
+	@Override
+	public Project insertProject(Project project) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			Project result = super.insertProject(project);
+			INSERT_PROJECT.record(start, 1, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			INSERT_PROJECT.recordError(start);
+			throw e;
+		}
+	} // end insertProject
+
+	@Override
+	public int insertProjects(Collection<Project> projects, int chunkSize) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			int result = super.insertProjects(projects, chunkSize);
+			INSERT_PROJECTS.record(start, result, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			INSERT_PROJECTS.recordError(start);
+			throw e;
+		}
+	} // end insertProjects
+
+	@Override
+	public Category insertCategoryDao(Category category) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			Category result = super.insertCategoryDao(category);
+			INSERT_CATEGORY.record(start, 1, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			INSERT_CATEGORY.recordError(start);
+			throw e;
+		}
+	} // end insertCategoryDao
+
+	@Override
+	public List<Project> getAllProjectNames() {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			List<Project> result = super.getAllProjectNames();
+			GET_ALL_PROJECT_NAMES.record(start, result.size(), DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			GET_ALL_PROJECT_NAMES.recordError(start);
+			throw e;
+		}
+	} // end getAllProjectNames
+
+	@Override
+	public List<ProjectSummary> fetchProjectPageDao(ProjectSortOrder order, ProjectSummary after, int pageSize) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			List<ProjectSummary> result = super.fetchProjectPageDao(order, after, pageSize);
+			FETCH_PROJECT_PAGE.record(start, result.size(), DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_PROJECT_PAGE.recordError(start);
+			throw e;
+		}
+	} // end fetchProjectPageDao
+
+	@Override
+	public Optional<Project> fetchProjectByIdDao(Integer projectId, FetchMode fetchMode) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			Optional<Project> result = super.fetchProjectByIdDao(projectId, fetchMode);
+			long rows = result.isPresent() ? aggregateRows(result.get()) : 0;
+			FETCH_PROJECT_BY_ID.record(start, rows, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_PROJECT_BY_ID.recordError(start);
+			throw e;
+		}
+	} // end fetchProjectByIdDao
+
+	@Override
+	public Optional<Project> fetchProjectByIdParallelDao(Integer projectId, Executor executor) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			Optional<Project> result = super.fetchProjectByIdParallelDao(projectId, executor);
+			long rows = result.isPresent() ? aggregateRows(result.get()) : 0;
+			FETCH_PROJECT_BY_ID_PARALLEL.record(start, rows, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_PROJECT_BY_ID_PARALLEL.recordError(start);
+			throw e;
+		}
+	} // end fetchProjectByIdParallelDao
+
+	@Override
+	public Optional<Project> fetchProjectByIdDao(Integer projectId, FetchPlan plan) {
+		if (plan.isAll()) {
+			return super.fetchProjectByIdDao(projectId, plan);
+		}
+
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			Optional<Project> result = super.fetchProjectByIdDao(projectId, plan);
+			FETCH_PROJECT_BY_ID_PLAN.record(start, result.map(InstrumentedProjectDao::aggregateRows).orElse(0L),
+					DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_PROJECT_BY_ID_PLAN.recordError(start);
+			throw e;
+		}
+	} // end fetchProjectByIdDao(FetchPlan)
+
+	@Override
+	public List<Material> fetchMaterialsDao(Integer projectId) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			List<Material> result = super.fetchMaterialsDao(projectId);
+			FETCH_MATERIALS.record(start, result.size(), DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_MATERIALS.recordError(start);
+			throw e;
+		}
+	} // end fetchMaterialsDao
+
+	@Override
+	public List<Step> fetchStepsDao(Integer projectId) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			List<Step> result = super.fetchStepsDao(projectId);
+			FETCH_STEPS.record(start, result.size(), DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_STEPS.recordError(start);
+			throw e;
+		}
+	} // end fetchStepsDao
+
+	@Override
+	public List<Category> fetchCategoriesDao(Integer projectId) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			List<Category> result = super.fetchCategoriesDao(projectId);
+			FETCH_CATEGORIES.record(start, result.size(), DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_CATEGORIES.recordError(start);
+			throw e;
+		}
+	} // end fetchCategoriesDao
+
+	@Override
+	public List<Project> fetchProjectsByIdsDao(Collection<Integer> projectIds, FetchPlan plan) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			List<Project> result = super.fetchProjectsByIdsDao(projectIds, plan);
+			long rows = 0;
+
+			for (Project project : result) {
+				rows += aggregateRows(project);
+			}
+
+			FETCH_PROJECTS_BY_IDS.record(start, rows, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_PROJECTS_BY_IDS.recordError(start);
+			throw e;
+		}
+	} // end fetchProjectsByIdsDao(FetchPlan)
+
+	@Override
+	public long streamAllProjectsDao(Consumer<Project> consumer) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			long result = super.streamAllProjectsDao(consumer);
+			STREAM_ALL_PROJECTS.record(start, result, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			STREAM_ALL_PROJECTS.recordError(start);
+			throw e;
+		}
+	} // end streamAllProjectsDao
+
+	@Override
+	public boolean modifyProjectDetailsDao(Project project) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			boolean result = super.modifyProjectDetailsDao(project);
+			MODIFY_PROJECT_DETAILS.record(start, result ? 1 : 0, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			MODIFY_PROJECT_DETAILS.recordError(start);
+			throw e;
+		}
+	} // end modifyProjectDetailsDao
+
+	@Override
+	public int addActualHoursDao(Map<Integer, BigDecimal> increments) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			int result = super.addActualHoursDao(increments);
+			ADD_ACTUAL_HOURS.record(start, result, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			ADD_ACTUAL_HOURS.recordError(start);
+			throw e;
+		}
+	} // end addActualHoursDao
+
+	@Override
+	public boolean deleteProjectDao(Integer projectId) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			boolean result = super.deleteProjectDao(projectId);
+			DELETE_PROJECT.record(start, result ? 1 : 0, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			DELETE_PROJECT.recordError(start);
+			throw e;
+		}
+	} // end deleteProjectDao
+
+	@Override
+	public List<Integer> fetchDeletedProjectIdsDao() {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			List<Integer> result = super.fetchDeletedProjectIdsDao();
+			FETCH_DELETED_PROJECT_IDS.record(start, result.size(), DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_DELETED_PROJECT_IDS.recordError(start);
+			throw e;
+		}
+	} // end fetchDeletedProjectIdsDao
+
+	@Override
+	public int purgeProjectDao(Integer projectId, int batchSize) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			int result = super.purgeProjectDao(projectId, batchSize);
+			PURGE_PROJECT.record(start, result, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			PURGE_PROJECT.recordError(start);
+			throw e;
+		}
+	} // end purgeProjectDao
+
+	@Override
+	public Optional<Step> insertStepDao(Integer projectId, String stepText, Integer beforeStepId) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			Optional<Step> result = super.insertStepDao(projectId, stepText, beforeStepId);
+			INSERT_STEP.record(start, result.isPresent() ? 1 : 0, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			INSERT_STEP.recordError(start);
+			throw e;
+		}
+	} // end insertStepDao
+
+	@Override
+	public boolean moveStepDao(Integer projectId, Integer stepId, Integer beforeStepId) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			boolean result = super.moveStepDao(projectId, stepId, beforeStepId);
+			MOVE_STEP.record(start, result ? 1 : 0, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			MOVE_STEP.recordError(start);
+			throw e;
+		}
+	} // end moveStepDao
+
+	@Override
+	public int rebalanceStepOrderDao(Integer projectId) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			int result = super.rebalanceStepOrderDao(projectId);
+			REBALANCE_STEP_ORDER.record(start, result, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			REBALANCE_STEP_ORDER.recordError(start);
+			throw e;
+		}
+	} // end rebalanceStepOrderDao
+
+	@Override
+	public Optional<ProjectCostRollup> fetchProjectCostDao(Integer projectId) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			Optional<ProjectCostRollup> result = super.fetchProjectCostDao(projectId);
+			FETCH_PROJECT_COST.record(start, result.isPresent() ? 1 : 0, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_PROJECT_COST.recordError(start);
+			throw e;
+		}
+	} // end fetchProjectCostDao
+
+	@Override
+	public Optional<CategoryHoursRollup> fetchCategoryHoursDao(Integer categoryId) {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			Optional<CategoryHoursRollup> result = super.fetchCategoryHoursDao(categoryId);
+			FETCH_CATEGORY_HOURS.record(start, result.isPresent() ? 1 : 0, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_CATEGORY_HOURS.recordError(start);
+			throw e;
+		}
+	} // end fetchCategoryHoursDao
+
+	@Override
+	public List<CategoryHoursRollup> fetchAllCategoryHoursDao() {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			List<CategoryHoursRollup> result = super.fetchAllCategoryHoursDao();
+			FETCH_ALL_CATEGORY_HOURS.record(start, result.size(), DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_ALL_CATEGORY_HOURS.recordError(start);
+			throw e;
+		}
+	} // end fetchAllCategoryHoursDao
+
+	@Override
+	public void rebuildRollupsDao() {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			super.rebuildRollupsDao();
+			REBUILD_ROLLUPS.record(start, 0, DaoMetrics.queryCount() - queries);
+		} catch (RuntimeException e) {
+			REBUILD_ROLLUPS.recordError(start);
+			throw e;
+		}
+	} // end rebuildRollupsDao
+
+	@Override
+	public ProjectStamp fetchProjectStampDao() {
+		long start = System.nanoTime();
+		long queries = DaoMetrics.queryCount();
+
+		try {
+			ProjectStamp result = super.fetchProjectStampDao();
+			FETCH_PROJECT_STAMP.record(start, 1, DaoMetrics.queryCount() - queries);
+			return result;
+		} catch (RuntimeException e) {
+			FETCH_PROJECT_STAMP.recordError(start);
+			throw e;
+		}
+	} // end fetchProjectStampDao
+
+	// The project row plus its material, step and category rows.
+	/*
+	 * Counts the project row and its loaded child rows. Deferred child Lists are
+	 * not counted, and not loaded.
+	 */
+	private static long aggregateRows(Project project) {
+		long rows = 1;
+
+		if (project.isLoaded(ProjectChild.MATERIALS)) {
+			rows += project.getMaterials().size();
+		}
+
+		if (project.isLoaded(ProjectChild.STEPS)) {
+			rows += project.getSteps().size();
+		}
+
+		if (project.isLoaded(ProjectChild.CATEGORIES)) {
+			rows += project.getCategories().size();
+		}
+		return rows;
+	} // end aggregateRows
+
+} // end CLASS
@@ -0,0 +1,87 @@
+package projects.dao;
+
+/*
+ * Immutable snapshot of the ConnectionPool counters, taken by the
+ * getPoolStats method in the DbConnection class.
+ */
+public class PoolStats {
+
+	private final int totalConnections;
+	private final int idleConnections;
+	private final int activeConnections;
+	private final int maxSize;
+	private final long borrowCount;
+	private final long createdCount;
+	private final long destroyedCount;
+	private final long timeoutCount;
+	private final long validationFailureCount;
+	private final long totalWaitNanos;
+
+	public PoolStats(int totalConnections, int idleConnections, int activeConnections, int maxSize,
+			long borrowCount, long createdCount, long destroyedCount, long timeoutCount, long validationFailureCount,
+			long totalWaitNanos) {
+		this.totalConnections = totalConnections;
+		this.idleConnections = idleConnections;
+		this.activeConnections = activeConnections;
+		this.maxSize = maxSize;
+		this.borrowCount = borrowCount;
+		this.createdCount = createdCount;
+		this.destroyedCount = destroyedCount;
+		this.timeoutCount = timeoutCount;
+		this.validationFailureCount = validationFailureCount;
+		this.totalWaitNanos = totalWaitNanos;
+	}
+
+	public int getTotalConnections() {
+		return totalConnections;
+	}
+
+	public int getIdleConnections() {
+		return idleConnections;
+	}
+
+	public int getActiveConnections() {
+		return activeConnections;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getBorrowCount() {
+		return borrowCount;
+	}
+
+	public long getCreatedCount() {
+		return createdCount;
+	}
+
+	public long getDestroyedCount() {
+		return destroyedCount;
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailureCount;
+	}
+
+	/*
+	 * Average time a caller waited in getConnection, in microseconds. Returns 0
+	 * before the first borrow.
+	 */
+	public double getAverageWaitMicros() {
+		return borrowCount == 0 ? 0 : totalWaitNanos / 1000.0 / borrowCount;
+	}
+
+	@Override
+	public String toString() {
+		return "total=" + totalConnections + ", idle=" + idleConnections + ", active=" + activeConnections + ", max="
+				+ maxSize + ", borrowed=" + borrowCount + ", created=" + createdCount + ", destroyed=" + destroyedCount
+				+ ", timeouts=" + timeoutCount + ", validationFailures=" + validationFailureCount + ", avgWaitMicros="
+				+ String.format("%.1f", getAverageWaitMicros());
+	}
+
+} // end CLASS
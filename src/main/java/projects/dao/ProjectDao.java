@@ -5,19 +5,40 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import projects.entity.Category;
+import projects.entity.CategoryHoursRollup;
 import projects.entity.Material;
 import projects.entity.Project;
+import projects.entity.ProjectChild;
+import projects.entity.ProjectChildLoader;
+import projects.entity.ProjectCostRollup;
+import projects.entity.ProjectStamp;
+import projects.entity.ProjectSummary;
 import projects.entity.Step;
 import projects.exception.DbException;
+import projects.exception.OptimisticLockException;
 import provided.util.DaoBase;
+import provided.util.RowMapper;
 
-public class ProjectDao extends DaoBase {
+public class ProjectDao extends DaoBase implements ProjectRepository {
 
 	// CONSTANTS
 	private static final String CATEGORY_TABLE = "category";
@@ -25,6 +46,97 @@ public class ProjectDao extends DaoBase {
 	private static final String PROJECT_TABLE = "project";
 	private static final String PROJECT_CATEGORY_TABLE = "project_category";
 	private static final String STEP_TABLE = "step";
+	private static final String PROJECT_COST_ROLLUP_TABLE = "project_cost_rollup";
+	private static final String CATEGORY_HOURS_ROLLUP_TABLE = "category_hours_rollup";
+
+	// Maximum number of IDs bound into one IN (...) list by fetchProjectsByIdsDao
+	// and addActualHoursDao.
+	private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
+	// Rows read from the database at a time by streamAllProjectsDao. Set with
+	// -Dprojects.export.fetchSize.
+	private static final int EXPORT_FETCH_SIZE = Integer.getInteger("projects.export.fetchSize", 1000);
+
+	// Queries shared by the sequential and single-round-trip fetch paths.
+	// @formatter:off
+	private static final String PROJECT_BY_ID_SQL = ""
+		+ "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_on IS NULL";
+	private static final String MATERIALS_BY_PROJECT_SQL = ""
+		+ "SELECT m.* FROM " + MATERIAL_TABLE + " m "
+		+ "JOIN " + PROJECT_TABLE + " p USING (project_id) "
+		+ "WHERE m.project_id = ? AND p.deleted_on IS NULL";
+	static final String STEPS_BY_PROJECT_SQL = ""
+		+ "SELECT s.* FROM " + STEP_TABLE + " s "
+		+ "JOIN " + PROJECT_TABLE + " p USING (project_id) "
+		+ "WHERE s.project_id = ? AND p.deleted_on IS NULL ORDER BY s.step_order, s.step_id";
+	private static final String CATEGORIES_BY_PROJECT_SQL = ""
+		+ "SELECT c.* FROM " + CATEGORY_TABLE + " c "
+		+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+		+ "JOIN " + PROJECT_TABLE + " p ON p.project_id = pc.project_id "
+		+ "WHERE pc.project_id = ? AND p.deleted_on IS NULL";
+	// @formatter:on
+
+	// Queries that depend on an index, package-private so SchemaMigratorTest can
+	// run EXPLAIN on the exact SQL ProjectDao sends.
+	// @formatter:off
+	static final String DELETED_PROJECT_IDS_SQL = ""
+		+ "SELECT project_id FROM " + PROJECT_TABLE + " "
+		+ "WHERE deleted_on IS NOT NULL ORDER BY deleted_on, project_id";
+	static final String LAST_STEP_ORDER_SQL = ""
+		+ "SELECT step_order FROM " + STEP_TABLE + " "
+		+ "WHERE project_id = ? AND step_id <> ? "
+		+ "ORDER BY step_order DESC, step_id DESC LIMIT 1";
+	static final String PREVIOUS_STEP_ORDER_SQL = ""
+		+ "SELECT step_order FROM " + STEP_TABLE + " "
+		+ "WHERE project_id = ? AND step_id <> ? "
+		+ "AND (step_order < ? OR (step_order = ? AND step_id < ?)) "
+		+ "ORDER BY step_order DESC, step_id DESC LIMIT 1";
+	static final String PURGE_PROJECT_SQL = ""
+		+ "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_on IS NOT NULL";
+	static final String REBUILD_CATEGORY_HOURS_SQL = ""
+		+ "INSERT INTO " + CATEGORY_HOURS_ROLLUP_TABLE + " "
+		+ "(category_id, project_count, estimated_hours, actual_hours) "
+		+ "SELECT c.category_id, COUNT(p.project_id), "
+		+ "COALESCE(SUM(p.estimated_hours), 0), COALESCE(SUM(p.actual_hours), 0) "
+		+ "FROM " + CATEGORY_TABLE + " c "
+		+ "LEFT JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+		+ "LEFT JOIN " + PROJECT_TABLE + " p ON p.project_id = pc.project_id AND p.deleted_on IS NULL "
+		+ "GROUP BY c.category_id";
+	// @formatter:on
+
+	// The child tables purgeProjectDao empties, in the order it empties them.
+	static final List<String> PURGE_TABLES = List.of(STEP_TABLE, MATERIAL_TABLE, PROJECT_CATEGORY_TABLE);
+
+	// Category hours rollup with the category name, shared by the reporting queries.
+	// @formatter:off
+	private static final String CATEGORY_HOURS_SQL = ""
+		+ "SELECT r.*, c.category_name FROM " + CATEGORY_HOURS_ROLLUP_TABLE + " r "
+		+ "JOIN " + CATEGORY_TABLE + " c USING (category_id)";
+	// @formatter:on
+
+	// The fetch mode used by fetchProjectByIdDao(Integer). Set with -Dprojects.dao.fetchMode.
+	private final FetchMode fetchMode = FetchMode
+			.valueOf(System.getProperty("projects.dao.fetchMode", FetchMode.SINGLE_ROUND_TRIP.name()));
+
+	// Loads the child Lists a FetchPlan left out, when a project first needs
+	// them. It calls the public fetch methods, so the loads are instrumented in
+	// InstrumentedProjectDao like any other call.
+	private final ProjectChildLoader childLoader = new ProjectChildLoader() {
+		@Override
+		public List<Material> loadMaterials(Integer projectId) {
+			return fetchMaterialsDao(projectId);
+		}
+
+		@Override
+		public List<Step> loadSteps(Integer projectId) {
+			return fetchStepsDao(projectId);
+		}
+
+		@Override
+		public List<Category> loadCategories(Integer projectId) {
+			return fetchCategoriesDao(projectId);
+		}
+	};
 
 	/*
 	 * Receives the newly-entered project object from the addProject method in the
@@ -42,10 +154,11 @@ public class ProjectDao extends DaoBase {
 	 * class.
 	 * 
 	 * Inside the connection Try, uses try-with-resources for the SQL Prepared
-	 * Statement, then sets parameters for the project object, then attempts to
-	 * execute the update on the database.
+	 * Statement, prepared by the prepareInsert method in the DaoBase class so that
+	 * generated keys are returned, then sets parameters for the project object,
+	 * then attempts to execute the update on the database.
 	 * 
-	 * Retrieves the auto-generated project id from the getLastInsertId method in
+	 * Retrieves the auto-generated project id from the getGeneratedId method in
 	 * the DaoBase class, then commits the transaction if all is successful, then
 	 * sets the project id in the project object
 	 * 
@@ -70,7 +183,7 @@ public class ProjectDao extends DaoBase {
 		try (Connection conn = DbConnection.getConnection()) {
 			startTransaction(conn);
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			try (PreparedStatement stmt = prepareInsert(conn, sql)) {
 				setParameter(stmt, 1, project.getProjectName(), String.class);
 				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
 				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
@@ -79,12 +192,15 @@ public class ProjectDao extends DaoBase {
 
 				stmt.executeUpdate();
 
-				// Fetch auto-generated project_id using the getLastInsertId method in DaoBase.
-				Integer projectId = getLastInsertId(conn, PROJECT_TABLE);
+				// Read the auto-generated project_id returned with the insert using the
+				// getGeneratedId method in DaoBase.
+				Integer projectId = getGeneratedId(stmt);
 
 				commitTransaction(conn);
 
 				project.setProjectId(projectId);
+				project.setVersion(0);
+				project.clearChangedFields();
 				return project;
 
 			} catch (Exception e) {
@@ -96,6 +212,231 @@ public class ProjectDao extends DaoBase {
 		}
 	} // end insertProject
 
+	/*
+	 * Receives a collection of new projects from the addProjects method in the
+	 * ProjectService class. Each project may carry materials, steps and categories.
+	 * 
+	 * The projects are split into chunks of chunkSize. Each chunk is inserted in its
+	 * own transaction by insertProjectChunk, using one JDBC batch per table, so a
+	 * chunk costs four round trips no matter how many rows it holds. With
+	 * rewriteBatchedStatements=true on the connection url the driver sends each
+	 * batch as a multi-row INSERT.
+	 * 
+	 * The generated project, material and step IDs are set on the entities once the
+	 * chunk commits. If a chunk fails it is rolled back and a DbException is thrown.
+	 * Chunks committed before the failure stay in the database.
+	 * 
+	 * Returns the number of projects inserted.
+	 */
+	public int insertProjects(Collection<Project> projects, int chunkSize) {
+		if(chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be at least 1");
+		}
+
+		List<Project> all = new ArrayList<>(projects);
+		int inserted = 0;
+
+		try(Connection conn = DbConnection.getConnection()) {
+			for(int from = 0; from < all.size(); from += chunkSize) {
+				List<Project> chunk = all.subList(from, Math.min(from + chunkSize, all.size()));
+				startTransaction(conn);
+
+				try {
+					insertProjectChunk(conn, chunk);
+					inserted += chunk.size();
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException("Insert failed for projects " + from + " to " + (from + chunk.size() - 1)
+							+ "; " + inserted + " projects were committed", e);
+				}
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+		return inserted;
+	} // end insertProjects
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Inserts one chunk of projects and their children as four batches: project,
+	 * material, step and project_category. Generated keys are collected from each
+	 * batch, and are only written to the entities after the transaction commits, so
+	 * a rolled back chunk leaves its entities unchanged.
+	 * 
+	 * Steps without a step order are numbered by their position in the project's
+	 * List, STEP_ORDER_GAP apart, so steps can later be inserted between them.
+	 * Categories are linked by category ID and must already exist.
+	 */
+	private void insertProjectChunk(Connection conn, List<Project> chunk) throws SQLException {
+		// @formatter:off
+		String projectSql = ""
+			+ "INSERT INTO " + PROJECT_TABLE + " "
+			+ "(project_name, estimated_hours, actual_hours, difficulty, notes) "
+			+ "VALUES (?, ?, ?, ?, ?)";
+		String materialSql = ""
+			+ "INSERT INTO " + MATERIAL_TABLE + " "
+			+ "(project_id, material_name, num_required, cost) "
+			+ "VALUES (?, ?, ?, ?)";
+		String stepSql = ""
+			+ "INSERT INTO " + STEP_TABLE + " "
+			+ "(project_id, step_text, step_order) "
+			+ "VALUES (?, ?, ?)";
+		String categorySql = ""
+			+ "INSERT INTO " + PROJECT_CATEGORY_TABLE + " "
+			+ "(project_id, category_id) "
+			+ "VALUES (?, ?)";
+		// @formatter:on
+
+		List<Integer> projectIds;
+
+		try(PreparedStatement stmt = prepareInsert(conn, projectSql)) {
+			for(Project project : chunk) {
+				setParameter(stmt, 1, project.getProjectName(), String.class);
+				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
+				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
+				setParameter(stmt, 4, project.getDifficulty(), Integer.class);
+				setParameter(stmt, 5, project.getNotes(), String.class);
+				stmt.addBatch();
+			}
+
+			stmt.executeBatch();
+			projectIds = getGeneratedIds(stmt);
+			checkKeyCount(projectIds, chunk.size(), PROJECT_TABLE);
+		}
+
+		int materialCount = 0;
+		int stepCount = 0;
+		List<Integer> stepOrders = new ArrayList<>();
+		List<Integer> materialIds = new ArrayList<>();
+		List<Integer> stepIds = new ArrayList<>();
+
+		try(PreparedStatement materialStmt = prepareInsert(conn, materialSql);
+				PreparedStatement stepStmt = prepareInsert(conn, stepSql);
+				PreparedStatement categoryStmt = prepareStatement(conn, categorySql)) {
+			boolean hasCategories = false;
+
+			for(int index = 0; index < chunk.size(); index++) {
+				Project project = chunk.get(index);
+				Integer projectId = projectIds.get(index);
+
+				for(Material material : project.getMaterials()) {
+					setParameter(materialStmt, 1, projectId, Integer.class);
+					setParameter(materialStmt, 2, material.getMaterialName(), String.class);
+					setParameter(materialStmt, 3, material.getNumRequired(), Integer.class);
+					setParameter(materialStmt, 4, material.getCost(), BigDecimal.class);
+					materialStmt.addBatch();
+					materialCount++;
+				}
+
+				int position = 0;
+
+				for(Step step : project.getSteps()) {
+					Integer stepOrder = Objects.isNull(step.getStepOrder()) ? (position + 1) * STEP_ORDER_GAP
+							: step.getStepOrder();
+					setParameter(stepStmt, 1, projectId, Integer.class);
+					setParameter(stepStmt, 2, step.getStepText(), String.class);
+					setParameter(stepStmt, 3, stepOrder, Integer.class);
+					stepStmt.addBatch();
+					stepOrders.add(stepOrder);
+					stepCount++;
+					position++;
+				}
+
+				for(Category category : project.getCategories()) {
+					setParameter(categoryStmt, 1, projectId, Integer.class);
+					setParameter(categoryStmt, 2, category.getCategoryId(), Integer.class);
+					categoryStmt.addBatch();
+					hasCategories = true;
+				}
+			}
+
+			if(materialCount > 0) {
+				materialStmt.executeBatch();
+				materialIds = getGeneratedIds(materialStmt);
+				checkKeyCount(materialIds, materialCount, MATERIAL_TABLE);
+			}
+
+			if(stepCount > 0) {
+				stepStmt.executeBatch();
+				stepIds = getGeneratedIds(stepStmt);
+				checkKeyCount(stepIds, stepCount, STEP_TABLE);
+			}
+
+			if(hasCategories) {
+				categoryStmt.executeBatch();
+			}
+		}
+
+		commitTransaction(conn);
+
+		// Children were batched project by project, so walk them in the same order.
+		int materialIndex = 0;
+		int stepIndex = 0;
+
+		for(int index = 0; index < chunk.size(); index++) {
+			Project project = chunk.get(index);
+			Integer projectId = projectIds.get(index);
+			project.setProjectId(projectId);
+			project.setVersion(0);
+			project.clearChangedFields();
+
+			for(Material material : project.getMaterials()) {
+				material.setProjectId(projectId);
+				material.setMaterialId(materialIds.get(materialIndex++));
+			}
+
+			for(Step step : project.getSteps()) {
+				step.setProjectId(projectId);
+				step.setStepOrder(stepOrders.get(stepIndex));
+				step.setStepId(stepIds.get(stepIndex++));
+			}
+		}
+	} // end insertProjectChunk
+
+	/*
+	 * Makes sure the driver returned one generated key per row in the batch.
+	 */
+	private void checkKeyCount(List<Integer> keys, int expected, String table) throws SQLException {
+		if(keys.size() != expected) {
+			throw new SQLException(
+					"Expected " + expected + " generated keys for table " + table + " but got " + keys.size());
+		}
+	} // end checkKeyCount
+
+	/*
+	 * Inserts a category and sets its generated category_id. Projects are linked
+	 * to existing categories by ID.
+	 */
+	public Category insertCategoryDao(Category category) {
+		// @formatter:off
+		String sql = ""
+			+ "INSERT INTO " + CATEGORY_TABLE + " "
+			+ "(category_name) "
+			+ "VALUES (?)";
+		// @formatter:on
+
+		try(Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try(PreparedStatement stmt = prepareInsert(conn, sql)) {
+				setParameter(stmt, 1, category.getCategoryName(), String.class);
+				stmt.executeUpdate();
+
+				Integer categoryId = getGeneratedId(stmt);
+				commitTransaction(conn);
+
+				category.setCategoryId(categoryId);
+				return category;
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end insertCategoryDao
+
 	/*
 	 * Creates the SQL string statement for selecting all projects in the database.
 	 * 
@@ -122,24 +463,29 @@ public class ProjectDao extends DaoBase {
 	 * If any exception is thrown in the Connection Try block, an SQL exception is
 	 * thrown.
 	 * 
-	 * Returns the List of projects if everything succeeds.
+	 * Returns the List of projects if everything succeeds. Only the project_id and
+	 * project_name of each project are read, in project_id order, so the other
+	 * fields are null. For large tables use fetchProjectPageDao instead, which
+	 * reads one page at a time.
 	 */
 	public List<Project> getAllProjectNames() {
 		// @formatter:off
 		String sql = ""
-			+ "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_name";
+			+ "SELECT project_id, project_name FROM " + PROJECT_TABLE + " "
+			+ "WHERE deleted_on IS NULL ORDER BY project_id";
 		// formatter:on
 		
 		try(Connection conn = DbConnection.getConnection()) {
 			startTransaction(conn);
 			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+			try(PreparedStatement stmt = prepareStatement(conn, sql)) {
 				
 				try(ResultSet rs = stmt.executeQuery()) {
 					List<Project> projects = new LinkedList<>();
+					RowMapper<Project> mapper = rowMapper(rs, Project.class);
 					
 					while (rs.next()) {
-						projects.add(extract(rs, Project.class));
+						projects.add(mapper.map(rs));
 					}
 					return projects;
 				}
@@ -151,6 +497,75 @@ public class ProjectDao extends DaoBase {
 			throw new DbException(e);
 		}
 	} // end getAllProjectNames
+
+	/*
+	 * Returns up to pageSize projects in the given order, starting just after the
+	 * project after, or from the start if after is null. Pass the last project of
+	 * a page to get the next one; a page shorter than pageSize is the last.
+	 * 
+	 * Only project_id and project_name are selected. The page is found by seeking
+	 * in the index of the sort column (WHERE key > last key ... LIMIT) rather than
+	 * with OFFSET, so every page costs the same however far into the listing it
+	 * is, and the rows are read in index order without a sort. project_id breaks
+	 * ties between equal names, so no project is skipped or listed twice. Deleted
+	 * projects are skipped as they are read, which costs one row lookup per
+	 * project listed, not a scan.
+	 */
+	public List<ProjectSummary> fetchProjectPageDao(ProjectSortOrder order, ProjectSummary after, int pageSize) {
+		boolean byId = order.getColumn().equals("project_id");
+		String sql = projectPageSql(order, Objects.nonNull(after));
+
+		return withConnection(conn -> {
+			try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+				int index = 1;
+
+				if(Objects.nonNull(after)) {
+					if(!byId) {
+						setParameter(stmt, index++, after.getProjectName(), String.class);
+						setParameter(stmt, index++, after.getProjectName(), String.class);
+					}
+					setParameter(stmt, index++, after.getProjectId(), Integer.class);
+				}
+				setParameter(stmt, index, pageSize, Integer.class);
+
+				try(ResultSet rs = stmt.executeQuery()) {
+					List<ProjectSummary> page = new ArrayList<>(pageSize);
+					RowMapper<ProjectSummary> mapper = rowMapper(rs, ProjectSummary.class);
+
+					while(rs.next()) {
+						page.add(mapper.map(rs));
+					}
+					return page;
+				}
+			}
+		});
+	} // end fetchProjectPageDao
+
+	/*
+	 * Returns the query fetchProjectPageDao runs for the sort order, for the first
+	 * page (after false) or a page after a given project. Its parameters are the
+	 * name of the last project twice when sorting by name, its ID, and the page
+	 * size.
+	 */
+	static String projectPageSql(ProjectSortOrder order, boolean after) {
+		boolean byId = order.getColumn().equals("project_id");
+		String direction = order.isDescending() ? " DESC" : "";
+		String comparison = order.isDescending() ? " < ?" : " > ?";
+		String where = "WHERE deleted_on IS NULL ";
+
+		if(after) {
+			where += byId ? "AND project_id" + comparison + " "
+					: "AND (project_name" + comparison + " OR (project_name = ? AND project_id" + comparison + ")) ";
+		}
+
+		// @formatter:off
+		return ""
+			+ "SELECT project_id, project_name FROM " + PROJECT_TABLE + " "
+			+ where
+			+ "ORDER BY " + (byId ? "" : "project_name" + direction + ", ") + "project_id" + direction + " "
+			+ "LIMIT ?";
+		// @formatter:on
+	} // end projectPageSql
 	
 	
 	/*
@@ -185,30 +600,42 @@ public class ProjectDao extends DaoBase {
 	 * If any exception is thrown in the Connection Try block, an SQL exception is thrown.
 	 * 
 	 * Returns the List of projects if everything succeeds.
+	 * 
+	 * This version uses the default FetchMode (SINGLE_ROUND_TRIP unless the
+	 * projects.dao.fetchMode system property says otherwise).
 	 */
 	public Optional<Project> fetchProjectByIdDao(Integer projectId) {
-		String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ?";
-		
+		return fetchProjectByIdDao(projectId, fetchMode);
+	} // end fetchProjectByIdDao
+
+	/*
+	 * Same as fetchProjectByIdDao(Integer), but with the FetchMode chosen by the
+	 * caller.
+	 * 
+	 * SEQUENTIAL runs the project query and then calls fetchMaterialsForProject,
+	 * fetchStepsForProject and fetchCategoriesForProject, for four round trips.
+	 * 
+	 * SINGLE_ROUND_TRIP calls fetchAggregate, which sends all four SELECT statements
+	 * in one request and reads the four result sets it returns.
+	 */
+	public Optional<Project> fetchProjectByIdDao(Integer projectId, FetchMode fetchMode) {
 		try(Connection conn = DbConnection.getConnection()) {
 			startTransaction(conn);
 			
 			try {
 				Project project = null;
 				
-				try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-					setParameter(stmt, 1, projectId, Integer.class);
-					
-					try(ResultSet rs = stmt.executeQuery()) {
-						if(rs.next()) {
-							project = extract(rs, Project.class);
-						}
+				if(fetchMode == FetchMode.SINGLE_ROUND_TRIP) {
+					project = fetchAggregate(conn, projectId);
+				} else {
+					project = fetchProjectRow(conn, projectId);
+
+					if(Objects.nonNull(project)) {
+						project.getMaterials().addAll(fetchMaterialsForProject(conn, projectId));
+						project.getSteps().addAll(fetchStepsForProject(conn, projectId));
+						project.getCategories().addAll(fetchCategoriesForProject(conn, projectId));
 					}
 				}
-				if(Objects.nonNull(project)) {
-					project.getMaterials().addAll(fetchMaterialsForProject(conn, projectId));
-					project.getSteps().addAll(fetchStepsForProject(conn, projectId));
-					project.getCategories().addAll(fetchCategoriesForProject(conn, projectId));
-				}
 				
 				commitTransaction(conn);
 				return Optional.ofNullable(project);
@@ -220,91 +647,597 @@ public class ProjectDao extends DaoBase {
 		} catch (SQLException e) {
 			throw new DbException(e);
 		}
-	} // end fetchProjectByIdDao
-		
+	} // end fetchProjectByIdDao(FetchMode)
+
 	/*
-	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
-	 * 
-	 * Creates the SQL string statement for selecting a project's material from the material table
-	 * by project_id using a ? placeholder.
-	 * 
-	 * Starts the transaction using the startTransaction method in the DaoBase class.
-	 * 
-	 * Uses the connection from the calling method.
-	 * 
-	 * Uses try-with-resources for the SQL Prepared Statement. Sets the project_id parameter for the ? placeholder.
-	 * 
-	 * Uses try-with-resources to get the Result Set and execute the query on the database.
-	 * 
-	 * Inside the Result Set try, creates a List of Material and adds the extracted material object
-	 * to the List.
-	 * 
-	 * Once all the materials are added, the List is returned to the calling class.
+	 * Loads the project row and only the child Lists the FetchPlan names, one
+	 * query each. The other child Lists are not queried; each is loaded with one
+	 * query the first time its getter is called on the returned project, on a
+	 * connection borrowed for that load. That query runs outside this method's
+	 * transaction, so it sees any change committed in between. A caller that only
+	 * reads the project's own fields runs a single query.
+	 * 
+	 * FetchPlan.ALL is the same as fetchProjectByIdDao(Integer).
 	 */
-	private List<Material> fetchMaterialsForProject(Connection conn, Integer projectId) throws SQLException {
-		String sql = "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id = ?";
-		
-		try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-			setParameter(stmt, 1, projectId, Integer.class);
-					
-			try(ResultSet rs = stmt.executeQuery()) {
-				List<Material> materials = new LinkedList<>();
-						
-				while(rs.next()) {
-					materials.add(extract(rs, Material.class));
+	public Optional<Project> fetchProjectByIdDao(Integer projectId, FetchPlan plan) {
+		if(plan.isAll()) {
+			return fetchProjectByIdDao(projectId);
+		}
+
+		try(Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try {
+				Project project = fetchProjectRow(conn, projectId);
+
+				if(Objects.nonNull(project)) {
+					if(plan.isEager(ProjectChild.MATERIALS)) {
+						project.getMaterials().addAll(fetchMaterialsForProject(conn, projectId));
+					}
+
+					if(plan.isEager(ProjectChild.STEPS)) {
+						project.getSteps().addAll(fetchStepsForProject(conn, projectId));
+					}
+
+					if(plan.isEager(ProjectChild.CATEGORIES)) {
+						project.getCategories().addAll(fetchCategoriesForProject(conn, projectId));
+					}
+					project.deferChildren(childLoader, plan.getDeferredChildren());
 				}
-				return materials;
+
+				commitTransaction(conn);
+				return Optional.ofNullable(project);
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
 			}
+		} catch (SQLException e) {
+			throw new DbException(e);
 		}
-	} // end fetchMaterialsForProject
-	
+	} // end fetchProjectByIdDao(FetchPlan)
+
 	/*
-	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
-	 * 
-	 * Creates the SQL string statement for selecting a project's steps from the step table
-	 * by project_id using a ? placeholder.
-	 * 
-	 * Starts the transaction using the startTransaction method in the DaoBase class.
-	 * 
-	 * Uses the connection from the calling method.
-	 * 
-	 * Uses try-with-resources for the SQL Prepared Statement. Sets the project_id parameter for the ? placeholder.
+	 * Returns the project's materials. Used to load a deferred materials List.
+	 */
+	public List<Material> fetchMaterialsDao(Integer projectId) {
+		return withConnection(conn -> fetchMaterialsForProject(conn, projectId));
+	} // end fetchMaterialsDao
+
+	/*
+	 * Returns the project's steps in step order. Used to load a deferred steps
+	 * List.
+	 */
+	public List<Step> fetchStepsDao(Integer projectId) {
+		return withConnection(conn -> fetchStepsForProject(conn, projectId));
+	} // end fetchStepsDao
+
+	/*
+	 * Returns the project's categories. Used to load a deferred categories List.
+	 */
+	public List<Category> fetchCategoriesDao(Integer projectId) {
+		return withConnection(conn -> fetchCategoriesForProject(conn, projectId));
+	} // end fetchCategoriesDao
+
+	/*
+	 * Loads a project like fetchProjectByIdDao, but runs the independent materials,
+	 * steps and categories queries at the same time on the given executor.
 	 * 
-	 * Uses try-with-resources to get the Result Set and execute the query on the database.
+	 * The project row is read first and its connection returned to the pool. If the
+	 * project exists, the three child queries are started as CompletableFutures,
+	 * each on its own pooled connection, so a call uses at most three connections
+	 * at once. The queries run in auto-commit mode rather than one transaction, so
+	 * the children reflect the latest committed data when each query runs.
 	 * 
-	 * Inside the Result Set try, creates a List of Step and adds the extracted step object
-	 * to the List.
+	 * Any failure is rethrown as a DbException.
+	 */
+	public Optional<Project> fetchProjectByIdParallelDao(Integer projectId, Executor executor) {
+		Project project;
+
+		try(Connection conn = DbConnection.getConnection()) {
+			project = fetchProjectRow(conn, projectId);
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+
+		if(Objects.isNull(project)) {
+			return Optional.empty();
+		}
+
+		CompletableFuture<List<Material>> materials = CompletableFuture
+				.supplyAsync(() -> withConnection(conn -> fetchMaterialsForProject(conn, projectId)), executor);
+		CompletableFuture<List<Step>> steps = CompletableFuture
+				.supplyAsync(() -> withConnection(conn -> fetchStepsForProject(conn, projectId)), executor);
+		CompletableFuture<List<Category>> categories = CompletableFuture
+				.supplyAsync(() -> withConnection(conn -> fetchCategoriesForProject(conn, projectId)), executor);
+
+		try {
+			project.getMaterials().addAll(materials.join());
+			project.getSteps().addAll(steps.join());
+			project.getCategories().addAll(categories.join());
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof DbException ? (DbException) e.getCause() : new DbException(e.getCause());
+		}
+
+		return Optional.of(project);
+	} // end fetchProjectByIdParallelDao
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
 	 * 
-	 * Once all the steps are added, the List is returned to the calling class.
+	 * Reads the project row for the project_id, without its children. Returns null if
+	 * there is no such project.
 	 */
-	private List<Step> fetchStepsForProject(Connection conn, Integer projectId) throws SQLException {
-		String sql = "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ?";
-				
-		try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+	private Project fetchProjectRow(Connection conn, Integer projectId) throws SQLException {
+		try(PreparedStatement stmt = prepareStatement(conn, PROJECT_BY_ID_SQL)) {
 			setParameter(stmt, 1, projectId, Integer.class);
-					
+
 			try(ResultSet rs = stmt.executeQuery()) {
-				List<Step> steps = new LinkedList<>();
-						
-				while(rs.next()) {
-					steps.add(extract(rs, Step.class));
-				}
-				return steps;
+				return rs.next() ? extract(rs, Project.class) : null;
 			}
 		}
-	} // end fetchStepsForProject
-		
+	} // end fetchProjectRow
+
+	/*
+	 * Runs the query on a connection of its own from the pool, turning any
+	 * SQLException into a DbException.
+	 */
+	private <T> T withConnection(ConnectionQuery<T> query) {
+		try(Connection conn = DbConnection.getConnection()) {
+			return query.run(conn);
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end withConnection
+
+	// A query that needs a connection and may throw SQLException.
+	private interface ConnectionQuery<T> {
+		T run(Connection conn) throws SQLException;
+	} // end ConnectionQuery
+	
 	/*
 	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
 	 * 
-	 * Creates the SQL string statement for selecting a project's categories from the category table
-	 *  joined with the project_category table by category_id using a ? placeholder.
-	 * 
-	 * Starts the transaction using the startTransaction method in the DaoBase class.
-	 * 
-	 * Uses the connection from the calling method.
-	 * 
-	 * Uses try-with-resources for the SQL Prepared Statement. Sets the project_id parameter for the ? placeholder.
+	 * Sends the project, materials, steps and categories queries to the database as one
+	 * multi-statement request (the connection url sets allowMultiQueries=true), so the whole
+	 * aggregate is loaded in a single network round trip.
+	 * 
+	 * The first result set holds the project row. If it is empty the project does not exist and
+	 * null is returned. Otherwise each following result set is mapped and added to the matching
+	 * child List of the project.
+	 */
+	private Project fetchAggregate(Connection conn, Integer projectId) throws SQLException {
+		// @formatter:off
+		String sql = ""
+			+ PROJECT_BY_ID_SQL + "; "
+			+ MATERIALS_BY_PROJECT_SQL + "; "
+			+ STEPS_BY_PROJECT_SQL + "; "
+			+ CATEGORIES_BY_PROJECT_SQL;
+		// @formatter:on
+
+		try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+			for(int index = 1; index <= 4; index++) {
+				setParameter(stmt, index, projectId, Integer.class);
+			}
+
+			stmt.execute();
+			Project project = null;
+
+			try(ResultSet rs = stmt.getResultSet()) {
+				if(rs.next()) {
+					project = extract(rs, Project.class);
+				}
+			}
+
+			if(Objects.isNull(project)) {
+				return null;
+			}
+
+			project.getMaterials().addAll(readNextResultSet(stmt, Material.class));
+			project.getSteps().addAll(readNextResultSet(stmt, Step.class));
+			project.getCategories().addAll(readNextResultSet(stmt, Category.class));
+
+			return project;
+		}
+	} // end fetchAggregate
+
+	/*
+	 * Moves the statement on to its next result set and maps every row of it.
+	 */
+	private <T> List<T> readNextResultSet(PreparedStatement stmt, Class<T> classType) throws SQLException {
+		if(!stmt.getMoreResults()) {
+			throw new SQLException("Expected another result set for " + classType.getSimpleName());
+		}
+
+		try(ResultSet rs = stmt.getResultSet()) {
+			List<T> rows = new LinkedList<>();
+			RowMapper<T> mapper = rowMapper(rs, classType);
+
+			while(rs.next()) {
+				rows.add(mapper.map(rs));
+			}
+			return rows;
+		}
+	} // end readNextResultSet
+
+	/*
+	 * Loads full details for a set of projects without running four queries per
+	 * project.
+	 * 
+	 * Duplicate and null IDs are dropped. The remaining IDs are split into chunks
+	 * of IN_CLAUSE_CHUNK_SIZE, and each chunk is loaded with four queries (projects,
+	 * materials, steps and categories) using an IN (...) list of ? placeholders. All
+	 * chunks share one connection and one transaction.
+	 * 
+	 * Projects are indexed in a HashMap by project_id, so each material, step and
+	 * category row is attached to its parent with one lookup.
+	 * 
+	 * Returns the projects in the order their IDs were requested. IDs that do not
+	 * exist are left out of the List.
+	 */
+	public List<Project> fetchProjectsByIdsDao(Collection<Integer> projectIds) {
+		return fetchProjectsByIdsDao(projectIds, FetchPlan.ALL);
+	} // end fetchProjectsByIdsDao
+
+	/*
+	 * Same as fetchProjectsByIdsDao(Collection), but only the child queries the
+	 * FetchPlan names are run. The other child Lists are loaded one project at a
+	 * time on first access, so a plan should name every child the caller will
+	 * read for most of the projects.
+	 */
+	public List<Project> fetchProjectsByIdsDao(Collection<Integer> projectIds, FetchPlan plan) {
+		List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(projectIds));
+		ids.removeIf(Objects::isNull);
+
+		if(ids.isEmpty()) {
+			return new LinkedList<>();
+		}
+
+		Map<Integer, Project> projectsById = new HashMap<>(ids.size() * 2);
+
+		try(Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try {
+				for(int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+					List<Integer> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, ids.size()));
+					fetchProjectChunk(conn, chunk, plan, projectsById);
+				}
+
+				commitTransaction(conn);
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+
+		List<Project> projects = new LinkedList<>();
+
+		for(Integer projectId : ids) {
+			Project project = projectsById.get(projectId);
+
+			if(Objects.nonNull(project)) {
+				project.deferChildren(childLoader, plan.getDeferredChildren());
+				projects.add(project);
+			}
+		}
+		return projects;
+	} // end fetchProjectsByIdsDao(FetchPlan)
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Runs the four queries for one chunk of project IDs. Projects are added to the
+	 * projectsById index first, then each child row is added to the List of the
+	 * project it belongs to. The category query also selects pc.project_id as its
+	 * first column, since the Category entity does not carry the project ID.
+	 * Child queries the FetchPlan leaves out are skipped.
+	 */
+	private void fetchProjectChunk(Connection conn, List<Integer> chunk, FetchPlan plan,
+			Map<Integer, Project> projectsById) throws SQLException {
+		String in = "(" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+
+		// @formatter:off
+		String projectSql = ""
+			+ "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id IN " + in + " AND deleted_on IS NULL";
+		String materialSql = "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id IN " + in;
+		String stepSql = ""
+			+ "SELECT * FROM " + STEP_TABLE + " WHERE project_id IN " + in + " "
+			+ "ORDER BY project_id, step_order, step_id";
+		String categorySql = ""
+			+ "SELECT pc.project_id, c.* FROM " + CATEGORY_TABLE + " c "
+			+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+			+ "WHERE pc.project_id IN " + in;
+		// @formatter:on
+
+		try(PreparedStatement stmt = prepareStatement(conn, projectSql)) {
+			setIdParameters(stmt, chunk);
+
+			try(ResultSet rs = stmt.executeQuery()) {
+				RowMapper<Project> mapper = rowMapper(rs, Project.class);
+
+				while(rs.next()) {
+					Project project = mapper.map(rs);
+					projectsById.put(project.getProjectId(), project);
+				}
+			}
+		}
+
+		if(plan.isEager(ProjectChild.MATERIALS)) {
+			try(PreparedStatement stmt = prepareStatement(conn, materialSql)) {
+				setIdParameters(stmt, chunk);
+
+				try(ResultSet rs = stmt.executeQuery()) {
+					RowMapper<Material> mapper = rowMapper(rs, Material.class);
+
+					while(rs.next()) {
+						Material material = mapper.map(rs);
+						Project project = projectsById.get(material.getProjectId());
+
+						if(Objects.nonNull(project)) {
+							project.getMaterials().add(material);
+						}
+					}
+				}
+			}
+		}
+
+		if(plan.isEager(ProjectChild.STEPS)) {
+			try(PreparedStatement stmt = prepareStatement(conn, stepSql)) {
+				setIdParameters(stmt, chunk);
+
+				try(ResultSet rs = stmt.executeQuery()) {
+					RowMapper<Step> mapper = rowMapper(rs, Step.class);
+
+					while(rs.next()) {
+						Step step = mapper.map(rs);
+						Project project = projectsById.get(step.getProjectId());
+
+						if(Objects.nonNull(project)) {
+							project.getSteps().add(step);
+						}
+					}
+				}
+			}
+		}
+
+		if(plan.isEager(ProjectChild.CATEGORIES)) {
+			try(PreparedStatement stmt = prepareStatement(conn, categorySql)) {
+				setIdParameters(stmt, chunk);
+
+				try(ResultSet rs = stmt.executeQuery()) {
+					RowMapper<Category> mapper = rowMapper(rs, Category.class);
+
+					while(rs.next()) {
+						Project project = projectsById.get(rs.getInt(1));
+
+						if(Objects.nonNull(project)) {
+							project.getCategories().add(mapper.map(rs));
+						}
+					}
+				}
+			}
+		}
+	} // end fetchProjectChunk
+
+	/*
+	 * Passes every project, with its materials, steps and categories, to the
+	 * consumer in project_id order, without loading the whole table.
+	 * 
+	 * The project, material, step and category queries are all opened at once on
+	 * one connection, each sorted by project_id. They are read forward-only with a
+	 * fetch size of EXPORT_FETCH_SIZE, so the driver reads each table through a
+	 * server-side cursor (useCursorFetch) a few rows at a time. For each project
+	 * row, the child cursors are advanced while their project_id matches, which
+	 * merges the four tables in one pass. Only the current project is held in
+	 * memory.
+	 * 
+	 * All four queries run in one transaction, so the consumer sees a
+	 * consistent snapshot. The transaction stays open until the consumer has seen
+	 * the last project. An exception thrown by the consumer stops the export and
+	 * is thrown as a DbException.
+	 * 
+	 * Returns the number of projects passed to the consumer.
+	 */
+	public long streamAllProjectsDao(Consumer<Project> consumer) {
+		// @formatter:off
+		String projectSql = "SELECT * FROM " + PROJECT_TABLE + " WHERE deleted_on IS NULL ORDER BY project_id";
+		String materialSql = "SELECT * FROM " + MATERIAL_TABLE + " ORDER BY project_id, material_id";
+		String stepSql = "SELECT * FROM " + STEP_TABLE + " ORDER BY project_id, step_order, step_id";
+		String categorySql = ""
+			+ "SELECT pc.project_id, c.* FROM " + CATEGORY_TABLE + " c "
+			+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+			+ "ORDER BY pc.project_id, c.category_id";
+		// @formatter:on
+
+		try(Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try(PreparedStatement projectStmt = prepareStreamingStatement(conn, projectSql);
+					PreparedStatement materialStmt = prepareStreamingStatement(conn, materialSql);
+					PreparedStatement stepStmt = prepareStreamingStatement(conn, stepSql);
+					PreparedStatement categoryStmt = prepareStreamingStatement(conn, categorySql);
+					ResultSet projects = projectStmt.executeQuery();
+					ResultSet materialRows = materialStmt.executeQuery();
+					ResultSet stepRows = stepStmt.executeQuery();
+					ResultSet categoryRows = categoryStmt.executeQuery()) {
+				RowMapper<Project> projectMapper = rowMapper(projects, Project.class);
+				ChildCursor<Material> materials = new ChildCursor<>(materialRows,
+						rowMapper(materialRows, Material.class), materialRows.findColumn("project_id"));
+				ChildCursor<Step> steps = new ChildCursor<>(stepRows, rowMapper(stepRows, Step.class),
+						stepRows.findColumn("project_id"));
+				ChildCursor<Category> categories = new ChildCursor<>(categoryRows,
+						rowMapper(categoryRows, Category.class), 1);
+				long count = 0;
+
+				while(projects.next()) {
+					Project project = projectMapper.map(projects);
+					int projectId = project.getProjectId();
+
+					materials.addRowsFor(projectId, project.getMaterials());
+					steps.addRowsFor(projectId, project.getSteps());
+					categories.addRowsFor(projectId, project.getCategories());
+
+					consumer.accept(project);
+					count++;
+				}
+
+				commitTransaction(conn);
+				return count;
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end streamAllProjectsDao
+
+	/*
+	 * Returns a cached statement set up to read its results EXPORT_FETCH_SIZE rows
+	 * at a time.
+	 */
+	private PreparedStatement prepareStreamingStatement(Connection conn, String sql) throws SQLException {
+		PreparedStatement stmt = prepareStatement(conn, sql);
+		stmt.setFetchSize(EXPORT_FETCH_SIZE);
+		return stmt;
+	} // end prepareStreamingStatement
+
+	/*
+	 * A child table result set sorted by project_id, read alongside the project
+	 * result set by streamAllProjectsDao.
+	 */
+	private static class ChildCursor<T> {
+		private final ResultSet rs;
+		private final RowMapper<T> mapper;
+		private final int projectIdColumn;
+		private boolean hasRow;
+
+		private ChildCursor(ResultSet rs, RowMapper<T> mapper, int projectIdColumn) throws SQLException {
+			this.rs = rs;
+			this.mapper = mapper;
+			this.projectIdColumn = projectIdColumn;
+			this.hasRow = rs.next();
+		}
+
+		/*
+		 * Adds the rows for projectId to the List and stops on the first row of a
+		 * later project. Rows for earlier project IDs cannot belong to any project
+		 * still to come, so they are skipped.
+		 */
+		private void addRowsFor(int projectId, List<T> rows) throws SQLException {
+			while(hasRow) {
+				int rowProjectId = rs.getInt(projectIdColumn);
+
+				if(rowProjectId > projectId) {
+					return;
+				}
+
+				if(rowProjectId == projectId) {
+					rows.add(mapper.map(rs));
+				}
+				hasRow = rs.next();
+			}
+		}
+	} // end ChildCursor
+
+	/*
+	 * Sets each ID in the List as a parameter, starting with parameter 1.
+	 */
+	private void setIdParameters(PreparedStatement stmt, List<Integer> ids) throws SQLException {
+		int index = 1;
+
+		for(Integer id : ids) {
+			setParameter(stmt, index++, id, Integer.class);
+		}
+	} // end setIdParameters
+		
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Creates the SQL string statement for selecting a project's material from the material table
+	 * by project_id using a ? placeholder.
+	 * 
+	 * Starts the transaction using the startTransaction method in the DaoBase class.
+	 * 
+	 * Uses the connection from the calling method.
+	 * 
+	 * Uses try-with-resources for the SQL Prepared Statement. Sets the project_id parameter for the ? placeholder.
+	 * 
+	 * Uses try-with-resources to get the Result Set and execute the query on the database.
+	 * 
+	 * Inside the Result Set try, creates a List of Material and adds the extracted material object
+	 * to the List.
+	 * 
+	 * Once all the materials are added, the List is returned to the calling class.
+	 */
+	private List<Material> fetchMaterialsForProject(Connection conn, Integer projectId) throws SQLException {
+		String sql = MATERIALS_BY_PROJECT_SQL;
+		
+		try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+					
+			try(ResultSet rs = stmt.executeQuery()) {
+				List<Material> materials = new LinkedList<>();
+				RowMapper<Material> mapper = rowMapper(rs, Material.class);
+						
+				while(rs.next()) {
+					materials.add(mapper.map(rs));
+				}
+				return materials;
+			}
+		}
+	} // end fetchMaterialsForProject
+	
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Creates the SQL string statement for selecting a project's steps from the step table
+	 * by project_id using a ? placeholder.
+	 * 
+	 * Starts the transaction using the startTransaction method in the DaoBase class.
+	 * 
+	 * Uses the connection from the calling method.
+	 * 
+	 * Uses try-with-resources for the SQL Prepared Statement. Sets the project_id parameter for the ? placeholder.
+	 * 
+	 * Uses try-with-resources to get the Result Set and execute the query on the database.
+	 * 
+	 * Inside the Result Set try, creates a List of Step and adds the extracted step object
+	 * to the List.
+	 * 
+	 * Once all the steps are added, the List is returned to the calling class.
+	 */
+	private List<Step> fetchStepsForProject(Connection conn, Integer projectId) throws SQLException {
+		String sql = STEPS_BY_PROJECT_SQL;
+				
+		try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+					
+			try(ResultSet rs = stmt.executeQuery()) {
+				List<Step> steps = new LinkedList<>();
+				RowMapper<Step> mapper = rowMapper(rs, Step.class);
+						
+				while(rs.next()) {
+					steps.add(mapper.map(rs));
+				}
+				return steps;
+			}
+		}
+	} // end fetchStepsForProject
+		
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Creates the SQL string statement for selecting a project's categories from the category table
+	 *  joined with the project_category table by category_id using a ? placeholder.
+	 * 
+	 * Starts the transaction using the startTransaction method in the DaoBase class.
+	 * 
+	 * Uses the connection from the calling method.
+	 * 
+	 * Uses try-with-resources for the SQL Prepared Statement. Sets the project_id parameter for the ? placeholder.
 	 * 
 	 * Uses try-with-resources to get the Result Set and execute the query on the database.
 	 * 
@@ -314,21 +1247,17 @@ public class ProjectDao extends DaoBase {
 	 * Once all the materials are added, the List is returned to the calling class.
 	 */
 	private List<Category> fetchCategoriesForProject(Connection conn, Integer projectId) throws SQLException {
-		// @formatter:off
-		String sql = ""
-			+ "Select c.* FROM " + CATEGORY_TABLE + " c "
-			+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
-			+ "WHERE project_id = ?";
-		// @formatter:on
+		String sql = CATEGORIES_BY_PROJECT_SQL;
 
-		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+		try (PreparedStatement stmt = prepareStatement(conn, sql)) {
 			setParameter(stmt, 1, projectId, Integer.class);
 
 			try (ResultSet rs = stmt.executeQuery()) {
 				List<Category> categories = new LinkedList<>();
+				RowMapper<Category> mapper = rowMapper(rs, Category.class);
 
 				while (rs.next()) {
-					categories.add(extract(rs, Category.class));
+					categories.add(mapper.map(rs));
 				}
 				return categories;
 			}
@@ -339,9 +1268,33 @@ public class ProjectDao extends DaoBase {
 	 * Receives the project object with updated details from
 	 * modifyProjectDetailsService method in the ProjectService class.
 	 * 
-	 * Creates the SQL string statement for updating the project details in the
-	 * database. Uses ? placeholders for the parameters of the project object,
-	 * except the auto-generated project_id.
+	 * Creates the SQL string statement for updating only the project columns whose
+	 * fields were changed through a setter (see Project.getChangedFields), so an
+	 * edit of the name does not resend a large notes value. Columns are always
+	 * listed in the same order, so each combination of changed columns is one
+	 * cached prepared statement. Uses ? placeholders for the changed values and
+	 * the project_id.
+	 * 
+	 * The project must carry the version it was read with; a project without one
+	 * (null) is rejected with a DbException, since saving it could overwrite an
+	 * edit it never saw.
+	 * 
+	 * If no fields were changed, nothing is updated and the project's version is
+	 * read instead: no row means the project does not exist, and a different
+	 * version throws an OptimisticLockException, as an update would.
+	 * 
+	 * Every update also adds 1 to the version column. The update is a
+	 * compare-and-set: WHERE project_id = ? AND version = ?. When that matches no
+	 * row, the current version is read; if the project still exists an
+	 * OptimisticLockException is thrown, because another editor saved it first.
+	 * No row lock is held between reading a project and saving it.
+	 * 
+	 * addActualHoursDao adds to actual_hours without changing the version, so an
+	 * update that replaces actual_hours also compares it with the value the
+	 * project was read with (Project.getLoadedActualHours), and throws an
+	 * OptimisticLockException if hours were logged in between.
+	 * 
+	 * On success the project's version is set to the new version.
 	 * 
 	 * Uses try-with-resources to make the connection to the database using the
 	 * getConnection method in the DbConnection class. If the connection fails, an
@@ -350,20 +1303,14 @@ public class ProjectDao extends DaoBase {
 	 * Starts the transaction using the startTransaction method in the DaoBase
 	 * class.
 	 * 
-	 * Inside the connection Try, uses try-with-resources for the SQL Prepared
-	 * Statement, then sets parameters for the project object, then attempts to
-	 * execute the update on the database.
-	 * 
-	 * NOTE: executeUpdate returns the number of rows that were affected by the
-	 * transaction. Since only one project is being updated, only 1 row should be
-	 * changed.
+	 * NOTE: executeUpdate returns the number of rows that were matched by the
+	 * update. Since only one project is being updated, only 1 row should match.
 	 * 
-	 * If the number of rows affected by executeUpdate is equal to 1, a boolean
-	 * variable is set to True, the transaction is committed, and the boolean value
-	 * is returned to modifyProjectDetailsService, which ignores the True since the
-	 * expected result was achieved.
+	 * If the number of rows matched is equal to 1, a boolean variable is set to
+	 * True, the transaction is committed, and the boolean value is returned to
+	 * modifyProjectDetailsService.
 	 * 
-	 * If no rows or more than 1 row was affected, the boolean variable is set to
+	 * If no rows or more than 1 row was matched, the boolean variable is set to
 	 * False and returned to modifyProjectDetailsService, which then throws an
 	 * exception stating the project with the passed ID does not exist.
 	 * 
@@ -373,53 +1320,269 @@ public class ProjectDao extends DaoBase {
 	 * 
 	 * If any exception is thrown in the Connection Try block, an SQL exception is
 	 * thrown.
+	 * 
+	 * The changed fields are not cleared here; the caller does that once it has
+	 * used them.
 	 */
 	public boolean modifyProjectDetailsDao(Project project) {
+		Set<String> changed = project.getChangedFields();
+		List<String> columns = new ArrayList<>();
+		List<Object> values = new ArrayList<>();
+		List<Class<?>> types = new ArrayList<>();
+
+		addIfChanged(changed, "projectName", project.getProjectName(), String.class, columns, values, types);
+		addIfChanged(changed, "estimatedHours", project.getEstimatedHours(), BigDecimal.class, columns, values, types);
+		addIfChanged(changed, "actualHours", project.getActualHours(), BigDecimal.class, columns, values, types);
+		addIfChanged(changed, "difficulty", project.getDifficulty(), Integer.class, columns, values, types);
+		addIfChanged(changed, "notes", project.getNotes(), String.class, columns, values, types);
+
+		Integer projectId = project.getProjectId();
+		Integer version = project.getVersion();
+
+		if (Objects.isNull(version)) {
+			throw new DbException("Project with ID=" + projectId
+					+ " has no version. Modify a project fetched from the database.");
+		}
+
+		if (columns.isEmpty()) {
+			return checkVersion(projectId, version);
+		}
+
+		boolean replacesHours = changed.contains("actualHours");
+		BigDecimal loadedHours = project.getLoadedActualHours();
+		String hoursCheck = "";
+
+		if (replacesHours) {
+			hoursCheck = Objects.isNull(loadedHours) ? " AND actual_hours IS NULL" : " AND actual_hours = ?";
+		}
+
 		// @formatter:off
 		String sql = ""
 			+ "UPDATE " + PROJECT_TABLE + " SET "
-			+ "project_name = ?, "
-			+ "estimated_hours = ?, "
-			+ "actual_hours = ?, "
-			+ "difficulty = ?, "
-			+ "notes = ? "
-			+ "WHERE project_id = ?";
+			+ String.join(" = ?, ", columns) + " = ?, "
+			+ "version = version + 1 "
+			+ "WHERE project_id = ? AND deleted_on IS NULL AND version = ?" + hoursCheck;
+		// @formatter:on
+
+		try (Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+				int index = 1;
+
+				for (int column = 0; column < columns.size(); column++) {
+					setParameter(stmt, index++, values.get(column), types.get(column));
+				}
+				setParameter(stmt, index++, projectId, Integer.class);
+				setParameter(stmt, index++, version, Integer.class);
+
+				if (replacesHours && Objects.nonNull(loadedHours)) {
+					setParameter(stmt, index, loadedHours, BigDecimal.class);
+				}
+
+				// executeUpdate() returns a value that represents the number of rows matched.
+				// We expect to update only one row so the return value should be 1, which will
+				// set updated to True.
+				boolean updated = stmt.executeUpdate() == 1;
+
+				if (!updated) {
+					Integer currentVersion = fetchVersion(conn, projectId);
+
+					if (Objects.nonNull(currentVersion) && !currentVersion.equals(version)) {
+						throw new OptimisticLockException(projectId, version, currentVersion);
+					}
+
+					if (Objects.nonNull(currentVersion)) {
+						throw new OptimisticLockException(projectId, version, loadedHours,
+								fetchActualHours(conn, projectId));
+					}
+				}
+				commitTransaction(conn);
+
+				if (updated) {
+					project.setVersion(version + 1);
+				}
+				return updated;
+
+			} catch (OptimisticLockException e) {
+				rollbackTransaction(conn);
+				throw e;
+			} catch (Exception e) {
+				throw new DbException(e);
+			}
+
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end modifyProjectDetailsDao
+
+	/*
+	 * Adds each increment to the project's actual_hours, a null actual_hours
+	 * counting as 0. The version is left as it is, so logging hours does not make
+	 * the next save of other columns fail; a save that replaces actual_hours
+	 * compares it instead (see modifyProjectDetailsDao).
+	 * 
+	 * All the increments are sent as one JDBC batch of UPDATE statements in one
+	 * transaction, in project_id order so two flushes lock rows in the same order.
+	 * Each UPDATE adds to the value in the row, so concurrent increments and edits
+	 * of other columns are never lost. Projects that do not exist are skipped.
+	 * 
+	 * Returns the number of projects updated. A driver that rewrites the batch
+	 * (rewriteBatchedStatements) reports SUCCESS_NO_INFO instead of row counts; the
+	 * updated projects are then counted with a query in the same transaction.
+	 */
+	public int addActualHoursDao(Map<Integer, BigDecimal> increments) {
+		// @formatter:off
+		String sql = ""
+			+ "UPDATE " + PROJECT_TABLE + " "
+			+ "SET actual_hours = COALESCE(actual_hours, 0) + ? "
+			+ "WHERE project_id = ? AND deleted_on IS NULL";
 		// @formatter:on
 
-		try (Connection conn = DbConnection.getConnection()) {
-			startTransaction(conn);
+		if(increments.isEmpty()) {
+			return 0;
+		}
+
+		try(Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+				for(Map.Entry<Integer, BigDecimal> increment : new TreeMap<>(increments).entrySet()) {
+					setParameter(stmt, 1, increment.getValue(), BigDecimal.class);
+					setParameter(stmt, 2, increment.getKey(), Integer.class);
+					stmt.addBatch();
+				}
+
+				int updated = 0;
+				boolean counted = true;
+
+				for(int count : stmt.executeBatch()) {
+					if(count == Statement.SUCCESS_NO_INFO) {
+						counted = false;
+					}
+					else {
+						updated += count;
+					}
+				}
+
+				if(!counted) {
+					updated = countLiveProjects(conn, increments.keySet());
+				}
+
+				commitTransaction(conn);
+				return updated;
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end addActualHoursDao
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Returns how many of the projects exist and have not been deleted, checking
+	 * IN_CLAUSE_CHUNK_SIZE IDs per query.
+	 */
+	private int countLiveProjects(Connection conn, Collection<Integer> projectIds) throws SQLException {
+		List<Integer> ids = new ArrayList<>(projectIds);
+		int count = 0;
+
+		for(int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+			List<Integer> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, ids.size()));
+			String in = "(" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+			String sql = "SELECT COUNT(*) FROM " + PROJECT_TABLE + " WHERE project_id IN " + in
+					+ " AND deleted_on IS NULL";
+
+			try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+				setIdParameters(stmt, chunk);
+
+				try(ResultSet rs = stmt.executeQuery()) {
+					rs.next();
+					count += rs.getInt(1);
+				}
+			}
+		}
+		return count;
+	} // end countLiveProjects
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Returns the current version of the project, or null if it does not exist.
+	 */
+	private Integer fetchVersion(Connection conn, Integer projectId) throws SQLException {
+		String sql = "SELECT version FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_on IS NULL";
+
+		try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getInt(1) : null;
+			}
+		}
+	} // end fetchVersion
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Returns the current actual hours of the project, which may be null.
+	 */
+	private BigDecimal fetchActualHours(Connection conn, Integer projectId) throws SQLException {
+		String sql = "SELECT actual_hours FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_on IS NULL";
+
+		try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setParameter(stmt, 1, projectId, Integer.class);
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-				setParameter(stmt, 1, project.getProjectName(), String.class);
-				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-				setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-				setParameter(stmt, 5, project.getNotes(), String.class);
-				setParameter(stmt, 6, project.getProjectId(), Integer.class);
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getBigDecimal(1) : null;
+			}
+		}
+	} // end fetchActualHours
 
-				// executeUpdate() returns a value that represents the number of rows affected.
-				// We expect to update only one row so the return value should be 1, which will
-				// set updated to True.
-				boolean updated = stmt.executeUpdate() == 1;
-				commitTransaction(conn);
+	/*
+	 * Saving a project without changes writes nothing, but still reports a missing
+	 * project with false and a stale version with an OptimisticLockException.
+	 */
+	private boolean checkVersion(Integer projectId, Integer version) {
+		Integer currentVersion = withConnection(conn -> fetchVersion(conn, projectId));
 
-				return updated;
+		if (Objects.isNull(currentVersion)) {
+			return false;
+		}
 
-			} catch (Exception e) {
-				throw new DbException(e);
-			}
+		if (!currentVersion.equals(version)) {
+			throw new OptimisticLockException(projectId, version, currentVersion);
+		}
+		return true;
+	} // end checkVersion
 
-		} catch (SQLException e) {
-			throw new DbException(e);
+	/*
+	 * Adds the column for the field, with its value and type, if the field is in
+	 * the changed set.
+	 */
+	private void addIfChanged(Set<String> changed, String field, Object value, Class<?> type, List<String> columns,
+			List<Object> values, List<Class<?>> types) {
+		if (changed.contains(field)) {
+			columns.add(camelCaseToSnakeCase(field));
+			values.add(value);
+			types.add(type);
 		}
-	} // end modifyProjectDetailsDao
+	} // end addIfChanged
 
 	/*
 	 * Receives the project ID to be deleted from deleteProjectService method in the
 	 * ProjectService class.
 	 * 
 	 * Creates the SQL string statement for deleting a project by ID using a ?
-	 * placeholder for the project ID.
+	 * placeholder for the project ID. The project is not removed here: the
+	 * statement only sets its deleted_on column, which hides it from every read in
+	 * this class and takes it out of the category hours rollup (see
+	 * V3__soft_delete_projects.sql). Its materials, steps and category links are
+	 * removed later, a few at a time, by purgeProjectDao, so deleting a large
+	 * project does not hold row locks on thousands of child rows.
 	 * 
 	 * Uses try-with-resources to make the connection to the database using the
 	 * getConnection method in the DbConnection class. If the connection fails, an
@@ -453,12 +1616,16 @@ public class ProjectDao extends DaoBase {
 	 * thrown.
 	 */
 	public boolean deleteProjectDao(Integer projectId) {
-		String sql = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+		// @formatter:off
+		String sql = ""
+			+ "UPDATE " + PROJECT_TABLE + " SET deleted_on = CURRENT_TIMESTAMP "
+			+ "WHERE project_id = ? AND deleted_on IS NULL";
+		// @formatter:on
 
 		try (Connection conn = DbConnection.getConnection()) {
 			startTransaction(conn);
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			try (PreparedStatement stmt = prepareStatement(conn, sql)) {
 				setParameter(stmt, 1, projectId, Integer.class);
 
 				// executeUpdate() returns a value that represents the number of rows affected.
@@ -479,4 +1646,484 @@ public class ProjectDao extends DaoBase {
 		}
 	} // end deleteProjectDao
 
+	/*
+	 * Returns the IDs of the deleted projects that have not been purged yet, the
+	 * oldest deletion first. ProjectPurger reads them at startup, and from time to
+	 * time after that, so deletions it did not finish before the application
+	 * stopped, or that another instance made, are still purged.
+	 */
+	public List<Integer> fetchDeletedProjectIdsDao() {
+		String sql = DELETED_PROJECT_IDS_SQL;
+
+		return withConnection(conn -> {
+			try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+				try(ResultSet rs = stmt.executeQuery()) {
+					List<Integer> projectIds = new ArrayList<>();
+
+					while(rs.next()) {
+						projectIds.add(rs.getInt(1));
+					}
+					return projectIds;
+				}
+			}
+		});
+	} // end fetchDeletedProjectIdsDao
+
+	/*
+	 * Removes one batch of a deleted project: up to batchSize of its steps, or if
+	 * it has none left, of its materials, or then of its category links. Once all
+	 * three are gone the project row itself is removed. Each DELETE is committed
+	 * on its own, so the locks it takes are held only for that batch, and a batch
+	 * that fails can simply be run again.
+	 * 
+	 * Every DELETE names the project through a subquery that only finds it while
+	 * deleted_on is set, so a project that has not been deleted is never touched.
+	 * The material and project_category triggers keep the rollup tables right as
+	 * the rows go.
+	 * 
+	 * Returns the number of rows removed, or 0 when nothing is left to purge.
+	 */
+	public int purgeProjectDao(Integer projectId, int batchSize) {
+		String projectSql = PURGE_PROJECT_SQL;
+
+		try(Connection conn = DbConnection.getConnection()) {
+			for(String table : PURGE_TABLES) {
+				String sql = purgeChildrenSql(table);
+
+				try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+					setParameter(stmt, 1, projectId, Integer.class);
+					setParameter(stmt, 2, batchSize, Integer.class);
+
+					int deleted = stmt.executeUpdate();
+
+					if(deleted > 0) {
+						return deleted;
+					}
+				}
+			}
+
+			try(PreparedStatement stmt = prepareStatement(conn, projectSql)) {
+				setParameter(stmt, 1, projectId, Integer.class);
+				return stmt.executeUpdate();
+			}
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+	} // end purgeProjectDao
+
+	/*
+	 * Returns the DELETE purgeProjectDao runs on one of the PURGE_TABLES. Its
+	 * parameters are the project ID and the batch size.
+	 */
+	static String purgeChildrenSql(String table) {
+		// @formatter:off
+		return ""
+			+ "DELETE FROM " + table + " WHERE project_id = "
+			+ "(SELECT project_id FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_on IS NOT NULL) "
+			+ "LIMIT ?";
+		// @formatter:on
+	} // end purgeChildrenSql
+
+	/*
+	 * Reads the project's row of the project_cost_rollup table, a primary key
+	 * lookup that does not touch the material table. The row is kept current by
+	 * the triggers created by V5__add_rollup_tables.sql.
+	 * 
+	 * Returns an empty Optional if the project does not exist or has been deleted.
+	 */
+	public Optional<ProjectCostRollup> fetchProjectCostDao(Integer projectId) {
+		// @formatter:off
+		String sql = ""
+			+ "SELECT r.* FROM " + PROJECT_COST_ROLLUP_TABLE + " r "
+			+ "JOIN " + PROJECT_TABLE + " p USING (project_id) "
+			+ "WHERE r.project_id = ? AND p.deleted_on IS NULL";
+		// @formatter:on
+
+		return Optional.ofNullable(withConnection(conn -> fetchOne(conn, sql, projectId, ProjectCostRollup.class)));
+	} // end fetchProjectCostDao
+
+	/*
+	 * Reads the category's row of the category_hours_rollup table, with the
+	 * category name. Both are primary key lookups.
+	 * 
+	 * Returns an empty Optional if the category does not exist.
+	 */
+	public Optional<CategoryHoursRollup> fetchCategoryHoursDao(Integer categoryId) {
+		String sql = CATEGORY_HOURS_SQL + " WHERE r.category_id = ?";
+
+		return Optional
+				.ofNullable(withConnection(conn -> fetchOne(conn, sql, categoryId, CategoryHoursRollup.class)));
+	} // end fetchCategoryHoursDao
+
+	/*
+	 * Reads every row of the category_hours_rollup table, one per category, in
+	 * category_id order.
+	 */
+	public List<CategoryHoursRollup> fetchAllCategoryHoursDao() {
+		String sql = CATEGORY_HOURS_SQL + " ORDER BY r.category_id";
+
+		return withConnection(conn -> {
+			try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+				try(ResultSet rs = stmt.executeQuery()) {
+					List<CategoryHoursRollup> rollups = new LinkedList<>();
+					RowMapper<CategoryHoursRollup> mapper = rowMapper(rs, CategoryHoursRollup.class);
+
+					while(rs.next()) {
+						rollups.add(mapper.map(rs));
+					}
+					return rollups;
+				}
+			}
+		});
+	} // end fetchAllCategoryHoursDao
+
+	/*
+	 * Recomputes both rollup tables from the project, material, category and
+	 * project_category tables in one transaction. Use it to fill the tables for
+	 * rows that existed before the triggers were added, or to check for drift.
+	 * Writes that run at the same time may wait on the locks this takes. Deleted
+	 * projects waiting to be purged are left out of the category hours, as the
+	 * triggers leave them out.
+	 */
+	public void rebuildRollupsDao() {
+		// @formatter:off
+		String costSql = ""
+			+ "INSERT INTO " + PROJECT_COST_ROLLUP_TABLE + " (project_id, material_count, material_cost) "
+			+ "SELECT p.project_id, COUNT(m.material_id), COALESCE(SUM(m.num_required * m.cost), 0) "
+			+ "FROM " + PROJECT_TABLE + " p "
+			+ "LEFT JOIN " + MATERIAL_TABLE + " m USING (project_id) "
+			+ "GROUP BY p.project_id";
+		String hoursSql = REBUILD_CATEGORY_HOURS_SQL;
+		// @formatter:on
+
+		try(Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try {
+				for(String sql : List.of("DELETE FROM " + PROJECT_COST_ROLLUP_TABLE, costSql,
+						"DELETE FROM " + CATEGORY_HOURS_ROLLUP_TABLE, hoursSql)) {
+					try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+						stmt.executeUpdate();
+					}
+				}
+
+				commitTransaction(conn);
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end rebuildRollupsDao
+
+	/*
+	 * Reads the ProjectStamp of the projects that are not deleted and their
+	 * steps. The counts and sums scan the project table and the step rows of those
+	 * projects, which is far less than reading every note and step text.
+	 */
+	public ProjectStamp fetchProjectStampDao() {
+		// @formatter:off
+		String sql = ""
+			+ "SELECT "
+			+ "(SELECT COUNT(*) FROM " + PROJECT_TABLE + " WHERE deleted_on IS NULL), "
+			+ "(SELECT COALESCE(MAX(project_id), 0) FROM " + PROJECT_TABLE + " WHERE deleted_on IS NULL), "
+			+ "(SELECT COALESCE(SUM(version), 0) FROM " + PROJECT_TABLE + " WHERE deleted_on IS NULL), "
+			+ "COUNT(s.step_id), COALESCE(MAX(s.step_id), 0) "
+			+ "FROM " + STEP_TABLE + " s "
+			+ "JOIN " + PROJECT_TABLE + " p USING (project_id) "
+			+ "WHERE p.deleted_on IS NULL";
+		// @formatter:on
+
+		return withConnection(conn -> {
+			try(PreparedStatement stmt = prepareStatement(conn, sql); ResultSet rs = stmt.executeQuery()) {
+				rs.next();
+				return new ProjectStamp(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5));
+			}
+		});
+	} // end fetchProjectStampDao
+
+	/*
+	 * Adds a step to the project, just before the step with ID beforeStepId, or
+	 * after the last step if beforeStepId is null.
+	 * 
+	 * The new step gets a step_order key halfway between the keys of its
+	 * neighbours, which are found with two lookups on the (project_id,
+	 * step_order) index, so no other step is renumbered. Only when the
+	 * neighbouring keys are adjacent are the project's steps renumbered, by
+	 * rebalanceStepOrder, before the key is chosen again.
+	 * 
+	 * The project row is locked for the length of the transaction, so steps added
+	 * or moved at the same time in the same project cannot be given the same key.
+	 * 
+	 * Returns the new step, with its ID and step order set, or an empty Optional
+	 * if the project does not exist. Throws a DbException if beforeStepId is not
+	 * a step of the project.
+	 */
+	public Optional<Step> insertStepDao(Integer projectId, String stepText, Integer beforeStepId) {
+		// @formatter:off
+		String sql = ""
+			+ "INSERT INTO " + STEP_TABLE + " "
+			+ "(project_id, step_text, step_order) "
+			+ "VALUES (?, ?, ?)";
+		// @formatter:on
+
+		try(Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try {
+				if(!lockProject(conn, projectId)) {
+					rollbackTransaction(conn);
+					return Optional.empty();
+				}
+
+				// Step IDs start at 1, so 0 excludes no step.
+				int stepOrder = chooseStepOrder(conn, projectId, 0, beforeStepId);
+
+				try(PreparedStatement stmt = prepareInsert(conn, sql)) {
+					setParameter(stmt, 1, projectId, Integer.class);
+					setParameter(stmt, 2, stepText, String.class);
+					setParameter(stmt, 3, stepOrder, Integer.class);
+					stmt.executeUpdate();
+
+					Step step = new Step();
+					step.setStepId(getGeneratedId(stmt));
+					step.setProjectId(projectId);
+					step.setStepText(stepText);
+					step.setStepOrder(stepOrder);
+
+					commitTransaction(conn);
+					return Optional.of(step);
+				}
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end insertStepDao
+
+	/*
+	 * Moves a step of the project to just before the step with ID beforeStepId,
+	 * or after the last step if beforeStepId is null. Only the moved step's
+	 * step_order is updated, unless its new neighbours have adjacent keys and the
+	 * project's steps have to be rebalanced first. The project row is locked as
+	 * in insertStepDao.
+	 * 
+	 * Returns false if the project or the step does not exist. Throws a
+	 * DbException if beforeStepId is not a step of the project.
+	 */
+	public boolean moveStepDao(Integer projectId, Integer stepId, Integer beforeStepId) {
+		// @formatter:off
+		String sql = ""
+			+ "UPDATE " + STEP_TABLE + " SET step_order = ? "
+			+ "WHERE step_id = ? AND project_id = ?";
+		// @formatter:on
+
+		try(Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try {
+				if(!lockProject(conn, projectId) || Objects.isNull(fetchStepOrder(conn, projectId, stepId))) {
+					rollbackTransaction(conn);
+					return false;
+				}
+
+				if(!stepId.equals(beforeStepId)) {
+					int stepOrder = chooseStepOrder(conn, projectId, stepId, beforeStepId);
+
+					try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+						setParameter(stmt, 1, stepOrder, Integer.class);
+						setParameter(stmt, 2, stepId, Integer.class);
+						setParameter(stmt, 3, projectId, Integer.class);
+						stmt.executeUpdate();
+					}
+				}
+
+				commitTransaction(conn);
+				return true;
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end moveStepDao
+
+	/*
+	 * Renumbers the project's steps STEP_ORDER_GAP apart, keeping their order.
+	 * insertStepDao and moveStepDao do this themselves when they run out of room,
+	 * so it only needs to be called to spread out keys ahead of many inserts.
+	 * Returns the number of steps renumbered.
+	 */
+	public int rebalanceStepOrderDao(Integer projectId) {
+		try(Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try {
+				int count = lockProject(conn, projectId) ? rebalanceStepOrder(conn, projectId) : 0;
+				commitTransaction(conn);
+				return count;
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end rebalanceStepOrderDao
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Returns a free step_order key for a step placed just before the step with ID
+	 * beforeStepId, or after the last step if beforeStepId is null. The step with
+	 * ID excludedStepId, the one being moved, is ignored when finding the
+	 * neighbours. Steps with equal keys are ordered by step_id, as in the fetch
+	 * queries.
+	 * 
+	 * If the neighbours leave no room, the steps are rebalanced and the key is
+	 * chosen again.
+	 */
+	private int chooseStepOrder(Connection conn, Integer projectId, Integer excludedStepId, Integer beforeStepId)
+			throws SQLException {
+		for(int attempt = 0; attempt < 2; attempt++) {
+			Long next = null;
+			Long previous;
+
+			if(Objects.isNull(beforeStepId)) {
+				String sql = LAST_STEP_ORDER_SQL;
+
+				previous = fetchNeighbourOrder(conn, sql, projectId, excludedStepId);
+			} else {
+				Integer beforeOrder = fetchStepOrder(conn, projectId, beforeStepId);
+
+				if(Objects.isNull(beforeOrder)) {
+					throw new DbException("Step with ID=" + beforeStepId + " is not a step of project with ID="
+							+ projectId + ".");
+				}
+
+				String sql = PREVIOUS_STEP_ORDER_SQL;
+
+				next = beforeOrder.longValue();
+				previous = fetchNeighbourOrder(conn, sql, projectId, excludedStepId, beforeOrder, beforeOrder,
+						beforeStepId);
+			}
+
+			long stepOrder;
+
+			if(Objects.isNull(previous)) {
+				stepOrder = Objects.isNull(next) ? STEP_ORDER_GAP : next - STEP_ORDER_GAP;
+			} else if(Objects.isNull(next)) {
+				stepOrder = previous + STEP_ORDER_GAP;
+			} else {
+				stepOrder = next - previous >= 2 ? previous + (next - previous) / 2 : previous;
+			}
+
+			boolean taken = Objects.nonNull(previous) && stepOrder == previous;
+
+			if(!taken && stepOrder >= Integer.MIN_VALUE && stepOrder <= Integer.MAX_VALUE) {
+				return (int)stepOrder;
+			}
+
+			rebalanceStepOrder(conn, projectId);
+		}
+
+		throw new DbException("No step_order key is free in project with ID=" + projectId + ".");
+	} // end chooseStepOrder
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Renumbers the project's steps STEP_ORDER_GAP apart in one UPDATE, keeping
+	 * their order. Returns the number of steps updated.
+	 */
+	private int rebalanceStepOrder(Connection conn, Integer projectId) throws SQLException {
+		// @formatter:off
+		String sql = ""
+			+ "UPDATE " + STEP_TABLE + " s "
+			+ "JOIN (SELECT step_id, ROW_NUMBER() OVER (ORDER BY step_order, step_id) AS position "
+			+ "FROM " + STEP_TABLE + " WHERE project_id = ?) r USING (step_id) "
+			+ "SET s.step_order = r.position * " + STEP_ORDER_GAP;
+		// @formatter:on
+
+		try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+			return stmt.executeUpdate();
+		}
+	} // end rebalanceStepOrder
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Locks the project row until the transaction ends. Returns false if the
+	 * project does not exist or has been deleted.
+	 */
+	private boolean lockProject(Connection conn, Integer projectId) throws SQLException {
+		String sql = "SELECT project_id FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_on IS NULL FOR UPDATE";
+
+		try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next();
+			}
+		}
+	} // end lockProject
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Returns the step_order of the step, or null if it is not a step of the
+	 * project.
+	 */
+	private Integer fetchStepOrder(Connection conn, Integer projectId, Integer stepId) throws SQLException {
+		String sql = "SELECT step_order FROM " + STEP_TABLE + " WHERE step_id = ? AND project_id = ?";
+
+		try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setParameter(stmt, 1, stepId, Integer.class);
+			setParameter(stmt, 2, projectId, Integer.class);
+
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getInt(1) : null;
+			}
+		}
+	} // end fetchStepOrder
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Runs a neighbour query of chooseStepOrder with the given Integer parameters
+	 * and returns the step_order it finds, or null if there is no such step.
+	 */
+	private Long fetchNeighbourOrder(Connection conn, String sql, Integer... parameters) throws SQLException {
+		try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+			for(int index = 0; index < parameters.length; index++) {
+				setParameter(stmt, index + 1, parameters[index], Integer.class);
+			}
+
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : null;
+			}
+		}
+	} // end fetchNeighbourOrder
+
+	/*
+	 * This method throws the SQLException set up in the try-with-resources of the method that called it.
+	 * 
+	 * Runs a query with a single ID parameter and maps the first row, or returns
+	 * null if there is none.
+	 */
+	private <T> T fetchOne(Connection conn, String sql, Integer id, Class<T> classType) throws SQLException {
+		try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setParameter(stmt, 1, id, Integer.class);
+
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? extract(rs, classType) : null;
+			}
+		}
+	} // end fetchOne
+
 } // end CLASS
\ No newline at end of file
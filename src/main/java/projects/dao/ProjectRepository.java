@@ -0,0 +1,96 @@
+package projects.dao;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import projects.entity.Category;
+import projects.entity.CategoryHoursRollup;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.ProjectCostRollup;
+import projects.entity.ProjectStamp;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
+
+/*
+ * The storage operations ProjectService needs. ProjectDao implements them on
+ * MySQL, and projects.memory.InMemoryProjectRepository in memory with a
+ * persistent log, for running without a database server. ProjectService picks
+ * one with -Dprojects.repository.
+ *
+ * Every implementation keeps the same contract, described on the ProjectDao
+ * methods: generated IDs start at 1 and are not reused, each insert or update
+ * is atomic, insertProjects commits chunk by chunk, project versions are
+ * checked by modifyProjectDetailsDao, and a deleted project is gone from every
+ * read as soon as deleteProjectDao returns. Its row, materials, steps and
+ * category links stay until purgeProjectDao removes them, and until then its
+ * ID is returned by fetchDeletedProjectIdsDao. Errors are thrown as
+ * DbException.
+ */
+public interface ProjectRepository {
+
+	// Distance between neighbouring step_order keys after a rebalance, and between
+	// the steps of a new project. A step can be put between two steps whose keys
+	// differ by at least 2 without renumbering any other step.
+	int STEP_ORDER_GAP = 1024;
+
+	Project insertProject(Project project);
+
+	int insertProjects(Collection<Project> projects, int chunkSize);
+
+	Category insertCategoryDao(Category category);
+
+	List<Project> getAllProjectNames();
+
+	List<ProjectSummary> fetchProjectPageDao(ProjectSortOrder order, ProjectSummary after, int pageSize);
+
+	Optional<Project> fetchProjectByIdDao(Integer projectId);
+
+	Optional<Project> fetchProjectByIdDao(Integer projectId, FetchPlan plan);
+
+	Optional<Project> fetchProjectByIdParallelDao(Integer projectId, Executor executor);
+
+	List<Material> fetchMaterialsDao(Integer projectId);
+
+	List<Step> fetchStepsDao(Integer projectId);
+
+	List<Category> fetchCategoriesDao(Integer projectId);
+
+	List<Project> fetchProjectsByIdsDao(Collection<Integer> projectIds);
+
+	List<Project> fetchProjectsByIdsDao(Collection<Integer> projectIds, FetchPlan plan);
+
+	long streamAllProjectsDao(Consumer<Project> consumer);
+
+	boolean modifyProjectDetailsDao(Project project);
+
+	int addActualHoursDao(Map<Integer, BigDecimal> increments);
+
+	boolean deleteProjectDao(Integer projectId);
+
+	List<Integer> fetchDeletedProjectIdsDao();
+
+	int purgeProjectDao(Integer projectId, int batchSize);
+
+	Optional<Step> insertStepDao(Integer projectId, String stepText, Integer beforeStepId);
+
+	boolean moveStepDao(Integer projectId, Integer stepId, Integer beforeStepId);
+
+	int rebalanceStepOrderDao(Integer projectId);
+
+	Optional<ProjectCostRollup> fetchProjectCostDao(Integer projectId);
+
+	Optional<CategoryHoursRollup> fetchCategoryHoursDao(Integer categoryId);
+
+	List<CategoryHoursRollup> fetchAllCategoryHoursDao();
+
+	void rebuildRollupsDao();
+
+	ProjectStamp fetchProjectStampDao();
+
+} // end INTERFACE
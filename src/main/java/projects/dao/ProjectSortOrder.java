@@ -0,0 +1,40 @@
+package projects.dao;
+
+/*
+ * The order of the paged project listing, which reads only projects whose
+ * deleted_on is null. Each order is served by an index that starts with
+ * deleted_on: project_deleted_idx for ID, whose entries InnoDB follows with the
+ * primary key, and project_live_name_idx for NAME, which holds the live
+ * projects in name order with the project_id that breaks ties.
+ */
+public enum ProjectSortOrder {
+
+	// Lowest project ID first.
+	ID("project_id", false),
+
+	// Highest project ID first.
+	ID_DESC("project_id", true),
+
+	// Project name A to Z, then project ID.
+	NAME("project_name", false),
+
+	// Project name Z to A, then highest project ID.
+	NAME_DESC("project_name", true);
+
+	private final String column;
+	private final boolean descending;
+
+	private ProjectSortOrder(String column, boolean descending) {
+		this.column = column;
+		this.descending = descending;
+	}
+
+	String getColumn() {
+		return column;
+	}
+
+	boolean isDescending() {
+		return descending;
+	}
+
+} // end ENUM
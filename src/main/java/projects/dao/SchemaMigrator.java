@@ -0,0 +1,460 @@
+package projects.dao;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import projects.exception.DbException;
+
+/*
+ * Applies the versioned schema migrations in src/main/resources/db/migration
+ * on top of the tables created by projects-schema.sql.
+ *
+ * The migrations are listed, in version order, in migrations.list, because the
+ * contents of a resource directory cannot be listed from inside a jar. Each
+ * file is named V<version>__<description>.sql. A migration that has been
+ * applied is recorded in the schema_version table with a checksum of its
+ * script, so running the migrator again only applies the new ones. A changed
+ * script for an applied version stops the migration with a DbException.
+ *
+ * Each migration runs in one transaction with its schema_version row, so a
+ * data migration such as V2__gap_step_order.sql, which is not safe to run
+ * twice, is either applied and recorded or not applied at all. MySQL commits
+ * DDL statements as they run, so a schema migration that fails part way
+ * cannot be rolled back. To make running it again safe, a statement that fails
+ * only because its index, table or column already exists, or its index is
+ * already dropped, is skipped with a warning once the object in the database
+ * has been checked against the statement. If they differ, the migration stops
+ * with a DbException rather than leave the other definition in place. A
+ * migration that replaces a trigger drops it first with DROP TRIGGER IF EXISTS.
+ */
+public class SchemaMigrator {
+
+	private static final Logger LOGGER = Logger.getLogger("projects.migration");
+
+	private static final String MIGRATION_DIRECTORY = "/db/migration/";
+	private static final String MIGRATION_LIST = "migrations.list";
+	private static final Pattern MIGRATION_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+	private static final String SCHEMA_VERSION_TABLE = "schema_version";
+
+	// MySQL error codes for a table, column or index that already exists and for
+	// a key that is already dropped, then H2's codes for the same.
+	private static final Set<Integer> ALREADY_APPLIED_ERRORS = Set.of(1050, 1060, 1061, 1091, 42101, 42121,
+			42111, 42112, 90057);
+
+	// The statement forms whose existing object checkAlreadyApplied can compare.
+	private static final Pattern CREATE_INDEX = Pattern
+			.compile("(?is)CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(\\w+)\\s+ON\\s+(\\w+)\\s*\\((.*)\\)");
+	private static final Pattern DROP_INDEX = Pattern.compile("(?is)ALTER\\s+TABLE\\s+(\\w+)\\s+DROP\\s+INDEX\\s+(\\w+)");
+	private static final Pattern ADD_COLUMN = Pattern
+			.compile("(?is)ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+COLUMN\\s+(\\w+)\\s+(.*)");
+	private static final Pattern CREATE_TABLE = Pattern.compile("(?is)CREATE\\s+TABLE\\s+(\\w+)\\s*\\((.*)\\)");
+	private static final Pattern NOT_NULL = Pattern.compile("(?i)\\bNOT\\s+NULL\\b");
+	private static final Set<String> TABLE_CONSTRAINTS = Set.of("primary", "key", "index", "unique", "constraint",
+			"foreign", "check");
+
+	private static final Pattern TRIGGER_STATEMENT = Pattern.compile("(?is)(CREATE|DROP)\\s+TRIGGER\\b.*");
+
+	private final boolean applyTriggers;
+	private final String migrationDirectory;
+
+	public SchemaMigrator() {
+		this(true);
+	} // end CONSTRUCTOR
+
+	/*
+	 * With applyTriggers false, CREATE TRIGGER and DROP TRIGGER statements are
+	 * skipped, for databases such as the benchmarks' H2 that cannot run the MySQL
+	 * trigger bodies. The rollup tables are then not kept current.
+	 */
+	public SchemaMigrator(boolean applyTriggers) {
+		this(applyTriggers, MIGRATION_DIRECTORY);
+	} // end CONSTRUCTOR
+
+	/*
+	 * Reads the migrations from another resource directory, for the tests.
+	 */
+	SchemaMigrator(boolean applyTriggers, String migrationDirectory) {
+		this.applyTriggers = applyTriggers;
+		this.migrationDirectory = migrationDirectory;
+	} // end CONSTRUCTOR
+
+	/*
+	 * Applies every listed migration that is not yet recorded in schema_version, in
+	 * version order, and returns the number applied.
+	 */
+	public int migrate() {
+		List<Migration> migrations = loadMigrations();
+
+		try(Connection conn = DbConnection.getConnection()) {
+			createSchemaVersionTable(conn);
+			Map<Integer, Long> applied = fetchAppliedVersions(conn);
+			int count = 0;
+
+			for(Migration migration : migrations) {
+				Long checksum = applied.get(migration.version);
+
+				if(checksum == null) {
+					apply(conn, migration);
+					count++;
+				}
+				else if(checksum != migration.checksum) {
+					throw new DbException("Migration " + migration.fileName
+							+ " has changed since it was applied. Add a new migration instead.");
+				}
+			}
+			return count;
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end migrate
+
+	/*
+	 * Returns the highest applied version, or 0 if no migration has been applied.
+	 */
+	public int currentVersion() {
+		try(Connection conn = DbConnection.getConnection()) {
+			createSchemaVersionTable(conn);
+			return fetchAppliedVersions(conn).keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end currentVersion
+
+	/*
+	 * Runs the statements of one migration and records it in schema_version, in
+	 * one transaction. If a statement fails, the rows it has changed so far are
+	 * rolled back and the migration is not recorded.
+	 */
+	private void apply(Connection conn, Migration migration) throws SQLException {
+		boolean autoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+
+		try {
+			runStatements(conn, migration);
+			recordMigration(conn, migration);
+			conn.commit();
+		} catch (SQLException | RuntimeException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(autoCommit);
+		}
+
+		LOGGER.info(() -> "Applied migration " + migration.fileName);
+	} // end apply
+
+	private void runStatements(Connection conn, Migration migration) throws SQLException {
+		try(Statement stmt = conn.createStatement()) {
+			for(String sql : migration.statements) {
+				if(!applyTriggers && TRIGGER_STATEMENT.matcher(sql).matches()) {
+					LOGGER.info(() -> "Skipped trigger statement in " + migration.fileName + ": " + sql);
+					continue;
+				}
+
+				try {
+					stmt.execute(sql);
+				} catch (SQLException e) {
+					if(!ALREADY_APPLIED_ERRORS.contains(e.getErrorCode())) {
+						throw new DbException("Migration " + migration.fileName + " failed on: " + sql, e);
+					}
+					checkAlreadyApplied(conn, migration, sql, e);
+					LOGGER.warning(() -> "Skipped already applied statement in " + migration.fileName + ": " + sql);
+				}
+			}
+		}
+	} // end runStatements
+
+	/*
+	 * Checks that the object a statement failed to create already has the
+	 * definition the statement gives it: an index the same columns in the same
+	 * order, an added column the same nullability, and a table the same column
+	 * names. An index the statement drops must be gone. Column types are not
+	 * compared, because the database reports them under its own names. Throws a
+	 * DbException if the definitions differ or the statement is of another form.
+	 */
+	private static void checkAlreadyApplied(Connection conn, Migration migration, String sql, SQLException cause)
+			throws SQLException {
+		DatabaseMetaData metaData = conn.getMetaData();
+		Matcher matcher;
+		String difference;
+
+		if((matcher = CREATE_INDEX.matcher(sql)).matches()) {
+			List<String> columns = indexColumns(conn, metaData, matcher.group(2), matcher.group(1));
+			difference = columns.equals(columnNames(matcher.group(3)))
+					? null : "index " + matcher.group(1) + " exists on columns " + columns;
+		}
+		else if((matcher = DROP_INDEX.matcher(sql)).matches()) {
+			List<String> columns = indexColumns(conn, metaData, matcher.group(1), matcher.group(2));
+			difference = columns.isEmpty() ? null : "index " + matcher.group(2) + " still exists";
+		}
+		else if((matcher = ADD_COLUMN.matcher(sql)).matches()) {
+			Boolean nullable = columnNullability(conn, metaData, matcher.group(1)).get(lower(matcher.group(2)));
+
+			if(nullable == null) {
+				difference = "column " + matcher.group(2) + " does not exist";
+			}
+			else if(nullable == NOT_NULL.matcher(matcher.group(3)).find()) {
+				difference = "column " + matcher.group(2) + (nullable ? " allows" : " does not allow") + " nulls";
+			}
+			else {
+				difference = null;
+			}
+		}
+		else if((matcher = CREATE_TABLE.matcher(sql)).matches()) {
+			Set<String> columns = columnNullability(conn, metaData, matcher.group(1)).keySet();
+			difference = columns.equals(new HashSet<>(columnNames(matcher.group(2)))) ? null
+					: "table " + matcher.group(1) + " exists with columns " + new TreeSet<>(columns);
+		}
+		else {
+			difference = "the existing object cannot be checked";
+		}
+
+		if(difference != null) {
+			throw new DbException("Migration " + migration.fileName + " failed on: " + sql + ". It was applied before, but "
+					+ difference + ".", cause);
+		}
+	} // end checkAlreadyApplied
+
+	/*
+	 * Returns the columns of an index in index order, or an empty list if the
+	 * table has no index of that name.
+	 */
+	private static List<String> indexColumns(Connection conn, DatabaseMetaData metaData, String table, String index)
+			throws SQLException {
+		Map<Integer, String> columns = new TreeMap<>();
+
+		try(ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), conn.getSchema(), lower(table), false, true)) {
+			while(rs.next()) {
+				if(index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+					columns.put((int)rs.getShort("ORDINAL_POSITION"), lower(rs.getString("COLUMN_NAME")));
+				}
+			}
+		}
+		return new ArrayList<>(columns.values());
+	} // end indexColumns
+
+	/*
+	 * Returns whether each column of a table allows nulls, by column name.
+	 */
+	private static Map<String, Boolean> columnNullability(Connection conn, DatabaseMetaData metaData, String table)
+			throws SQLException {
+		Map<String, Boolean> columns = new HashMap<>();
+
+		try(ResultSet rs = metaData.getColumns(conn.getCatalog(), conn.getSchema(), lower(table), "%")) {
+			while(rs.next()) {
+				columns.put(lower(rs.getString("COLUMN_NAME")), rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+			}
+		}
+		return columns;
+	} // end columnNullability
+
+	/*
+	 * Returns the column names in an index column list or a CREATE TABLE body,
+	 * leaving out key prefix lengths, sort directions, column definitions and
+	 * table constraints.
+	 */
+	private static List<String> columnNames(String list) {
+		List<String> names = new ArrayList<>();
+		StringBuilder item = new StringBuilder();
+		int depth = 0;
+
+		for(char c : (list + ",").toCharArray()) {
+			if(c == ',' && depth == 0) {
+				String name = lower(item.toString().strip().split("[\\s(]", 2)[0]);
+
+				if(!name.isEmpty() && !TABLE_CONSTRAINTS.contains(name)) {
+					names.add(name);
+				}
+				item.setLength(0);
+				continue;
+			}
+
+			depth += c == '(' ? 1 : c == ')' ? -1 : 0;
+			item.append(c);
+		}
+		return names;
+	} // end columnNames
+
+	private static String lower(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	} // end lower
+
+	private void recordMigration(Connection conn, Migration migration) throws SQLException {
+		// @formatter:off
+		String sql = ""
+			+ "INSERT INTO " + SCHEMA_VERSION_TABLE + " "
+			+ "(version, description, checksum, applied_on) "
+			+ "VALUES (?, ?, ?, ?)";
+		// @formatter:on
+
+		try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setInt(1, migration.version);
+			stmt.setString(2, migration.description);
+			stmt.setLong(3, migration.checksum);
+			stmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+			stmt.executeUpdate();
+		}
+	} // end recordMigration
+
+	private void createSchemaVersionTable(Connection conn) throws SQLException {
+		// @formatter:off
+		String sql = ""
+			+ "CREATE TABLE IF NOT EXISTS " + SCHEMA_VERSION_TABLE + " ("
+			+ "version INT NOT NULL, "
+			+ "description VARCHAR(128) NOT NULL, "
+			+ "checksum BIGINT NOT NULL, "
+			+ "applied_on TIMESTAMP NOT NULL, "
+			+ "PRIMARY KEY (version))";
+		// @formatter:on
+
+		try(Statement stmt = conn.createStatement()) {
+			stmt.execute(sql);
+		}
+	} // end createSchemaVersionTable
+
+	private Map<Integer, Long> fetchAppliedVersions(Connection conn) throws SQLException {
+		String sql = "SELECT version, checksum FROM " + SCHEMA_VERSION_TABLE;
+		Map<Integer, Long> applied = new HashMap<>();
+
+		try(Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+			while(rs.next()) {
+				applied.put(rs.getInt(1), rs.getLong(2));
+			}
+		}
+		return applied;
+	} // end fetchAppliedVersions
+
+	/*
+	 * Reads migrations.list and every migration it names. Throws a DbException if
+	 * a file is missing, badly named, or out of version order.
+	 */
+	private List<Migration> loadMigrations() {
+		List<Migration> migrations = new ArrayList<>();
+		int previousVersion = 0;
+
+		for(String line : readResource(migrationDirectory + MIGRATION_LIST).split("\\R")) {
+			String fileName = line.strip();
+
+			if(fileName.isEmpty() || fileName.startsWith("#")) {
+				continue;
+			}
+
+			Matcher matcher = MIGRATION_NAME.matcher(fileName);
+
+			if(!matcher.matches()) {
+				throw new DbException("Invalid migration file name: " + fileName);
+			}
+
+			int version = Integer.parseInt(matcher.group(1));
+
+			if(version <= previousVersion) {
+				throw new DbException("Migration " + fileName + " is listed out of version order");
+			}
+			previousVersion = version;
+
+			String script = readResource(migrationDirectory + fileName);
+			migrations.add(new Migration(fileName, version, matcher.group(2).replace('_', ' '), checksum(script),
+					splitStatements(script)));
+		}
+		return migrations;
+	} // end loadMigrations
+
+	/*
+	 * Splits a script into statements on semicolons at the end of a line, after
+	 * removing "--" comment lines.
+	 */
+	private static List<String> splitStatements(String script) {
+		List<String> statements = new ArrayList<>();
+		StringBuilder statement = new StringBuilder();
+
+		for(String line : script.split("\\R")) {
+			String trimmed = line.strip();
+
+			if(trimmed.isEmpty() || trimmed.startsWith("--")) {
+				continue;
+			}
+
+			statement.append(line).append('\n');
+
+			if(trimmed.endsWith(";")) {
+				statements.add(statement.substring(0, statement.lastIndexOf(";")).strip());
+				statement.setLength(0);
+			}
+		}
+
+		if(!statement.toString().isBlank()) {
+			statements.add(statement.toString().strip());
+		}
+		return statements;
+	} // end splitStatements
+
+	private static long checksum(String script) {
+		CRC32 crc = new CRC32();
+		crc.update(script.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	} // end checksum
+
+	private static String readResource(String name) {
+		try(InputStream in = SchemaMigrator.class.getResourceAsStream(name)) {
+			if(in == null) {
+				throw new DbException("Migration resource " + name + " was not found");
+			}
+
+			try(BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+				StringBuilder text = new StringBuilder();
+				String line;
+
+				while((line = reader.readLine()) != null) {
+					text.append(line).append('\n');
+				}
+				return text.toString();
+			}
+		} catch (IOException e) {
+			throw new DbException("Unable to read migration resource " + name, e);
+		}
+	} // end readResource
+
+	/*
+	 * One migration script, split into statements.
+	 */
+	private static class Migration {
+		private final String fileName;
+		private final int version;
+		private final String description;
+		private final long checksum;
+		private final List<String> statements;
+
+		private Migration(String fileName, int version, String description, long checksum, List<String> statements) {
+			this.fileName = fileName;
+			this.version = version;
+			this.description = description;
+			this.checksum = checksum;
+			this.statements = statements;
+		}
+	} // end Migration
+
+} // end CLASS
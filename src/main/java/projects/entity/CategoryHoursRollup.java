@@ -0,0 +1,64 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * A row of the category_hours_rollup table, with the category name: the number of projects in a
+ * category and their total estimated and actual hours, kept current by database triggers.
+ */
+public class CategoryHoursRollup {
+  private Integer categoryId;
+  private String categoryName;
+  private Integer projectCount;
+  private BigDecimal estimatedHours;
+  private BigDecimal actualHours;
+
+  public Integer getCategoryId() {
+    return categoryId;
+  }
+
+  public void setCategoryId(Integer categoryId) {
+    this.categoryId = categoryId;
+  }
+
+  public String getCategoryName() {
+    return categoryName;
+  }
+
+  public void setCategoryName(String categoryName) {
+    this.categoryName = categoryName;
+  }
+
+  public Integer getProjectCount() {
+    return projectCount;
+  }
+
+  public void setProjectCount(Integer projectCount) {
+    this.projectCount = projectCount;
+  }
+
+  public BigDecimal getEstimatedHours() {
+    return estimatedHours;
+  }
+
+  public void setEstimatedHours(BigDecimal estimatedHours) {
+    this.estimatedHours = estimatedHours;
+  }
+
+  public BigDecimal getActualHours() {
+    return actualHours;
+  }
+
+  public void setActualHours(BigDecimal actualHours) {
+    this.actualHours = actualHours;
+  }
+
+  @Override
+  public String toString() {
+    return "ID=" + categoryId + ", categoryName=" + categoryName + ", projectCount=" + projectCount
+        + ", estimatedHours=" + estimatedHours + ", actualHours=" + actualHours;
+  }
+}
@@ -4,8 +4,13 @@
 package projects.entity;
 
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * @author Promineo
@@ -18,11 +23,42 @@ public class Project {
   private BigDecimal actualHours;
   private Integer difficulty;
   private String notes;
+  private Integer version;
 
   private List<Material> materials = new LinkedList<>();
   private List<Step> steps = new LinkedList<>();
   private List<Category> categories = new LinkedList<>();
 
+  /*
+   * Names of the fields whose values were changed through a setter. Rows mapped
+   * by DaoBase are populated without the setters, so a project fresh from the
+   * database has no changed fields. Transient, so it is not mapped to a column.
+   */
+  private transient Set<String> changedFields = new LinkedHashSet<>();
+
+  /*
+   * The actual hours before setActualHours first changed them. Hours are added
+   * to the row without changing its version, so a save of new actual hours is
+   * checked against this value instead.
+   */
+  private transient BigDecimal loadedActualHours;
+
+  /*
+   * The child Lists that were not fetched with the project, and the loader that
+   * fills each one on its first access. The loader is null once nothing is
+   * deferred, so the getters only read a volatile field. Loads are done while
+   * holding the project's lock, so a project shared between threads loads each
+   * List once.
+   *
+   * The loader runs after the transaction that read the project has ended, on a
+   * connection of its own, so a deferred List holds the rows committed when it
+   * is first read. Those may be newer than the project's own fields, and if the
+   * project has been deleted in between the List is empty. Fetch the children
+   * eagerly when they must match the project row.
+   */
+  private transient volatile ProjectChildLoader childLoader;
+  private transient Set<ProjectChild> deferredChildren = EnumSet.noneOf(ProjectChild.class);
+
   public Integer getProjectId() {
     return projectId;
   }
@@ -36,6 +72,7 @@ public class Project {
   }
 
   public void setProjectName(String projectName) {
+    markChanged("projectName", this.projectName, projectName);
     this.projectName = projectName;
   }
 
@@ -44,6 +81,7 @@ public class Project {
   }
 
   public void setEstimatedHours(BigDecimal estimatedHours) {
+    markChanged("estimatedHours", this.estimatedHours, estimatedHours);
     this.estimatedHours = estimatedHours;
   }
 
@@ -52,6 +90,11 @@ public class Project {
   }
 
   public void setActualHours(BigDecimal actualHours) {
+    if(!changedFields.contains("actualHours")) {
+      loadedActualHours = this.actualHours;
+    }
+
+    markChanged("actualHours", this.actualHours, actualHours);
     this.actualHours = actualHours;
   }
 
@@ -60,6 +103,7 @@ public class Project {
   }
 
   public void setDifficulty(Integer difficulty) {
+    markChanged("difficulty", this.difficulty, difficulty);
     this.difficulty = difficulty;
   }
 
@@ -68,23 +112,160 @@ public class Project {
   }
 
   public void setNotes(String notes) {
+    markChanged("notes", this.notes, notes);
     this.notes = notes;
   }
 
+  /*
+   * The row version, increased by every update. An update only succeeds if the
+   * version still matches the one in the database. Not tracked as a changed
+   * field, because the DAO sets it.
+   */
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
   public List<Material> getMaterials() {
+    loadIfDeferred(ProjectChild.MATERIALS);
     return materials;
   }
 
   public List<Step> getSteps() {
+    loadIfDeferred(ProjectChild.STEPS);
     return steps;
   }
 
   public List<Category> getCategories() {
+    loadIfDeferred(ProjectChild.CATEGORIES);
     return categories;
   }
 
+  /*
+   * Marks the given child Lists as not loaded. Each one is filled by the loader
+   * the first time its getter is called. Called by the DAO when a fetch plan
+   * leaves children out.
+   */
+  public synchronized void deferChildren(ProjectChildLoader loader, Set<ProjectChild> children) {
+    if(!children.isEmpty()) {
+      deferredChildren.addAll(children);
+      childLoader = loader;
+    }
+  }
+
+  /*
+   * Returns true if the child List has been loaded, without loading it.
+   */
+  public synchronized boolean isLoaded(ProjectChild child) {
+    return !deferredChildren.contains(child);
+  }
+
+  /*
+   * The names of the fields changed since the project was loaded, copied or last
+   * saved, in the order they were first changed.
+   */
+  public Set<String> getChangedFields() {
+    return Collections.unmodifiableSet(changedFields);
+  }
+
+  /*
+   * The actual hours the project held when it was loaded, copied or last saved.
+   * Only meaningful while actualHours is a changed field.
+   */
+  public BigDecimal getLoadedActualHours() {
+    return loadedActualHours;
+  }
+
+  /*
+   * Called once the changes have been written to the database.
+   */
+  public void clearChangedFields() {
+    changedFields.clear();
+  }
+
+  /*
+   * Returns a copy with no changed fields. The material, step and category Lists
+   * are new Lists holding the same objects, so the copy can be edited without
+   * touching a project that is shared, such as one from the project cache.
+   */
+  public synchronized Project copy() {
+    Project copy = new Project();
+
+    copy.projectId = projectId;
+    copy.projectName = projectName;
+    copy.estimatedHours = estimatedHours;
+    copy.actualHours = actualHours;
+    copy.difficulty = difficulty;
+    copy.notes = notes;
+    copy.version = version;
+    copy.materials.addAll(materials);
+    copy.steps.addAll(steps);
+    copy.categories.addAll(categories);
+    copy.deferredChildren.addAll(deferredChildren);
+    copy.childLoader = childLoader;
+
+    return copy;
+  }
+
+  /*
+   * Fills the child List from the loader if it is still deferred. If the loader
+   * throws, the List stays deferred and the next access tries again.
+   */
+  private void loadIfDeferred(ProjectChild child) {
+    if(Objects.isNull(childLoader)) {
+      return;
+    }
+
+    synchronized(this) {
+      if(!deferredChildren.contains(child)) {
+        return;
+      }
+
+      switch(child) {
+        case MATERIALS:
+          materials.addAll(childLoader.loadMaterials(projectId));
+          break;
+
+        case STEPS:
+          steps.addAll(childLoader.loadSteps(projectId));
+          break;
+
+        case CATEGORIES:
+          categories.addAll(childLoader.loadCategories(projectId));
+          break;
+      }
+
+      deferredChildren.remove(child);
+
+      if(deferredChildren.isEmpty()) {
+        childLoader = null;
+      }
+    }
+  }
+
+  /*
+   * BigDecimal values are compared with compareTo, so 4.0 and 4.00 are not a
+   * change.
+   */
+  private void markChanged(String field, Object oldValue, Object newValue) {
+    boolean same = oldValue instanceof BigDecimal && newValue instanceof BigDecimal
+        ? ((BigDecimal)oldValue).compareTo((BigDecimal)newValue) == 0
+        : Objects.equals(oldValue, newValue);
+
+    if(!same) {
+      changedFields.add(field);
+    }
+  }
+
+  /*
+   * Child Lists that have not been loaded are shown as not loaded rather than
+   * loaded here, so printing a project never runs a query.
+   */
   @Override
-  public String toString() {
+  public synchronized String toString() {
     String result = "";
     
     result += "\n   ID=" + projectId;
@@ -94,19 +275,19 @@ public class Project {
     result += "\n   difficulty=" + difficulty;
     result += "\n   notes=" + notes;
     
-    result += "\n   Materials:";
+    result += "\n   Materials:" + (isLoaded(ProjectChild.MATERIALS) ? "" : " (not loaded)");
     
     for(Material material : materials) {
       result += "\n      " + material;
     }
     
-    result += "\n   Steps:";
+    result += "\n   Steps:" + (isLoaded(ProjectChild.STEPS) ? "" : " (not loaded)");
     
     for(Step step : steps) {
       result += "\n      " + step;
     }
     
-    result += "\n   Categories:";
+    result += "\n   Categories:" + (isLoaded(ProjectChild.CATEGORIES) ? "" : " (not loaded)");
     
     for(Category category : categories) {
       result += "\n      " + category;
@@ -0,0 +1,11 @@
+/**
+ * 
+ */
+package projects.entity;
+
+/**
+ * The child collections of a {@link Project}, each loaded from its own table.
+ */
+public enum ProjectChild {
+  MATERIALS, STEPS, CATEGORIES
+}
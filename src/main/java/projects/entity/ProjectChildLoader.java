@@ -0,0 +1,19 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.util.List;
+
+/**
+ * Loads a child collection of a project that was not fetched with it. A project holds its loader
+ * until every deferred collection has been loaded, and calls it on the first access to each one.
+ * Each call reads the data committed at that time, not the snapshot the project was read from.
+ */
+public interface ProjectChildLoader {
+  List<Material> loadMaterials(Integer projectId);
+
+  List<Step> loadSteps(Integer projectId);
+
+  List<Category> loadCategories(Integer projectId);
+}
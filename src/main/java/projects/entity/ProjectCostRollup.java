@@ -0,0 +1,46 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * A row of the project_cost_rollup table: the number of materials of a project and their total
+ * cost (num_required * cost), kept current by database triggers.
+ */
+public class ProjectCostRollup {
+  private Integer projectId;
+  private Integer materialCount;
+  private BigDecimal materialCost;
+
+  public Integer getProjectId() {
+    return projectId;
+  }
+
+  public void setProjectId(Integer projectId) {
+    this.projectId = projectId;
+  }
+
+  public Integer getMaterialCount() {
+    return materialCount;
+  }
+
+  public void setMaterialCount(Integer materialCount) {
+    this.materialCount = materialCount;
+  }
+
+  public BigDecimal getMaterialCost() {
+    return materialCost;
+  }
+
+  public void setMaterialCost(BigDecimal materialCost) {
+    this.materialCost = materialCost;
+  }
+
+  @Override
+  public String toString() {
+    return "projectId=" + projectId + ", materialCount=" + materialCount + ", materialCost="
+        + materialCost;
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.util.Objects;
+
+/**
+ * Counters over the projects that have not been deleted and their steps. Adding, modifying or
+ * deleting a project, or adding a step, changes at least one of them, so a search index saved
+ * with the stamp of the data it was built from can tell whether that data has changed since.
+ */
+public class ProjectStamp {
+  private Long projectCount;
+  private Long maxProjectId;
+  private Long versionSum;
+  private Long stepCount;
+  private Long maxStepId;
+
+  public ProjectStamp() {
+  }
+
+  public ProjectStamp(long projectCount, long maxProjectId, long versionSum, long stepCount,
+      long maxStepId) {
+    this.projectCount = projectCount;
+    this.maxProjectId = maxProjectId;
+    this.versionSum = versionSum;
+    this.stepCount = stepCount;
+    this.maxStepId = maxStepId;
+  }
+
+  public Long getProjectCount() {
+    return projectCount;
+  }
+
+  public void setProjectCount(Long projectCount) {
+    this.projectCount = projectCount;
+  }
+
+  public Long getMaxProjectId() {
+    return maxProjectId;
+  }
+
+  public void setMaxProjectId(Long maxProjectId) {
+    this.maxProjectId = maxProjectId;
+  }
+
+  public Long getVersionSum() {
+    return versionSum;
+  }
+
+  public void setVersionSum(Long versionSum) {
+    this.versionSum = versionSum;
+  }
+
+  public Long getStepCount() {
+    return stepCount;
+  }
+
+  public void setStepCount(Long stepCount) {
+    this.stepCount = stepCount;
+  }
+
+  public Long getMaxStepId() {
+    return maxStepId;
+  }
+
+  public void setMaxStepId(Long maxStepId) {
+    this.maxStepId = maxStepId;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+
+    if (!(other instanceof ProjectStamp)) {
+      return false;
+    }
+
+    ProjectStamp stamp = (ProjectStamp) other;
+    return Objects.equals(projectCount, stamp.projectCount)
+        && Objects.equals(maxProjectId, stamp.maxProjectId)
+        && Objects.equals(versionSum, stamp.versionSum) && Objects.equals(stepCount, stamp.stepCount)
+        && Objects.equals(maxStepId, stamp.maxStepId);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(projectCount, maxProjectId, versionSum, stepCount, maxStepId);
+  }
+
+  @Override
+  public String toString() {
+    return "projectCount=" + projectCount + ", maxProjectId=" + maxProjectId + ", versionSum="
+        + versionSum + ", stepCount=" + stepCount + ", maxStepId=" + maxStepId;
+  }
+}
@@ -0,0 +1,52 @@
+package projects.exception;
+
+import java.math.BigDecimal;
+
+/*
+ * Thrown when a project update is rejected because another editor saved the
+ * project first, so its version in the database no longer matches the version
+ * the update was based on, or because hours were logged on it since it was
+ * read and the update replaces the actual hours.
+ */
+@SuppressWarnings("serial")
+public class OptimisticLockException extends DbException {
+
+	private final Integer projectId;
+	private final Integer expectedVersion;
+	private final Integer actualVersion;
+
+	public OptimisticLockException(Integer projectId, Integer expectedVersion, Integer actualVersion) {
+		super("Project with ID=" + projectId + " was changed by someone else (expected version " + expectedVersion
+				+ " but found " + actualVersion + ").");
+		this.projectId = projectId;
+		this.expectedVersion = expectedVersion;
+		this.actualVersion = actualVersion;
+	}
+
+	/*
+	 * Thrown when new actual hours are saved over hours that were logged since the
+	 * project was read. Logging hours does not change the version, so the
+	 * versions match and the hours are reported instead.
+	 */
+	public OptimisticLockException(Integer projectId, Integer version, BigDecimal expectedHours,
+			BigDecimal actualHours) {
+		super("Project with ID=" + projectId + " had hours logged by someone else (expected actual hours "
+				+ expectedHours + " but found " + actualHours + ").");
+		this.projectId = projectId;
+		this.expectedVersion = version;
+		this.actualVersion = version;
+	}
+
+	public Integer getProjectId() {
+		return projectId;
+	}
+
+	public Integer getExpectedVersion() {
+		return expectedVersion;
+	}
+
+	public Integer getActualVersion() {
+		return actualVersion;
+	}
+
+} // end CLASS
@@ -0,0 +1,288 @@
+package projects.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/*
+ * Reads projects from a CSV file. The first field of every row is the record
+ * type and the second is a key chosen by the file's author that ties the child
+ * rows to their project. The key is only used for grouping and is not stored.
+ *
+ * @formatter:off
+ *   project,<key>,<project name>,<estimated hours>,<actual hours>,<difficulty>,<notes>
+ *   material,<key>,<material name>,<number required>,<cost>
+ *   step,<key>,<step text>,<step order>
+ *   category,<key>,<category ID>
+ * @formatter:on
+ *
+ * Child rows must directly follow their project row. Empty fields are read as
+ * null. Fields may be quoted with double quotes, and a quoted field may contain
+ * commas, doubled quotes and line breaks. Blank lines and a header row whose
+ * first field is "type" are skipped.
+ *
+ * If any row of a project cannot be parsed, the whole project, with all of its
+ * rows, is returned as one rejected record.
+ */
+class CsvProjectSource implements ProjectSource {
+
+	private final BufferedReader reader;
+	private long line;
+
+	// The row read ahead of the current project, and the lines it came from.
+	private List<String> pending;
+	private long pendingFirstLine;
+	private long pendingLastLine;
+	private String pendingError;
+
+	/*
+	 * Skips the first skipLines physical lines, which were imported by an earlier
+	 * run.
+	 */
+	CsvProjectSource(BufferedReader reader, long skipLines) throws IOException {
+		this.reader = reader;
+
+		while (line < skipLines && reader.readLine() != null) {
+			line++;
+		}
+	} // end CONSTRUCTOR
+
+	@Override
+	public SourceRecord next() throws IOException {
+		if (Objects.isNull(pending) && !readAhead()) {
+			return null;
+		}
+
+		List<String> fields = pending;
+		long firstLine = pendingFirstLine;
+		long lastLine = pendingLastLine;
+		int rows = 1;
+		String error = pendingError;
+
+		if (!"project".equals(fields.get(0))) {
+			pending = null;
+			return SourceRecord.rejected(
+					"A " + fields.get(0) + " row must follow the project row it belongs to.", firstLine, lastLine, 1);
+		}
+
+		String key = field(fields, 1);
+		Project project = null;
+
+		try {
+			project = toProject(fields);
+		} catch (DbException e) {
+			error = e.getMessage();
+		}
+
+		while (readAhead() && !"project".equals(pending.get(0))) {
+			rows++;
+			lastLine = pendingLastLine;
+
+			if (Objects.nonNull(error)) {
+				continue;
+			}
+
+			if (Objects.nonNull(pendingError)) {
+				error = pendingError;
+				continue;
+			}
+
+			try {
+				if (!Objects.equals(key, field(pending, 1))) {
+					throw new DbException("The " + pending.get(0) + " row on line " + pendingFirstLine + " has key "
+							+ field(pending, 1) + " but follows project " + key + ".");
+				}
+
+				addChild(project, pending);
+			} catch (DbException e) {
+				error = e.getMessage();
+			}
+		}
+
+		if (Objects.nonNull(error)) {
+			return SourceRecord.rejected(error, firstLine, lastLine, rows);
+		}
+		return SourceRecord.parsed(project, firstLine, lastLine, rows);
+	} // end next
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	} // end close
+
+	/*
+	 * Reads the next non-blank, non-header row into pending. Returns false at the
+	 * end of the input.
+	 */
+	private boolean readAhead() throws IOException {
+		pending = null;
+		pendingError = null;
+
+		while (Objects.isNull(pending)) {
+			String text = reader.readLine();
+
+			if (Objects.isNull(text)) {
+				return false;
+			}
+
+			line++;
+			pendingFirstLine = line;
+
+			if (text.isBlank()) {
+				continue;
+			}
+
+			List<String> fields = parseRow(text);
+			pendingLastLine = line;
+
+			if (!"type".equals(fields.get(0))) {
+				pending = fields;
+			}
+		}
+		return true;
+	} // end readAhead
+
+	/*
+	 * Splits one CSV row into fields. Reads further lines while a quoted field is
+	 * still open. A quote still open at the end of the input sets pendingError.
+	 */
+	private List<String> parseRow(String text) throws IOException {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean wasQuoted = false;
+		int pos = 0;
+
+		while (true) {
+			if (pos == text.length()) {
+				if (!quoted) {
+					break;
+				}
+
+				String nextLine = reader.readLine();
+
+				if (Objects.isNull(nextLine)) {
+					pendingError = "Unclosed quote in the row starting on line " + pendingFirstLine + ".";
+					break;
+				}
+
+				line++;
+				field.append('\n');
+				text = nextLine;
+				pos = 0;
+				continue;
+			}
+
+			char c = text.charAt(pos++);
+
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (pos < text.length() && text.charAt(pos) == '"') {
+					field.append('"');
+					pos++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+				wasQuoted = true;
+			} else if (c == ',') {
+				fields.add(toField(field, wasQuoted));
+				field.setLength(0);
+				wasQuoted = false;
+			} else {
+				field.append(c);
+			}
+		}
+
+		fields.add(toField(field, wasQuoted));
+		return fields;
+	} // end parseRow
+
+	/*
+	 * Unquoted fields are trimmed and an empty unquoted field is null.
+	 */
+	private String toField(StringBuilder field, boolean wasQuoted) {
+		if (wasQuoted) {
+			return field.toString();
+		}
+
+		String value = field.toString().trim();
+		return value.isEmpty() ? null : value;
+	} // end toField
+
+	private Project toProject(List<String> fields) {
+		Project project = new Project();
+
+		project.setProjectName(field(fields, 2));
+		project.setEstimatedHours(decimalField(fields, 3, "estimated hours"));
+		project.setActualHours(decimalField(fields, 4, "actual hours"));
+		project.setDifficulty(intField(fields, 5, "difficulty"));
+		project.setNotes(field(fields, 6));
+
+		return project;
+	} // end toProject
+
+	private void addChild(Project project, List<String> fields) {
+		switch (String.valueOf(fields.get(0))) {
+		case "material":
+			Material material = new Material();
+			material.setMaterialName(field(fields, 2));
+			material.setNumRequired(intField(fields, 3, "number required"));
+			material.setCost(decimalField(fields, 4, "cost"));
+			project.getMaterials().add(material);
+			break;
+
+		case "step":
+			Step step = new Step();
+			step.setStepText(field(fields, 2));
+			step.setStepOrder(intField(fields, 3, "step order"));
+			project.getSteps().add(step);
+			break;
+
+		case "category":
+			Category category = new Category();
+			category.setCategoryId(intField(fields, 2, "category ID"));
+			project.getCategories().add(category);
+			break;
+
+		default:
+			throw new DbException(fields.get(0) + " on line " + pendingFirstLine + " is not a valid row type.");
+		}
+	} // end addChild
+
+	private String field(List<String> fields, int index) {
+		return index < fields.size() ? fields.get(index) : null;
+	} // end field
+
+	private Integer intField(List<String> fields, int index, String name) {
+		String value = field(fields, index);
+
+		try {
+			return Objects.isNull(value) ? null : Integer.valueOf(value);
+		} catch (NumberFormatException e) {
+			throw new DbException(value + " is not a valid number for " + name + ".");
+		}
+	} // end intField
+
+	private BigDecimal decimalField(List<String> fields, int index, String name) {
+		String value = field(fields, index);
+
+		try {
+			return Objects.isNull(value) ? null : new BigDecimal(value);
+		} catch (NumberFormatException e) {
+			throw new DbException(value + " is not a valid decimal number for " + name + ".");
+		}
+	} // end decimalField
+
+} // end CLASS
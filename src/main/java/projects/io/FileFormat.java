@@ -0,0 +1,39 @@
+package projects.io;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+import projects.exception.DbException;
+
+/*
+ * The file formats read by the ProjectImporter class and written by the
+ * ProjectExporter class.
+ */
+public enum FileFormat {
+
+	// One row per project, material, step or category assignment. Child rows
+	// follow the project row they belong to.
+	CSV,
+
+	// One JSON object per line, holding a project with nested materials, steps and
+	// categories.
+	NDJSON;
+
+	/*
+	 * Picks the format from the file extension: .csv, or .ndjson / .jsonl.
+	 */
+	public static FileFormat fromFileName(Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+
+		if (name.endsWith(".csv")) {
+			return CSV;
+		}
+
+		if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+			return NDJSON;
+		}
+
+		throw new DbException("Cannot tell the file format of " + file + ". Use a .csv, .ndjson or .jsonl file.");
+	} // end fromFileName
+
+} // end ENUM
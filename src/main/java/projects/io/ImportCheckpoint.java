@@ -0,0 +1,93 @@
+package projects.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import projects.exception.DbException;
+
+/*
+ * How far an import has got, saved after every committed chunk so an import that
+ * stops part way can be run again and carry on after the last committed project.
+ *
+ * The file is a small properties file. It is written to a temporary file first
+ * and then moved into place, so a crash never leaves a half-written checkpoint.
+ */
+class ImportCheckpoint {
+
+	private final long line;
+	private final long projectsImported;
+	private final long rowsRead;
+	private final long rowsRejected;
+
+	ImportCheckpoint(long line, long projectsImported, long rowsRead, long rowsRejected) {
+		this.line = line;
+		this.projectsImported = projectsImported;
+		this.rowsRead = rowsRead;
+		this.rowsRejected = rowsRejected;
+	}
+
+	/*
+	 * Reads the checkpoint file, or returns an empty checkpoint if there is none.
+	 */
+	static ImportCheckpoint load(Path file) {
+		if (!Files.exists(file)) {
+			return new ImportCheckpoint(0, 0, 0, 0);
+		}
+
+		Properties properties = new Properties();
+
+		try (Reader reader = Files.newBufferedReader(file)) {
+			properties.load(reader);
+
+			return new ImportCheckpoint(Long.parseLong(properties.getProperty("line")),
+					Long.parseLong(properties.getProperty("projectsImported")),
+					Long.parseLong(properties.getProperty("rowsRead")),
+					Long.parseLong(properties.getProperty("rowsRejected")));
+		} catch (IOException | RuntimeException e) {
+			throw new DbException("Unable to read the import checkpoint " + file, e);
+		}
+	} // end load
+
+	void save(Path file) {
+		Properties properties = new Properties();
+
+		properties.setProperty("line", Long.toString(line));
+		properties.setProperty("projectsImported", Long.toString(projectsImported));
+		properties.setProperty("rowsRead", Long.toString(rowsRead));
+		properties.setProperty("rowsRejected", Long.toString(rowsRejected));
+
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try {
+			try (Writer writer = Files.newBufferedWriter(temp)) {
+				properties.store(writer, "Project import checkpoint");
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new DbException("Unable to write the import checkpoint " + file, e);
+		}
+	} // end save
+
+	// Number of input lines already imported or rejected.
+	long getLine() {
+		return line;
+	}
+
+	long getProjectsImported() {
+		return projectsImported;
+	}
+
+	long getRowsRead() {
+		return rowsRead;
+	}
+
+	long getRowsRejected() {
+		return rowsRejected;
+	}
+
+} // end CLASS
@@ -0,0 +1,87 @@
+package projects.io;
+
+import java.util.List;
+
+/*
+ * The result of a ProjectImporter run. The project and row counts include any
+ * earlier runs that were resumed from a checkpoint; the elapsed time and rows
+ * per second cover this run only.
+ */
+public class ImportReport {
+
+	private final long projectsImported;
+	private final long rowsRead;
+	private final long rowsRejected;
+	private final long resumedFromLine;
+	private final long rowsReadThisRun;
+	private final long elapsedNanos;
+	private final List<String> rejections;
+
+	public ImportReport(long projectsImported, long rowsRead, long rowsRejected, long resumedFromLine,
+			long rowsReadThisRun, long elapsedNanos, List<String> rejections) {
+		this.projectsImported = projectsImported;
+		this.rowsRead = rowsRead;
+		this.rowsRejected = rowsRejected;
+		this.resumedFromLine = resumedFromLine;
+		this.rowsReadThisRun = rowsReadThisRun;
+		this.elapsedNanos = elapsedNanos;
+		this.rejections = List.copyOf(rejections);
+	}
+
+	public long getProjectsImported() {
+		return projectsImported;
+	}
+
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	public long getRowsRejected() {
+		return rowsRejected;
+	}
+
+	// Lines skipped because an earlier run had already imported them. 0 for a
+	// fresh import.
+	public long getResumedFromLine() {
+		return resumedFromLine;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1_000_000;
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0 : rowsReadThisRun * 1_000_000_000.0 / elapsedNanos;
+	}
+
+	/*
+	 * The reason each rejected project was rejected, with its line numbers. Only the
+	 * first rejections of a run are kept, so the report stays small for large files.
+	 */
+	public List<String> getRejections() {
+		return rejections;
+	}
+
+	@Override
+	public String toString() {
+		String result = "";
+
+		result += "\n   projectsImported=" + projectsImported;
+		result += "\n   rowsRead=" + rowsRead;
+		result += "\n   rowsRejected=" + rowsRejected;
+
+		if (resumedFromLine > 0) {
+			result += "\n   resumedFromLine=" + resumedFromLine;
+		}
+
+		result += "\n   elapsedMillis=" + getElapsedMillis();
+		result += "\n   rowsPerSecond=" + String.format("%.1f", getRowsPerSecond());
+
+		for (String rejection : rejections) {
+			result += "\n      " + rejection;
+		}
+
+		return result;
+	}
+
+} // end CLASS
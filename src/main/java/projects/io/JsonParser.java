@@ -0,0 +1,239 @@
+package projects.io;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import projects.exception.DbException;
+
+/*
+ * A small JSON parser for the NDJSON importer, so the project does not need a
+ * JSON library. Objects become a Map, arrays a List, numbers a BigDecimal,
+ * strings a String, true/false a Boolean and null becomes null.
+ */
+class JsonParser {
+
+	private final String text;
+	private int pos;
+
+	private JsonParser(String text) {
+		this.text = text;
+	}
+
+	/*
+	 * Parses one complete JSON value. Throws a DbException if the text is not
+	 * valid JSON or has anything but whitespace after the value.
+	 */
+	static Object parse(String text) {
+		JsonParser parser = new JsonParser(text);
+		Object value = parser.readValue();
+		parser.skipWhitespace();
+
+		if (parser.pos < text.length()) {
+			throw parser.error("Unexpected text after the JSON value");
+		}
+		return value;
+	} // end parse
+
+	private Object readValue() {
+		skipWhitespace();
+
+		if (pos >= text.length()) {
+			throw error("Unexpected end of line");
+		}
+
+		char c = text.charAt(pos);
+
+		switch (c) {
+		case '{':
+			return readObject();
+
+		case '[':
+			return readArray();
+
+		case '"':
+			return readString();
+
+		case 't':
+			return readLiteral("true", Boolean.TRUE);
+
+		case 'f':
+			return readLiteral("false", Boolean.FALSE);
+
+		case 'n':
+			return readLiteral("null", null);
+
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				return readNumber();
+			}
+			throw error("Unexpected character '" + c + "'");
+		}
+	} // end readValue
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> object = new LinkedHashMap<>();
+		pos++;
+		skipWhitespace();
+
+		if (peek() == '}') {
+			pos++;
+			return object;
+		}
+
+		while (true) {
+			skipWhitespace();
+
+			if (peek() != '"') {
+				throw error("Expected a field name");
+			}
+
+			String name = readString();
+			expect(':');
+			object.put(name, readValue());
+			skipWhitespace();
+
+			if (peek() == ',') {
+				pos++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+	} // end readObject
+
+	private List<Object> readArray() {
+		List<Object> array = new ArrayList<>();
+		pos++;
+		skipWhitespace();
+
+		if (peek() == ']') {
+			pos++;
+			return array;
+		}
+
+		while (true) {
+			array.add(readValue());
+			skipWhitespace();
+
+			if (peek() == ',') {
+				pos++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+	} // end readArray
+
+	private String readString() {
+		StringBuilder value = new StringBuilder();
+		pos++;
+
+		while (pos < text.length()) {
+			char c = text.charAt(pos++);
+
+			if (c == '"') {
+				return value.toString();
+			}
+
+			if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+
+			if (pos >= text.length()) {
+				break;
+			}
+
+			char escape = text.charAt(pos++);
+
+			switch (escape) {
+			case 'b':
+				value.append('\b');
+				break;
+
+			case 'f':
+				value.append('\f');
+				break;
+
+			case 'n':
+				value.append('\n');
+				break;
+
+			case 'r':
+				value.append('\r');
+				break;
+
+			case 't':
+				value.append('\t');
+				break;
+
+			case 'u':
+				if (pos + 4 > text.length()) {
+					throw error("Incomplete unicode escape");
+				}
+
+				try {
+					value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				} catch (NumberFormatException e) {
+					throw error("Invalid unicode escape");
+				}
+				pos += 4;
+				break;
+
+			default:
+				value.append(escape);
+			}
+		}
+		throw error("Unclosed string");
+	} // end readString
+
+	private BigDecimal readNumber() {
+		int start = pos;
+
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+			pos++;
+		}
+
+		try {
+			return new BigDecimal(text.substring(start, pos));
+		} catch (NumberFormatException e) {
+			throw error("Invalid number " + text.substring(start, pos));
+		}
+	} // end readNumber
+
+	private Object readLiteral(String literal, Object value) {
+		if (!text.startsWith(literal, pos)) {
+			throw error("Unexpected text");
+		}
+
+		pos += literal.length();
+		return value;
+	} // end readLiteral
+
+	private void expect(char expected) {
+		skipWhitespace();
+
+		if (peek() != expected) {
+			throw error("Expected '" + expected + "'");
+		}
+		pos++;
+	} // end expect
+
+	private char peek() {
+		return pos < text.length() ? text.charAt(pos) : 0;
+	} // end peek
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	} // end skipWhitespace
+
+	private DbException error(String message) {
+		return new DbException(message + " at column " + (pos + 1) + ".");
+	} // end error
+
+} // end CLASS
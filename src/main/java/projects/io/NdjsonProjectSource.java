@@ -0,0 +1,169 @@
+package projects.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/*
+ * Reads projects from a newline-delimited JSON file, one project per line. The
+ * field names are the same as the entity fields:
+ *
+ * @formatter:off
+ *   {"projectName": "Hang a door", "estimatedHours": 4, "actualHours": 3.5,
+ *    "difficulty": 2, "notes": "...",
+ *    "materials": [{"materialName": "2-inch screws", "numRequired": 20, "cost": 4.00}],
+ *    "steps": [{"stepText": "Screw door hangers on the top and bottom", "stepOrder": 1}],
+ *    "categories": [{"categoryId": 1}]}
+ * @formatter:on
+ *
+ * (shown across several lines here, but each project must be on one line).
+ * Category IDs may also be given as plain numbers, e.g. "categories": [1, 3].
+ * Missing fields are null. Blank lines are skipped.
+ */
+class NdjsonProjectSource implements ProjectSource {
+
+	private final BufferedReader reader;
+	private long line;
+
+	/*
+	 * Skips the first skipLines lines, which were imported by an earlier run.
+	 */
+	NdjsonProjectSource(BufferedReader reader, long skipLines) throws IOException {
+		this.reader = reader;
+
+		while (line < skipLines && reader.readLine() != null) {
+			line++;
+		}
+	} // end CONSTRUCTOR
+
+	@Override
+	public SourceRecord next() throws IOException {
+		String text;
+
+		do {
+			text = reader.readLine();
+
+			if (Objects.isNull(text)) {
+				return null;
+			}
+			line++;
+		} while (text.isBlank());
+
+		try {
+			return SourceRecord.parsed(toProject(JsonParser.parse(text)), line, line, 1);
+		} catch (DbException e) {
+			return SourceRecord.rejected(e.getMessage(), line, line, 1);
+		}
+	} // end next
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	} // end close
+
+	private Project toProject(Object json) {
+		Map<String, Object> fields = asObject(json, "project");
+		Project project = new Project();
+
+		project.setProjectName(stringField(fields, "projectName"));
+		project.setEstimatedHours(decimalField(fields, "estimatedHours"));
+		project.setActualHours(decimalField(fields, "actualHours"));
+		project.setDifficulty(intField(fields, "difficulty"));
+		project.setNotes(stringField(fields, "notes"));
+
+		for (Object item : arrayField(fields, "materials")) {
+			Map<String, Object> materialFields = asObject(item, "material");
+			Material material = new Material();
+
+			material.setMaterialName(stringField(materialFields, "materialName"));
+			material.setNumRequired(intField(materialFields, "numRequired"));
+			material.setCost(decimalField(materialFields, "cost"));
+			project.getMaterials().add(material);
+		}
+
+		for (Object item : arrayField(fields, "steps")) {
+			Map<String, Object> stepFields = asObject(item, "step");
+			Step step = new Step();
+
+			step.setStepText(stringField(stepFields, "stepText"));
+			step.setStepOrder(intField(stepFields, "stepOrder"));
+			project.getSteps().add(step);
+		}
+
+		for (Object item : arrayField(fields, "categories")) {
+			Category category = new Category();
+
+			if (item instanceof BigDecimal) {
+				category.setCategoryId(toInteger((BigDecimal) item, "categories"));
+			} else {
+				category.setCategoryId(intField(asObject(item, "category"), "categoryId"));
+			}
+			project.getCategories().add(category);
+		}
+
+		return project;
+	} // end toProject
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> asObject(Object value, String name) {
+		if (!(value instanceof Map)) {
+			throw new DbException("Each " + name + " must be a JSON object.");
+		}
+		return (Map<String, Object>) value;
+	} // end asObject
+
+	@SuppressWarnings("unchecked")
+	private List<Object> arrayField(Map<String, Object> fields, String name) {
+		Object value = fields.get(name);
+
+		if (Objects.isNull(value)) {
+			return List.of();
+		}
+
+		if (!(value instanceof List)) {
+			throw new DbException(name + " must be a JSON array.");
+		}
+		return (List<Object>) value;
+	} // end arrayField
+
+	private String stringField(Map<String, Object> fields, String name) {
+		Object value = fields.get(name);
+
+		if (Objects.nonNull(value) && !(value instanceof String)) {
+			throw new DbException(name + " must be a string.");
+		}
+		return (String) value;
+	} // end stringField
+
+	private BigDecimal decimalField(Map<String, Object> fields, String name) {
+		Object value = fields.get(name);
+
+		if (Objects.nonNull(value) && !(value instanceof BigDecimal)) {
+			throw new DbException(name + " must be a number.");
+		}
+		return (BigDecimal) value;
+	} // end decimalField
+
+	private Integer intField(Map<String, Object> fields, String name) {
+		BigDecimal value = decimalField(fields, name);
+		return Objects.isNull(value) ? null : toInteger(value, name);
+	} // end intField
+
+	private Integer toInteger(BigDecimal value, String name) {
+		try {
+			return value.intValueExact();
+		} catch (ArithmeticException e) {
+			throw new DbException(value + " is not a valid whole number for " + name + ".");
+		}
+	} // end toInteger
+
+} // end CLASS
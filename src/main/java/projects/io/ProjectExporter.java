@@ -0,0 +1,226 @@
+package projects.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+import projects.service.ProjectService;
+
+/*
+ * Writes every project, with its materials, steps and categories, to a CSV or
+ * NDJSON file in the layouts read by the ProjectImporter class, so an export can
+ * be imported again. See CsvProjectSource and NdjsonProjectSource for the
+ * layouts.
+ *
+ * Projects come from the exportProjectsService method in the ProjectService
+ * class, which streams them from the database one at a time, and each project
+ * is written as soon as it arrives. Memory use does not grow with the number of
+ * projects.
+ *
+ * The CSV key of each project is its project ID. The NDJSON output also carries
+ * the project, material, step and category IDs, which the importer ignores.
+ */
+public class ProjectExporter {
+
+	private final ProjectService projectService;
+
+	public ProjectExporter(ProjectService projectService) {
+		this.projectService = projectService;
+	}
+
+	/*
+	 * Exports to the file, picking the format from its extension. An existing file
+	 * is replaced. Returns the number of projects written.
+	 */
+	public long exportFile(Path file) {
+		FileFormat format = FileFormat.fromFileName(file);
+
+		try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+			return export(writer, format);
+		} catch (IOException e) {
+			throw new DbException("Unable to write " + file, e);
+		}
+	} // end exportFile
+
+	/*
+	 * Exports to the writer in the given format. The writer is not closed. Returns
+	 * the number of projects written.
+	 * 
+	 * Throws a DbException if the export fails. The cause is an
+	 * UncheckedIOException if writing failed.
+	 */
+	public long export(Writer writer, FileFormat format) {
+		return projectService.exportProjectsService(project -> {
+			try {
+				if (format == FileFormat.CSV) {
+					writeCsv(writer, project);
+				} else {
+					writeNdjson(writer, project);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	} // end export
+
+	private void writeCsv(Writer writer, Project project) throws IOException {
+		String key = String.valueOf(project.getProjectId());
+
+		writeCsvRow(writer, "project", key, project.getProjectName(), project.getEstimatedHours(),
+				project.getActualHours(), project.getDifficulty(), project.getNotes());
+
+		for (Material material : project.getMaterials()) {
+			writeCsvRow(writer, "material", key, material.getMaterialName(), material.getNumRequired(),
+					material.getCost());
+		}
+
+		for (Step step : project.getSteps()) {
+			writeCsvRow(writer, "step", key, step.getStepText(), step.getStepOrder());
+		}
+
+		// The category name is not read back by the importer. It is only written so
+		// the file is readable.
+		for (Category category : project.getCategories()) {
+			writeCsvRow(writer, "category", key, category.getCategoryId(), category.getCategoryName());
+		}
+	} // end writeCsv
+
+	/*
+	 * Writes one row. Null values are written as empty fields. Text is quoted if it
+	 * is empty or holds a comma, quote, line break or leading or trailing space,
+	 * so it reads back exactly.
+	 */
+	private void writeCsvRow(Writer writer, Object... values) throws IOException {
+		for (int index = 0; index < values.length; index++) {
+			if (index > 0) {
+				writer.write(',');
+			}
+
+			Object value = values[index];
+
+			if (Objects.isNull(value)) {
+				continue;
+			}
+
+			String text = value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+
+			if (text.isEmpty() || !text.strip().equals(text) || text.indexOf(',') >= 0 || text.indexOf('"') >= 0
+					|| text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+				writer.write('"');
+				writer.write(text.replace("\"", "\"\""));
+				writer.write('"');
+			} else {
+				writer.write(text);
+			}
+		}
+
+		writer.write('\n');
+	} // end writeCsvRow
+
+	private void writeNdjson(Writer writer, Project project) throws IOException {
+		StringBuilder json = new StringBuilder(256);
+
+		json.append('{');
+		appendField(json, "projectId", project.getProjectId()).append(',');
+		appendField(json, "projectName", project.getProjectName()).append(',');
+		appendField(json, "estimatedHours", project.getEstimatedHours()).append(',');
+		appendField(json, "actualHours", project.getActualHours()).append(',');
+		appendField(json, "difficulty", project.getDifficulty()).append(',');
+		appendField(json, "notes", project.getNotes());
+
+		json.append(",\"materials\":[");
+
+		for (Material material : project.getMaterials()) {
+			json.append(json.charAt(json.length() - 1) == '[' ? "{" : ",{");
+			appendField(json, "materialId", material.getMaterialId()).append(',');
+			appendField(json, "materialName", material.getMaterialName()).append(',');
+			appendField(json, "numRequired", material.getNumRequired()).append(',');
+			appendField(json, "cost", material.getCost()).append('}');
+		}
+
+		json.append("],\"steps\":[");
+
+		for (Step step : project.getSteps()) {
+			json.append(json.charAt(json.length() - 1) == '[' ? "{" : ",{");
+			appendField(json, "stepId", step.getStepId()).append(',');
+			appendField(json, "stepText", step.getStepText()).append(',');
+			appendField(json, "stepOrder", step.getStepOrder()).append('}');
+		}
+
+		json.append("],\"categories\":[");
+
+		for (Category category : project.getCategories()) {
+			json.append(json.charAt(json.length() - 1) == '[' ? "{" : ",{");
+			appendField(json, "categoryId", category.getCategoryId()).append(',');
+			appendField(json, "categoryName", category.getCategoryName()).append('}');
+		}
+
+		json.append("]}\n");
+		writer.write(json.toString());
+	} // end writeNdjson
+
+	private StringBuilder appendField(StringBuilder json, String name, Object value) {
+		json.append('"').append(name).append("\":");
+
+		if (Objects.isNull(value)) {
+			return json.append("null");
+		}
+
+		if (value instanceof BigDecimal) {
+			return json.append(((BigDecimal) value).toPlainString());
+		}
+
+		if (value instanceof Number) {
+			return json.append(value);
+		}
+
+		String text = value.toString();
+		json.append('"');
+
+		for (int index = 0; index < text.length(); index++) {
+			char c = text.charAt(index);
+
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+
+			case '\\':
+				json.append("\\\\");
+				break;
+
+			case '\n':
+				json.append("\\n");
+				break;
+
+			case '\r':
+				json.append("\\r");
+				break;
+
+			case '\t':
+				json.append("\\t");
+				break;
+
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+
+		return json.append('"');
+	} // end appendField
+
+} // end CLASS
@@ -0,0 +1,180 @@
+package projects.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import projects.entity.Project;
+import projects.exception.DbException;
+import projects.service.ProjectService;
+import projects.service.ProjectValidator;
+
+/*
+ * Imports projects, with their materials, steps and category assignments, from a
+ * CSV or NDJSON file. The file is read one project at a time, so memory use is
+ * limited to one chunk of projects however large the file is.
+ *
+ * Every project is checked with ProjectValidator. A project that cannot be
+ * parsed or is not valid is rejected with all of its rows and the import
+ * carries on. Valid projects are collected into chunks of chunkSize projects
+ * and each chunk is inserted with batched multi-row INSERTs and committed in one
+ * transaction by the addProjects method in the ProjectService class.
+ *
+ * After each commit a checkpoint file is written next to the input. If the
+ * import stops, for example because the database goes away or a category ID
+ * does not exist, running it again skips the lines that were already imported.
+ * The checkpoint is deleted when the import finishes.
+ */
+public class ProjectImporter {
+
+	private static final int DEFAULT_CHUNK_SIZE = 500;
+
+	// Most rejection reasons kept in the ImportReport.
+	private static final int MAX_REPORTED_REJECTIONS = 100;
+
+	private final ProjectService projectService;
+	private final int chunkSize;
+
+	public ProjectImporter(ProjectService projectService) {
+		this(projectService, DEFAULT_CHUNK_SIZE);
+	}
+
+	public ProjectImporter(ProjectService projectService, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be at least 1");
+		}
+
+		this.projectService = projectService;
+		this.chunkSize = chunkSize;
+	} // end CONSTRUCTOR
+
+	/*
+	 * Imports the file, picking the format from its extension. The checkpoint is
+	 * kept in <file>.checkpoint.
+	 */
+	public ImportReport importFile(Path file) {
+		return importFile(file, FileFormat.fromFileName(file),
+				file.resolveSibling(file.getFileName() + ".checkpoint"));
+	} // end importFile
+
+	/*
+	 * Imports the file in the given format, resuming from the checkpoint file if it
+	 * exists.
+	 * 
+	 * Throws a DbException if the file cannot be read or a chunk cannot be
+	 * inserted. Chunks committed before the failure stay in the database and are
+	 * skipped by the next run.
+	 */
+	public ImportReport importFile(Path file, FileFormat format, Path checkpointFile) {
+		long start = System.nanoTime();
+		ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile);
+
+		long projectsImported = checkpoint.getProjectsImported();
+		long rowsRead = checkpoint.getRowsRead();
+		long rowsRejected = checkpoint.getRowsRejected();
+		long lastLine = checkpoint.getLine();
+		List<String> rejections = new ArrayList<>();
+		List<Project> chunk = new ArrayList<>(chunkSize);
+
+		try (ProjectSource source = openSource(file, format, checkpoint.getLine())) {
+			SourceRecord record;
+
+			while (Objects.nonNull(record = source.next())) {
+				rowsRead += record.getRows();
+				lastLine = record.getLastLine();
+				String error = record.getError();
+
+				if (Objects.isNull(error)) {
+					try {
+						ProjectValidator.validateProject(record.getProject());
+						chunk.add(record.getProject());
+					} catch (DbException e) {
+						error = e.getMessage();
+					}
+				}
+
+				if (Objects.nonNull(error)) {
+					rowsRejected += record.getRows();
+
+					if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+						rejections.add(describeLines(record) + ": " + error);
+					}
+				}
+
+				if (chunk.size() == chunkSize) {
+					projectsImported += insertChunk(chunk, lastLine);
+					new ImportCheckpoint(lastLine, projectsImported, rowsRead, rowsRejected).save(checkpointFile);
+				}
+			}
+
+			projectsImported += insertChunk(chunk, lastLine);
+		} catch (IOException e) {
+			throw new DbException("Unable to read " + file + " after line " + lastLine, e);
+		}
+
+		deleteCheckpoint(checkpointFile);
+
+		return new ImportReport(projectsImported, rowsRead, rowsRejected, checkpoint.getLine(),
+				rowsRead - checkpoint.getRowsRead(), System.nanoTime() - start, rejections);
+	} // end importFile
+
+	private ProjectSource openSource(Path file, FileFormat format, long skipLines) throws IOException {
+		BufferedReader reader = Files.newBufferedReader(file);
+
+		try {
+			switch (format) {
+			case CSV:
+				return new CsvProjectSource(reader, skipLines);
+
+			case NDJSON:
+				return new NdjsonProjectSource(reader, skipLines);
+
+			default:
+				throw new DbException("Unsupported import format " + format);
+			}
+		} catch (IOException | RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+	} // end openSource
+
+	/*
+	 * Inserts and commits the chunk in one transaction, then clears it. Returns the
+	 * number of projects inserted.
+	 */
+	private int insertChunk(List<Project> chunk, long lastLine) {
+		if (chunk.isEmpty()) {
+			return 0;
+		}
+
+		try {
+			int inserted = projectService.addProjects(chunk, chunk.size());
+			chunk.clear();
+			return inserted;
+		} catch (DbException e) {
+			throw new DbException("Import stopped in the chunk ending on line " + lastLine
+					+ ". Run the import again to resume after the last committed chunk.", e);
+		}
+	} // end insertChunk
+
+	private void deleteCheckpoint(Path checkpointFile) {
+		try {
+			Files.deleteIfExists(checkpointFile);
+		} catch (IOException e) {
+			throw new DbException("The import finished but the checkpoint " + checkpointFile
+					+ " could not be deleted. Delete it before importing the file again.", e);
+		}
+	} // end deleteCheckpoint
+
+	private String describeLines(SourceRecord record) {
+		if (record.getFirstLine() == record.getLastLine()) {
+			return "line " + record.getFirstLine();
+		}
+		return "lines " + record.getFirstLine() + "-" + record.getLastLine();
+	} // end describeLines
+
+} // end CLASS
@@ -0,0 +1,19 @@
+package projects.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * Reads projects, one complete project with its children at a time, from an
+ * import file. Only the current record is held in memory.
+ */
+interface ProjectSource extends Closeable {
+
+	/*
+	 * Returns the next record, or null at the end of the input. A record that
+	 * cannot be parsed is returned with an error instead of a project, and reading
+	 * continues with the record after it.
+	 */
+	SourceRecord next() throws IOException;
+
+} // end INTERFACE
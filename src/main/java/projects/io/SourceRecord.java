@@ -0,0 +1,55 @@
+package projects.io;
+
+import projects.entity.Project;
+
+/*
+ * One project read by a ProjectSource, with the input lines it came from. If
+ * the lines could not be parsed, project is null and error says why.
+ */
+class SourceRecord {
+
+	private final Project project;
+	private final String error;
+	private final long firstLine;
+	private final long lastLine;
+	private final int rows;
+
+	private SourceRecord(Project project, String error, long firstLine, long lastLine, int rows) {
+		this.project = project;
+		this.error = error;
+		this.firstLine = firstLine;
+		this.lastLine = lastLine;
+		this.rows = rows;
+	}
+
+	static SourceRecord parsed(Project project, long firstLine, long lastLine, int rows) {
+		return new SourceRecord(project, null, firstLine, lastLine, rows);
+	}
+
+	static SourceRecord rejected(String error, long firstLine, long lastLine, int rows) {
+		return new SourceRecord(null, error, firstLine, lastLine, rows);
+	}
+
+	Project getProject() {
+		return project;
+	}
+
+	String getError() {
+		return error;
+	}
+
+	long getFirstLine() {
+		return firstLine;
+	}
+
+	// Last physical line of the input used by this record.
+	long getLastLine() {
+		return lastLine;
+	}
+
+	// Number of input rows (CSV rows or NDJSON lines) in this record.
+	int getRows() {
+		return rows;
+	}
+
+} // end CLASS
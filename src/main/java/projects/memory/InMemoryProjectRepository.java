@@ -0,0 +1,1514 @@
+package projects.memory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import projects.dao.FetchPlan;
+import projects.dao.ProjectRepository;
+import projects.dao.ProjectSortOrder;
+import projects.entity.Category;
+import projects.entity.CategoryHoursRollup;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.ProjectCostRollup;
+import projects.entity.ProjectStamp;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
+import projects.exception.DbException;
+import projects.exception.OptimisticLockException;
+
+/*
+ * A ProjectRepository that keeps every project, material, step and category in
+ * memory, for running the application without a MySQL server. Select it with
+ * -Dprojects.repository=memory.
+ *
+ * Rows are kept in IntMaps keyed by their ID, with secondary indexes for the
+ * reads ProjectDao serves from MySQL indexes: the children of each project,
+ * the projects linked to each category, a BitSet of project IDs for paging in
+ * ID order, and a TreeSet of (name, ID) for paging by name. One read-write
+ * lock guards all of them, as in ProjectSearchIndex, so a reader never sees a
+ * change half made. Stored rows are never handed out; every read returns
+ * copies.
+ *
+ * Every change is encoded as a ProjectLog.Batch, appended to the log and then
+ * applied by decoding that same batch, so the state rebuilt by replaying the
+ * log at startup is the state that was running. The log is folded into a new
+ * snapshot every snapshotIntervalSeconds, when it grows past compactBytes, and
+ * on close. With no data directory nothing is persisted.
+ *
+ * The cost and category hours rollups are computed from the maps when they are
+ * read, so there are no rollup tables to keep in step.
+ *
+ * A deleted project is moved to deletedProjects and dropped from the indexes
+ * that reads go through, but its children stay until purgeProjectDao removes
+ * them, as in ProjectDao.
+ */
+public class InMemoryProjectRepository implements ProjectRepository, AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger("projects.memory");
+
+	// Engine settings. Each one can be overridden with a -D system property. An
+	// empty projects.memory.dir keeps the data in memory only.
+	private static final String DATA_DIR = System.getProperty("projects.memory.dir", "projects-data");
+	private static final int LOG_INITIAL_BYTES = Integer.getInteger("projects.memory.logInitialBytes", 16 << 20);
+	private static final long COMPACT_BYTES = Long.getLong("projects.memory.compactBytes", 64L << 20);
+	private static final long SNAPSHOT_INTERVAL_SECONDS = Long.getLong("projects.memory.snapshotIntervalSeconds", 300);
+	private static final boolean SYNC_EVERY_BATCH = Boolean
+			.parseBoolean(System.getProperty("projects.memory.sync", "false"));
+
+	// Projects are written to a snapshot this many at a time per frame.
+	private static final int SNAPSHOT_PROJECTS_PER_BATCH = 256;
+
+	// Name order ignores case, like the default MySQL collation, then goes by ID.
+	private static final Comparator<ProjectSummary> NAME_ORDER = Comparator
+			.comparing(ProjectSummary::getProjectName, String.CASE_INSENSITIVE_ORDER)
+			.thenComparing(ProjectSummary::getProjectName).thenComparing(ProjectSummary::getProjectId);
+
+	private static InMemoryProjectRepository shared;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Rows by ID. Stored projects hold no children; those are in the indexes.
+	private final IntMap<Project> projects = new IntMap<>();
+	private final IntMap<Material> materials = new IntMap<>();
+	private final IntMap<Step> steps = new IntMap<>();
+	private final IntMap<Category> categories = new IntMap<>();
+
+	// Projects deleted but not yet purged. Their children are still in the maps
+	// and in the child indexes below, but not in projectIds, projectsByName or
+	// projectsByCategory.
+	private final IntMap<Project> deletedProjects = new IntMap<>();
+
+	// Secondary indexes. Steps are kept sorted by step order, then step ID.
+	private final BitSet projectIds = new BitSet();
+	private final TreeSet<ProjectSummary> projectsByName = new TreeSet<>(NAME_ORDER);
+	private final IntMap<List<Material>> materialsByProject = new IntMap<>();
+	private final IntMap<List<Step>> stepsByProject = new IntMap<>();
+	private final IntMap<List<Category>> categoriesByProject = new IntMap<>();
+	private final IntMap<BitSet> projectsByCategory = new IntMap<>();
+
+	// The next ID of each kind. IDs are never reused, even after a delete.
+	private int nextProjectId = 1;
+	private int nextMaterialId = 1;
+	private int nextStepId = 1;
+	private int nextCategoryId = 1;
+
+	private final ProjectLog log;
+	private final long compactBytes;
+	private final ScheduledExecutorService compactor;
+	private final AtomicBoolean compactionQueued = new AtomicBoolean();
+	private final List<Runnable> closeTasks = new CopyOnWriteArrayList<>();
+	private boolean closed;
+
+	// Applies decoded operations to the maps. Used for every live change and for
+	// replay at startup.
+	private final ProjectLog.Visitor applier = new ProjectLog.Visitor() {
+		@Override
+		public void project(Project project) {
+			applyProject(project);
+		}
+
+		@Override
+		public void deleteProject(int projectId) {
+			applyDeleteProject(projectId);
+		}
+
+		@Override
+		public void material(Material material) {
+			applyMaterial(material);
+		}
+
+		@Override
+		public void step(Step step) {
+			applyStep(step);
+		}
+
+		@Override
+		public void category(Category category) {
+			categories.put(category.getCategoryId(), category);
+			nextCategoryId = Math.max(nextCategoryId, category.getCategoryId() + 1);
+		}
+
+		@Override
+		public void link(int projectId, int categoryId) {
+			applyLink(projectId, categoryId);
+		}
+
+		@Override
+		public void markDeleted(int projectId) {
+			applyMarkDeleted(projectId);
+		}
+
+		@Override
+		public void deleteMaterial(int materialId) {
+			Material removed = materials.remove(materialId);
+
+			if (Objects.nonNull(removed)) {
+				removeChild(materialsByProject, removed.getProjectId(), removed);
+			}
+		}
+
+		@Override
+		public void deleteStep(int stepId) {
+			Step removed = steps.remove(stepId);
+
+			if (Objects.nonNull(removed)) {
+				removeChild(stepsByProject, removed.getProjectId(), removed);
+			}
+		}
+
+		@Override
+		public void unlink(int projectId, int categoryId) {
+			applyUnlink(projectId, categoryId);
+		}
+
+		@Override
+		public void counters(int nextProject, int nextMaterial, int nextStep, int nextCategory) {
+			nextProjectId = Math.max(nextProjectId, nextProject);
+			nextMaterialId = Math.max(nextMaterialId, nextMaterial);
+			nextStepId = Math.max(nextStepId, nextStep);
+			nextCategoryId = Math.max(nextCategoryId, nextCategory);
+		}
+	};
+
+	/*
+	 * Opens the repository on the data directory, replaying its snapshot and log,
+	 * or keeps everything in memory only if directory is null.
+	 */
+	public InMemoryProjectRepository(Path directory, long compactBytes, long snapshotIntervalSeconds) {
+		this.compactBytes = compactBytes;
+
+		if (Objects.isNull(directory)) {
+			log = null;
+			compactor = null;
+			return;
+		}
+
+		log = new ProjectLog(directory, LOG_INITIAL_BYTES, SYNC_EVERY_BATCH);
+
+		try {
+			log.replay(applier);
+		} catch (RuntimeException e) {
+			log.close();
+			throw e;
+		}
+
+		compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "projects-memory-compactor");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		if (snapshotIntervalSeconds > 0) {
+			compactor.scheduleWithFixedDelay(this::compactQuietly, snapshotIntervalSeconds, snapshotIntervalSeconds,
+					TimeUnit.SECONDS);
+		}
+	} // end CONSTRUCTOR
+
+	/*
+	 * Returns the repository configured by the projects.memory system properties,
+	 * opening it the first time. It is closed, with a final snapshot, by a
+	 * shutdown hook when the JVM exits.
+	 */
+	public static synchronized InMemoryProjectRepository shared() {
+		if (Objects.isNull(shared)) {
+			Path directory = DATA_DIR.isEmpty() ? null : Path.of(DATA_DIR);
+
+			shared = new InMemoryProjectRepository(directory, COMPACT_BYTES, SNAPSHOT_INTERVAL_SECONDS);
+			Runtime.getRuntime().addShutdownHook(new Thread(shared::close, "projects-memory-shutdown"));
+
+			System.out.println("\nIn-memory repository opened" + (Objects.isNull(directory) ? " (not persisted)."
+					: " in '" + directory.toAbsolutePath() + "' (" + shared.projects.size() + " projects)."));
+		}
+		return shared;
+	} // end shared
+
+	/*
+	 * Assigns the next project ID and stores the project's own fields. As in
+	 * ProjectDao, its materials, steps and categories are not stored.
+	 */
+	@Override
+	public Project insertProject(Project project) {
+		checkNotNull(project.getProjectName(), "project_name");
+
+		lock.writeLock().lock();
+
+		try {
+			int projectId = nextProjectId;
+			commit(new ProjectLog.Batch().project(projectRow(projectId, project, 0)));
+
+			project.setProjectId(projectId);
+			project.setVersion(0);
+			project.clearChangedFields();
+			return project;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end insertProject
+
+	/*
+	 * Inserts the projects with their materials, steps and category links, one
+	 * batch per chunk of chunkSize projects. A chunk that fails a check is not
+	 * written and a DbException is thrown; chunks written before it stay, as in
+	 * ProjectDao.
+	 */
+	@Override
+	public int insertProjects(Collection<Project> projectsToInsert, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be at least 1");
+		}
+
+		List<Project> all = new ArrayList<>(projectsToInsert);
+		int inserted = 0;
+
+		for (int from = 0; from < all.size(); from += chunkSize) {
+			List<Project> chunk = all.subList(from, Math.min(from + chunkSize, all.size()));
+
+			try {
+				insertProjectChunk(chunk);
+				inserted += chunk.size();
+			} catch (RuntimeException e) {
+				throw new DbException("Insert failed for projects " + from + " to " + (from + chunk.size() - 1) + "; "
+						+ inserted + " projects were committed", e);
+			}
+		}
+		return inserted;
+	} // end insertProjects
+
+	/*
+	 * Checks and writes one chunk. IDs are taken from copies of the counters, so
+	 * a chunk that fails leaves the counters and the entities unchanged.
+	 */
+	private void insertProjectChunk(List<Project> chunk) {
+		lock.writeLock().lock();
+
+		try {
+			ProjectLog.Batch batch = new ProjectLog.Batch();
+			int firstProjectId = nextProjectId;
+			int firstMaterialId = nextMaterialId;
+			int firstStepId = nextStepId;
+			int projectId = firstProjectId;
+			int materialId = firstMaterialId;
+			int stepId = firstStepId;
+			List<Integer> stepOrders = new ArrayList<>();
+
+			for (Project project : chunk) {
+				checkNotNull(project.getProjectName(), "project_name");
+				batch.project(projectRow(projectId, project, 0));
+
+				for (Material material : project.getMaterials()) {
+					checkNotNull(material.getMaterialName(), "material_name");
+					batch.material(materialRow(materialId++, projectId, material));
+				}
+
+				int position = 0;
+
+				for (Step step : project.getSteps()) {
+					checkNotNull(step.getStepText(), "step_text");
+
+					int stepOrder = Objects.isNull(step.getStepOrder()) ? (position + 1) * STEP_ORDER_GAP
+							: step.getStepOrder();
+					batch.step(stepRow(stepId++, projectId, step.getStepText(), stepOrder));
+					stepOrders.add(stepOrder);
+					position++;
+				}
+
+				Set<Integer> linked = new HashSet<>();
+
+				for (Category category : project.getCategories()) {
+					Integer categoryId = category.getCategoryId();
+
+					if (Objects.isNull(categoryId) || Objects.isNull(categories.get(categoryId))) {
+						throw new DbException("Category with ID=" + categoryId + " does not exist.");
+					}
+
+					if (!linked.add(categoryId)) {
+						throw new DbException("Category with ID=" + categoryId + " is linked to the project twice.");
+					}
+					batch.link(projectId, categoryId);
+				}
+
+				projectId++;
+			}
+
+			commit(batch);
+
+			// Children were written project by project, so walk them in the same order.
+			int stepIndex = 0;
+			materialId = firstMaterialId;
+			stepId = firstStepId;
+
+			for (int index = 0; index < chunk.size(); index++) {
+				Project project = chunk.get(index);
+				project.setProjectId(firstProjectId + index);
+				project.setVersion(0);
+				project.clearChangedFields();
+
+				for (Material material : project.getMaterials()) {
+					material.setProjectId(firstProjectId + index);
+					material.setMaterialId(materialId++);
+				}
+
+				for (Step step : project.getSteps()) {
+					step.setProjectId(firstProjectId + index);
+					step.setStepOrder(stepOrders.get(stepIndex++));
+					step.setStepId(stepId++);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end insertProjectChunk
+
+	@Override
+	public Category insertCategoryDao(Category category) {
+		checkNotNull(category.getCategoryName(), "category_name");
+
+		lock.writeLock().lock();
+
+		try {
+			Category row = new Category();
+			row.setCategoryId(nextCategoryId);
+			row.setCategoryName(category.getCategoryName());
+			commit(new ProjectLog.Batch().category(row));
+
+			category.setCategoryId(row.getCategoryId());
+			return category;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end insertCategoryDao
+
+	/*
+	 * Returns every project with only its ID and name set, in ID order.
+	 */
+	@Override
+	public List<Project> getAllProjectNames() {
+		lock.readLock().lock();
+
+		try {
+			List<Project> result = new LinkedList<>();
+
+			for (int id = projectIds.nextSetBit(0); id >= 0; id = projectIds.nextSetBit(id + 1)) {
+				Project project = new Project();
+				project.setProjectId(id);
+				project.setProjectName(projects.get(id).getProjectName());
+				project.clearChangedFields();
+				result.add(project);
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end getAllProjectNames
+
+	/*
+	 * Returns up to pageSize projects after the project after, walking the ID
+	 * BitSet or the name TreeSet from that point, so a page costs the same however
+	 * deep it is.
+	 */
+	@Override
+	public List<ProjectSummary> fetchProjectPageDao(ProjectSortOrder order, ProjectSummary after, int pageSize) {
+		List<ProjectSummary> page = new ArrayList<>();
+		boolean byId = order == ProjectSortOrder.ID || order == ProjectSortOrder.ID_DESC;
+		boolean descending = order == ProjectSortOrder.ID_DESC || order == ProjectSortOrder.NAME_DESC;
+
+		lock.readLock().lock();
+
+		try {
+			if (byId) {
+				int id;
+
+				if (Objects.isNull(after)) {
+					id = descending ? projectIds.length() - 1 : projectIds.nextSetBit(0);
+				} else if (descending) {
+					id = after.getProjectId() <= 0 ? -1 : projectIds.previousSetBit(after.getProjectId() - 1);
+				} else {
+					id = projectIds.nextSetBit(Math.max(0, after.getProjectId() + 1));
+				}
+
+				while (id >= 0 && page.size() < pageSize) {
+					page.add(summary(id, projects.get(id).getProjectName()));
+					id = descending ? projectIds.previousSetBit(id - 1) : projectIds.nextSetBit(id + 1);
+				}
+			} else {
+				// No name sorts after a null name, as with the SQL comparison.
+				if (Objects.nonNull(after) && Objects.isNull(after.getProjectName())) {
+					return page;
+				}
+
+				NavigableSet<ProjectSummary> view = descending ? projectsByName.descendingSet() : projectsByName;
+
+				if (Objects.nonNull(after)) {
+					view = view.tailSet(after, false);
+				}
+
+				for (ProjectSummary summary : view) {
+					if (page.size() >= pageSize) {
+						break;
+					}
+					page.add(summary(summary.getProjectId(), summary.getProjectName()));
+				}
+			}
+			return page;
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchProjectPageDao
+
+	@Override
+	public Optional<Project> fetchProjectByIdDao(Integer projectId) {
+		lock.readLock().lock();
+
+		try {
+			return Optional.ofNullable(assemble(projectId));
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchProjectByIdDao
+
+	/*
+	 * Every child List is read from memory at no extra cost, so the plan is not
+	 * needed and the project is returned fully loaded.
+	 */
+	@Override
+	public Optional<Project> fetchProjectByIdDao(Integer projectId, FetchPlan plan) {
+		return fetchProjectByIdDao(projectId);
+	} // end fetchProjectByIdDao
+
+	@Override
+	public Optional<Project> fetchProjectByIdParallelDao(Integer projectId, Executor executor) {
+		return fetchProjectByIdDao(projectId);
+	} // end fetchProjectByIdParallelDao
+
+	@Override
+	public List<Material> fetchMaterialsDao(Integer projectId) {
+		lock.readLock().lock();
+
+		try {
+			return copyMaterials(projectId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchMaterialsDao
+
+	@Override
+	public List<Step> fetchStepsDao(Integer projectId) {
+		lock.readLock().lock();
+
+		try {
+			return copySteps(projectId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchStepsDao
+
+	@Override
+	public List<Category> fetchCategoriesDao(Integer projectId) {
+		lock.readLock().lock();
+
+		try {
+			return copyCategories(projectId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchCategoriesDao
+
+	@Override
+	public List<Project> fetchProjectsByIdsDao(Collection<Integer> ids) {
+		return fetchProjectsByIdsDao(ids, FetchPlan.ALL);
+	} // end fetchProjectsByIdsDao
+
+	/*
+	 * Returns the projects that exist, in the order of the first occurrence of
+	 * their ID, fully loaded whatever the plan.
+	 */
+	@Override
+	public List<Project> fetchProjectsByIdsDao(Collection<Integer> ids, FetchPlan plan) {
+		List<Project> result = new ArrayList<>();
+
+		lock.readLock().lock();
+
+		try {
+			for (Integer projectId : new LinkedHashSet<>(ids)) {
+				Project project = assemble(projectId);
+
+				if (Objects.nonNull(project)) {
+					result.add(project);
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchProjectsByIdsDao
+
+	/*
+	 * Passes every project, fully loaded, to the consumer in ID order. The read
+	 * lock is taken for one project at a time, so a slow consumer does not hold
+	 * up writers. Returns the number of projects passed.
+	 */
+	@Override
+	public long streamAllProjectsDao(Consumer<Project> consumer) {
+		long count = 0;
+		int id = 0;
+
+		while (true) {
+			Project project;
+
+			lock.readLock().lock();
+
+			try {
+				id = projectIds.nextSetBit(id);
+
+				if (id < 0) {
+					return count;
+				}
+				project = assemble(id);
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			consumer.accept(project);
+			count++;
+			id++;
+		}
+	} // end streamAllProjectsDao
+
+	/*
+	 * Writes the project's changed fields and increments its version, checking
+	 * the version as ProjectDao does, also when nothing changed, and checking the
+	 * actual hours when they are replaced. A project without a version is
+	 * rejected. Returns false if the project does not exist.
+	 */
+	@Override
+	public boolean modifyProjectDetailsDao(Project project) {
+		Set<String> changed = project.getChangedFields();
+		Integer version = project.getVersion();
+
+		if (Objects.isNull(version)) {
+			throw new DbException("Project with ID=" + project.getProjectId()
+					+ " has no version. Modify a project fetched from the repository.");
+		}
+
+		if (changed.contains("projectName")) {
+			checkNotNull(project.getProjectName(), "project_name");
+		}
+
+		lock.writeLock().lock();
+
+		try {
+			Project stored = Objects.isNull(project.getProjectId()) ? null : projects.get(project.getProjectId());
+
+			if (Objects.isNull(stored)) {
+				return false;
+			}
+
+			if (!version.equals(stored.getVersion())) {
+				throw new OptimisticLockException(project.getProjectId(), version, stored.getVersion());
+			}
+
+			if (changed.isEmpty()) {
+				return true;
+			}
+
+			if (changed.contains("actualHours") && !sameHours(project.getLoadedActualHours(), stored.getActualHours())) {
+				throw new OptimisticLockException(project.getProjectId(), version, project.getLoadedActualHours(),
+						stored.getActualHours());
+			}
+
+			Project row = stored.copy();
+
+			if (changed.contains("projectName")) {
+				row.setProjectName(project.getProjectName());
+			}
+			if (changed.contains("estimatedHours")) {
+				row.setEstimatedHours(project.getEstimatedHours());
+			}
+			if (changed.contains("actualHours")) {
+				row.setActualHours(project.getActualHours());
+			}
+			if (changed.contains("difficulty")) {
+				row.setDifficulty(project.getDifficulty());
+			}
+			if (changed.contains("notes")) {
+				row.setNotes(project.getNotes());
+			}
+			row.setVersion(stored.getVersion() + 1);
+
+			commit(new ProjectLog.Batch().project(row));
+
+			project.setVersion(version + 1);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end modifyProjectDetailsDao
+
+	/*
+	 * Adds each increment to the project's actual hours, a null total counting as
+	 * 0, all in one batch, leaving the version as it is, as ProjectDao does.
+	 * Projects that do not exist are skipped. Returns the number of projects
+	 * updated.
+	 */
+	@Override
+	public int addActualHoursDao(Map<Integer, BigDecimal> increments) {
+		lock.writeLock().lock();
+
+		try {
+			ProjectLog.Batch batch = new ProjectLog.Batch();
+			int updated = 0;
+
+			for (Map.Entry<Integer, BigDecimal> increment : new TreeMap<>(increments).entrySet()) {
+				Project stored = projects.get(increment.getKey());
+
+				if (Objects.nonNull(stored)) {
+					Project row = stored.copy();
+					row.setActualHours(add(increment.getValue(), stored.getActualHours()));
+					batch.project(row);
+					updated++;
+				}
+			}
+
+			commit(batch);
+			return updated;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end addActualHoursDao
+
+	/*
+	 * Marks the project deleted, which hides it from every read. Its materials,
+	 * steps and category links are left for purgeProjectDao. Returns false if it
+	 * does not exist or is already deleted.
+	 */
+	@Override
+	public boolean deleteProjectDao(Integer projectId) {
+		lock.writeLock().lock();
+
+		try {
+			if (Objects.isNull(projectId) || Objects.isNull(projects.get(projectId))) {
+				return false;
+			}
+
+			commit(new ProjectLog.Batch().markDeleted(projectId));
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end deleteProjectDao
+
+	/*
+	 * Returns the IDs of the deleted projects that have not been purged yet, in
+	 * ID order.
+	 */
+	@Override
+	public List<Integer> fetchDeletedProjectIdsDao() {
+		lock.readLock().lock();
+
+		try {
+			List<Integer> projectIds = new ArrayList<>();
+
+			for (int projectId : deletedProjects.sortedKeys()) {
+				projectIds.add(projectId);
+			}
+			return projectIds;
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchDeletedProjectIdsDao
+
+	/*
+	 * Removes up to batchSize of a deleted project's steps, or once it has none
+	 * left, of its materials, or then of its category links, in one batch. Once
+	 * all three are gone the project row itself is removed. A project that has
+	 * not been deleted is never touched.
+	 *
+	 * Returns the number of rows removed, or 0 when nothing is left to purge, as
+	 * ProjectDao does.
+	 */
+	@Override
+	public int purgeProjectDao(Integer projectId, int batchSize) {
+		lock.writeLock().lock();
+
+		try {
+			if (Objects.isNull(projectId) || Objects.isNull(deletedProjects.get(projectId))) {
+				return 0;
+			}
+
+			ProjectLog.Batch batch = new ProjectLog.Batch();
+			int removed = 0;
+			List<Step> projectSteps = listOrEmpty(stepsByProject.get(projectId));
+			List<Material> projectMaterials = listOrEmpty(materialsByProject.get(projectId));
+			List<Category> projectCategories = listOrEmpty(categoriesByProject.get(projectId));
+
+			if (!projectSteps.isEmpty()) {
+				for (Step step : projectSteps.subList(0, Math.min(batchSize, projectSteps.size()))) {
+					batch.deleteStep(step.getStepId());
+					removed++;
+				}
+			} else if (!projectMaterials.isEmpty()) {
+				for (Material material : projectMaterials.subList(0, Math.min(batchSize, projectMaterials.size()))) {
+					batch.deleteMaterial(material.getMaterialId());
+					removed++;
+				}
+			} else if (!projectCategories.isEmpty()) {
+				for (Category category : projectCategories.subList(0, Math.min(batchSize, projectCategories.size()))) {
+					batch.unlink(projectId, category.getCategoryId());
+					removed++;
+				}
+			} else {
+				batch.deleteProject(projectId);
+				removed = 1;
+			}
+
+			commit(batch);
+			return removed;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end purgeProjectDao
+
+	/*
+	 * Adds a step just before the step with ID beforeStepId, or after the last
+	 * step if beforeStepId is null, with a step order chosen as in ProjectDao. If
+	 * the project's steps had to be rebalanced, the new orders go in the same
+	 * batch as the step.
+	 */
+	@Override
+	public Optional<Step> insertStepDao(Integer projectId, String stepText, Integer beforeStepId) {
+		checkNotNull(stepText, "step_text");
+
+		lock.writeLock().lock();
+
+		try {
+			if (Objects.isNull(projectId) || Objects.isNull(projects.get(projectId))) {
+				return Optional.empty();
+			}
+
+			ProjectLog.Batch batch = new ProjectLog.Batch();
+
+			// Step IDs start at 1, so 0 excludes no step.
+			int stepOrder = chooseStepOrder(projectId, 0, beforeStepId, batch);
+			Step row = stepRow(nextStepId, projectId, stepText, stepOrder);
+			commit(batch.step(row));
+
+			return Optional.of(copy(row));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end insertStepDao
+
+	@Override
+	public boolean moveStepDao(Integer projectId, Integer stepId, Integer beforeStepId) {
+		lock.writeLock().lock();
+
+		try {
+			Step stored = Objects.isNull(stepId) ? null : steps.get(stepId);
+
+			if (Objects.isNull(stored) || !stored.getProjectId().equals(projectId) || !isLive(projectId)) {
+				return false;
+			}
+
+			if (!stepId.equals(beforeStepId)) {
+				ProjectLog.Batch batch = new ProjectLog.Batch();
+				int stepOrder = chooseStepOrder(projectId, stepId, beforeStepId, batch);
+				commit(batch.step(stepRow(stepId, projectId, stored.getStepText(), stepOrder)));
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end moveStepDao
+
+	@Override
+	public int rebalanceStepOrderDao(Integer projectId) {
+		lock.writeLock().lock();
+
+		try {
+			if (Objects.isNull(projectId) || Objects.isNull(projects.get(projectId))) {
+				return 0;
+			}
+
+			ProjectLog.Batch batch = new ProjectLog.Batch();
+			List<Step> projectSteps = stepsByProject.get(projectId);
+			int count = Objects.isNull(projectSteps) ? 0 : projectSteps.size();
+
+			rebalance(projectSteps, new long[count], batch);
+			commit(batch);
+			return count;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end rebalanceStepOrderDao
+
+	/*
+	 * Sums the project's materials. Returns an empty Optional if the project does
+	 * not exist.
+	 */
+	@Override
+	public Optional<ProjectCostRollup> fetchProjectCostDao(Integer projectId) {
+		lock.readLock().lock();
+
+		try {
+			if (Objects.isNull(projectId) || Objects.isNull(projects.get(projectId))) {
+				return Optional.empty();
+			}
+
+			List<Material> projectMaterials = materialsByProject.get(projectId);
+			BigDecimal cost = BigDecimal.ZERO;
+
+			if (Objects.nonNull(projectMaterials)) {
+				for (Material material : projectMaterials) {
+					if (Objects.nonNull(material.getNumRequired()) && Objects.nonNull(material.getCost())) {
+						cost = cost.add(material.getCost().multiply(BigDecimal.valueOf(material.getNumRequired())));
+					}
+				}
+			}
+
+			ProjectCostRollup rollup = new ProjectCostRollup();
+			rollup.setProjectId(projectId);
+			rollup.setMaterialCount(Objects.isNull(projectMaterials) ? 0 : projectMaterials.size());
+			rollup.setMaterialCost(cost.setScale(2, RoundingMode.HALF_UP));
+			return Optional.of(rollup);
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchProjectCostDao
+
+	@Override
+	public Optional<CategoryHoursRollup> fetchCategoryHoursDao(Integer categoryId) {
+		lock.readLock().lock();
+
+		try {
+			Category category = Objects.isNull(categoryId) ? null : categories.get(categoryId);
+			return Optional.ofNullable(category).map(this::categoryHours);
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchCategoryHoursDao
+
+	/*
+	 * Returns the hours of every category, in category ID order.
+	 */
+	@Override
+	public List<CategoryHoursRollup> fetchAllCategoryHoursDao() {
+		lock.readLock().lock();
+
+		try {
+			List<CategoryHoursRollup> rollups = new LinkedList<>();
+
+			for (int categoryId : categories.sortedKeys()) {
+				rollups.add(categoryHours(categories.get(categoryId)));
+			}
+			return rollups;
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchAllCategoryHoursDao
+
+	/*
+	 * The rollups are computed when they are read, so there is nothing to
+	 * rebuild.
+	 */
+	@Override
+	public void rebuildRollupsDao() {
+	} // end rebuildRollupsDao
+
+	@Override
+	public ProjectStamp fetchProjectStampDao() {
+		lock.readLock().lock();
+
+		try {
+			long versionSum = 0;
+			long stepCount = 0;
+			long maxStepId = 0;
+
+			for (int id = projectIds.nextSetBit(0); id >= 0; id = projectIds.nextSetBit(id + 1)) {
+				versionSum += projects.get(id).getVersion();
+				List<Step> projectSteps = stepsByProject.get(id);
+
+				if (Objects.nonNull(projectSteps)) {
+					stepCount += projectSteps.size();
+
+					for (Step step : projectSteps) {
+						maxStepId = Math.max(maxStepId, step.getStepId());
+					}
+				}
+			}
+			return new ProjectStamp(projectIds.cardinality(), Math.max(0, projectIds.length() - 1), versionSum,
+					stepCount, maxStepId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end fetchProjectStampDao
+
+	/*
+	 * Writes a new snapshot and empties the log. Readers carry on while it runs;
+	 * writers wait for it. Does nothing if nothing is persisted or the log is
+	 * already empty.
+	 */
+	public synchronized void compact() {
+		if (Objects.isNull(log) || closed) {
+			return;
+		}
+
+		lock.readLock().lock();
+
+		try {
+			if (log.size() == 0) {
+				return;
+			}
+
+			long start = System.nanoTime();
+			long logBytes = log.size();
+
+			log.compact(this::writeSnapshot);
+
+			LOGGER.info(() -> String.format("Compacted %d bytes of log into a snapshot of %d projects in %d ms",
+					logBytes, projects.size(), (System.nanoTime() - start) / 1_000_000));
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end compact
+
+	/*
+	 * Adds a task, such as a final flush of buffered writes, that close runs
+	 * before the final snapshot, while the repository still takes changes.
+	 */
+	public void addCloseTask(Runnable task) {
+		closeTasks.add(task);
+	} // end addCloseTask
+
+	/*
+	 * Runs the close tasks, stops the compaction thread, writes a final snapshot
+	 * and releases the log. A failed close task is logged and the rest still run.
+	 */
+	@Override
+	public synchronized void close() {
+		if (Objects.isNull(log) || closed) {
+			return;
+		}
+
+		for (Runnable task : closeTasks) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "A close task failed", e);
+			}
+		}
+
+		compactor.shutdownNow();
+
+		try {
+			compact();
+		} finally {
+			closed = true;
+			log.close();
+		}
+	} // end close
+
+	/*
+	 * Passes the whole state to the snapshot as batches: the counters, then the
+	 * categories, then the projects with their children, so every link follows
+	 * the category it refers to. Projects waiting to be purged are written the
+	 * same way, each followed by its delete mark.
+	 */
+	private void writeSnapshot(Consumer<ProjectLog.Batch> snapshot) {
+		snapshot.accept(new ProjectLog.Batch().counters(nextProjectId, nextMaterialId, nextStepId, nextCategoryId));
+
+		ProjectLog.Batch batch = new ProjectLog.Batch();
+
+		for (int categoryId : categories.sortedKeys()) {
+			batch.category(categories.get(categoryId));
+		}
+		snapshot.accept(batch);
+
+		batch = new ProjectLog.Batch();
+		int inBatch = 0;
+
+		for (int id = projectIds.nextSetBit(0); id >= 0; id = projectIds.nextSetBit(id + 1)) {
+			writeProject(batch, projects.get(id));
+
+			if (++inBatch == SNAPSHOT_PROJECTS_PER_BATCH) {
+				snapshot.accept(batch);
+				batch = new ProjectLog.Batch();
+				inBatch = 0;
+			}
+		}
+
+		for (int id : deletedProjects.sortedKeys()) {
+			writeProject(batch, deletedProjects.get(id));
+			batch.markDeleted(id);
+
+			if (++inBatch == SNAPSHOT_PROJECTS_PER_BATCH) {
+				snapshot.accept(batch);
+				batch = new ProjectLog.Batch();
+				inBatch = 0;
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			snapshot.accept(batch);
+		}
+	} // end writeSnapshot
+
+	private void writeProject(ProjectLog.Batch batch, Project project) {
+		int projectId = project.getProjectId();
+
+		batch.project(project);
+		forEach(materialsByProject.get(projectId), batch::material);
+		forEach(stepsByProject.get(projectId), batch::step);
+
+		for (Category category : listOrEmpty(categoriesByProject.get(projectId))) {
+			batch.link(projectId, category.getCategoryId());
+		}
+	} // end writeProject
+
+	/*
+	 * Appends the batch to the log, then applies it by decoding it, so a change
+	 * is only visible once it is in the log. Called with the write lock held.
+	 */
+	private void commit(ProjectLog.Batch batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		byte[] payload = batch.toByteArray();
+
+		if (Objects.nonNull(log)) {
+			if (closed) {
+				throw new DbException("The in-memory repository has been closed");
+			}
+
+			log.append(batch);
+
+			if (log.size() > compactBytes && !compactionQueued.getAndSet(true)) {
+				compactor.execute(() -> {
+					compactionQueued.set(false);
+					compactQuietly();
+				});
+			}
+		}
+		ProjectLog.Batch.read(payload, applier);
+	} // end commit
+
+	private void compactQuietly() {
+		try {
+			compact();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Compaction failed; the log is kept and will be replayed", e);
+		}
+	} // end compactQuietly
+
+	private void applyProject(Project row) {
+		int projectId = row.getProjectId();
+		Project previous = projects.put(projectId, row);
+
+		if (Objects.nonNull(previous)) {
+			projectsByName.remove(summary(projectId, previous.getProjectName()));
+		}
+
+		projectIds.set(projectId);
+		projectsByName.add(summary(projectId, row.getProjectName()));
+		nextProjectId = Math.max(nextProjectId, projectId + 1);
+	} // end applyProject
+
+	/*
+	 * Removes the project row with whatever children it still has, whether it
+	 * was live or marked deleted.
+	 */
+	private void applyDeleteProject(int projectId) {
+		Project removed = projects.remove(projectId);
+
+		if (Objects.isNull(removed)) {
+			removed = deletedProjects.remove(projectId);
+		}
+
+		if (Objects.isNull(removed)) {
+			return;
+		}
+
+		projectIds.clear(projectId);
+		projectsByName.remove(summary(projectId, removed.getProjectName()));
+		forEach(materialsByProject.remove(projectId), material -> materials.remove(material.getMaterialId()));
+		forEach(stepsByProject.remove(projectId), step -> steps.remove(step.getStepId()));
+		forEach(categoriesByProject.remove(projectId),
+				category -> projectsByCategory.get(category.getCategoryId()).clear(projectId));
+	} // end applyDeleteProject
+
+	/*
+	 * Moves the project row to deletedProjects and drops it from the indexes
+	 * reads go through. Its children stay, and so do its entries in
+	 * categoriesByProject, so purgeProjectDao can still find its links.
+	 */
+	private void applyMarkDeleted(int projectId) {
+		Project removed = projects.remove(projectId);
+
+		if (Objects.isNull(removed)) {
+			return;
+		}
+
+		deletedProjects.put(projectId, removed);
+		projectIds.clear(projectId);
+		projectsByName.remove(summary(projectId, removed.getProjectName()));
+		forEach(categoriesByProject.get(projectId),
+				category -> projectsByCategory.get(category.getCategoryId()).clear(projectId));
+	} // end applyMarkDeleted
+
+	private void applyMaterial(Material row) {
+		Material previous = materials.put(row.getMaterialId(), row);
+
+		if (Objects.nonNull(previous)) {
+			materialsByProject.get(previous.getProjectId()).remove(previous);
+		}
+
+		childList(materialsByProject, row.getProjectId()).add(row);
+		nextMaterialId = Math.max(nextMaterialId, row.getMaterialId() + 1);
+	} // end applyMaterial
+
+	private void applyStep(Step row) {
+		Step previous = steps.put(row.getStepId(), row);
+
+		if (Objects.nonNull(previous)) {
+			stepsByProject.get(previous.getProjectId()).remove(previous);
+		}
+
+		List<Step> projectSteps = childList(stepsByProject, row.getProjectId());
+		int index = projectSteps.size();
+
+		// New steps usually go last, so search from the end.
+		while (index > 0 && compareSteps(projectSteps.get(index - 1), row) > 0) {
+			index--;
+		}
+
+		projectSteps.add(index, row);
+		nextStepId = Math.max(nextStepId, row.getStepId() + 1);
+	} // end applyStep
+
+	private void applyLink(int projectId, int categoryId) {
+		Category category = categories.get(categoryId);
+
+		if (Objects.isNull(category)) {
+			throw new DbException("Category with ID=" + categoryId + " does not exist.");
+		}
+
+		BitSet linked = projectsByCategory.get(categoryId);
+
+		if (Objects.isNull(linked)) {
+			linked = new BitSet();
+			projectsByCategory.put(categoryId, linked);
+		}
+
+		if (!linked.get(projectId)) {
+			linked.set(projectId);
+			childList(categoriesByProject, projectId).add(category);
+		}
+	} // end applyLink
+
+	private void applyUnlink(int projectId, int categoryId) {
+		List<Category> linked = categoriesByProject.get(projectId);
+
+		if (Objects.nonNull(linked)) {
+			linked.removeIf(category -> category.getCategoryId() == categoryId);
+
+			if (linked.isEmpty()) {
+				categoriesByProject.remove(projectId);
+			}
+		}
+
+		BitSet projectsLinked = projectsByCategory.get(categoryId);
+
+		if (Objects.nonNull(projectsLinked)) {
+			projectsLinked.clear(projectId);
+		}
+	} // end applyUnlink
+
+	/*
+	 * Returns a free step order for a step placed just before the step with ID
+	 * beforeStepId, or after the last step if beforeStepId is null, ignoring the
+	 * step with ID excludedStepId. If there is no room, the project's steps are
+	 * renumbered into the batch and the order is chosen again from the new
+	 * numbers. Called with the write lock held.
+	 */
+	private int chooseStepOrder(int projectId, int excludedStepId, Integer beforeStepId, ProjectLog.Batch batch) {
+		List<Step> projectSteps = listOrEmpty(stepsByProject.get(projectId));
+		long[] orders = new long[projectSteps.size()];
+		int beforeIndex = -1;
+
+		for (int index = 0; index < orders.length; index++) {
+			Step step = projectSteps.get(index);
+			orders[index] = step.getStepOrder();
+
+			if (step.getStepId().equals(beforeStepId)) {
+				beforeIndex = index;
+			}
+		}
+
+		if (Objects.nonNull(beforeStepId) && beforeIndex < 0) {
+			throw new DbException(
+					"Step with ID=" + beforeStepId + " is not a step of project with ID=" + projectId + ".");
+		}
+
+		for (int attempt = 0; attempt < 2; attempt++) {
+			Long next = beforeIndex < 0 ? null : orders[beforeIndex];
+			Long previous = null;
+
+			for (int index = (beforeIndex < 0 ? orders.length : beforeIndex) - 1; index >= 0; index--) {
+				if (projectSteps.get(index).getStepId() != excludedStepId) {
+					previous = orders[index];
+					break;
+				}
+			}
+
+			long stepOrder;
+
+			if (Objects.isNull(previous)) {
+				stepOrder = Objects.isNull(next) ? STEP_ORDER_GAP : next - STEP_ORDER_GAP;
+			} else if (Objects.isNull(next)) {
+				stepOrder = previous + STEP_ORDER_GAP;
+			} else {
+				stepOrder = next - previous >= 2 ? previous + (next - previous) / 2 : previous;
+			}
+
+			boolean taken = Objects.nonNull(previous) && stepOrder == previous;
+
+			if (!taken && stepOrder >= Integer.MIN_VALUE && stepOrder <= Integer.MAX_VALUE) {
+				return (int) stepOrder;
+			}
+
+			rebalance(projectSteps, orders, batch);
+		}
+
+		throw new DbException("No step_order key is free in project with ID=" + projectId + ".");
+	} // end chooseStepOrder
+
+	/*
+	 * Renumbers the steps STEP_ORDER_GAP apart in their current order, writing
+	 * the new orders into orders and the changed steps into the batch.
+	 */
+	private void rebalance(List<Step> projectSteps, long[] orders, ProjectLog.Batch batch) {
+		for (int index = 0; index < orders.length; index++) {
+			Step step = projectSteps.get(index);
+			orders[index] = (long) (index + 1) * STEP_ORDER_GAP;
+
+			if (step.getStepOrder() != orders[index]) {
+				batch.step(stepRow(step.getStepId(), step.getProjectId(), step.getStepText(), (int) orders[index]));
+			}
+		}
+	} // end rebalance
+
+	private CategoryHoursRollup categoryHours(Category category) {
+		BitSet linked = projectsByCategory.get(category.getCategoryId());
+		BigDecimal estimatedHours = BigDecimal.ZERO;
+		BigDecimal actualHours = BigDecimal.ZERO;
+		int projectCount = 0;
+
+		if (Objects.nonNull(linked)) {
+			for (int id = linked.nextSetBit(0); id >= 0; id = linked.nextSetBit(id + 1)) {
+				Project project = projects.get(id);
+				estimatedHours = add(estimatedHours, project.getEstimatedHours());
+				actualHours = add(actualHours, project.getActualHours());
+				projectCount++;
+			}
+		}
+
+		CategoryHoursRollup rollup = new CategoryHoursRollup();
+		rollup.setCategoryId(category.getCategoryId());
+		rollup.setCategoryName(category.getCategoryName());
+		rollup.setProjectCount(projectCount);
+		rollup.setEstimatedHours(estimatedHours.setScale(2, RoundingMode.HALF_UP));
+		rollup.setActualHours(actualHours.setScale(2, RoundingMode.HALF_UP));
+		return rollup;
+	} // end categoryHours
+
+	/*
+	 * Returns a fully loaded copy of the project, or null if it does not exist.
+	 * Called with the read lock held.
+	 */
+	private Project assemble(Integer projectId) {
+		Project row = Objects.isNull(projectId) ? null : projects.get(projectId);
+
+		if (Objects.isNull(row)) {
+			return null;
+		}
+
+		Project project = row.copy();
+		project.getMaterials().addAll(copyMaterials(projectId));
+		project.getSteps().addAll(copySteps(projectId));
+		project.getCategories().addAll(copyCategories(projectId));
+		return project;
+	} // end assemble
+
+	/*
+	 * Whether the project exists and has not been deleted. The children of a
+	 * deleted project are kept for the purger, but no read may return them.
+	 */
+	private boolean isLive(Integer projectId) {
+		return Objects.nonNull(projectId) && Objects.nonNull(projects.get(projectId));
+	} // end isLive
+
+	private List<Material> copyMaterials(Integer projectId) {
+		List<Material> result = new LinkedList<>();
+
+		if (isLive(projectId)) {
+			for (Material material : listOrEmpty(materialsByProject.get(projectId))) {
+				result.add(copy(material));
+			}
+		}
+		return result;
+	} // end copyMaterials
+
+	private List<Step> copySteps(Integer projectId) {
+		List<Step> result = new LinkedList<>();
+
+		if (isLive(projectId)) {
+			for (Step step : listOrEmpty(stepsByProject.get(projectId))) {
+				result.add(copy(step));
+			}
+		}
+		return result;
+	} // end copySteps
+
+	private List<Category> copyCategories(Integer projectId) {
+		List<Category> result = new LinkedList<>();
+
+		if (isLive(projectId)) {
+			for (Category category : listOrEmpty(categoriesByProject.get(projectId))) {
+				Category copy = new Category();
+				copy.setCategoryId(category.getCategoryId());
+				copy.setCategoryName(category.getCategoryName());
+				result.add(copy);
+			}
+		}
+		return result;
+	} // end copyCategories
+
+	private static Project projectRow(int projectId, Project project, int version) {
+		Project row = new Project();
+		row.setProjectId(projectId);
+		row.setProjectName(project.getProjectName());
+		row.setEstimatedHours(project.getEstimatedHours());
+		row.setActualHours(project.getActualHours());
+		row.setDifficulty(project.getDifficulty());
+		row.setNotes(project.getNotes());
+		row.setVersion(version);
+		row.clearChangedFields();
+		return row;
+	} // end projectRow
+
+	private static Material materialRow(int materialId, int projectId, Material material) {
+		Material row = copy(material);
+		row.setMaterialId(materialId);
+		row.setProjectId(projectId);
+		return row;
+	} // end materialRow
+
+	private static Step stepRow(int stepId, int projectId, String stepText, int stepOrder) {
+		Step row = new Step();
+		row.setStepId(stepId);
+		row.setProjectId(projectId);
+		row.setStepText(stepText);
+		row.setStepOrder(stepOrder);
+		return row;
+	} // end stepRow
+
+	private static Material copy(Material material) {
+		Material copy = new Material();
+		copy.setMaterialId(material.getMaterialId());
+		copy.setProjectId(material.getProjectId());
+		copy.setMaterialName(material.getMaterialName());
+		copy.setNumRequired(material.getNumRequired());
+		copy.setCost(material.getCost());
+		return copy;
+	} // end copy
+
+	private static Step copy(Step step) {
+		return stepRow(step.getStepId(), step.getProjectId(), step.getStepText(), step.getStepOrder());
+	} // end copy
+
+	private static ProjectSummary summary(int projectId, String projectName) {
+		ProjectSummary summary = new ProjectSummary();
+		summary.setProjectId(projectId);
+		summary.setProjectName(projectName);
+		return summary;
+	} // end summary
+
+	private static int compareSteps(Step left, Step right) {
+		int byOrder = Integer.compare(left.getStepOrder(), right.getStepOrder());
+		return byOrder != 0 ? byOrder : Integer.compare(left.getStepId(), right.getStepId());
+	} // end compareSteps
+
+	private static BigDecimal add(BigDecimal total, BigDecimal value) {
+		return Objects.isNull(value) ? total : total.add(value);
+	} // end add
+
+	// Compared as MySQL compares DECIMAL values, so 4.0 and 4.00 are the same.
+	private static boolean sameHours(BigDecimal first, BigDecimal second) {
+		return Objects.isNull(first) ? Objects.isNull(second)
+				: Objects.nonNull(second) && first.compareTo(second) == 0;
+	} // end sameHours
+
+	private static void checkNotNull(Object value, String column) {
+		if (Objects.isNull(value)) {
+			throw new DbException("Column '" + column + "' cannot be null");
+		}
+	} // end checkNotNull
+
+	private static <T> List<T> childList(IntMap<List<T>> index, int projectId) {
+		List<T> list = index.get(projectId);
+
+		if (Objects.isNull(list)) {
+			list = new ArrayList<>();
+			index.put(projectId, list);
+		}
+		return list;
+	} // end childList
+
+	private static <T> void removeChild(IntMap<List<T>> index, int projectId, T child) {
+		List<T> list = index.get(projectId);
+
+		if (Objects.nonNull(list)) {
+			list.remove(child);
+
+			if (list.isEmpty()) {
+				index.remove(projectId);
+			}
+		}
+	} // end removeChild
+
+	private static <T> List<T> listOrEmpty(List<T> list) {
+		return Objects.isNull(list) ? List.of() : list;
+	} // end listOrEmpty
+
+	private static <T> void forEach(List<T> list, Consumer<T> action) {
+		listOrEmpty(list).forEach(action);
+	} // end forEach
+
+} // end CLASS
@@ -0,0 +1,191 @@
+package projects.memory;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/*
+ * A hash map from int keys to objects, with the keys kept in a primitive int
+ * array so no Integer is created per entry or per lookup. Open addressing with
+ * linear probing; removal shifts the following entries back, so there are no
+ * tombstones and lookups never slow down after deletes.
+ *
+ * Key 0 marks an empty slot and cannot be stored. The IDs kept by
+ * InMemoryProjectRepository start at 1; looking up 0 or a negative ID simply
+ * finds nothing.
+ *
+ * Not thread-safe. InMemoryProjectRepository guards every map with its
+ * read-write lock.
+ */
+final class IntMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	IntMap() {
+		keys = new int[MIN_CAPACITY];
+		values = new Object[MIN_CAPACITY];
+	} // end CONSTRUCTOR
+
+	int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	V get(int key) {
+		if (key == 0) {
+			return null;
+		}
+
+		int mask = keys.length - 1;
+
+		for (int slot = mix(key) & mask;; slot = (slot + 1) & mask) {
+			int found = keys[slot];
+
+			if (found == key) {
+				return (V) values[slot];
+			}
+
+			if (found == 0) {
+				return null;
+			}
+		}
+	} // end get
+
+	/*
+	 * Stores the value and returns the value it replaced, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	V put(int key, V value) {
+		if (key == 0) {
+			throw new IllegalArgumentException("Key 0 cannot be stored");
+		}
+
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				V previous = (V) values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		values[slot] = value;
+
+		// Keep the table at most three quarters full.
+		if (++size * 4 > keys.length * 3) {
+			resize(keys.length * 2);
+		}
+		return null;
+	} // end put
+
+	/*
+	 * Removes the key and returns its value, or null if it was not stored.
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(int key) {
+		if (key == 0) {
+			return null;
+		}
+
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+
+		while (keys[slot] != key) {
+			if (keys[slot] == 0) {
+				return null;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		V removed = (V) values[slot];
+		size--;
+
+		// Move back every following entry of the probe run whose home slot is not
+		// between the hole and its current slot, so no lookup stops at the hole.
+		int hole = slot;
+
+		for (int next = (hole + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+			int home = mix(keys[next]) & mask;
+
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+		}
+
+		keys[hole] = 0;
+		values[hole] = null;
+		return removed;
+	} // end remove
+
+	@SuppressWarnings("unchecked")
+	void forEachValue(Consumer<V> action) {
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != 0) {
+				action.accept((V) values[slot]);
+			}
+		}
+	} // end forEachValue
+
+	/*
+	 * Returns the keys in ascending order.
+	 */
+	int[] sortedKeys() {
+		int[] result = new int[size];
+		int index = 0;
+
+		for (int key : keys) {
+			if (key != 0) {
+				result[index++] = key;
+			}
+		}
+
+		Arrays.sort(result);
+		return result;
+	} // end sortedKeys
+
+	void clear() {
+		keys = new int[MIN_CAPACITY];
+		values = new Object[MIN_CAPACITY];
+		size = 0;
+	} // end clear
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		int mask = capacity - 1;
+
+		keys = new int[capacity];
+		values = new Object[capacity];
+
+		for (int index = 0; index < oldKeys.length; index++) {
+			int key = oldKeys[index];
+
+			if (key != 0) {
+				int slot = mix(key) & mask;
+
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[index];
+			}
+		}
+	} // end resize
+
+	// Spreads sequential IDs over the table (the multiplier is 2^32 divided by the
+	// golden ratio).
+	private static int mix(int key) {
+		int hash = key * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	} // end mix
+
+} // end CLASS
@@ -0,0 +1,647 @@
+package projects.memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/*
+ * The files that make InMemoryProjectRepository durable: an append-only log of
+ * changes in a memory-mapped file, and a snapshot of the whole state that the
+ * log is replayed on top of at startup.
+ *
+ * Each change is a Batch of operations, each holding the full new state of one
+ * row (or a delete), written as one frame: payload length, CRC32 of the
+ * payload, payload. The length is written last, so a frame cut short by a
+ * crash reads as the end of the log, and a frame with a bad CRC ends it too. A
+ * batch is therefore applied completely or not at all.
+ *
+ * Writes to the mapped file land in the page cache, so a committed batch
+ * survives the process being killed. It survives a power failure only once the
+ * file has been forced to disk: after every batch if syncEveryBatch is set,
+ * otherwise at each compaction and on close.
+ *
+ * compact writes a new snapshot from the caller's state, moves it into place
+ * atomically, then empties the log. Because every operation sets a row to its
+ * final state, replaying a log that was already folded into the snapshot (after
+ * a crash between the two steps) gives the same state again.
+ *
+ * The log file is locked while open, so two processes cannot share a data
+ * directory. Not thread-safe; InMemoryProjectRepository calls it while holding
+ * its lock.
+ */
+final class ProjectLog implements AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger("projects.memory");
+
+	private static final String LOG_FILE = "projects.log";
+	private static final String SNAPSHOT_FILE = "projects.snapshot";
+	private static final int LOG_MAGIC = 0x50524C47; // "PRLG"
+	private static final int SNAPSHOT_MAGIC = 0x5052534E; // "PRSN"
+	private static final int FORMAT_VERSION = 1;
+
+	// The magic number and format version at the start of the log.
+	private static final int HEADER_BYTES = 8;
+
+	// Payload length and CRC32 in front of each frame.
+	private static final int FRAME_HEADER_BYTES = 8;
+
+	private static final int MAX_MAPPED_BYTES = Integer.MAX_VALUE - 8;
+
+	// Operation codes in a batch payload.
+	private static final byte PROJECT = 1;
+	private static final byte DELETE_PROJECT = 2;
+	private static final byte MATERIAL = 3;
+	private static final byte STEP = 4;
+	private static final byte CATEGORY = 5;
+	private static final byte LINK = 6;
+	private static final byte COUNTERS = 7;
+	private static final byte MARK_DELETED = 8;
+	private static final byte DELETE_MATERIAL = 9;
+	private static final byte DELETE_STEP = 10;
+	private static final byte UNLINK = 11;
+
+	private final Path logFile;
+	private final Path snapshotFile;
+	private final boolean syncEveryBatch;
+	private final FileChannel channel;
+	private final FileLock fileLock;
+	private MappedByteBuffer buffer;
+	private int position;
+
+	/*
+	 * Opens or creates the log in the directory, mapping at least
+	 * initialMappedBytes of it. Call replay before appending.
+	 */
+	ProjectLog(Path directory, int initialMappedBytes, boolean syncEveryBatch) {
+		this.logFile = directory.resolve(LOG_FILE);
+		this.snapshotFile = directory.resolve(SNAPSHOT_FILE);
+		this.syncEveryBatch = syncEveryBatch;
+
+		try {
+			Files.createDirectories(directory);
+			channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			fileLock = channel.tryLock();
+
+			if (fileLock == null) {
+				channel.close();
+				throw new DbException(logFile + " is in use by another process");
+			}
+
+			long fileSize = channel.size();
+
+			if (fileSize > MAX_MAPPED_BYTES) {
+				throw new DbException(logFile + " is larger than " + MAX_MAPPED_BYTES + " bytes");
+			}
+
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					Math.max(fileSize, Math.max(initialMappedBytes, HEADER_BYTES + FRAME_HEADER_BYTES)));
+
+			if (fileSize == 0) {
+				buffer.putInt(0, LOG_MAGIC);
+				buffer.putInt(4, FORMAT_VERSION);
+			} else if (buffer.getInt(0) != LOG_MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+				throw new DbException(logFile + " is not a project log");
+			}
+			position = HEADER_BYTES;
+		} catch (IOException e) {
+			throw new DbException("Unable to open " + logFile, e);
+		}
+	} // end CONSTRUCTOR
+
+	/*
+	 * Passes every operation in the snapshot, then every operation in the log, to
+	 * the visitor, in the order they were written. A damaged snapshot throws a
+	 * DbException, because the state it holds cannot be recovered from the log.
+	 * The log ends at the first frame that is incomplete or fails its CRC check;
+	 * that frame and anything after it are cleared so new batches follow the last
+	 * good one.
+	 */
+	void replay(Visitor visitor) {
+		if (Files.exists(snapshotFile)) {
+			replaySnapshot(visitor);
+		}
+
+		int frames = 0;
+
+		while (true) {
+			if (position + FRAME_HEADER_BYTES > buffer.capacity()) {
+				break;
+			}
+
+			int length = buffer.getInt(position);
+
+			if (length == 0) {
+				break;
+			}
+
+			if (length < 0 || length > buffer.capacity() - position - FRAME_HEADER_BYTES) {
+				LOGGER.warning(() -> "Discarding a damaged frame at offset " + position + " of " + logFile);
+				break;
+			}
+
+			byte[] payload = new byte[length];
+			buffer.get(position + FRAME_HEADER_BYTES, payload);
+
+			if (crc(payload) != buffer.getInt(position + 4)) {
+				LOGGER.warning(() -> "Discarding a frame with a bad checksum at offset " + position + " of " + logFile);
+				break;
+			}
+
+			Batch.read(payload, visitor);
+			position += FRAME_HEADER_BYTES + length;
+			frames++;
+		}
+
+		clear(position, buffer.capacity());
+
+		int replayed = frames;
+		LOGGER.info(() -> "Replayed " + replayed + " batches from " + logFile);
+	} // end replay
+
+	/*
+	 * Appends the batch as one frame. The mapped region is doubled when it is
+	 * full.
+	 */
+	void append(Batch batch) {
+		byte[] payload = batch.toByteArray();
+		long end = (long) position + FRAME_HEADER_BYTES + payload.length;
+
+		// Leave room for the zero length that marks the end of the log.
+		ensureCapacity(end + 4);
+
+		buffer.putInt(position + 4, crc(payload));
+		buffer.put(position + FRAME_HEADER_BYTES, payload);
+		buffer.putInt(position, payload.length);
+		position = (int) end;
+
+		if (syncEveryBatch) {
+			buffer.force();
+		}
+	} // end append
+
+	/*
+	 * The number of bytes of batches in the log since the last compaction.
+	 */
+	long size() {
+		return position - HEADER_BYTES;
+	}
+
+	/*
+	 * Writes a new snapshot of the state given by the writer, which passes one
+	 * Batch at a time to the Consumer it is given, and then empties the log. The
+	 * snapshot is written to a temporary file and forced to disk before it
+	 * replaces the old one.
+	 */
+	void compact(Consumer<Consumer<Batch>> writer) {
+		Path temporary = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+
+		try (OutputStream file = Files.newOutputStream(temporary);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(FORMAT_VERSION);
+
+			writer.accept(batch -> {
+				// A zero length marks the end, so empty batches are left out.
+				if (batch.isEmpty()) {
+					return;
+				}
+
+				try {
+					writeFrame(out, batch.toByteArray());
+				} catch (IOException e) {
+					throw new DbException("Unable to write " + temporary, e);
+				}
+			});
+
+			out.writeInt(0);
+			out.flush();
+		} catch (IOException e) {
+			throw new DbException("Unable to write " + temporary, e);
+		}
+
+		try (FileChannel written = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			written.force(true);
+			Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new DbException("Unable to replace " + snapshotFile, e);
+		}
+
+		// The first frame length goes first, so the log reads as empty at once.
+		clear(HEADER_BYTES, position + 4);
+		buffer.force();
+		position = HEADER_BYTES;
+	} // end compact
+
+	/*
+	 * Forces the log to disk and releases the file.
+	 */
+	@Override
+	public void close() {
+		try {
+			buffer.force();
+			fileLock.release();
+			channel.close();
+		} catch (IOException e) {
+			throw new DbException("Unable to close " + logFile, e);
+		}
+	} // end close
+
+	private void replaySnapshot(Visitor visitor) {
+		try (InputStream file = Files.newInputStream(snapshotFile);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+			if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+				throw new DbException(snapshotFile + " is not a project snapshot");
+			}
+
+			for (int length = in.readInt(); length != 0; length = in.readInt()) {
+				int expectedCrc = in.readInt();
+				byte[] payload = in.readNBytes(length);
+
+				if (payload.length != length || crc(payload) != expectedCrc) {
+					throw new DbException(snapshotFile + " is damaged");
+				}
+				Batch.read(payload, visitor);
+			}
+		} catch (EOFException e) {
+			throw new DbException(snapshotFile + " is incomplete", e);
+		} catch (IOException e) {
+			throw new DbException("Unable to read " + snapshotFile, e);
+		}
+	} // end replaySnapshot
+
+	private void ensureCapacity(long needed) {
+		if (needed <= buffer.capacity()) {
+			return;
+		}
+
+		if (needed > MAX_MAPPED_BYTES) {
+			throw new DbException(logFile + " is full; it must be compacted before more changes are written");
+		}
+
+		long capacity = Math.min(MAX_MAPPED_BYTES, Math.max(needed, 2L * buffer.capacity()));
+
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		} catch (IOException e) {
+			throw new DbException("Unable to grow " + logFile, e);
+		}
+	} // end ensureCapacity
+
+	private void clear(int from, int to) {
+		byte[] zeros = new byte[8192];
+
+		for (int offset = from; offset < Math.min(to, buffer.capacity()); offset += zeros.length) {
+			buffer.put(offset, zeros, 0, Math.min(zeros.length, Math.min(to, buffer.capacity()) - offset));
+		}
+	} // end clear
+
+	private static void writeFrame(DataOutputStream out, byte[] payload) throws IOException {
+		out.writeInt(payload.length);
+		out.writeInt(crc(payload));
+		out.write(payload);
+	} // end writeFrame
+
+	private static int crc(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue();
+	} // end crc
+
+	/*
+	 * Receives the operations read back from the snapshot and the log.
+	 */
+	interface Visitor {
+		void project(Project project);
+
+		void deleteProject(int projectId);
+
+		void material(Material material);
+
+		void step(Step step);
+
+		void category(Category category);
+
+		void link(int projectId, int categoryId);
+
+		void counters(int nextProjectId, int nextMaterialId, int nextStepId, int nextCategoryId);
+
+		void markDeleted(int projectId);
+
+		void deleteMaterial(int materialId);
+
+		void deleteStep(int stepId);
+
+		void unlink(int projectId, int categoryId);
+	} // end Visitor
+
+	/*
+	 * The operations of one atomic change, encoded as they are added. Only the
+	 * project's own fields are written by project(); its children are written
+	 * with their own operations.
+	 */
+	static final class Batch {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		Batch project(Project project) {
+			try {
+				out.writeByte(PROJECT);
+				out.writeInt(project.getProjectId());
+				writeString(project.getProjectName());
+				writeDecimal(project.getEstimatedHours());
+				writeDecimal(project.getActualHours());
+				writeInteger(project.getDifficulty());
+				writeString(project.getNotes());
+				writeInteger(project.getVersion());
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch deleteProject(int projectId) {
+			try {
+				out.writeByte(DELETE_PROJECT);
+				out.writeInt(projectId);
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch material(Material material) {
+			try {
+				out.writeByte(MATERIAL);
+				out.writeInt(material.getMaterialId());
+				out.writeInt(material.getProjectId());
+				writeString(material.getMaterialName());
+				writeInteger(material.getNumRequired());
+				writeDecimal(material.getCost());
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch step(Step step) {
+			try {
+				out.writeByte(STEP);
+				out.writeInt(step.getStepId());
+				out.writeInt(step.getProjectId());
+				writeString(step.getStepText());
+				out.writeInt(step.getStepOrder());
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch category(Category category) {
+			try {
+				out.writeByte(CATEGORY);
+				out.writeInt(category.getCategoryId());
+				writeString(category.getCategoryName());
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch link(int projectId, int categoryId) {
+			try {
+				out.writeByte(LINK);
+				out.writeInt(projectId);
+				out.writeInt(categoryId);
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch counters(int nextProjectId, int nextMaterialId, int nextStepId, int nextCategoryId) {
+			try {
+				out.writeByte(COUNTERS);
+				out.writeInt(nextProjectId);
+				out.writeInt(nextMaterialId);
+				out.writeInt(nextStepId);
+				out.writeInt(nextCategoryId);
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch markDeleted(int projectId) {
+			try {
+				out.writeByte(MARK_DELETED);
+				out.writeInt(projectId);
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch deleteMaterial(int materialId) {
+			try {
+				out.writeByte(DELETE_MATERIAL);
+				out.writeInt(materialId);
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch deleteStep(int stepId) {
+			try {
+				out.writeByte(DELETE_STEP);
+				out.writeInt(stepId);
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		Batch unlink(int projectId, int categoryId) {
+			try {
+				out.writeByte(UNLINK);
+				out.writeInt(projectId);
+				out.writeInt(categoryId);
+				return this;
+			} catch (IOException e) {
+				throw new DbException(e);
+			}
+		}
+
+		boolean isEmpty() {
+			return bytes.size() == 0;
+		}
+
+		int sizeBytes() {
+			return bytes.size();
+		}
+
+		byte[] toByteArray() {
+			return bytes.toByteArray();
+		}
+
+		/*
+		 * Decodes a payload written by a Batch and passes each operation to the
+		 * visitor.
+		 */
+		static void read(byte[] payload, Visitor visitor) {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+			try {
+				while (in.available() > 0) {
+					byte operation = in.readByte();
+
+					switch (operation) {
+					case PROJECT:
+						Project project = new Project();
+						project.setProjectId(in.readInt());
+						project.setProjectName(readString(in));
+						project.setEstimatedHours(readDecimal(in));
+						project.setActualHours(readDecimal(in));
+						project.setDifficulty(readInteger(in));
+						project.setNotes(readString(in));
+						project.setVersion(readInteger(in));
+						project.clearChangedFields();
+						visitor.project(project);
+						break;
+
+					case DELETE_PROJECT:
+						visitor.deleteProject(in.readInt());
+						break;
+
+					case MATERIAL:
+						Material material = new Material();
+						material.setMaterialId(in.readInt());
+						material.setProjectId(in.readInt());
+						material.setMaterialName(readString(in));
+						material.setNumRequired(readInteger(in));
+						material.setCost(readDecimal(in));
+						visitor.material(material);
+						break;
+
+					case STEP:
+						Step step = new Step();
+						step.setStepId(in.readInt());
+						step.setProjectId(in.readInt());
+						step.setStepText(readString(in));
+						step.setStepOrder(in.readInt());
+						visitor.step(step);
+						break;
+
+					case CATEGORY:
+						Category category = new Category();
+						category.setCategoryId(in.readInt());
+						category.setCategoryName(readString(in));
+						visitor.category(category);
+						break;
+
+					case LINK:
+						visitor.link(in.readInt(), in.readInt());
+						break;
+
+					case MARK_DELETED:
+						visitor.markDeleted(in.readInt());
+						break;
+
+					case DELETE_MATERIAL:
+						visitor.deleteMaterial(in.readInt());
+						break;
+
+					case DELETE_STEP:
+						visitor.deleteStep(in.readInt());
+						break;
+
+					case UNLINK:
+						visitor.unlink(in.readInt(), in.readInt());
+						break;
+
+					case COUNTERS:
+						visitor.counters(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+						break;
+
+					default:
+						throw new DbException("Unknown log operation " + operation);
+					}
+				}
+			} catch (IOException e) {
+				throw new DbException("Unable to decode a log batch", e);
+			}
+		} // end read
+
+		// Strings are written as a UTF-8 byte count (-1 for null) and the bytes, since
+		// writeUTF is limited to 64 KB and notes can be longer.
+		private void writeString(String value) throws IOException {
+			if (value == null) {
+				out.writeInt(-1);
+			} else {
+				byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(utf8.length);
+				out.write(utf8);
+			}
+		}
+
+		private void writeInteger(Integer value) throws IOException {
+			out.writeBoolean(value != null);
+
+			if (value != null) {
+				out.writeInt(value);
+			}
+		}
+
+		private void writeDecimal(BigDecimal value) throws IOException {
+			writeString(value == null ? null : value.toPlainString());
+		}
+
+		private static String readString(DataInputStream in) throws IOException {
+			int length = in.readInt();
+
+			if (length < 0) {
+				return null;
+			}
+
+			byte[] utf8 = new byte[length];
+			in.readFully(utf8);
+			return new String(utf8, StandardCharsets.UTF_8);
+		}
+
+		private static Integer readInteger(DataInputStream in) throws IOException {
+			return in.readBoolean() ? in.readInt() : null;
+		}
+
+		private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+			String value = readString(in);
+			return value == null ? null : new BigDecimal(value);
+		}
+	} // end Batch
+
+} // end CLASS
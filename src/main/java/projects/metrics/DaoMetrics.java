@@ -0,0 +1,127 @@
+package projects.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import provided.util.DaoBase;
+import provided.util.StatementListener;
+
+/*
+ * Registry of the OperationMetrics recorded for the DAO layer. Every metric is
+ * published as an MBean under the "projects" JMX domain:
+ *
+ *   projects:type=Dao,name=<ProjectDao method>     one per DAO operation
+ *   projects:type=Query,name=<SQL text>            one per SQL statement
+ *   projects:type=Pool,name=connectionAcquire      DbConnection.getConnection
+ *
+ * Loading this class installs a StatementListener in DaoBase, so every
+ * statement prepared through the DaoBase statement cache is timed and counted.
+ * The per-statement metrics show which of the queries run by a DAO operation
+ * dominates its latency.
+ */
+public final class DaoMetrics {
+
+	private static final String DOMAIN = "projects";
+
+	// IN lists of any length are reported as one statement.
+	private static final Pattern IN_LIST = Pattern.compile("\\(\\?(, \\?)*\\)");
+
+	// Upper bound on distinct statements tracked, in case SQL is built from data.
+	private static final int MAX_QUERIES = 500;
+
+	private static final Map<String, OperationMetrics> OPERATIONS = new ConcurrentHashMap<>();
+	private static final Map<String, OperationMetrics> QUERIES = new ConcurrentHashMap<>();
+	private static final OperationMetrics CONNECTION_ACQUIRE = register("Pool", "connectionAcquire");
+	private static final OperationMetrics OTHER_QUERIES = register("Query", "other");
+
+	// Statements run by the current thread, used for the queries-per-call histogram.
+	private static final ThreadLocal<long[]> QUERY_COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+	static {
+		DaoBase.setStatementListener(DaoMetrics::statementPrepared);
+	}
+
+	private DaoMetrics() {
+	}
+
+	/*
+	 * Returns the metrics for the named DAO operation, creating and registering
+	 * them the first time. Callers keep the result in a static final field.
+	 */
+	public static OperationMetrics operation(String name) {
+		return OPERATIONS.computeIfAbsent(name, key -> register("Dao", key));
+	} // end operation
+
+	/*
+	 * Metrics for the time taken to borrow a connection from the pool.
+	 */
+	public static OperationMetrics connectionAcquire() {
+		return CONNECTION_ACQUIRE;
+	} // end connectionAcquire
+
+	/*
+	 * Number of statements the current thread has run so far. Take it before and
+	 * after a call; the difference is the number of queries the call ran.
+	 */
+	public static long queryCount() {
+		return QUERY_COUNT.get()[0];
+	} // end queryCount
+
+	/*
+	 * Returns a snapshot of all DAO, statement and pool metrics, for logging.
+	 */
+	public static List<OperationMetrics> all() {
+		List<OperationMetrics> all = new ArrayList<>(OPERATIONS.values());
+		all.addAll(QUERIES.values());
+		all.add(OTHER_QUERIES);
+		all.add(CONNECTION_ACQUIRE);
+		return all;
+	} // end all
+
+	/*
+	 * Called by DaoBase once for each statement prepared on a connection. The
+	 * returned observer is kept with the cached statement and called on every
+	 * execution.
+	 */
+	private static StatementListener.StatementObserver statementPrepared(String sql) {
+		String key = IN_LIST.matcher(sql).replaceAll("(?...)");
+		OperationMetrics metrics = QUERIES.get(key);
+
+		if (metrics == null) {
+			metrics = QUERIES.size() < MAX_QUERIES ? QUERIES.computeIfAbsent(key, k -> register("Query", k))
+					: OTHER_QUERIES;
+		}
+
+		OperationMetrics target = metrics;
+
+		return (elapsedNanos, updateCount, error) -> {
+			QUERY_COUNT.get()[0]++;
+			target.recordElapsed(elapsedNanos, updateCount, error != null);
+		};
+	} // end statementPrepared
+
+	private static OperationMetrics register(String type, String name) {
+		OperationMetrics metrics = new OperationMetrics(name);
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(metrics, objectName);
+			}
+		} catch (JMException e) {
+			// The metrics are still recorded, they are just not visible over JMX.
+		}
+		return metrics;
+	} // end register
+
+} // end CLASS
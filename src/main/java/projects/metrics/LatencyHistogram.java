@@ -0,0 +1,108 @@
+package projects.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A fixed-size, log-linear histogram of durations in nanoseconds.
+ *
+ * Every power of two is split into SUB_BUCKETS linear buckets, so a recorded
+ * value is off by at most 1/SUB_BUCKETS (12.5%) when it is read back as a
+ * percentile. Values from 0 ns up to about 18 minutes fit; anything larger goes
+ * into the last bucket.
+ *
+ * record() only does atomic increments on preallocated arrays, so it never
+ * allocates and can be called from any thread.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/*
+	 * Records one value, in nanoseconds. Negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		long nanos = Math.max(0, value);
+
+		counts.incrementAndGet(bucketIndex(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+
+		long current = max.get();
+
+		while (nanos > current && !max.compareAndSet(current, nanos)) {
+			current = max.get();
+		}
+	} // end record
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/*
+	 * Returns the value at the given quantile (0.5 for p50, 0.999 for p999), as the
+	 * upper bound of the bucket that holds it. Returns 0 if nothing was recorded.
+	 */
+	public long getValueAtQuantile(double quantile) {
+		long total = count.get();
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			seen += counts.get(index);
+
+			if (seen >= target) {
+				return Math.min(bucketUpperBound(index), max.get());
+			}
+		}
+		return max.get();
+	} // end getValueAtQuantile
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+		if (exponent > MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	} // end bucketIndex
+
+	private static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	} // end bucketUpperBound
+
+} // end CLASS
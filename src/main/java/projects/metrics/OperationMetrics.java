@@ -0,0 +1,135 @@
+package projects.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters and a latency histogram for one named operation: a DAO method, a
+ * SQL statement, or the connection pool borrow. Created and registered as an
+ * MBean by the DaoMetrics class.
+ *
+ * The record methods take the System.nanoTime() value from the start of the
+ * call, so callers only need one local variable and nothing is allocated.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+	private final String name;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram queriesPerCall = new LatencyHistogram();
+	private final LongAdder rowCount = new LongAdder();
+	private final LongAdder errorCount = new LongAdder();
+
+	OperationMetrics(String name) {
+		this.name = name;
+	}
+
+	/*
+	 * Records a successful call that started at startNanos and returned or
+	 * changed the given number of rows.
+	 */
+	public void record(long startNanos, long rows) {
+		latency.record(System.nanoTime() - startNanos);
+
+		if (rows > 0) {
+			rowCount.add(rows);
+		}
+	} // end record
+
+	/*
+	 * Records a successful call, plus the number of SQL statements it ran. The
+	 * count is taken with DaoMetrics.queryCount() before and after the call.
+	 */
+	public void record(long startNanos, long rows, long queries) {
+		record(startNanos, rows);
+		queriesPerCall.record(queries);
+	} // end record
+
+	/*
+	 * Records a call whose duration was measured by the caller. Used for the
+	 * statement timings reported by DaoBase.
+	 */
+	void recordElapsed(long elapsedNanos, long rows, boolean failed) {
+		latency.record(elapsedNanos);
+
+		if (failed) {
+			errorCount.increment();
+		} else if (rows > 0) {
+			rowCount.add(rows);
+		}
+	} // end recordElapsed
+
+	/*
+	 * Records a call that started at startNanos and failed.
+	 */
+	public void recordError(long startNanos) {
+		latency.record(System.nanoTime() - startNanos);
+		errorCount.increment();
+	} // end recordError
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getCallCount() {
+		return latency.getCount();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	@Override
+	public long getRowCount() {
+		return rowCount.sum();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		return latency.getMean() / 1000.0;
+	}
+
+	@Override
+	public double getP50Micros() {
+		return latency.getValueAtQuantile(0.5) / 1000.0;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return latency.getValueAtQuantile(0.99) / 1000.0;
+	}
+
+	@Override
+	public double getP999Micros() {
+		return latency.getValueAtQuantile(0.999) / 1000.0;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return latency.getMax() / 1000.0;
+	}
+
+	// The "latencies" in this histogram are query counts, not nanoseconds.
+	@Override
+	public double getMeanQueriesPerCall() {
+		return queriesPerCall.getMean();
+	}
+
+	@Override
+	public double getP99QueriesPerCall() {
+		return queriesPerCall.getValueAtQuantile(0.99);
+	}
+
+	@Override
+	public String toString() {
+		return name + ": calls=" + getCallCount() + ", errors=" + getErrorCount() + ", rows=" + getRowCount()
+				+ String.format(", p50=%.1fus, p99=%.1fus, p999=%.1fus, max=%.1fus", getP50Micros(), getP99Micros(),
+						getP999Micros(), getMaxMicros());
+	}
+
+} // end CLASS
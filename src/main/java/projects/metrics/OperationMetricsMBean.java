@@ -0,0 +1,30 @@
+package projects.metrics;
+
+/*
+ * JMX view of an OperationMetrics. Times are in microseconds.
+ */
+public interface OperationMetricsMBean {
+
+	String getName();
+
+	long getCallCount();
+
+	long getErrorCount();
+
+	long getRowCount();
+
+	double getMeanMicros();
+
+	double getP50Micros();
+
+	double getP99Micros();
+
+	double getP999Micros();
+
+	double getMaxMicros();
+
+	double getMeanQueriesPerCall();
+
+	double getP99QueriesPerCall();
+
+} // end INTERFACE
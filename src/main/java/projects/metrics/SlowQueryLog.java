@@ -0,0 +1,153 @@
+package projects.metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import provided.util.SlowStatementLog;
+
+/*
+ * Logs statements that ran longer than the slow query threshold, together with
+ * the EXPLAIN plan MySQL chooses for them.
+ *
+ * DaoBase calls slowStatement on the request thread. That call only copies the
+ * details into a bounded queue (a fixed-size array ring) with offer(), which
+ * never waits: if the queue is full the entry is dropped and counted. A single
+ * daemon thread takes entries off the queue, writes them to the
+ * "projects.slowquery" java.util.logging logger, and runs EXPLAIN for the
+ * statement on its own pooled connection with the same parameters bound.
+ *
+ * Multi-statement requests are logged but not explained.
+ */
+public class SlowQueryLog implements SlowStatementLog {
+
+	private static final Logger LOGGER = Logger.getLogger("projects.slowquery");
+
+	private final BlockingQueue<Entry> queue;
+	private final Supplier<Connection> connections;
+	private final boolean explain;
+	private final Thread worker;
+
+	private final LongAdder loggedCount = new LongAdder();
+	private final LongAdder droppedCount = new LongAdder();
+
+	/*
+	 * connections supplies the connections used to run EXPLAIN. Pass explain=false
+	 * to only log the statements.
+	 */
+	public SlowQueryLog(int capacity, Supplier<Connection> connections, boolean explain) {
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.connections = connections;
+		this.explain = explain;
+		this.worker = new Thread(this::drain, "projects-slow-query-log");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	} // end CONSTRUCTOR
+
+	@Override
+	public void slowStatement(String sql, Object[] parameters, long elapsedNanos, long rowCount) {
+		if (!queue.offer(new Entry(sql, parameters, elapsedNanos, rowCount))) {
+			droppedCount.increment();
+		}
+	} // end slowStatement
+
+	// Slow statements written to the log.
+	public long getLoggedCount() {
+		return loggedCount.sum();
+	}
+
+	// Slow statements dropped because the queue was full.
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	/*
+	 * Runs on the worker thread until the JVM exits.
+	 */
+	private void drain() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				write(queue.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Unable to log slow query", e);
+			}
+		}
+	} // end drain
+
+	private void write(Entry entry) {
+		StringBuilder message = new StringBuilder();
+		message.append(String.format("Slow query: %.3f ms, rows=%d%n  SQL: %s%n  Parameters: %s",
+				entry.elapsedNanos / 1_000_000.0, entry.rowCount, entry.sql, Arrays.toString(entry.parameters)));
+
+		if (explain && isExplainable(entry.sql)) {
+			message.append(System.lineSeparator()).append("  Plan:").append(explain(entry));
+		}
+
+		LOGGER.warning(message.toString());
+		loggedCount.increment();
+	} // end write
+
+	/*
+	 * Runs EXPLAIN for the statement with the same parameters and returns the plan
+	 * rows, one per line, as column=value pairs.
+	 */
+	private String explain(Entry entry) {
+		StringBuilder plan = new StringBuilder();
+
+		try (Connection conn = connections.get();
+				PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + entry.sql)) {
+			for (int index = 0; index < entry.parameters.length; index++) {
+				stmt.setObject(index + 1, entry.parameters[index]);
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				ResultSetMetaData meta = rs.getMetaData();
+
+				while (rs.next()) {
+					plan.append(System.lineSeparator()).append("   ");
+
+					for (int col = 1; col <= meta.getColumnCount(); col++) {
+						plan.append(' ').append(meta.getColumnLabel(col)).append('=').append(rs.getObject(col));
+					}
+				}
+			}
+		} catch (SQLException | RuntimeException e) {
+			plan.append(" unavailable (").append(e.getMessage()).append(')');
+		}
+		return plan.toString();
+	} // end explain
+
+	private static boolean isExplainable(String sql) {
+		String statement = sql.trim().toUpperCase(Locale.ROOT);
+
+		return !statement.contains(";") && (statement.startsWith("SELECT") || statement.startsWith("UPDATE")
+				|| statement.startsWith("DELETE") || statement.startsWith("INSERT"));
+	} // end isExplainable
+
+	private static class Entry {
+		private final String sql;
+		private final Object[] parameters;
+		private final long elapsedNanos;
+		private final long rowCount;
+
+		private Entry(String sql, Object[] parameters, long elapsedNanos, long rowCount) {
+			this.sql = sql;
+			this.parameters = parameters;
+			this.elapsedNanos = elapsedNanos;
+			this.rowCount = rowCount;
+		}
+	} // end Entry
+
+} // end CLASS
@@ -0,0 +1,707 @@
+package projects.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import projects.entity.Project;
+import projects.entity.ProjectStamp;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/*
+ * An in-memory inverted index over project notes and step text, so keyword
+ * searches do not need LIKE '%term%' scans of the TEXT columns.
+ *
+ * For each term the index keeps a postings list: the IDs of the projects that
+ * contain it, sorted, in an int array, next to parallel arrays of how often the
+ * term occurs in each project and how many terms the project has. Each term
+ * string is stored once and shared by the postings list and the projects that
+ * use it.
+ *
+ * Queries are ranked with BM25: projects that contain more of the query terms,
+ * contain them more often, or contain rarer terms come first.
+ *
+ * The index is kept current one project at a time by the ProjectService class,
+ * and can be rebuilt from the database. Searches take a read lock and updates a
+ * write lock, so searches run in parallel with each other.
+ *
+ * saveSnapshot writes the index to a file that loadSnapshot reads back, so a
+ * restart does not have to read every project from the database again. The
+ * file also holds the ProjectStamp of the projects the index was built from,
+ * and loadSnapshot only uses the file if the stamp still matches, so projects
+ * added, modified or deleted while the application was stopped cause a
+ * rebuild instead of stale results. Changes made by another program while the
+ * index is loaded are not seen.
+ */
+public class ProjectSearchIndex {
+
+	// "PSIX", then the format number, at the start of each snapshot file.
+	private static final int SNAPSHOT_MAGIC = 0x50534958;
+	private static final int SNAPSHOT_FORMAT = 2;
+
+	// BM25 term frequency saturation and document length normalization.
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, Postings> postingsByTerm = new HashMap<>();
+	private final Map<Integer, Document> documents = new HashMap<>();
+	private long totalLength;
+
+	private volatile boolean ready;
+	private volatile boolean changedSinceSnapshot;
+
+	/*
+	 * True once the index has been rebuilt or loaded from a snapshot. Until then
+	 * it only holds the projects indexed since it was created.
+	 */
+	public boolean isReady() {
+		return ready;
+	} // end isReady
+
+	/*
+	 * Clears the index and indexes every project the source passes to its
+	 * consumer, for example the streamAllProjectsDao method in the ProjectDao
+	 * class. The write lock is held throughout, so updates made meanwhile are
+	 * applied after the rebuild and are not lost. If the source fails, the index is
+	 * left not ready.
+	 */
+	public long rebuild(Consumer<Consumer<Project>> source) {
+		lock.writeLock().lock();
+
+		try {
+			clear();
+			long[] count = new long[1];
+
+			source.accept(project -> {
+				addDocument(project.getProjectId(), TermCounts.of(List.of(nullToEmpty(project.getNotes()))),
+						TermCounts.of(stepTexts(project)));
+				count[0]++;
+			});
+
+			ready = true;
+			changedSinceSnapshot = true;
+			return count[0];
+		} catch (RuntimeException e) {
+			ready = false;
+			throw e;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end rebuild
+
+	/*
+	 * Adds the project, or replaces it if it is already indexed, using its notes
+	 * and the text of its steps.
+	 */
+	public void indexProject(Project project) {
+		TermCounts notes = TermCounts.of(List.of(nullToEmpty(project.getNotes())));
+		TermCounts steps = TermCounts.of(stepTexts(project));
+
+		lock.writeLock().lock();
+
+		try {
+			removeDocument(project.getProjectId());
+			addDocument(project.getProjectId(), notes, steps);
+			changedSinceSnapshot = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end indexProject
+
+	/*
+	 * Re-indexes only the notes of a project, keeping its step terms. Does nothing
+	 * if the project is not indexed.
+	 */
+	public void updateNotes(Integer projectId, String notes) {
+		TermCounts noteTerms = TermCounts.of(List.of(nullToEmpty(notes)));
+
+		lock.writeLock().lock();
+
+		try {
+			Document document = documents.get(projectId);
+
+			if (Objects.nonNull(document)) {
+				removeDocument(projectId);
+				addDocument(projectId, noteTerms, document.steps);
+				changedSinceSnapshot = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end updateNotes
+
+	/*
+	 * Adds the terms of one new step to an indexed project, keeping its other
+	 * terms. Does nothing if the project is not indexed.
+	 */
+	public void addStepText(Integer projectId, String stepText) {
+		TermCounts stepTerms = TermCounts.of(List.of(nullToEmpty(stepText)));
+
+		lock.writeLock().lock();
+
+		try {
+			Document document = documents.get(projectId);
+
+			if (Objects.nonNull(document)) {
+				removeDocument(projectId);
+				addDocument(projectId, document.notes, document.steps.plus(stepTerms));
+				changedSinceSnapshot = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end addStepText
+
+	public void removeProject(Integer projectId) {
+		lock.writeLock().lock();
+
+		try {
+			if (removeDocument(projectId)) {
+				changedSinceSnapshot = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end removeProject
+
+	/*
+	 * Returns the IDs of up to limit projects that contain any of the query terms,
+	 * best match first. Projects with equal scores are listed by ID.
+	 */
+	public List<Integer> search(String query, int limit) {
+		Set<String> terms = new LinkedHashSet<>();
+		SearchTokenizer.tokenize(query, terms::add);
+
+		if (terms.isEmpty() || limit < 1) {
+			return List.of();
+		}
+
+		lock.readLock().lock();
+
+		try {
+			int documentCount = documents.size();
+
+			if (documentCount == 0) {
+				return List.of();
+			}
+
+			double averageLength = Math.max(1.0, (double) totalLength / documentCount);
+			List<Postings> lists = new ArrayList<>(terms.size());
+
+			for (String term : terms) {
+				Postings postings = postingsByTerm.get(term);
+
+				if (Objects.nonNull(postings)) {
+					lists.add(postings);
+				}
+			}
+
+			double[] idfs = new double[lists.size()];
+
+			for (int term = 0; term < idfs.length; term++) {
+				int df = lists.get(term).size;
+				idfs[term] = Math.log(1 + (documentCount - df + 0.5) / (df + 0.5));
+			}
+
+			// The postings lists are sorted by project ID, so they are merged in one pass
+			// and each project's score is complete when the merge moves past it.
+			int[] positions = new int[lists.size()];
+			TopResults top = new TopResults(limit);
+
+			while (true) {
+				int projectId = Integer.MAX_VALUE;
+				boolean found = false;
+
+				for (int term = 0; term < positions.length; term++) {
+					Postings postings = lists.get(term);
+
+					if (positions[term] < postings.size) {
+						projectId = Math.min(projectId, postings.ids[positions[term]]);
+						found = true;
+					}
+				}
+
+				if (!found) {
+					break;
+				}
+
+				double score = 0;
+
+				for (int term = 0; term < positions.length; term++) {
+					Postings postings = lists.get(term);
+					int index = positions[term];
+
+					if (index < postings.size && postings.ids[index] == projectId) {
+						double tf = postings.frequencies[index];
+						double norm = K1 * (1 - B + B * postings.lengths[index] / averageLength);
+
+						score += idfs[term] * tf * (K1 + 1) / (tf + norm);
+						positions[term]++;
+					}
+				}
+
+				top.offer(projectId, score);
+			}
+
+			return top.toList();
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end search
+
+	// Number of projects in the index.
+	public int size() {
+		lock.readLock().lock();
+
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end size
+
+	// Number of distinct terms in the index.
+	public int termCount() {
+		lock.readLock().lock();
+
+		try {
+			return postingsByTerm.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end termCount
+
+	/*
+	 * Writes the index to the file, with the stamp, if it is ready and has changed
+	 * since the last snapshot. The file and its directory are created if needed.
+	 * The file is written under a temporary name and then moved into place, so an
+	 * interrupted save leaves the previous snapshot intact.
+	 * 
+	 * The stamp is read before the index is, so a change that reaches the index
+	 * after the stamp was read makes the stamps differ on the next load, and the
+	 * index is rebuilt rather than missing it.
+	 */
+	public void saveSnapshot(Path file, Supplier<ProjectStamp> stamp) {
+		if (!ready || !changedSinceSnapshot) {
+			return;
+		}
+
+		ProjectStamp current = stamp.get();
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		lock.readLock().lock();
+
+		try {
+			if (Objects.nonNull(file.getParent())) {
+				Files.createDirectories(file.getParent());
+			}
+
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(SNAPSHOT_MAGIC);
+				out.writeInt(SNAPSHOT_FORMAT);
+				out.writeLong(current.getProjectCount());
+				out.writeLong(current.getMaxProjectId());
+				out.writeLong(current.getVersionSum());
+				out.writeLong(current.getStepCount());
+				out.writeLong(current.getMaxStepId());
+				out.writeInt(documents.size());
+
+				for (Map.Entry<Integer, Document> entry : documents.entrySet()) {
+					out.writeInt(entry.getKey());
+					entry.getValue().notes.write(out);
+					entry.getValue().steps.write(out);
+				}
+			}
+
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			changedSinceSnapshot = false;
+		} catch (IOException e) {
+			throw new DbException("Unable to write the search index snapshot " + file, e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	} // end saveSnapshot
+
+	/*
+	 * Replaces the index with the snapshot in the file, if the snapshot was saved
+	 * with the stamp read now. Returns false, leaving the index unchanged, if the
+	 * file does not exist or its stamp differs. Throws a DbException if it is not
+	 * a readable snapshot.
+	 * 
+	 * The stamp is read with the write lock held, so a change that reaches the
+	 * index meanwhile waits and is applied on top of the loaded snapshot.
+	 */
+	public boolean loadSnapshot(Path file, Supplier<ProjectStamp> stamp) {
+		if (!Files.exists(file)) {
+			return false;
+		}
+
+		lock.writeLock().lock();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+				throw new IOException("Not a search index snapshot");
+			}
+
+			ProjectStamp saved = new ProjectStamp(in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+					in.readLong());
+
+			if (!saved.equals(stamp.get())) {
+				return false;
+			}
+
+			clear();
+			int documentCount = in.readInt();
+
+			for (int index = 0; index < documentCount; index++) {
+				int projectId = in.readInt();
+				addDocument(projectId, TermCounts.read(in), TermCounts.read(in));
+			}
+
+			ready = true;
+			changedSinceSnapshot = false;
+			return true;
+		} catch (IOException | RuntimeException e) {
+			clear();
+			ready = false;
+			throw new DbException("Unable to read the search index snapshot " + file, e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	} // end loadSnapshot
+
+	private void clear() {
+		postingsByTerm.clear();
+		documents.clear();
+		totalLength = 0;
+	} // end clear
+
+	/*
+	 * Call with the write lock held. Adds a project that is not in the index. The
+	 * term strings are replaced by the instances already held in the term
+	 * dictionary, so each distinct term is stored once.
+	 */
+	private void addDocument(Integer projectId, TermCounts notes, TermCounts steps) {
+		Map<String, Integer> frequencies = combine(notes, steps);
+		int length = notes.length + steps.length;
+
+		for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+			Postings postings = postingsByTerm.computeIfAbsent(entry.getKey(), Postings::new);
+			postings.put(projectId, entry.getValue(), length);
+		}
+
+		notes.shareTerms(postingsByTerm);
+		steps.shareTerms(postingsByTerm);
+
+		documents.put(projectId, new Document(notes, steps));
+		totalLength += length;
+	} // end addDocument
+
+	/*
+	 * Call with the write lock held. Returns false if the project is not in the
+	 * index.
+	 */
+	private boolean removeDocument(Integer projectId) {
+		Document document = documents.remove(projectId);
+
+		if (Objects.isNull(document)) {
+			return false;
+		}
+
+		for (String term : combine(document.notes, document.steps).keySet()) {
+			Postings postings = postingsByTerm.get(term);
+
+			if (Objects.nonNull(postings) && postings.remove(projectId) && postings.size == 0) {
+				postingsByTerm.remove(term);
+			}
+		}
+
+		totalLength -= document.notes.length + document.steps.length;
+		return true;
+	} // end removeDocument
+
+	private static Map<String, Integer> combine(TermCounts notes, TermCounts steps) {
+		Map<String, Integer> frequencies = new HashMap<>();
+
+		notes.addTo(frequencies);
+		steps.addTo(frequencies);
+
+		return frequencies;
+	} // end combine
+
+	private static List<String> stepTexts(Project project) {
+		List<String> texts = new ArrayList<>(project.getSteps().size());
+
+		for (Step step : project.getSteps()) {
+			texts.add(nullToEmpty(step.getStepText()));
+		}
+		return texts;
+	} // end stepTexts
+
+	private static String nullToEmpty(String text) {
+		return Objects.isNull(text) ? "" : text;
+	} // end nullToEmpty
+
+	/*
+	 * The best limit results seen so far, in a min-heap of parallel arrays with the
+	 * worst result at the root. A lower score is worse, and for equal scores a
+	 * higher project ID is worse.
+	 */
+	private static class TopResults {
+		private final int[] ids;
+		private final double[] scores;
+		private int size;
+
+		private TopResults(int limit) {
+			ids = new int[limit];
+			scores = new double[limit];
+		}
+
+		private void offer(int projectId, double score) {
+			if (size < ids.length) {
+				ids[size] = projectId;
+				scores[size] = score;
+				siftUp(size++);
+			} else if (isWorse(ids[0], scores[0], projectId, score)) {
+				ids[0] = projectId;
+				scores[0] = score;
+				siftDown(0);
+			}
+		}
+
+		// Empties the heap, best result first.
+		private List<Integer> toList() {
+			Integer[] result = new Integer[size];
+
+			while (size > 0) {
+				result[size - 1] = ids[0];
+				size--;
+				ids[0] = ids[size];
+				scores[0] = scores[size];
+				siftDown(0);
+			}
+			return Arrays.asList(result);
+		}
+
+		private static boolean isWorse(int id, double score, int otherId, double otherScore) {
+			return score < otherScore || (score == otherScore && id > otherId);
+		}
+
+		private void siftUp(int index) {
+			while (index > 0) {
+				int parent = (index - 1) / 2;
+
+				if (!isWorse(ids[index], scores[index], ids[parent], scores[parent])) {
+					return;
+				}
+				swap(index, parent);
+				index = parent;
+			}
+		}
+
+		private void siftDown(int index) {
+			while (true) {
+				int worst = index;
+
+				for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+					if (isWorse(ids[child], scores[child], ids[worst], scores[worst])) {
+						worst = child;
+					}
+				}
+
+				if (worst == index) {
+					return;
+				}
+				swap(index, worst);
+				index = worst;
+			}
+		}
+
+		private void swap(int a, int b) {
+			int id = ids[a];
+			ids[a] = ids[b];
+			ids[b] = id;
+
+			double score = scores[a];
+			scores[a] = scores[b];
+			scores[b] = score;
+		}
+	} // end TopResults
+
+	/*
+	 * The indexed terms of one project, kept so the project can be removed or
+	 * partly re-indexed without the original text.
+	 */
+	private static class Document {
+		private final TermCounts notes;
+		private final TermCounts steps;
+
+		private Document(TermCounts notes, TermCounts steps) {
+			this.notes = notes;
+			this.steps = steps;
+		}
+	} // end Document
+
+	/*
+	 * The distinct terms of one field and how often each occurs, in two parallel
+	 * arrays. length is the total number of terms, counting repeats.
+	 */
+	private static class TermCounts {
+		private final String[] terms;
+		private final int[] counts;
+		private final int length;
+
+		private TermCounts(String[] terms, int[] counts, int length) {
+			this.terms = terms;
+			this.counts = counts;
+			this.length = length;
+		}
+
+		private static TermCounts of(List<String> texts) {
+			Map<String, int[]> counts = new HashMap<>();
+			int[] length = new int[1];
+
+			for (String text : texts) {
+				SearchTokenizer.tokenize(text, term -> {
+					counts.computeIfAbsent(term, t -> new int[1])[0]++;
+					length[0]++;
+				});
+			}
+
+			String[] terms = new String[counts.size()];
+			int[] termCounts = new int[counts.size()];
+			int index = 0;
+
+			for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+				terms[index] = entry.getKey();
+				termCounts[index++] = entry.getValue()[0];
+			}
+			return new TermCounts(terms, termCounts, length[0]);
+		}
+
+		private static TermCounts read(DataInputStream in) throws IOException {
+			int size = in.readInt();
+			String[] terms = new String[size];
+			int[] counts = new int[size];
+			int length = 0;
+
+			for (int index = 0; index < size; index++) {
+				terms[index] = in.readUTF();
+				counts[index] = in.readInt();
+				length += counts[index];
+			}
+			return new TermCounts(terms, counts, length);
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			out.writeInt(terms.length);
+
+			for (int index = 0; index < terms.length; index++) {
+				out.writeUTF(terms[index]);
+				out.writeInt(counts[index]);
+			}
+		}
+
+		private TermCounts plus(TermCounts other) {
+			Map<String, Integer> frequencies = new HashMap<>();
+			addTo(frequencies);
+			other.addTo(frequencies);
+
+			String[] mergedTerms = new String[frequencies.size()];
+			int[] mergedCounts = new int[frequencies.size()];
+			int index = 0;
+
+			for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+				mergedTerms[index] = entry.getKey();
+				mergedCounts[index++] = entry.getValue();
+			}
+			return new TermCounts(mergedTerms, mergedCounts, length + other.length);
+		}
+
+		private void addTo(Map<String, Integer> frequencies) {
+			for (int index = 0; index < terms.length; index++) {
+				frequencies.merge(terms[index], counts[index], Integer::sum);
+			}
+		}
+
+		private void shareTerms(Map<String, Postings> postingsByTerm) {
+			for (int index = 0; index < terms.length; index++) {
+				terms[index] = postingsByTerm.get(terms[index]).term;
+			}
+		}
+	} // end TermCounts
+
+	/*
+	 * The projects containing one term, sorted by project ID, with the term
+	 * frequency and project length for each in parallel arrays.
+	 */
+	private static class Postings {
+		private final String term;
+		private int[] ids = new int[2];
+		private int[] frequencies = new int[2];
+		private int[] lengths = new int[2];
+		private int size;
+
+		private Postings(String term) {
+			this.term = term;
+		}
+
+		private void put(int projectId, int frequency, int length) {
+			int index = Arrays.binarySearch(ids, 0, size, projectId);
+
+			if (index < 0) {
+				index = -index - 1;
+
+				if (size == ids.length) {
+					int capacity = size + (size >> 1) + 1;
+					ids = Arrays.copyOf(ids, capacity);
+					frequencies = Arrays.copyOf(frequencies, capacity);
+					lengths = Arrays.copyOf(lengths, capacity);
+				}
+
+				System.arraycopy(ids, index, ids, index + 1, size - index);
+				System.arraycopy(frequencies, index, frequencies, index + 1, size - index);
+				System.arraycopy(lengths, index, lengths, index + 1, size - index);
+				ids[index] = projectId;
+				size++;
+			}
+
+			frequencies[index] = frequency;
+			lengths[index] = length;
+		}
+
+		private boolean remove(int projectId) {
+			int index = Arrays.binarySearch(ids, 0, size, projectId);
+
+			if (index < 0) {
+				return false;
+			}
+
+			System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+			System.arraycopy(frequencies, index + 1, frequencies, index, size - index - 1);
+			System.arraycopy(lengths, index + 1, lengths, index, size - index - 1);
+			size--;
+			return true;
+		}
+	} // end Postings
+
+} // end CLASS
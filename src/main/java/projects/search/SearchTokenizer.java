@@ -0,0 +1,44 @@
+package projects.search;
+
+import java.util.function.Consumer;
+
+/*
+ * Splits text into lower case search terms. A term is a run of letters and
+ * digits. Terms shorter than MIN_TERM_LENGTH or longer than MAX_TERM_LENGTH
+ * characters are dropped, which leaves out noise such as single letters and
+ * long pasted URLs.
+ */
+final class SearchTokenizer {
+
+	static final int MIN_TERM_LENGTH = 2;
+	static final int MAX_TERM_LENGTH = 64;
+
+	private SearchTokenizer() {
+	}
+
+	/*
+	 * Passes each term of the text to the consumer, in order and with repeats.
+	 */
+	static void tokenize(String text, Consumer<String> consumer) {
+		if (text == null) {
+			return;
+		}
+
+		StringBuilder term = new StringBuilder();
+
+		for (int index = 0; index <= text.length(); index++) {
+			char c = index < text.length() ? text.charAt(index) : ' ';
+
+			if (Character.isLetterOrDigit(c)) {
+				term.append(Character.toLowerCase(c));
+				continue;
+			}
+
+			if (term.length() >= MIN_TERM_LENGTH && term.length() <= MAX_TERM_LENGTH) {
+				consumer.accept(term.toString());
+			}
+			term.setLength(0);
+		}
+	} // end tokenize
+
+} // end CLASS
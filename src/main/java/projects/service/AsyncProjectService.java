@@ -0,0 +1,225 @@
+package projects.service;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import projects.dao.DbConnection;
+import projects.dao.FetchPlan;
+import projects.dao.ProjectSortOrder;
+import projects.entity.CategoryHoursRollup;
+import projects.entity.Project;
+import projects.entity.ProjectCostRollup;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
+
+/*
+ * CompletableFuture-returning versions of the ProjectService methods that read
+ * or write projects, for callers that run many requests at once. The console
+ * ProjectsApp keeps using ProjectService directly.
+ *
+ * The calls run on the ProjectService passed in, which should be the one the
+ * rest of the application uses, so there is one project cache and one hours
+ * buffer. The cache and purge counters, and maintenance calls such as
+ * exportProjectsService, rebuildRollupsService or rebuildSearchIndexService,
+ * are called on that ProjectService directly.
+ *
+ * Tasks run on virtual threads when the JVM provides them (Java 21 and later),
+ * found by reflection so the project still builds for Java 17. On older JVMs a
+ * cached pool of daemon platform threads is used instead.
+ *
+ * A Semaphore with one permit per pooled connection limits how many calls touch
+ * the database at once, so a burst of requests queues here instead of timing
+ * out in the connection pool. fetchProjectByIdAsync returns a cached project
+ * without taking any, and otherwise takes three, because it loads the
+ * materials, steps and categories in parallel on three connections. Permits
+ * are taken on the task thread, so the caller never blocks.
+ */
+public class AsyncProjectService implements AutoCloseable {
+
+	// Connections used at once by the parallel project fetch.
+	private static final int PARALLEL_FETCH_CONNECTIONS = 3;
+
+	private final ProjectService projectService;
+	private final ExecutorService executor;
+	private final Semaphore limiter;
+	private final int maxPermits;
+
+	public AsyncProjectService(ProjectService projectService) {
+		this(projectService, DbConnection.getPoolMaxSize());
+	}
+
+	public AsyncProjectService(ProjectService projectService, int maxConcurrentConnections) {
+		this.projectService = projectService;
+		this.executor = newExecutor();
+		this.maxPermits = Math.max(1, maxConcurrentConnections);
+		this.limiter = new Semaphore(maxPermits, true);
+	} // end CONSTRUCTOR
+
+	public CompletableFuture<Project> addProjectAsync(Project project) {
+		return submit(1, () -> projectService.addProject(project));
+	} // end addProjectAsync
+
+	public CompletableFuture<Integer> addProjectsAsync(Collection<Project> projects) {
+		return submit(1, () -> projectService.addProjects(projects));
+	} // end addProjectsAsync
+
+	public CompletableFuture<List<Project>> getListOfProjectNamesAsync() {
+		return submit(1, projectService::getListOfProjectNames);
+	} // end getListOfProjectNamesAsync
+
+	public CompletableFuture<List<ProjectSummary>> getProjectPageAsync(ProjectSortOrder order, ProjectSummary after,
+			int pageSize) {
+		return submit(1, () -> projectService.getProjectPageService(order, after, pageSize));
+	} // end getProjectPageAsync
+
+	/*
+	 * Returns the cached project, if there is one, as an already completed future.
+	 * Otherwise loads the project through the project cache, with the materials,
+	 * steps and categories queries running concurrently on this service's
+	 * executor.
+	 */
+	public CompletableFuture<Project> fetchProjectByIdAsync(Integer projectId) {
+		Optional<Project> cached = projectService.getCachedProjectService(projectId);
+
+		if (cached.isPresent()) {
+			return CompletableFuture.completedFuture(cached.get());
+		}
+		return submit(PARALLEL_FETCH_CONNECTIONS, () -> projectService.fetchProjectByIdService(projectId, executor));
+	} // end fetchProjectByIdAsync
+
+	/*
+	 * Loads the lists the plan names with the project. The deferred lists are
+	 * loaded on first access, on the caller's thread and outside the limiter.
+	 */
+	public CompletableFuture<Project> fetchProjectByIdAsync(Integer projectId, FetchPlan plan) {
+		return submit(1, () -> projectService.fetchProjectByIdService(projectId, plan));
+	} // end fetchProjectByIdAsync
+
+	public CompletableFuture<List<Project>> fetchProjectsByIdsAsync(Collection<Integer> projectIds) {
+		return submit(1, () -> projectService.fetchProjectsByIdsService(projectIds));
+	} // end fetchProjectsByIdsAsync
+
+	public CompletableFuture<List<Project>> fetchProjectsByIdsAsync(Collection<Integer> projectIds, FetchPlan plan) {
+		return submit(1, () -> projectService.fetchProjectsByIdsService(projectIds, plan));
+	} // end fetchProjectsByIdsAsync
+
+	public CompletableFuture<Project> modifyProjectDetailsAsync(Project project) {
+		return submit(1, () -> projectService.modifyProjectDetailsService(project));
+	} // end modifyProjectDetailsAsync
+
+	public CompletableFuture<Project> modifyProjectWithRetryAsync(Integer projectId, Consumer<Project> edit) {
+		return submit(1, () -> projectService.modifyProjectWithRetry(projectId, edit));
+	} // end modifyProjectWithRetryAsync
+
+	public CompletableFuture<List<Integer>> searchProjectsAsync(String query, int limit) {
+		return submit(1, () -> projectService.searchProjectsService(query, limit));
+	} // end searchProjectsAsync
+
+	public CompletableFuture<Void> deleteProjectAsync(Integer projectId) {
+		return submit(1, () -> {
+			projectService.deleteProjectService(projectId);
+			return null;
+		});
+	} // end deleteProjectAsync
+
+	public CompletableFuture<Step> addStepAsync(Integer projectId, String stepText, Integer beforeStepId) {
+		return submit(1, () -> projectService.addStepService(projectId, stepText, beforeStepId));
+	} // end addStepAsync
+
+	public CompletableFuture<Void> moveStepAsync(Integer projectId, Integer stepId, Integer beforeStepId) {
+		return submit(1, () -> {
+			projectService.moveStepService(projectId, stepId, beforeStepId);
+			return null;
+		});
+	} // end moveStepAsync
+
+	public CompletableFuture<ProjectCostRollup> getProjectCostAsync(Integer projectId) {
+		return submit(1, () -> projectService.getProjectCostService(projectId));
+	} // end getProjectCostAsync
+
+	public CompletableFuture<CategoryHoursRollup> getCategoryHoursAsync(Integer categoryId) {
+		return submit(1, () -> projectService.getCategoryHoursService(categoryId));
+	} // end getCategoryHoursAsync
+
+	public CompletableFuture<List<CategoryHoursRollup>> getAllCategoryHoursAsync() {
+		return submit(1, projectService::getAllCategoryHoursService);
+	} // end getAllCategoryHoursAsync
+
+	/*
+	 * Adds the hours to the shared hours buffer. The call only writes to the
+	 * database when the buffer reaches its flush threshold.
+	 */
+	public CompletableFuture<Void> addActualHoursAsync(Integer projectId, BigDecimal hours) {
+		return submit(1, () -> {
+			projectService.addActualHoursService(projectId, hours);
+			return null;
+		});
+	} // end addActualHoursAsync
+
+	public CompletableFuture<BigDecimal> getActualHoursAsync(Integer projectId, long maxStalenessMillis) {
+		return submit(1, () -> projectService.getActualHoursService(projectId, maxStalenessMillis));
+	} // end getActualHoursAsync
+
+	public CompletableFuture<Integer> flushHoursAsync() {
+		return submit(1, projectService::flushHoursService);
+	} // end flushHoursAsync
+
+	/*
+	 * Stops accepting work. Calls already submitted still complete.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	} // end close
+
+	/*
+	 * Runs the call on the executor while holding the given number of limiter
+	 * permits. Exceptions complete the future exceptionally.
+	 */
+	private <T> CompletableFuture<T> submit(int connections, Supplier<T> call) {
+		int permits = Math.min(connections, maxPermits);
+
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				limiter.acquire(permits);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+
+			try {
+				return call.get();
+			} finally {
+				limiter.release(permits);
+			}
+		}, executor);
+	} // end submit
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() if this JVM has it, otherwise a
+	 * cached pool of daemon threads.
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "projects-async");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	} // end newExecutor
+
+} // end CLASS
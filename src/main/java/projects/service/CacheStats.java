@@ -0,0 +1,66 @@
+package projects.service;
+
+/*
+ * Immutable snapshot of the ProjectCache counters, returned by the
+ * getCacheStats method in the ProjectService class.
+ */
+public class CacheStats {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long loadCount;
+	private final long evictionCount;
+	private final long invalidationCount;
+	private final int size;
+
+	public CacheStats(long hitCount, long missCount, long loadCount, long evictionCount, long invalidationCount,
+			int size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadCount = loadCount;
+		this.evictionCount = evictionCount;
+		this.invalidationCount = invalidationCount;
+		this.size = size;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	// Lookups that did not find a live entry, including those that waited on another caller's load.
+	public long getMissCount() {
+		return missCount;
+	}
+
+	// Loads actually run against the database. Concurrent misses for one ID count once.
+	public long getLoadCount() {
+		return loadCount;
+	}
+
+	// Entries removed because the cache was full or the entry had expired.
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	// Entries removed because the project was modified or deleted.
+	public long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public double getHitRate() {
+		long requests = hitCount + missCount;
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size + ", hits=" + hitCount + ", misses=" + missCount + ", loads=" + loadCount
+				+ ", evictions=" + evictionCount + ", invalidations=" + invalidationCount + ", hitRate="
+				+ String.format("%.3f", getHitRate());
+	}
+
+} // end CLASS
@@ -0,0 +1,228 @@
+package projects.service;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * A write-behind buffer for increments to the actual hours of projects, used by
+ * the ProjectService class.
+ *
+ * Time-tracking clients add to a project's hours many times a minute. Instead
+ * of writing the whole project each time, add() adds the increment, in
+ * hundredths of an hour, to a LongAdder kept for the project. A LongAdder
+ * spreads concurrent adds over striped cells, so callers never lock or contend
+ * on a single counter, and all the increments for one project add up to one
+ * total.
+ *
+ * flush() takes the totals with sumThenReset, which empties each cell with an
+ * atomic get-and-set, so an increment made during a flush is written by that
+ * flush or by the next one, never lost. A counter that was already empty is
+ * removed from the map; an add that raced with the removal finds its counter
+ * gone and moves what it added to a new one. All the totals are passed to the
+ * writer in one call, which ProjectService points at addActualHoursDao. A
+ * flush runs every flushIntervalMillis, and straight away once flushThreshold
+ * increments are waiting. If the writer throws, the totals are added back and
+ * the next flush writes them.
+ *
+ * Increments are durable once they are flushed. close() flushes what is left;
+ * ProjectService has it run at shutdown before the database or the in-memory
+ * repository is closed. Increments still buffered if the process is killed are
+ * lost. Increments for a project that no longer exists when they are flushed
+ * are dropped.
+ */
+public class HoursBuffer implements AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger("projects.service");
+
+	private final ToIntFunction<Map<Integer, BigDecimal>> writer;
+	private final long flushThreshold;
+
+	// Hundredths of an hour waiting to be written, by project ID. A counter is kept
+	// after the flush that writes it, so the next increment for the project finds
+	// it, and removed by the first flush that finds it empty.
+	private final Map<Integer, LongAdder> pending = new ConcurrentHashMap<>();
+
+	// Increments added since the last flush started, and when the first of them
+	// was added (0 when there are none).
+	private final LongAdder waitingCount = new LongAdder();
+	private final AtomicLong oldestWaitingNanos = new AtomicLong();
+
+	private final AtomicBoolean flushQueued = new AtomicBoolean();
+	private final ScheduledExecutorService flusher;
+	private volatile boolean closed;
+
+	private final LongAdder flushCount = new LongAdder();
+	private final LongAdder failedFlushCount = new LongAdder();
+	private final LongAdder droppedProjectCount = new LongAdder();
+
+	public HoursBuffer(ToIntFunction<Map<Integer, BigDecimal>> writer, long flushIntervalMillis, long flushThreshold) {
+		if (flushIntervalMillis < 1 || flushThreshold < 1) {
+			throw new IllegalArgumentException("Invalid hours buffer settings: flushIntervalMillis="
+					+ flushIntervalMillis + ", flushThreshold=" + flushThreshold);
+		}
+
+		this.writer = writer;
+		this.flushThreshold = flushThreshold;
+
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "projects-hours-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	} // end CONSTRUCTOR
+
+	/*
+	 * Adds the hours, which must have at most two decimal places, to the project's
+	 * waiting total. Does not touch the database.
+	 */
+	public void add(Integer projectId, BigDecimal hours) {
+		if (closed) {
+			throw new IllegalStateException("The hours buffer has been closed");
+		}
+
+		addHundredths(projectId, hours.movePointRight(2).longValueExact());
+
+		if (waitingCount.sum() >= flushThreshold && flushQueued.compareAndSet(false, true)) {
+			flusher.execute(() -> {
+				flushQueued.set(false);
+				flushQuietly();
+			});
+		}
+	} // end add
+
+	/*
+	 * Writes every waiting total with one call to the writer. Returns the number of
+	 * projects updated. Throws what the writer throws, after putting the totals
+	 * back.
+	 */
+	public synchronized int flush() {
+		oldestWaitingNanos.set(0);
+		waitingCount.reset();
+
+		Map<Integer, BigDecimal> increments = new HashMap<>();
+
+		for (Map.Entry<Integer, LongAdder> entry : pending.entrySet()) {
+			LongAdder counter = entry.getValue();
+			long hundredths = counter.sumThenReset();
+
+			if (hundredths == 0 && pending.remove(entry.getKey(), counter)) {
+				// An add may have reached the counter just before it was removed.
+				hundredths = counter.sumThenReset();
+			}
+
+			if (hundredths != 0) {
+				increments.put(entry.getKey(), BigDecimal.valueOf(hundredths, 2));
+			}
+		}
+
+		if (increments.isEmpty()) {
+			return 0;
+		}
+
+		try {
+			int updated = writer.applyAsInt(increments);
+			flushCount.increment();
+
+			if (updated < increments.size()) {
+				droppedProjectCount.add(increments.size() - updated);
+				LOGGER.info(() -> "Dropped the hours of " + (increments.size() - updated)
+						+ " projects that no longer exist");
+			}
+			return updated;
+		} catch (RuntimeException e) {
+			failedFlushCount.increment();
+			increments.forEach((projectId, hours) -> addHundredths(projectId, hours.unscaledValue().longValue()));
+			throw e;
+		}
+	} // end flush
+
+	/*
+	 * Returns the hours waiting to be written for the project.
+	 */
+	public BigDecimal getPendingHours(Integer projectId) {
+		LongAdder hundredths = pending.get(projectId);
+		return BigDecimal.valueOf(Objects.isNull(hundredths) ? 0 : hundredths.sum(), 2);
+	} // end getPendingHours
+
+	/*
+	 * Returns how long the oldest waiting increment has waited, or -1 if none is
+	 * waiting.
+	 */
+	public long getPendingAgeMillis() {
+		long since = oldestWaitingNanos.get();
+		return since == 0 ? -1 : (System.nanoTime() - since) / 1_000_000;
+	} // end getPendingAgeMillis
+
+	/*
+	 * Forgets the hours waiting for a project that has been deleted.
+	 */
+	public void discard(Integer projectId) {
+		pending.remove(projectId);
+	} // end discard
+
+	public long getFlushCount() {
+		return flushCount.sum();
+	}
+
+	public long getFailedFlushCount() {
+		return failedFlushCount.sum();
+	}
+
+	public long getDroppedProjectCount() {
+		return droppedProjectCount.sum();
+	}
+
+	/*
+	 * Stops the flush thread and writes the waiting totals. Increments added after
+	 * close are rejected.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		flusher.shutdown();
+		flush();
+	} // end close
+
+	private void addHundredths(Integer projectId, long hundredths) {
+		LongAdder counter = pending.computeIfAbsent(projectId, id -> new LongAdder());
+		counter.add(hundredths);
+
+		// A flush removed the counter while it was empty. Whatever is still in it
+		// has not been taken by that flush, so move it to the current counter.
+		if (pending.get(projectId) != counter) {
+			long orphaned = counter.sumThenReset();
+
+			if (orphaned != 0) {
+				addHundredths(projectId, orphaned);
+				return;
+			}
+		}
+
+		oldestWaitingNanos.compareAndSet(0, System.nanoTime() | 1);
+		waitingCount.increment();
+	} // end addHundredths
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Unable to write buffered hours; they will be written by the next flush", e);
+		}
+	} // end flushQuietly
+
+} // end CLASS
@@ -0,0 +1,231 @@
+package projects.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import projects.entity.Project;
+
+/*
+ * A bounded, read-through cache of project aggregates (a project with its
+ * materials, steps and categories), used by the ProjectService class.
+ *
+ * Entries are kept in an access-ordered LinkedHashMap, so when the cache is
+ * full the least recently used project is evicted. Entries older than the
+ * time-to-live are treated as missing and dropped on the next lookup.
+ *
+ * Concurrent misses for the same project ID share one load: the first caller
+ * runs the loader and the others wait on its CompletableFuture. A load that is
+ * still running when the project is invalidated completes for its callers but
+ * is not stored, so a modify or delete can never be overwritten by an older
+ * read.
+ *
+ * The cached Project objects are shared between callers and must be treated
+ * as read-only.
+ */
+public class ProjectCache {
+
+	private final int maxSize;
+	private final long ttlNanos;
+
+	private final Map<Integer, Entry> entries;
+	private final Map<Integer, CompletableFuture<Optional<Project>>> loads = new ConcurrentHashMap<>();
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder loadCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder invalidationCount = new LongAdder();
+
+	public ProjectCache(int maxSize, long ttlMillis) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+
+		this.maxSize = maxSize;
+		this.ttlNanos = ttlMillis * 1_000_000;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+				if (size() > ProjectCache.this.maxSize) {
+					evictionCount.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	} // end CONSTRUCTOR
+
+	/*
+	 * Returns the cached project if there is a live entry for the ID. Otherwise
+	 * loads it with the loader (or waits for a load of the same ID that is already
+	 * running) and caches the result if the project exists.
+	 *
+	 * Exceptions thrown by the loader are passed on to every caller waiting on that
+	 * load, and nothing is cached.
+	 */
+	public Optional<Project> get(Integer projectId, Function<Integer, Optional<Project>> loader) {
+		Project cached = lookup(projectId);
+
+		if (Objects.nonNull(cached)) {
+			hitCount.increment();
+			return Optional.of(cached);
+		}
+
+		missCount.increment();
+
+		CompletableFuture<Optional<Project>> load = new CompletableFuture<>();
+		CompletableFuture<Optional<Project>> running = loads.putIfAbsent(projectId, load);
+
+		if (Objects.nonNull(running)) {
+			return await(running);
+		}
+
+		try {
+			loadCount.increment();
+			Optional<Project> result = loader.apply(projectId);
+
+			// Only store the result if no invalidation happened while loading.
+			if (loads.remove(projectId, load) && result.isPresent()) {
+				put(projectId, result.get());
+			}
+
+			load.complete(result);
+			return result;
+		} catch (RuntimeException e) {
+			loads.remove(projectId, load);
+			load.completeExceptionally(e);
+			throw e;
+		}
+	} // end get
+
+	/*
+	 * Returns the cached project if there is a live entry for the ID, without
+	 * loading it. A found project counts as a hit; nothing is counted otherwise.
+	 */
+	public Optional<Project> getIfPresent(Integer projectId) {
+		Project cached = lookup(projectId);
+
+		if (Objects.nonNull(cached)) {
+			hitCount.increment();
+		}
+		return Optional.ofNullable(cached);
+	} // end getIfPresent
+
+	/*
+	 * Stores a project that the caller knows to be current, for example right
+	 * after it has been written.
+	 */
+	public void put(Integer projectId, Project project) {
+		synchronized (entries) {
+			entries.put(projectId, new Entry(project, System.nanoTime()));
+		}
+	} // end put
+
+	/*
+	 * Records a save that gave the project the new version. The updater is given
+	 * the cached project and must return a new object, with the saved changes,
+	 * rather than edit it.
+	 *
+	 * Saves of the same project can reach the cache in a different order than
+	 * they were committed, so the cached version decides: if it is the version
+	 * just before the save, the updater's result replaces it; if it is the new
+	 * version or a later one, the cached project is already newer and is kept;
+	 * otherwise a save in between has not been applied yet and the project is
+	 * removed, to be loaded again. Does nothing if the project is not cached. Any
+	 * load still running for the ID is detached, as in invalidate, because it
+	 * may have read the row before the save.
+	 */
+	public void update(Integer projectId, int version, UnaryOperator<Project> updater) {
+		loads.remove(projectId);
+
+		synchronized (entries) {
+			Project cached = lookup(projectId);
+
+			if (Objects.isNull(cached)) {
+				return;
+			}
+
+			Integer cachedVersion = cached.getVersion();
+
+			if (Objects.nonNull(cachedVersion) && cachedVersion == version - 1) {
+				entries.put(projectId, new Entry(updater.apply(cached), System.nanoTime()));
+			} else if (Objects.isNull(cachedVersion) || cachedVersion < version) {
+				entries.remove(projectId);
+				invalidationCount.increment();
+			}
+		}
+	} // end update
+
+	/*
+	 * Removes the project from the cache and detaches any load that is still
+	 * running for it, so that load's result is not stored.
+	 */
+	public void invalidate(Integer projectId) {
+		loads.remove(projectId);
+
+		synchronized (entries) {
+			if (Objects.nonNull(entries.remove(projectId))) {
+				invalidationCount.increment();
+			}
+		}
+	} // end invalidate
+
+	public CacheStats getStats() {
+		int size;
+
+		synchronized (entries) {
+			size = entries.size();
+		}
+		return new CacheStats(hitCount.sum(), missCount.sum(), loadCount.sum(), evictionCount.sum(),
+				invalidationCount.sum(), size);
+	} // end getStats
+
+	private Project lookup(Integer projectId) {
+		synchronized (entries) {
+			Entry entry = entries.get(projectId);
+
+			if (Objects.isNull(entry)) {
+				return null;
+			}
+
+			if (System.nanoTime() - entry.loadedNanos > ttlNanos) {
+				entries.remove(projectId);
+				evictionCount.increment();
+				return null;
+			}
+			return entry.project;
+		}
+	} // end lookup
+
+	private Optional<Project> await(CompletableFuture<Optional<Project>> load) {
+		try {
+			return load.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	} // end await
+
+	private static class Entry {
+		private final Project project;
+		private final long loadedNanos;
+
+		private Entry(Project project, long loadedNanos) {
+			this.project = project;
+			this.loadedNanos = loadedNanos;
+		}
+	} // end Entry
+
+} // end CLASS
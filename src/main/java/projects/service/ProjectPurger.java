@@ -0,0 +1,209 @@
+package projects.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import projects.dao.ProjectRepository;
+
+/*
+ * Removes the rows of deleted projects in the background, used by the
+ * ProjectService class.
+ *
+ * deleteProjectDao only marks a project deleted, which hides it at once.
+ * Removing it in one statement would lock every one of its steps, materials
+ * and category links until the statement finished, stalling other writers for
+ * seconds on a large project. Instead the purger thread calls purgeProjectDao
+ * over and over, each call removing at most batchSize rows in its own short
+ * transaction, until nothing is left. Between batches it sleeps long enough to
+ * keep to rowsPerSecond, so the purge never takes more than a share of the
+ * database's write capacity and other transactions get the locks in between.
+ *
+ * Projects are purged one at a time, in the order they were handed over by
+ * enqueue. Every rescanMillis, and when it starts, the purger also asks the
+ * repository for every project still marked deleted, which picks up projects
+ * whose purge was cut short by a shutdown or a failed batch, and projects
+ * deleted by another instance of the application. A batch that fails is
+ * logged and its project is left for the next scan.
+ */
+public class ProjectPurger implements AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger("projects.service");
+
+	// How long close() waits for the batch being removed.
+	private static final long CLOSE_WAIT_MILLIS = 5000;
+
+	private final ProjectRepository repository;
+	private final int batchSize;
+	private final long rowsPerSecond;
+	private final long rescanMillis;
+
+	// Project IDs waiting to be purged, in the order they were added. Guarded by
+	// this object, whose monitor the purger thread waits on.
+	private final Set<Integer> backlog = new LinkedHashSet<>();
+	private Integer currentProjectId;
+
+	private final Thread worker;
+	private volatile boolean closed;
+
+	private final AtomicLong currentRowCount = new AtomicLong();
+	private final LongAdder purgedProjectCount = new LongAdder();
+	private final LongAdder purgedRowCount = new LongAdder();
+	private final LongAdder batchCount = new LongAdder();
+	private final LongAdder failureCount = new LongAdder();
+
+	/*
+	 * Starts the purger thread. A rowsPerSecond of 0 removes the batches back to
+	 * back.
+	 */
+	public ProjectPurger(ProjectRepository repository, int batchSize, long rowsPerSecond, long rescanMillis) {
+		if (batchSize < 1 || rowsPerSecond < 0 || rescanMillis < 1) {
+			throw new IllegalArgumentException("Invalid purge settings: batchSize=" + batchSize + ", rowsPerSecond="
+					+ rowsPerSecond + ", rescanMillis=" + rescanMillis);
+		}
+
+		this.repository = repository;
+		this.batchSize = batchSize;
+		this.rowsPerSecond = rowsPerSecond;
+		this.rescanMillis = rescanMillis;
+
+		this.worker = new Thread(this::run, "projects-purger");
+		worker.setDaemon(true);
+		worker.start();
+	} // end CONSTRUCTOR
+
+	/*
+	 * Adds a project that deleteProjectDao has marked deleted to the backlog. A
+	 * project already waiting or being purged is not added again.
+	 */
+	public synchronized void enqueue(Integer projectId) {
+		if (!closed && !projectId.equals(currentProjectId) && backlog.add(projectId)) {
+			notifyAll();
+		}
+	} // end enqueue
+
+	public synchronized PurgeStats getStats() {
+		return new PurgeStats(backlog.size(), currentProjectId, currentRowCount.get(), purgedProjectCount.sum(),
+				purgedRowCount.sum(), batchCount.sum(), failureCount.sum());
+	} // end getStats
+
+	/*
+	 * Stops the purger thread, waiting for the batch being removed. The projects
+	 * still in the backlog stay marked deleted and are found by the first scan
+	 * after the next start.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		worker.interrupt();
+
+		try {
+			worker.join(CLOSE_WAIT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	} // end close
+
+	private void run() {
+		long nextScan = System.nanoTime();
+
+		try {
+			while (!closed) {
+				if (System.nanoTime() - nextScan >= 0) {
+					scan();
+					nextScan = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rescanMillis);
+				}
+
+				Integer projectId = take(nextScan);
+
+				if (Objects.nonNull(projectId)) {
+					try {
+						purge(projectId);
+					} finally {
+						finish();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// close() was called.
+		}
+	} // end run
+
+	private void scan() {
+		try {
+			repository.fetchDeletedProjectIdsDao().forEach(this::enqueue);
+		} catch (RuntimeException e) {
+			failureCount.increment();
+			LOGGER.log(Level.WARNING, "Unable to read the deleted projects; the next scan will try again", e);
+		}
+	} // end scan
+
+	/*
+	 * Takes the first project of the backlog and makes it the current one. Waits
+	 * until one is added, and returns null if none is by the time of the next
+	 * scan or if the purger is closed.
+	 */
+	private synchronized Integer take(long nextScan) throws InterruptedException {
+		while (backlog.isEmpty()) {
+			long waitMillis = TimeUnit.NANOSECONDS.toMillis(nextScan - System.nanoTime());
+
+			if (closed || waitMillis <= 0) {
+				return null;
+			}
+			wait(waitMillis);
+		}
+
+		Iterator<Integer> first = backlog.iterator();
+		currentProjectId = first.next();
+		first.remove();
+		return currentProjectId;
+	} // end take
+
+	private synchronized void finish() {
+		currentProjectId = null;
+		currentRowCount.set(0);
+	} // end finish
+
+	/*
+	 * Removes the project batch by batch until purgeProjectDao finds nothing left,
+	 * pausing after each batch to keep to rowsPerSecond.
+	 */
+	private void purge(Integer projectId) throws InterruptedException {
+		try {
+			while (!closed) {
+				long start = System.nanoTime();
+				int deleted = repository.purgeProjectDao(projectId, batchSize);
+
+				if (deleted == 0) {
+					purgedProjectCount.increment();
+					return;
+				}
+
+				batchCount.increment();
+				purgedRowCount.add(deleted);
+				currentRowCount.addAndGet(deleted);
+
+				if (rowsPerSecond > 0) {
+					long pauseNanos = deleted * TimeUnit.SECONDS.toNanos(1) / rowsPerSecond - (System.nanoTime() - start);
+
+					if (pauseNanos > 0) {
+						TimeUnit.NANOSECONDS.sleep(pauseNanos);
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			failureCount.increment();
+			LOGGER.log(Level.WARNING, "Unable to purge project " + projectId + "; the next scan will retry it", e);
+		}
+	} // end purge
+
+} // end CLASS
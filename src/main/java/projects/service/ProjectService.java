@@ -1,17 +1,91 @@
 package projects.service;
 
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import projects.dao.ProjectDao;
+import projects.dao.DbConnection;
+import projects.dao.FetchPlan;
+import projects.dao.InstrumentedProjectDao;
+import projects.dao.ProjectRepository;
+import projects.dao.ProjectSortOrder;
+import projects.entity.CategoryHoursRollup;
 import projects.entity.Project;
+import projects.entity.ProjectCostRollup;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
 import projects.exception.DbException;
+import projects.exception.OptimisticLockException;
+import projects.memory.InMemoryProjectRepository;
+import projects.search.ProjectSearchIndex;
 
 public class ProjectService {
 
-	// Instantiates a ProjectDao object.
-	private ProjectDao projectDao = new ProjectDao();
+	// Number of projects inserted per transaction by addProjects.
+	private static final int DEFAULT_INSERT_CHUNK_SIZE = 500;
+
+	// Size and time-to-live of the project cache. Set with -D system properties.
+	private static final int CACHE_MAX_SIZE = Integer.getInteger("projects.cache.maxSize", 1000);
+	private static final long CACHE_TTL_MILLIS = Long.getLong("projects.cache.ttlMillis", 300_000);
+
+	// Attempts made by modifyProjectWithRetry, and the longest pause between them.
+	private static final int DEFAULT_MAX_UPDATE_ATTEMPTS = Integer.getInteger("projects.update.maxAttempts", 5);
+	private static final long MAX_RETRY_PAUSE_MILLIS = 100;
+
+	// Increments added by addActualHoursService are written at least this often,
+	// and as soon as this many are waiting. Set with -D system properties.
+	private static final long HOURS_FLUSH_INTERVAL_MILLIS = Long.getLong("projects.hours.flushIntervalMillis", 1000);
+	private static final long HOURS_FLUSH_THRESHOLD = Long.getLong("projects.hours.flushThreshold", 10_000);
+
+	// Deleted projects are removed by the purger in batches of at most
+	// PURGE_BATCH_SIZE rows, at most PURGE_ROWS_PER_SECOND rows a second (0 for no
+	// limit), and it looks for deleted projects it has not been given every
+	// PURGE_RESCAN_MILLIS. Set with -D system properties.
+	private static final int PURGE_BATCH_SIZE = Integer.getInteger("projects.purge.batchSize", 500);
+	private static final long PURGE_ROWS_PER_SECOND = Long.getLong("projects.purge.rowsPerSecond", 5000);
+	private static final long PURGE_RESCAN_MILLIS = Long.getLong("projects.purge.rescanMillis", 60_000);
+
+	// Where the search index is saved at shutdown and loaded by the first search,
+	// by default .projects/projects-search.idx in the user's home directory. Set
+	// -Dprojects.search.snapshot to another path, or to an empty value to keep no
+	// snapshot.
+	private static final String SEARCH_SNAPSHOT = System.getProperty("projects.search.snapshot",
+			Path.of(System.getProperty("user.home"), ".projects", "projects-search.idx").toString());
+
+	private static final Logger SEARCH_LOGGER = Logger.getLogger("projects.search");
+
+	// Keyword index over project notes and step text. It is shared by every
+	// ProjectService, so changes made through any of them keep it current.
+	private static final ProjectSearchIndex SEARCH_INDEX = new ProjectSearchIndex();
+
+	// Set once a shutdown task saves the search index snapshot. Guarded by
+	// SEARCH_INDEX.
+	private static boolean searchSnapshotSaved;
+
+	// The storage engine: "mysql" (the default) for an InstrumentedProjectDao that
+	// records metrics for every call, or "memory" for the InMemoryProjectRepository
+	// shared by every ProjectService. Set with -Dprojects.repository.
+	private static final String REPOSITORY = System.getProperty("projects.repository", "mysql");
+
+	private ProjectRepository projectRepository = openRepository();
+
+	// Background purger shared by every ProjectService, created by startPurger.
+	private static ProjectPurger purger;
+
+	// Read-through cache of project aggregates in front of projectRepository.
+	private ProjectCache projectCache = new ProjectCache(CACHE_MAX_SIZE, CACHE_TTL_MILLIS);
+
+	// Write-behind buffer for addActualHoursService, created on first use.
+	private HoursBuffer hoursBuffer;
 
 	/*
 	 * Calls the insertProject from the ProjectDao class with the just-entered
@@ -21,60 +95,630 @@ public class ProjectService {
 	 * class if the project is successfully added to the database.
 	 */
 	public Project addProject(Project project) {
-		return projectDao.insertProject(project);
+		Project dbProject = projectRepository.insertProject(project);
+		SEARCH_INDEX.indexProject(dbProject);
+
+		return dbProject;
 	} // end addProject
 
 	/*
-	 * Calls the getAllProjectNames method in the ProjectDao class.
+	 * Calls the insertProjects method in the ProjectDao class to bulk insert the
+	 * projects, with their materials, steps and categories, in chunks of
+	 * DEFAULT_INSERT_CHUNK_SIZE projects. Each chunk is committed in its own
+	 * transaction.
+	 * 
+	 * The generated IDs are set on the project, material and step objects that were
+	 * passed in. Returns the number of projects inserted.
+	 * 
+	 * Every project that was committed, including those in chunks committed before
+	 * a failing chunk, is added to the search index.
+	 */
+	public int addProjects(Collection<Project> projects) {
+		return addProjects(projects, DEFAULT_INSERT_CHUNK_SIZE);
+	} // end addProjects
+
+	/*
+	 * Same as addProjects(Collection), with the chunk size chosen by the caller.
+	 */
+	public int addProjects(Collection<Project> projects, int chunkSize) {
+		try {
+			return projectRepository.insertProjects(projects, chunkSize);
+		} finally {
+			for (Project project : projects) {
+				if (Objects.nonNull(project.getProjectId())) {
+					SEARCH_INDEX.indexProject(project);
+				}
+			}
+		}
+	} // end addProjects(chunkSize)
+
+	/*
+	 * Calls the getAllProjectNames method in the ProjectDao class, which returns
+	 * the ID and name of every project already sorted by project ID.
 	 * 
-	 * Returns the Stream-sorted-by-projectID List of Projects to the
-	 * getProjectNames method in the ProjectsApps class.
+	 * This loads the whole table. Use getProjectPageService to list projects a
+	 * page at a time.
 	 */
 	public List<Project> getListOfProjectNames() {
-		// @formatter:off
-		return projectDao.getAllProjectNames()
-					.stream()
-					.sorted((p1, p2) -> p1.getProjectId() - p2.getProjectId())
-					.collect(Collectors.toList());		
-				// @formatter:on
+		return projectRepository.getAllProjectNames();
 	} // end getListOfProjectNames
 
 	/*
-	 * Calls the fetchProjectByIdDao in the ProjectDao class, passing the selected
-	 * project id.
+	 * Returns the ID and name of up to pageSize projects in the given order,
+	 * starting after the project after, or from the start if after is null. Pass
+	 * the last project of a page to get the next page; a page shorter than
+	 * pageSize is the last one.
+	 */
+	public List<ProjectSummary> getProjectPageService(ProjectSortOrder order, ProjectSummary after, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be at least 1: " + pageSize);
+		}
+		return projectRepository.fetchProjectPageDao(order, after, pageSize);
+	} // end getProjectPageService
+
+	/*
+	 * Returns the project from the project cache, or calls the fetchProjectByIdDao
+	 * in the ProjectDao class, passing the selected project id, if it is not cached.
 	 * 
 	 * Uses empty Lambda expression to throw a NoSuchElementException if the project
 	 * does not exist in the data base.
+	 * 
+	 * The returned project may be shared with other callers and must not be
+	 * modified.
 	 */
 	public Project fetchProjectByIdService(Integer projectId) {
-		return projectDao.fetchProjectByIdDao(projectId)
+		return projectCache.get(projectId, projectRepository::fetchProjectByIdDao)
 				.orElseThrow(() -> new NoSuchElementException("Project with ID=" + projectId + " does not exist"));
 	} // end fetchProjectByIdService
 
 	/*
-	 * Calls fetchProjectByIdDao and passes the project ID of the project to be
-	 * updated.
+	 * Returns the project if it is in the project cache, without loading it. The
+	 * returned project may be shared with other callers and must not be modified.
+	 */
+	public Optional<Project> getCachedProjectService(Integer projectId) {
+		return projectCache.getIfPresent(projectId);
+	} // end getCachedProjectService
+
+	/*
+	 * Returns the project with the child Lists named by the FetchPlan loaded.
+	 * A cached project, which has all of them, is returned if there is one.
+	 * Otherwise fetchProjectByIdDao loads the project with that plan, and the
+	 * other child Lists are loaded on first access. A partly loaded project is
+	 * not cached. FetchPlan.ALL is the same as fetchProjectByIdService(Integer).
+	 * 
+	 * Throws a NoSuchElementException if the project does not exist.
+	 */
+	public Project fetchProjectByIdService(Integer projectId, FetchPlan plan) {
+		if (plan.isAll()) {
+			return fetchProjectByIdService(projectId);
+		}
+
+		return projectCache.getIfPresent(projectId).or(() -> projectRepository.fetchProjectByIdDao(projectId, plan))
+				.orElseThrow(() -> new NoSuchElementException("Project with ID=" + projectId + " does not exist"));
+	} // end fetchProjectByIdService(FetchPlan)
+
+	/*
+	 * Same as fetchProjectByIdService(Integer), but on a cache miss calls the
+	 * fetchProjectByIdParallelDao in the ProjectDao class, which loads the
+	 * materials, steps and categories at the same time on the executor.
+	 */
+	public Project fetchProjectByIdService(Integer projectId, Executor executor) {
+		return projectCache.get(projectId, id -> projectRepository.fetchProjectByIdParallelDao(id, executor))
+				.orElseThrow(() -> new NoSuchElementException("Project with ID=" + projectId + " does not exist"));
+	} // end fetchProjectByIdService(Executor)
+
+	/*
+	 * Calls the fetchProjectsByIdsDao in the ProjectDao class, passing the
+	 * requested project IDs.
+	 * 
+	 * Loads every project with its materials, steps and categories using a fixed
+	 * number of queries per 500 IDs, instead of calling fetchProjectByIdService in
+	 * a loop. Projects are returned in the order the IDs were passed in. IDs that
+	 * do not exist are skipped rather than throwing an exception.
+	 */
+	public List<Project> fetchProjectsByIdsService(Collection<Integer> projectIds) {
+		return projectRepository.fetchProjectsByIdsDao(projectIds);
+	} // end fetchProjectsByIdsService
+
+	/*
+	 * Same as fetchProjectsByIdsService(Collection), but only the child Lists named
+	 * by the FetchPlan are queried. Use FetchPlan.HEADER_ONLY when only the
+	 * projects' own fields are needed.
+	 */
+	public List<Project> fetchProjectsByIdsService(Collection<Integer> projectIds, FetchPlan plan) {
+		return projectRepository.fetchProjectsByIdsDao(projectIds, plan);
+	} // end fetchProjectsByIdsService(FetchPlan)
+
+	/*
+	 * Calls the streamAllProjectsDao in the ProjectDao class, which passes every
+	 * project with its materials, steps and categories to the consumer in
+	 * project_id order while holding only one project in memory. The project
+	 * cache is not used.
+	 * 
+	 * Returns the number of projects passed to the consumer.
+	 */
+	public long exportProjectsService(Consumer<Project> consumer) {
+		return projectRepository.streamAllProjectsDao(consumer);
+	} // end exportProjectsService
+
+	/*
+	 * Calls modifyProjectDetailsDao and passes the project to be updated. Only the
+	 * fields changed through the project's setters are written. To edit a project
+	 * returned by fetchProjectByIdService, call copy() on it and set the new values
+	 * on the copy.
 	 * 
 	 * Tests boolean value returned from modifyProjectDetailsDao for True or False.
 	 * 
-	 * True means the project details were updated successfully, and false means the
-	 * project ID does not exist and an exception is thrown.
+	 * True means the project details were updated successfully. The changed fields
+	 * are applied to a copy of the cached project, if there is one and it holds
+	 * the version this save replaced (see ProjectCache.update), and the passed
+	 * project is returned with its changed fields cleared, so the caller has the
+	 * updated aggregate without fetching it again.
+	 * 
+	 * False means the project ID does not exist. The project is removed from the
+	 * project cache and an exception is thrown.
 	 * 
+	 * If the project was saved by someone else since it was read, the
+	 * OptimisticLockException from modifyProjectDetailsDao is thrown and the stale
+	 * project is removed from the project cache. See modifyProjectWithRetry.
+	 * 
+	 * A change to the actual hours first writes any increments waiting in the
+	 * hours buffer, since the new value replaces them. The save then throws an
+	 * OptimisticLockException if any hours were logged since the project was read.
+	 * Logging hours does not change the version, so saves of other fields are not
+	 * affected by it.
 	 */
-	public void modifyProjectDetailsService(Project project) {
-		if (!projectDao.modifyProjectDetailsDao(project)) {
-			throw new DbException("Project with ID=" + project.getProjectId() + " does not exist.");
+	public Project modifyProjectDetailsService(Project project) {
+		Integer projectId = project.getProjectId();
+		boolean modified;
+
+		// Write buffered increments first, so they cannot be added on top of the new
+		// total later, and so the hours check in the repository sees them.
+		if (project.getChangedFields().contains("actualHours")) {
+			flushHoursService();
+		}
+
+		try {
+			modified = projectRepository.modifyProjectDetailsDao(project);
+		} catch (OptimisticLockException e) {
+			projectCache.invalidate(projectId);
+			throw e;
+		}
+
+		if (!modified) {
+			projectCache.invalidate(projectId);
+			throw new DbException("Project with ID=" + projectId + " does not exist.");
+		}
+
+		projectCache.update(projectId, project.getVersion(), cached -> applyChanges(cached, project));
+
+		if (project.getChangedFields().contains("notes")) {
+			SEARCH_INDEX.updateNotes(projectId, project.getNotes());
 		}
+		project.clearChangedFields();
+
+		return project;
 	} // end modifyProjectDetails
 
+	/*
+	 * Same as modifyProjectWithRetry(Integer, Consumer, int), with up to
+	 * DEFAULT_MAX_UPDATE_ATTEMPTS attempts.
+	 */
+	public Project modifyProjectWithRetry(Integer projectId, Consumer<Project> edit) {
+		return modifyProjectWithRetry(projectId, edit, DEFAULT_MAX_UPDATE_ATTEMPTS);
+	} // end modifyProjectWithRetry
+
+	/*
+	 * Reads the project, lets edit set the new values on a copy of it and saves the
+	 * copy. If another editor saved the project in between, the save fails with an
+	 * OptimisticLockException and the whole cycle is run again on the latest
+	 * project, after a short random pause that grows with each attempt so
+	 * competing editors do not retry in step.
+	 * 
+	 * edit may be called more than once and should only depend on the project it
+	 * is given. Throws the last OptimisticLockException after maxAttempts
+	 * conflicts. Returns the saved project.
+	 */
+	public Project modifyProjectWithRetry(Integer projectId, Consumer<Project> edit, int maxAttempts) {
+		for (int attempt = 1;; attempt++) {
+			Project project = fetchProjectByIdService(projectId).copy();
+			edit.accept(project);
+
+			try {
+				return modifyProjectDetailsService(project);
+			} catch (OptimisticLockException e) {
+				if (attempt >= maxAttempts) {
+					throw e;
+				}
+				pauseBeforeRetry(attempt);
+			}
+		}
+	} // end modifyProjectWithRetry
+
+	/*
+	 * Sleeps for a random time of up to 2^attempt milliseconds, capped at
+	 * MAX_RETRY_PAUSE_MILLIS.
+	 */
+	private void pauseBeforeRetry(int attempt) {
+		long bound = Math.min(MAX_RETRY_PAUSE_MILLIS, 1L << Math.min(attempt, 30));
+
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting to retry a project update", e);
+		}
+	} // end pauseBeforeRetry
+
+	/*
+	 * Returns a copy of the cached project with the changed fields of the modified
+	 * project set on it.
+	 */
+	private static Project applyChanges(Project cached, Project modified) {
+		Project updated = cached.copy();
+
+		for (String field : modified.getChangedFields()) {
+			switch (field) {
+			case "projectName":
+				updated.setProjectName(modified.getProjectName());
+				break;
+
+			case "estimatedHours":
+				updated.setEstimatedHours(modified.getEstimatedHours());
+				break;
+
+			case "actualHours":
+				updated.setActualHours(modified.getActualHours());
+				break;
+
+			case "difficulty":
+				updated.setDifficulty(modified.getDifficulty());
+				break;
+
+			case "notes":
+				updated.setNotes(modified.getNotes());
+				break;
+
+			default:
+				throw new IllegalStateException("Unknown project field " + field);
+			}
+		}
+
+		updated.setVersion(modified.getVersion());
+		updated.clearChangedFields();
+		return updated;
+	} // end applyChanges
+
 	/*
 	 * Calls deleteProjectDao and passes the project ID of the project to be
-	 * updated.
+	 * updated, then removes the project from the project cache. Only once the
+	 * delete has succeeded is it dropped from the search index, along with any
+	 * hours still waiting to be written for it. The project is hidden from every
+	 * read as soon as deleteProjectDao returns; its rows are handed to the purger,
+	 * which removes them in the background.
 	 */
 	public void deleteProjectService(Integer projectId) {
-		if (!projectDao.deleteProjectDao(projectId)) {
+		boolean deleted = projectRepository.deleteProjectDao(projectId);
+		projectCache.invalidate(projectId);
+
+		if (!deleted) {
 			throw new DbException("Project with ID=" + projectId + " does not exist.");
 		}
+
+		SEARCH_INDEX.removeProject(projectId);
+		discardHours(projectId);
+		startPurger().enqueue(projectId);
 	} // end deleteProjectService
 
+	/*
+	 * Adds a step to the project, just before the step with ID beforeStepId, or
+	 * after the last step if beforeStepId is null. Only the new step row is
+	 * written. The project is removed from the project cache and the step text is
+	 * added to the search index. Returns the new step.
+	 * 
+	 * Throws a DbException if the step text is blank or the project does not
+	 * exist.
+	 */
+	public Step addStepService(Integer projectId, String stepText, Integer beforeStepId) {
+		if (Objects.isNull(stepText) || stepText.isBlank()) {
+			throw new DbException("Step text is required.");
+		}
+
+		Step step = projectRepository.insertStepDao(projectId, stepText, beforeStepId)
+				.orElseThrow(() -> new DbException("Project with ID=" + projectId + " does not exist."));
+
+		projectCache.invalidate(projectId);
+		SEARCH_INDEX.addStepText(projectId, stepText);
+
+		return step;
+	} // end addStepService
+
+	/*
+	 * Moves a step of the project to just before the step with ID beforeStepId,
+	 * or after the last step if beforeStepId is null, by giving it a new
+	 * step_order. The project is removed from the project cache.
+	 * 
+	 * Throws a DbException if the project or step does not exist.
+	 */
+	public void moveStepService(Integer projectId, Integer stepId, Integer beforeStepId) {
+		boolean moved = projectRepository.moveStepDao(projectId, stepId, beforeStepId);
+		projectCache.invalidate(projectId);
+
+		if (!moved) {
+			throw new DbException("Step with ID=" + stepId + " of project with ID=" + projectId + " does not exist.");
+		}
+	} // end moveStepService
+
+	/*
+	 * Returns the hit, miss, load and eviction counters of the project cache.
+	 */
+	public CacheStats getCacheStats() {
+		return projectCache.getStats();
+	} // end getCacheStats
+
+	/*
+	 * Returns the purger's backlog of deleted projects and the rows it has removed
+	 * so far.
+	 */
+	public PurgeStats getPurgeStats() {
+		return startPurger().getStats();
+	} // end getPurgeStats
+
+	/*
+	 * Returns the material count and total material cost (num_required * cost) of
+	 * the project from the project_cost_rollup table, which the database keeps
+	 * current, so the project's materials are not loaded or summed.
+	 * 
+	 * Throws a NoSuchElementException if the project does not exist.
+	 */
+	public ProjectCostRollup getProjectCostService(Integer projectId) {
+		return projectRepository.fetchProjectCostDao(projectId)
+				.orElseThrow(() -> new NoSuchElementException("Project with ID=" + projectId + " does not exist"));
+	} // end getProjectCostService
+
+	/*
+	 * Returns the number of projects in the category and their total estimated
+	 * and actual hours from the category_hours_rollup table.
+	 * 
+	 * Throws a NoSuchElementException if the category does not exist.
+	 */
+	public CategoryHoursRollup getCategoryHoursService(Integer categoryId) {
+		return projectRepository.fetchCategoryHoursDao(categoryId)
+				.orElseThrow(() -> new NoSuchElementException("Category with ID=" + categoryId + " does not exist"));
+	} // end getCategoryHoursService
+
+	/*
+	 * Returns the project count and estimated and actual hours of every category,
+	 * one rollup row each, in category ID order.
+	 */
+	public List<CategoryHoursRollup> getAllCategoryHoursService() {
+		return projectRepository.fetchAllCategoryHoursDao();
+	} // end getAllCategoryHoursService
+
+	/*
+	 * Recomputes the rollup tables from the base tables, for data loaded before
+	 * the rollup triggers existed or changed with the triggers turned off.
+	 */
+	public void rebuildRollupsService() {
+		projectRepository.rebuildRollupsDao();
+	} // end rebuildRollupsService
+
+	/*
+	 * Returns the IDs of up to limit projects whose notes or step text contain the
+	 * query words, best match first. The words are matched whole and without
+	 * regard to case.
+	 * 
+	 * The first search loads the search index snapshot, or rebuilds the index
+	 * from the database if there is no usable snapshot (see openSearchIndex).
+	 */
+	public List<Integer> searchProjectsService(String query, int limit) {
+		if (!SEARCH_INDEX.isReady()) {
+			synchronized (SEARCH_INDEX) {
+				if (!SEARCH_INDEX.isReady()) {
+					openSearchIndex();
+				}
+			}
+		}
+		return SEARCH_INDEX.search(query, limit);
+	} // end searchProjectsService
+
+	/*
+	 * Rebuilds the search index by streaming every project from the database with
+	 * the streamAllProjectsDao method in the ProjectDao class. Use it if another
+	 * program changed the database while the index was loaded. Changes made while
+	 * the application was stopped are found by the snapshot's stamp. Returns the
+	 * number of projects indexed.
+	 */
+	public long rebuildSearchIndexService() {
+		return SEARCH_INDEX.rebuild(projectRepository::streamAllProjectsDao);
+	} // end rebuildSearchIndexService
+
+	/*
+	 * Saves the search index snapshot now rather than at shutdown. Does nothing if
+	 * snapshots are turned off.
+	 */
+	public void saveSearchIndexService() {
+		if (!SEARCH_SNAPSHOT.isEmpty()) {
+			SEARCH_INDEX.saveSnapshot(Path.of(SEARCH_SNAPSHOT), projectRepository::fetchProjectStampDao);
+		}
+	} // end saveSearchIndexService
+
+	/*
+	 * Call while holding the SEARCH_INDEX lock. Loads the snapshot if it was saved
+	 * with the ProjectStamp the repository has now, and otherwise rebuilds the
+	 * index from the repository. A snapshot that cannot be read is ignored. The
+	 * first call also adds a shutdown task that saves the snapshot again, which
+	 * runs before the connection pool, or the in-memory repository, is closed.
+	 */
+	private void openSearchIndex() {
+		boolean loaded = false;
+
+		if (!SEARCH_SNAPSHOT.isEmpty()) {
+			Path snapshot = Path.of(SEARCH_SNAPSHOT);
+
+			try {
+				loaded = SEARCH_INDEX.loadSnapshot(snapshot, projectRepository::fetchProjectStampDao);
+			} catch (DbException e) {
+				SEARCH_LOGGER.log(Level.WARNING, "Ignoring the search index snapshot " + snapshot, e);
+			}
+
+			if (!searchSnapshotSaved) {
+				Runnable save = () -> {
+					try {
+						saveSearchIndexService();
+					} catch (DbException e) {
+						SEARCH_LOGGER.log(Level.WARNING, "Unable to save the search index snapshot", e);
+					}
+				};
+
+				if (projectRepository instanceof InMemoryProjectRepository) {
+					((InMemoryProjectRepository) projectRepository).addCloseTask(save);
+				} else {
+					DbConnection.addShutdownTask(save);
+				}
+				searchSnapshotSaved = true;
+			}
+		}
+
+		if (!loaded) {
+			rebuildSearchIndexService();
+		}
+	} // end openSearchIndex
+
+	/*
+	 * Adds hours to the project's actual hours through the hours buffer, without a
+	 * database round trip. All the increments for a project are added up and
+	 * written together, as one UPDATE ... SET actual_hours = actual_hours + ?, by
+	 * the next flush, at most projects.hours.flushIntervalMillis later. Until then
+	 * fetchProjectByIdService does not include them; see getActualHoursService.
+	 * 
+	 * hours may be negative, to correct an earlier entry, and may have at most two
+	 * decimal places. Increments for a project that does not exist are dropped
+	 * when they are flushed.
+	 */
+	public void addActualHoursService(Integer projectId, BigDecimal hours) {
+		if (Objects.isNull(projectId)) {
+			throw new DbException("A project ID is required.");
+		}
+
+		if (Objects.isNull(hours) || hours.signum() == 0) {
+			throw new DbException("Hours must be a number other than zero.");
+		}
+
+		if (hours.stripTrailingZeros().scale() > 2) {
+			throw new DbException("Hours can have at most two decimal places.");
+		}
+
+		getHoursBuffer().add(projectId, hours);
+	} // end addActualHoursService
+
+	/*
+	 * Returns the project's actual hours, including every increment added more
+	 * than maxStalenessMillis ago. If the hours buffer holds older increments they
+	 * are written first, so pass 0 to include every increment added so far. The
+	 * project is read through the project cache, which each flush clears for the
+	 * projects it wrote.
+	 * 
+	 * Returns 0 if the project has no actual hours, and throws if it does not
+	 * exist.
+	 */
+	public BigDecimal getActualHoursService(Integer projectId, long maxStalenessMillis) {
+		long pendingAge;
+
+		synchronized (this) {
+			pendingAge = Objects.isNull(hoursBuffer) ? -1 : hoursBuffer.getPendingAgeMillis();
+		}
+
+		if (pendingAge >= 0 && pendingAge >= maxStalenessMillis) {
+			flushHoursService();
+		}
+
+		BigDecimal actualHours = fetchProjectByIdService(projectId).getActualHours();
+		return Objects.isNull(actualHours) ? BigDecimal.ZERO : actualHours;
+	} // end getActualHoursService
+
+	/*
+	 * Writes the increments waiting in the hours buffer now. Returns the number of
+	 * projects updated.
+	 */
+	public int flushHoursService() {
+		HoursBuffer buffer;
+
+		synchronized (this) {
+			buffer = hoursBuffer;
+		}
+		return Objects.isNull(buffer) ? 0 : buffer.flush();
+	} // end flushHoursService
+
+	/*
+	 * Creates the hours buffer the first time it is needed. It writes through
+	 * addActualHoursDao and then clears the projects it wrote from the project
+	 * cache. Its final flush is run at shutdown before the connection pool, or the
+	 * in-memory repository, is closed.
+	 */
+	private synchronized HoursBuffer getHoursBuffer() {
+		if (Objects.isNull(hoursBuffer)) {
+			hoursBuffer = new HoursBuffer(increments -> {
+				int updated = projectRepository.addActualHoursDao(increments);
+				increments.keySet().forEach(projectCache::invalidate);
+				return updated;
+			}, HOURS_FLUSH_INTERVAL_MILLIS, HOURS_FLUSH_THRESHOLD);
+
+			if (projectRepository instanceof InMemoryProjectRepository) {
+				((InMemoryProjectRepository) projectRepository).addCloseTask(hoursBuffer::close);
+			} else {
+				DbConnection.addShutdownTask(hoursBuffer::close);
+			}
+		}
+		return hoursBuffer;
+	} // end getHoursBuffer
+
+	private synchronized void discardHours(Integer projectId) {
+		if (Objects.nonNull(hoursBuffer)) {
+			hoursBuffer.discard(projectId);
+		}
+	} // end discardHours
+
+	/*
+	 * Starts the purger if it is not running. Its first scan finds the projects
+	 * deleted but not purged before the application last stopped, so ProjectsApp
+	 * calls this once the migrations have run; otherwise the first delete starts
+	 * it. It is stopped at shutdown before the connection pool, or the in-memory
+	 * repository, is closed.
+	 */
+	public static synchronized ProjectPurger startPurger() {
+		if (Objects.isNull(purger)) {
+			ProjectRepository repository = openRepository();
+			purger = new ProjectPurger(repository, PURGE_BATCH_SIZE, PURGE_ROWS_PER_SECOND, PURGE_RESCAN_MILLIS);
+
+			if (repository instanceof InMemoryProjectRepository) {
+				((InMemoryProjectRepository) repository).addCloseTask(purger::close);
+			} else {
+				DbConnection.addShutdownTask(purger::close);
+			}
+		}
+		return purger;
+	} // end startPurger
+
+	/*
+	 * Returns true if the projects are kept in MySQL, so the schema migrations
+	 * apply.
+	 */
+	public static boolean usesDatabase() {
+		return !"memory".equals(REPOSITORY);
+	} // end usesDatabase
+
+	private static ProjectRepository openRepository() {
+		switch (REPOSITORY) {
+		case "mysql":
+			return new InstrumentedProjectDao();
+
+		case "memory":
+			return InMemoryProjectRepository.shared();
+
+		default:
+			throw new DbException("Unknown projects.repository '" + REPOSITORY + "'; use mysql or memory");
+		}
+	} // end openRepository
+
 } // end CLASS
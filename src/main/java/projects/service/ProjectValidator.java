@@ -0,0 +1,95 @@
+package projects.service;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/*
+ * Checks a project and its children against the rules of the projects schema
+ * before they are sent to the database. Used by the ProjectsApp class for typed
+ * input and by the ProjectImporter class for every imported record.
+ *
+ * Each method throws a DbException that describes the first problem found.
+ */
+public final class ProjectValidator {
+
+	// Largest length of the VARCHAR(128) name columns.
+	private static final int MAX_NAME_LENGTH = 128;
+
+	// Upper bound (exclusive) of a DECIMAL(7,2) column.
+	private static final BigDecimal MAX_DECIMAL_7_2 = new BigDecimal("100000");
+
+	private ProjectValidator() {
+	}
+
+	/*
+	 * Validates difficulty to be between 1 and 5 inclusive. A null difficulty is
+	 * allowed because the column is nullable.
+	 */
+	public static void validateDifficulty(Integer difficulty) {
+		if (Objects.nonNull(difficulty) && (difficulty < 1 || difficulty > 5)) {
+			throw new DbException(difficulty + " is not between 1 and 5. ");
+		}
+	} // end validateDifficulty
+
+	/*
+	 * Validates the project columns, then every material, step and category.
+	 */
+	public static void validateProject(Project project) {
+		validateName("project name", project.getProjectName());
+		validateDecimal("estimated hours", project.getEstimatedHours());
+		validateDecimal("actual hours", project.getActualHours());
+		validateDifficulty(project.getDifficulty());
+
+		for (Material material : project.getMaterials()) {
+			validateName("material name", material.getMaterialName());
+			validateDecimal("material cost", material.getCost());
+
+			if (Objects.nonNull(material.getNumRequired()) && material.getNumRequired() < 0) {
+				throw new DbException("Number required " + material.getNumRequired() + " is negative.");
+			}
+		}
+
+		for (Step step : project.getSteps()) {
+			if (Objects.isNull(step.getStepText()) || step.getStepText().isBlank()) {
+				throw new DbException("Step text is required.");
+			}
+		}
+
+		for (Category category : project.getCategories()) {
+			if (Objects.isNull(category.getCategoryId())) {
+				throw new DbException("Category ID is required.");
+			}
+		}
+	} // end validateProject
+
+	private static void validateName(String column, String name) {
+		if (Objects.isNull(name) || name.isBlank()) {
+			throw new DbException("The " + column + " is required.");
+		}
+
+		if (name.length() > MAX_NAME_LENGTH) {
+			throw new DbException("The " + column + " is longer than " + MAX_NAME_LENGTH + " characters.");
+		}
+	} // end validateName
+
+	/*
+	 * Hours and costs must be zero or more and fit a DECIMAL(7,2) column without
+	 * rounding.
+	 */
+	private static void validateDecimal(String column, BigDecimal value) {
+		if (Objects.isNull(value)) {
+			return;
+		}
+
+		if (value.signum() < 0 || value.compareTo(MAX_DECIMAL_7_2) >= 0 || value.stripTrailingZeros().scale() > 2) {
+			throw new DbException(value + " is not a valid value for " + column + ".");
+		}
+	} // end validateDecimal
+
+} // end CLASS
@@ -0,0 +1,68 @@
+package projects.service;
+
+/*
+ * Immutable snapshot of the ProjectPurger counters, returned by the
+ * getPurgeStats method in the ProjectService class.
+ */
+public class PurgeStats {
+
+	private final int backlog;
+	private final Integer currentProjectId;
+	private final long currentRowCount;
+	private final long purgedProjectCount;
+	private final long purgedRowCount;
+	private final long batchCount;
+	private final long failureCount;
+
+	public PurgeStats(int backlog, Integer currentProjectId, long currentRowCount, long purgedProjectCount,
+			long purgedRowCount, long batchCount, long failureCount) {
+		this.backlog = backlog;
+		this.currentProjectId = currentProjectId;
+		this.currentRowCount = currentRowCount;
+		this.purgedProjectCount = purgedProjectCount;
+		this.purgedRowCount = purgedRowCount;
+		this.batchCount = batchCount;
+		this.failureCount = failureCount;
+	}
+
+	// Deleted projects waiting to be purged, not counting the one being purged.
+	public int getBacklog() {
+		return backlog;
+	}
+
+	// The project being purged, or null if the purger is idle.
+	public Integer getCurrentProjectId() {
+		return currentProjectId;
+	}
+
+	// Rows of the current project removed so far.
+	public long getCurrentRowCount() {
+		return currentRowCount;
+	}
+
+	public long getPurgedProjectCount() {
+		return purgedProjectCount;
+	}
+
+	// Rows removed, counting each project row and the rows of its children.
+	public long getPurgedRowCount() {
+		return purgedRowCount;
+	}
+
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	// Batches or backlog scans that failed. Their projects are retried by the next scan.
+	public long getFailureCount() {
+		return failureCount;
+	}
+
+	@Override
+	public String toString() {
+		return "backlog=" + backlog + ", current=" + currentProjectId + " (" + currentRowCount + " rows), purgedProjects="
+				+ purgedProjectCount + ", purgedRows=" + purgedRowCount + ", batches=" + batchCount + ", failures="
+				+ failureCount;
+	}
+
+} // end CLASS
@@ -3,20 +3,29 @@
  */
 package provided.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Time;
-import java.sql.Timestamp;
 import java.sql.Types;
-import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class contains utility methods for the DAO class.
@@ -25,6 +34,22 @@ import java.util.Objects;
  *
  */
 public abstract class DaoBase {
+  /** Reflection results, one entry per entity class. */
+  private static final Map<Class<?>, ClassMapping> CLASS_MAPPINGS = new ConcurrentHashMap<>();
+
+  /** Compiled row mappers, one entry per (class, result set column layout). */
+  private static final Map<MapperKey, RowMapper<?>> ROW_MAPPERS = new ConcurrentHashMap<>();
+
+  /** The maximum number of prepared statements cached per connection (for each key mode). */
+  private static final int STATEMENT_CACHE_SIZE =
+      Integer.getInteger("projects.statementCache.size", 64);
+
+  /** Prepared statement caches, one per physical connection. */
+  private static final Map<Connection, StatementCache> STATEMENT_CACHES = new ConcurrentHashMap<>();
+
+  /** Notified of every statement prepared through the statement caches. */
+  private static volatile StatementListener statementListener = StatementListener.NONE;
+
   /**
    * This starts a MySQL transaction. Normally MySQL starts a transaction before every request and
    * commits it after each request. By turning auto-commit off, the transaction is only committed
@@ -57,6 +82,92 @@ public abstract class DaoBase {
     conn.rollback();
   }
 
+  /**
+   * This returns a prepared statement for the SQL from the statement cache of the connection. The
+   * first call for a given SQL text on a connection prepares the statement; later calls on the same
+   * physical connection reuse it, so the statement is parsed and planned only once per connection.
+   * Up to projects.statementCache.size statements are kept per connection, least recently used
+   * first out.
+   * 
+   * Callers use the statement exactly like one from {@link Connection#prepareStatement(String)},
+   * including closing it in a try-with-resources block. Closing it clears its parameters and returns
+   * it to the cache.
+   * 
+   * @param conn The connection. A pooled connection is unwrapped to its physical connection.
+   * @param sql The SQL text
+   * @return The prepared statement
+   * @throws SQLException Thrown if the statement cannot be prepared
+   */
+  protected PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+    return statementCache(conn).prepare(sql, Statement.NO_GENERATED_KEYS);
+  }
+
+  /**
+   * @return A snapshot of the prepared statement cache counters across all connections
+   */
+  public static StatementCacheStats getStatementCacheStats() {
+    int cachedStatements = 0;
+
+    for(StatementCache cache : STATEMENT_CACHES.values()) {
+      cachedStatements += cache.size();
+    }
+
+    return StatementCache.stats(cachedStatements);
+  }
+
+  /**
+   * This installs a listener that is told about each statement prepared and executed through
+   * {@link #prepareStatement(Connection, String)} and {@link #prepareInsert(Connection, String)}.
+   * Statement caches created before the call keep the previous listener, so install it before the
+   * first connection is used.
+   * 
+   * @param listener The listener, or {@link StatementListener#NONE} to turn notifications off
+   */
+  public static void setStatementListener(StatementListener listener) {
+    statementListener = Objects.requireNonNull(listener);
+  }
+
+  /**
+   * This turns on slow statement logging. Any statement run through
+   * {@link #prepareStatement(Connection, String)} or {@link #prepareInsert(Connection, String)}
+   * whose execute call takes at least thresholdNanos is passed to the log with its SQL, bound
+   * parameters, duration and row count. Parameters are only recorded while a log is installed.
+   * 
+   * @param log The log, or null to turn slow statement logging off
+   * @param thresholdNanos The minimum duration of a slow statement
+   */
+  public static void setSlowStatementLog(SlowStatementLog log, long thresholdNanos) {
+    StatementCache.slowStatementThresholdNanos = Objects.isNull(log) ? Long.MAX_VALUE : thresholdNanos;
+    StatementCache.slowStatementLog = log;
+  }
+
+  /**
+   * Finds the statement cache for the physical connection behind conn, creating it if needed.
+   * Creating a cache is the sign of a new physical connection, so caches of connections that have
+   * since been closed are dropped at that point.
+   */
+  private StatementCache statementCache(Connection conn) throws SQLException {
+    Connection physical = conn.unwrap(Connection.class);
+    StatementCache cache = STATEMENT_CACHES.get(physical);
+
+    if(Objects.isNull(cache)) {
+      STATEMENT_CACHES.keySet().removeIf(DaoBase::isClosedQuietly);
+      cache = STATEMENT_CACHES.computeIfAbsent(physical,
+          key -> new StatementCache(key, STATEMENT_CACHE_SIZE, statementListener));
+    }
+
+    return cache;
+  }
+
+  private static boolean isClosedQuietly(Connection conn) {
+    try {
+      return conn.isClosed();
+    }
+    catch(SQLException e) {
+      return true;
+    }
+  }
+
   /**
    * This sets a parameter on a prepared statement. If the parameter is null, it is handled
    * correctly.
@@ -147,12 +258,16 @@ public abstract class DaoBase {
    * @param idName The name of the parent ID field
    * @return The count of the entities attached to the parent plus one
    * @throws SQLException Thrown if an error occurs.
+   * @deprecated Counting the rows reads every child row and two concurrent callers get the same
+   *             number. The step order keys are chosen by {@code ProjectDao.insertStepDao}
+   *             instead, from the neighbouring keys.
    */
+  @Deprecated
   protected Integer getNextSequenceNumber(Connection conn, Integer id, String tableName,
       String idName) throws SQLException {
     String sql = "SELECT COUNT(*) FROM " + tableName + " WHERE " + idName + " = ?";
 
-    try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+    try(PreparedStatement stmt = prepareStatement(conn, sql)) {
       setParameter(stmt, 1, id, Integer.class);
 
       try(ResultSet rs = stmt.executeQuery()) {
@@ -166,20 +281,22 @@ public abstract class DaoBase {
   }
 
   /**
-   * This returns the integer primary key value of the last row inserted into the given table. It
+   * This returns the integer primary key value of the last row inserted on the connection. It
    * allows the ID to be inserted into the entity object after inserting it into the table.
    * 
-   * The other way of doing this is to call {@link Statement#getGeneratedKeys()}, but this returns a
-   * result set that needs to be parsed for the ID. It's not really any easier than this approach
-   * but should be closer to database-agnostic.
+   * LAST_INSERT_ID() is per connection, so it is selected without a FROM clause. Selecting it FROM
+   * the table returned one row for every row in the table. New code should prepare the insert with
+   * {@link #prepareInsert(Connection, String)} and call {@link #getGeneratedId(Statement)}
+   * instead, which needs no extra query at all.
    * 
    * @param conn The connection
-   * @param table The name of the table on which to get the last inserted primary key value
+   * @param table The name of the table on which to get the last inserted primary key value. It is
+   *        no longer used in the query and is kept for compatibility.
    * @return The primary key value
    * @throws SQLException Thrown if an error occurs
    */
   protected Integer getLastInsertId(Connection conn, String table) throws SQLException {
-    String sql = String.format("SELECT LAST_INSERT_ID() FROM %s", table);
+    String sql = "SELECT LAST_INSERT_ID()";
 
     try(Statement stmt = conn.createStatement()) {
       try(ResultSet rs = stmt.executeQuery(sql)) {
@@ -192,17 +309,70 @@ public abstract class DaoBase {
     }
   }
 
+  /**
+   * This prepares an INSERT statement that returns the auto-generated primary key values along
+   * with the update count. Like {@link #prepareStatement(Connection, String)}, the statement comes
+   * from the statement cache of the connection. Use {@link #getGeneratedId(Statement)} after
+   * {@link PreparedStatement#executeUpdate()}, or {@link #getGeneratedIds(Statement)} after
+   * {@link PreparedStatement#executeBatch()}.
+   * 
+   * @param conn The connection
+   * @param sql The INSERT statement
+   * @return The prepared statement
+   * @throws SQLException Thrown if an error occurs
+   */
+  protected PreparedStatement prepareInsert(Connection conn, String sql) throws SQLException {
+    return statementCache(conn).prepare(sql, Statement.RETURN_GENERATED_KEYS);
+  }
+
+  /**
+   * This returns the integer primary key generated by a single-row insert. The key is returned by
+   * the driver with the insert result, so no additional query is sent.
+   * 
+   * @param stmt A statement prepared by {@link #prepareInsert(Connection, String)} that has been
+   *        executed
+   * @return The primary key value
+   * @throws SQLException Thrown if no key was generated
+   */
+  protected Integer getGeneratedId(Statement stmt) throws SQLException {
+    try(ResultSet rs = stmt.getGeneratedKeys()) {
+      if(rs.next()) {
+        return rs.getInt(1);
+      }
+
+      throw new SQLException("Unable to retrieve the primary key value. No generated keys!");
+    }
+  }
+
+  /**
+   * This returns the integer primary keys generated by a batched insert, in the order the rows were
+   * added to the batch.
+   * 
+   * @param stmt A statement prepared by {@link #prepareInsert(Connection, String)} whose batch has
+   *        been executed
+   * @return The primary key values, one per inserted row
+   * @throws SQLException Thrown if an error occurs
+   */
+  protected List<Integer> getGeneratedIds(Statement stmt) throws SQLException {
+    List<Integer> ids = new ArrayList<>();
+
+    try(ResultSet rs = stmt.getGeneratedKeys()) {
+      while(rs.next()) {
+        ids.add(rs.getInt(1));
+      }
+    }
+
+    return ids;
+  }
+
   /**
    * This extracts an object of the given type from a result set. The object must have a
-   * zero-argument constructor. It builds an object from a result set using reflection as follows:
+   * zero-argument constructor. It builds an object from a result set as follows:
    * <ol>
-   * <li>The zero-argument constructor is obtained.</li>
+   * <li>A {@link RowMapper} is obtained for the class and the column layout of the result set. See
+   * {@link #rowMapper(ResultSet, Class)}.</li>
    * <li>An object of the given class type is created.</li>
-   * <li>A list of fields is obtained using reflection.</li>
-   * <li>The field name is converted from Java naming to SQL naming conventions (camel case to snake
-   * case). Obviously, for this to work, the Java name must match the column name. So, if the Java
-   * name is numServings, the column name must be num_servings.</li>
-   * <li>The value is assigned to the field in the object.</li>
+   * <li>The value of each column that matches a field is assigned to the field in the object.</li>
    * </ol>
    * 
    * Example: if a query returns values for a recipe, a Recipe object is returned. So:
@@ -224,6 +394,9 @@ public abstract class DaoBase {
    * Since the result set does not contain a column named "ingredients", the value is left alone and
    * the list initialization is preserved.
    * 
+   * When reading many rows, call {@link #rowMapper(ResultSet, Class)} once before the loop and
+   * reuse the mapper for each row.
+   * 
    * @param <T> The Generic for the type of object to create and return.
    * @param rs The result set in which to extract values. The result set must be positioned on the
    *        correct row by the caller.
@@ -231,57 +404,119 @@ public abstract class DaoBase {
    * @return A populated class.
    */
   protected <T> T extract(ResultSet rs, Class<T> classType) {
+    return rowMapper(rs, classType).map(rs);
+  }
+
+  /**
+   * This returns a mapper that creates objects of the given type from rows of the result set. The
+   * mapper is compiled the first time a class is seen with a given column layout and then cached,
+   * so the work below is only done once per (class, columns) pair:
+   * <ol>
+   * <li>The zero-argument constructor is obtained as a method handle.</li>
+   * <li>The declared, non-static, non-transient fields are listed using reflection.</li>
+   * <li>The field name is converted from Java naming to SQL naming conventions (camel case to snake
+   * case). Obviously, for this to work, the Java name must match the column name. So, if the Java
+   * name is numServings, the column name must be num_servings.</li>
+   * <li>The column name is matched (ignoring case) against the column labels of the result set.
+   * Fields without a matching column are left out of the mapper.</li>
+   * <li>A setter method handle is created for each matched field, so even private fields can be
+   * populated without using the setter.</li>
+   * </ol>
+   * 
+   * @param <T> The type of object to create.
+   * @param rs The result set. Only its metadata is read.
+   * @param classType The actual class type of the object to create.
+   * @return A mapper that can be reused for every row of the result set.
+   */
+  @SuppressWarnings("unchecked")
+  protected <T> RowMapper<T> rowMapper(ResultSet rs, Class<T> classType) {
     try {
-      /* Obtain the constructor and create an object of the correct type. */
-      Constructor<T> con = classType.getConstructor();
-      T obj = con.newInstance();
+      ResultSetMetaData meta = rs.getMetaData();
+      String[] labels = new String[meta.getColumnCount()];
 
-      /* Get the list of fields and loop through them. */
-      for(Field field : classType.getDeclaredFields()) {
-        String colName = camelCaseToSnakeCase(field.getName());
-        Class<?> fieldType = field.getType();
+      for(int col = 1; col <= labels.length; col++) {
+        labels[col - 1] = meta.getColumnLabel(col).toLowerCase(Locale.ROOT);
+      }
 
-        /*
-         * Set the field accessible flag which means that we can populate even private fields
-         * without using the setter.
-         */
-        field.setAccessible(true);
-        Object fieldValue = null;
+      return (RowMapper<T>)ROW_MAPPERS.computeIfAbsent(new MapperKey(classType, labels),
+          key -> compileMapper(classType, labels));
+    }
+    catch(SQLException e) {
+      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+  }
 
-        try {
-          fieldValue = rs.getObject(colName);
-        }
-        catch(SQLException e) {
-          /*
-           * An exception caught here means that the field name isn't in the result set. Don't take
-           * any action.
-           */
-        }
+  /**
+   * Builds a mapper for the class against the given (lower case) column labels.
+   */
+  private static <T> RowMapper<T> compileMapper(Class<T> classType, String[] labels) {
+    ClassMapping mapping = CLASS_MAPPINGS.computeIfAbsent(classType, DaoBase::mapClass);
+
+    /* The first column with a given label wins, the same as ResultSet.findColumn. */
+    Map<String, Integer> indexByLabel = new HashMap<>();
+
+    for(int i = labels.length - 1; i >= 0; i--) {
+      indexByLabel.put(labels[i], i + 1);
+    }
+
+    int[] columnIndexes = new int[mapping.columnNames.length];
+    MethodHandle[] setters = new MethodHandle[columnIndexes.length];
+    Class<?>[] fieldTypes = new Class<?>[columnIndexes.length];
+    int count = 0;
+
+    for(int i = 0; i < mapping.columnNames.length; i++) {
+      Integer index = indexByLabel.get(mapping.columnNames[i]);
 
-        /*
-         * Only set the value in the object if there is a value with the same name in the result
-         * set. This will preserve instance variables (like lists) that are assigned values when the
-         * object is created.
-         */
-        if(Objects.nonNull(fieldValue)) {
-          /*
-           * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
-           */
-          if(fieldValue instanceof Time && fieldType.equals(LocalTime.class)) {
-            fieldValue = ((Time)fieldValue).toLocalTime();
-          }
-          else if(fieldValue instanceof Timestamp && fieldType.equals(LocalDateTime.class)) {
-            fieldValue = ((Timestamp)fieldValue).toLocalDateTime();
-          }
-
-          field.set(obj, fieldValue);
+      if(Objects.nonNull(index)) {
+        columnIndexes[count] = index;
+        setters[count] = mapping.setters[i];
+        fieldTypes[count] = mapping.fieldTypes[i];
+        count++;
+      }
+    }
+
+    return new RowMapper<>(classType, mapping.constructor, Arrays.copyOf(columnIndexes, count),
+        Arrays.copyOf(setters, count), Arrays.copyOf(fieldTypes, count));
+  }
+
+  /**
+   * Does the reflection work for a class once: the constructor, and the column name, type and
+   * setter of each mappable field.
+   */
+  private static ClassMapping mapClass(Class<?> classType) {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      Constructor<?> con = classType.getConstructor();
+      MethodHandle constructor =
+          lookup.unreflectConstructor(con).asType(MethodType.methodType(Object.class));
+
+      List<Field> fields = new ArrayList<>();
+
+      for(Field field : classType.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+
+        if(!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+          fields.add(field);
         }
       }
 
-      return obj;
+      String[] columnNames = new String[fields.size()];
+      MethodHandle[] setters = new MethodHandle[fields.size()];
+      Class<?>[] fieldTypes = new Class<?>[fields.size()];
+      MethodType setterType = MethodType.methodType(void.class, Object.class, Object.class);
+
+      for(int i = 0; i < fields.size(); i++) {
+        Field field = fields.get(i);
+
+        field.setAccessible(true);
+        columnNames[i] = camelCaseToSnakeCase(field.getName()).toLowerCase(Locale.ROOT);
+        setters[i] = lookup.unreflectSetter(field).asType(setterType);
+        fieldTypes[i] = field.getType();
+      }
 
+      return new ClassMapping(constructor, columnNames, setters, fieldTypes);
     }
-    catch(Exception e) {
+    catch(ReflectiveOperationException | RuntimeException e) {
       throw new DaoException("Unable to create object of type " + classType.getName(), e);
     }
   }
@@ -292,7 +527,7 @@ public abstract class DaoBase {
    * @param identifier The name in camel case to convert.
    * @return The name converted to snake case.
    */
-  private String camelCaseToSnakeCase(String identifier) {
+  protected static String camelCaseToSnakeCase(String identifier) {
     StringBuilder nameBuilder = new StringBuilder();
 
     for(char ch : identifier.toCharArray()) {
@@ -307,6 +542,55 @@ public abstract class DaoBase {
     return nameBuilder.toString();
   }
 
+  /**
+   * The per-class result of the reflection done by {@link DaoBase#mapClass(Class)}. The arrays are
+   * parallel, one entry per mappable field.
+   */
+  private static class ClassMapping {
+    private final MethodHandle constructor;
+    private final String[] columnNames;
+    private final MethodHandle[] setters;
+    private final Class<?>[] fieldTypes;
+
+    private ClassMapping(MethodHandle constructor, String[] columnNames, MethodHandle[] setters,
+        Class<?>[] fieldTypes) {
+      this.constructor = constructor;
+      this.columnNames = columnNames;
+      this.setters = setters;
+      this.fieldTypes = fieldTypes;
+    }
+  }
+
+  /**
+   * The row mapper cache key: a class and the column labels of a result set, in order.
+   */
+  private static class MapperKey {
+    private final Class<?> classType;
+    private final String[] labels;
+    private final int hash;
+
+    private MapperKey(Class<?> classType, String[] labels) {
+      this.classType = classType;
+      this.labels = labels;
+      this.hash = 31 * classType.hashCode() + Arrays.hashCode(labels);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(!(obj instanceof MapperKey)) {
+        return false;
+      }
+
+      MapperKey other = (MapperKey)obj;
+      return classType == other.classType && Arrays.equals(labels, other.labels);
+    }
+  }
+
   /**
    * This class declares the exception throw by the {@link DaoBase} class. It is a thin wrapper for
    * {@link RuntimeException}.
@@ -0,0 +1,83 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.invoke.MethodHandle;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Objects;
+
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This maps the current row of a result set to a new object of a given type. A mapper is compiled
+ * once by {@link DaoBase} for each combination of class and result set column layout and is then
+ * cached, so mapping a row only reads the matching columns by index and assigns them through method
+ * handles. No reflection lookups are done and no exceptions are thrown for fields that have no
+ * matching column.
+ *
+ * @param <T> The type of object created for each row.
+ */
+public final class RowMapper<T> {
+  private final Class<T> classType;
+  private final MethodHandle constructor;
+  private final int[] columnIndexes;
+  private final MethodHandle[] setters;
+  private final Class<?>[] fieldTypes;
+
+  /**
+   * @param classType The class of the objects to create
+   * @param constructor A handle to the zero-argument constructor, of type ()Object
+   * @param columnIndexes The one-based result set index for each mapped field
+   * @param setters Field setter handles of type (Object,Object)void, parallel to columnIndexes
+   * @param fieldTypes The declared type of each mapped field, parallel to columnIndexes
+   */
+  RowMapper(Class<T> classType, MethodHandle constructor, int[] columnIndexes,
+      MethodHandle[] setters, Class<?>[] fieldTypes) {
+    this.classType = classType;
+    this.constructor = constructor;
+    this.columnIndexes = columnIndexes;
+    this.setters = setters;
+    this.fieldTypes = fieldTypes;
+  }
+
+  /**
+   * Creates an object from the current row. As with {@link DaoBase#extract(ResultSet, Class)}, a
+   * null column value leaves the field at its initial value.
+   *
+   * @param rs The result set, positioned on the row to map.
+   * @return A populated object.
+   */
+  public T map(ResultSet rs) {
+    try {
+      Object obj = (Object)constructor.invokeExact();
+
+      for(int i = 0; i < columnIndexes.length; i++) {
+        Object fieldValue = rs.getObject(columnIndexes[i]);
+
+        if(Objects.nonNull(fieldValue)) {
+          /*
+           * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
+           */
+          if(fieldValue instanceof Time && fieldTypes[i] == LocalTime.class) {
+            fieldValue = ((Time)fieldValue).toLocalTime();
+          }
+          else if(fieldValue instanceof Timestamp && fieldTypes[i] == LocalDateTime.class) {
+            fieldValue = ((Timestamp)fieldValue).toLocalDateTime();
+          }
+
+          setters[i].invokeExact(obj, fieldValue);
+        }
+      }
+
+      return classType.cast(obj);
+    }
+    catch(Throwable e) {
+      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+/**
+ *
+ */
+package provided.util;
+
+/**
+ * This receives statements run through {@link DaoBase#prepareStatement} or
+ * {@link DaoBase#prepareInsert} that took longer than the threshold given to
+ * {@link DaoBase#setSlowStatementLog(SlowStatementLog, long)}.
+ * 
+ * It is called on the thread that ran the statement, so implementations must hand the work off
+ * rather than doing I/O.
+ */
+public interface SlowStatementLog {
+
+  /**
+   * Called once for each slow statement execution. For a query this happens when its result set is
+   * closed, so that the number of rows read is known.
+   * 
+   * @param sql The SQL text
+   * @param parameters A copy of the bound parameters, by zero-based position
+   * @param elapsedNanos The time the execute call took
+   * @param rowCount The rows read by a query or the update count of an update, or -1 if unknown
+   */
+  void slowStatement(String sql, Object[] parameters, long elapsedNanos, long rowCount);
+}
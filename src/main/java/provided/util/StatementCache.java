@@ -0,0 +1,372 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is a bounded, least-recently-used cache of prepared statements for one physical connection,
+ * keyed by SQL text. It is used by {@link DaoBase#prepareStatement(Connection, String)} so that a
+ * statement that is run over and over on a pooled connection is only parsed and planned once.
+ * 
+ * A statement handed out by the cache is wrapped so that closing it clears its parameters and
+ * returns it to the cache instead of closing it. If the same SQL is prepared again while the cached
+ * statement is still open, a private statement that is closed on close() is returned for the second
+ * caller. Executions of all statements are reported to the {@link StatementListener}.
+ */
+final class StatementCache {
+  private static final LongAdder HITS = new LongAdder();
+  private static final LongAdder MISSES = new LongAdder();
+  private static final LongAdder EVICTIONS = new LongAdder();
+  private static final Object[] NO_PARAMETERS = new Object[0];
+
+  /** Receives slow executions, or null when slow statement logging is off. */
+  static volatile SlowStatementLog slowStatementLog;
+
+  /** Executions that take at least this long are passed to the slow statement log. */
+  static volatile long slowStatementThresholdNanos = Long.MAX_VALUE;
+
+  private final Connection connection;
+  private final int maxSize;
+  private final Map<String, CachedStatement> statements;
+  private final Map<String, CachedStatement> keyStatements;
+  private final StatementListener listener;
+
+  /**
+   * @param connection The physical (unwrapped) connection that owns the statements
+   * @param maxSize The maximum number of statements kept for each kind of statement
+   * @param listener Notified of each statement prepared and executed through this cache
+   */
+  StatementCache(Connection connection, int maxSize, StatementListener listener) {
+    this.connection = connection;
+    this.maxSize = maxSize;
+    this.listener = listener;
+    this.statements = newLruMap();
+    this.keyStatements = newLruMap();
+  }
+
+  /**
+   * Returns a prepared statement for the SQL, reusing the cached one if it is not already in use.
+   * 
+   * @param sql The SQL text
+   * @param autoGeneratedKeys {@link Statement#RETURN_GENERATED_KEYS} or
+   *        {@link Statement#NO_GENERATED_KEYS}
+   * @return A statement whose close() returns it to the cache
+   * @throws SQLException Thrown if the statement cannot be prepared
+   */
+  synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+    Map<String, CachedStatement> map =
+        autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? keyStatements : statements;
+    CachedStatement cached = map.get(sql);
+
+    if(Objects.nonNull(cached) && cached.inUse) {
+      /* Already open further up the call stack. Hand out a private statement instead. */
+      MISSES.increment();
+      cached = new CachedStatement(sql, connection.prepareStatement(sql, autoGeneratedKeys),
+          listener.statementPrepared(sql));
+      cached.evicted = true;
+    }
+    else if(Objects.nonNull(cached) && !cached.statement.isClosed()) {
+      HITS.increment();
+    }
+    else {
+      MISSES.increment();
+      cached = new CachedStatement(sql, connection.prepareStatement(sql, autoGeneratedKeys),
+          listener.statementPrepared(sql));
+      map.put(sql, cached);
+    }
+
+    cached.inUse = true;
+    return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+        new Class<?>[] {PreparedStatement.class}, new StatementHandler(cached));
+  }
+
+  /**
+   * @return The number of statements currently cached for this connection
+   */
+  synchronized int size() {
+    return statements.size() + keyStatements.size();
+  }
+
+  /**
+   * @param cachedStatements The number of statements currently cached across all connections
+   * @return A snapshot of the hit, miss and eviction counters of all statement caches
+   */
+  static StatementCacheStats stats(int cachedStatements) {
+    return new StatementCacheStats(HITS.sum(), MISSES.sum(), EVICTIONS.sum(), cachedStatements);
+  }
+
+  /**
+   * Called when a caller closes a statement handed out by the cache. The parameters and any batch
+   * are cleared so the next caller starts clean. A statement that was evicted while it was in use,
+   * or that cannot be reset, is closed for real.
+   */
+  private synchronized void release(CachedStatement cached) throws SQLException {
+    cached.inUse = false;
+    cached.parameters = NO_PARAMETERS;
+    cached.parameterCount = 0;
+
+    if(cached.evicted) {
+      cached.statement.close();
+      return;
+    }
+
+    try {
+      cached.statement.clearParameters();
+      cached.statement.clearBatch();
+    }
+    catch(SQLException e) {
+      cached.evicted = true;
+      statements.values().remove(cached);
+      keyStatements.values().remove(cached);
+      cached.statement.close();
+    }
+  }
+
+  private Map<String, CachedStatement> newLruMap() {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+        if(size() <= maxSize) {
+          return false;
+        }
+
+        CachedStatement cached = eldest.getValue();
+        cached.evicted = true;
+        EVICTIONS.increment();
+
+        if(!cached.inUse) {
+          try {
+            cached.statement.close();
+          }
+          catch(SQLException e) {
+            /* The statement is being discarded anyway. */
+          }
+        }
+
+        return true;
+      }
+    };
+  }
+
+  /**
+   * A cached physical statement and its state. Guarded by the owning cache.
+   */
+  private static class CachedStatement {
+    private final String sql;
+    private final PreparedStatement statement;
+    private final StatementListener.StatementObserver observer;
+    private boolean inUse;
+    private boolean evicted;
+
+    /** Bound parameters by zero-based position. Only recorded while slow logging is on. */
+    private Object[] parameters = NO_PARAMETERS;
+
+    /** The highest parameter index set since the parameters were last cleared. */
+    private int parameterCount;
+
+    private CachedStatement(String sql, PreparedStatement statement,
+        StatementListener.StatementObserver observer) {
+      this.sql = sql;
+      this.statement = statement;
+      this.observer = observer;
+    }
+
+    private void setParameter(int parameterIndex, Object value) {
+      if(parameterIndex < 1) {
+        return;
+      }
+
+      if(parameterIndex > parameters.length) {
+        parameters = Arrays.copyOf(parameters, Math.max(parameterIndex, parameters.length * 2));
+      }
+
+      parameters[parameterIndex - 1] = value;
+      parameterCount = Math.max(parameterCount, parameterIndex);
+    }
+
+    /**
+     * @return A copy of the parameters that were set, without the unused tail of the array
+     */
+    private Object[] boundParameters() {
+      return Arrays.copyOf(parameters, parameterCount);
+    }
+  }
+
+  /**
+   * Handler for the statement proxy handed to one caller. close() returns the statement to the
+   * cache exactly once; every other call goes to the physical statement.
+   */
+  private class StatementHandler implements InvocationHandler {
+    private final CachedStatement cached;
+    private boolean closed;
+
+    private StatementHandler(CachedStatement cached) {
+      this.cached = cached;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch(method.getName()) {
+        case "close":
+          if(!closed) {
+            closed = true;
+            release(cached);
+          }
+          return null;
+
+        case "isClosed":
+          return closed || cached.statement.isClosed();
+
+        case "equals":
+          return proxy == args[0];
+
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        default:
+          if(closed) {
+            throw new SQLException("Statement has already been closed");
+          }
+
+          if(method.getName().startsWith("execute")) {
+            return execute(method, args);
+          }
+
+          if(Objects.nonNull(slowStatementLog)) {
+            recordParameter(method, args);
+          }
+
+          try {
+            return method.invoke(cached.statement, args);
+          }
+          catch(InvocationTargetException e) {
+            throw e.getCause();
+          }
+      }
+    }
+
+    /**
+     * Runs an execute method on the physical statement and reports its duration and update count
+     * to the statement observer.
+     */
+    private Object execute(Method method, Object[] args) throws Throwable {
+      long start = System.nanoTime();
+      Object result;
+
+      try {
+        result = method.invoke(cached.statement, args);
+      }
+      catch(InvocationTargetException e) {
+        cached.observer.executed(System.nanoTime() - start, -1, e.getCause());
+        throw e.getCause();
+      }
+
+      long elapsed = System.nanoTime() - start;
+      long updateCount = updateCount(result);
+      cached.observer.executed(elapsed, updateCount, null);
+
+      SlowStatementLog log = slowStatementLog;
+
+      if(Objects.nonNull(log) && elapsed >= slowStatementThresholdNanos) {
+        Object[] parameters = cached.boundParameters();
+
+        if(result instanceof ResultSet) {
+          return countingResultSet((ResultSet)result, log, parameters, elapsed);
+        }
+
+        log.slowStatement(cached.sql, parameters, elapsed, updateCount);
+      }
+
+      return result;
+    }
+
+    /**
+     * Keeps the value of a setXxx(parameterIndex, value, ...) call for the slow statement log.
+     * setNull is recorded as null.
+     */
+    private void recordParameter(Method method, Object[] args) {
+      String name = method.getName();
+
+      if(name.equals("clearParameters")) {
+        Arrays.fill(cached.parameters, null);
+        cached.parameterCount = 0;
+      }
+      else if(name.startsWith("set") && Objects.nonNull(args) && args.length >= 2
+          && args[0] instanceof Integer) {
+        cached.setParameter((Integer)args[0], name.equals("setNull") ? null : args[1]);
+      }
+    }
+
+    /**
+     * Wraps the result set of a slow query so that the rows read are counted and the statement is
+     * passed to the slow statement log when the result set is closed.
+     */
+    private ResultSet countingResultSet(ResultSet rs, SlowStatementLog log, Object[] parameters,
+        long elapsed) {
+      String sql = cached.sql;
+      long[] rows = new long[1];
+      boolean[] logged = new boolean[1];
+
+      return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+          new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+            Object value;
+
+            try {
+              value = method.invoke(rs, args);
+            }
+            catch(InvocationTargetException e) {
+              throw e.getCause();
+            }
+
+            if(method.getName().equals("next") && Boolean.TRUE.equals(value)) {
+              rows[0]++;
+            }
+            else if(method.getName().equals("close") && !logged[0]) {
+              logged[0] = true;
+              log.slowStatement(sql, parameters, elapsed, rows[0]);
+            }
+
+            return value;
+          });
+    }
+
+    private long updateCount(Object result) {
+      if(result instanceof Integer) {
+        return (Integer)result;
+      }
+
+      if(result instanceof Long) {
+        return (Long)result;
+      }
+
+      if(result instanceof int[]) {
+        long total = 0;
+
+        for(int count : (int[])result) {
+          total += Math.max(0, count);
+        }
+
+        return total;
+      }
+
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package provided.util;
+
+/**
+ * This is a snapshot of the prepared statement cache counters, returned by
+ * {@link DaoBase#getStatementCacheStats()}.
+ */
+public class StatementCacheStats {
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+  private final int cachedStatements;
+
+  public StatementCacheStats(long hitCount, long missCount, long evictionCount,
+      int cachedStatements) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+    this.cachedStatements = cachedStatements;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  public int getCachedStatements() {
+    return cachedStatements;
+  }
+
+  public double getHitRate() {
+    long requests = hitCount + missCount;
+    return requests == 0 ? 0 : (double)hitCount / requests;
+  }
+
+  @Override
+  public String toString() {
+    return "cached=" + cachedStatements + ", hits=" + hitCount + ", misses=" + missCount
+        + ", evictions=" + evictionCount + ", hitRate=" + String.format("%.3f", getHitRate());
+  }
+}
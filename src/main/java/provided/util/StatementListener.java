@@ -0,0 +1,43 @@
+/**
+ *
+ */
+package provided.util;
+
+/**
+ * This is notified about the statements run through {@link DaoBase#prepareStatement} and
+ * {@link DaoBase#prepareInsert}. It is installed with {@link DaoBase#setStatementListener} and lets
+ * an application add timing or logging without changing the DAO classes.
+ */
+public interface StatementListener {
+
+  /**
+   * Called once when a statement is prepared. The returned object receives every execution of that
+   * statement, so it can be looked up once and reused without allocating.
+   * 
+   * @param sql The SQL text of the statement
+   * @return The observer for the statement. Must not be null.
+   */
+  StatementObserver statementPrepared(String sql);
+
+  /**
+   * Receives the executions of one prepared statement.
+   */
+  interface StatementObserver {
+
+    /**
+     * Called after each execute, executeQuery, executeUpdate or executeBatch call.
+     * 
+     * @param elapsedNanos The time the call took
+     * @param updateCount The update count for executeUpdate (the sum for executeBatch), or -1 for
+     *        queries
+     * @param error The exception the call threw, or null if it succeeded
+     */
+    void executed(long elapsedNanos, long updateCount, Throwable error);
+  }
+
+  /**
+   * A listener that does nothing. This is the default.
+   */
+  StatementListener NONE = sql -> (elapsedNanos, updateCount, error) -> {
+  };
+}
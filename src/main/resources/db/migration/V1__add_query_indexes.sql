@@ -0,0 +1,8 @@
+-- getAllProjectNames sorts by name.
+CREATE INDEX project_name_idx ON project (project_name);
+
+-- The step queries filter by project and read the steps in step_order.
+CREATE INDEX step_project_order_idx ON step (project_id, step_order);
+
+-- Reverse lookups from a category to its projects, and the rollup triggers.
+CREATE INDEX project_category_category_idx ON project_category (category_id);
@@ -0,0 +1,3 @@
+-- Spreads the existing step_order keys apart (ProjectDao.STEP_ORDER_GAP), so
+-- steps can be inserted between them without renumbering. The order is kept.
+UPDATE step SET step_order = step_order * 1024;
@@ -0,0 +1,80 @@
+-- A deleted project is first marked with deleted_on, which hides it from
+-- ProjectDao, and its rows are removed later in small batches by
+-- ProjectDao.purgeProjectDao. The index lets the purger find the marked
+-- projects without scanning the table.
+ALTER TABLE project ADD COLUMN deleted_on DATETIME NULL;
+
+CREATE INDEX project_deleted_idx ON project (deleted_on);
+
+-- The triggers below keep category_hours_rollup, which V5__add_rollup_tables.sql
+-- creates. MySQL resolves the tables a trigger body names when the trigger
+-- fires, so they can be created first; the migrator applies V3 to V5 together.
+-- They count a project only while deleted_on is null, so marking a project
+-- deleted takes it out of its categories' totals straight away, and removing
+-- its category links or its row afterwards does not take it out again.
+
+DROP TRIGGER IF EXISTS project_after_update;
+
+CREATE TRIGGER project_after_update AFTER UPDATE ON project FOR EACH ROW
+  UPDATE category_hours_rollup r
+  JOIN project_category pc ON pc.category_id = r.category_id
+  SET r.project_count = r.project_count - (OLD.deleted_on IS NULL) + (NEW.deleted_on IS NULL),
+    r.estimated_hours = r.estimated_hours
+      - IF(OLD.deleted_on IS NULL, COALESCE(OLD.estimated_hours, 0), 0)
+      + IF(NEW.deleted_on IS NULL, COALESCE(NEW.estimated_hours, 0), 0),
+    r.actual_hours = r.actual_hours
+      - IF(OLD.deleted_on IS NULL, COALESCE(OLD.actual_hours, 0), 0)
+      + IF(NEW.deleted_on IS NULL, COALESCE(NEW.actual_hours, 0), 0)
+  WHERE pc.project_id = NEW.project_id
+    AND NOT (OLD.estimated_hours <=> NEW.estimated_hours AND OLD.actual_hours <=> NEW.actual_hours
+      AND (OLD.deleted_on IS NULL) = (NEW.deleted_on IS NULL));
+
+DROP TRIGGER IF EXISTS project_before_delete;
+
+CREATE TRIGGER project_before_delete BEFORE DELETE ON project FOR EACH ROW
+  UPDATE category_hours_rollup r
+  JOIN project_category pc ON pc.category_id = r.category_id
+  SET r.project_count = r.project_count - 1,
+    r.estimated_hours = r.estimated_hours - COALESCE(OLD.estimated_hours, 0),
+    r.actual_hours = r.actual_hours - COALESCE(OLD.actual_hours, 0)
+  WHERE pc.project_id = OLD.project_id
+    AND OLD.deleted_on IS NULL;
+
+DROP TRIGGER IF EXISTS project_category_after_insert;
+
+CREATE TRIGGER project_category_after_insert AFTER INSERT ON project_category FOR EACH ROW
+  UPDATE category_hours_rollup r
+  JOIN project p ON p.project_id = NEW.project_id
+  SET r.project_count = r.project_count + 1,
+    r.estimated_hours = r.estimated_hours + COALESCE(p.estimated_hours, 0),
+    r.actual_hours = r.actual_hours + COALESCE(p.actual_hours, 0)
+  WHERE r.category_id = NEW.category_id
+    AND p.deleted_on IS NULL;
+
+DROP TRIGGER IF EXISTS project_category_after_update;
+
+CREATE TRIGGER project_category_after_update AFTER UPDATE ON project_category FOR EACH ROW
+  UPDATE category_hours_rollup r
+  JOIN project po ON po.project_id = OLD.project_id
+  JOIN project pn ON pn.project_id = NEW.project_id
+  SET r.project_count = r.project_count
+      - (r.category_id = OLD.category_id AND po.deleted_on IS NULL)
+      + (r.category_id = NEW.category_id AND pn.deleted_on IS NULL),
+    r.estimated_hours = r.estimated_hours
+      - IF(r.category_id = OLD.category_id AND po.deleted_on IS NULL, COALESCE(po.estimated_hours, 0), 0)
+      + IF(r.category_id = NEW.category_id AND pn.deleted_on IS NULL, COALESCE(pn.estimated_hours, 0), 0),
+    r.actual_hours = r.actual_hours
+      - IF(r.category_id = OLD.category_id AND po.deleted_on IS NULL, COALESCE(po.actual_hours, 0), 0)
+      + IF(r.category_id = NEW.category_id AND pn.deleted_on IS NULL, COALESCE(pn.actual_hours, 0), 0)
+  WHERE r.category_id IN (OLD.category_id, NEW.category_id);
+
+DROP TRIGGER IF EXISTS project_category_after_delete;
+
+CREATE TRIGGER project_category_after_delete AFTER DELETE ON project_category FOR EACH ROW
+  UPDATE category_hours_rollup r
+  JOIN project p ON p.project_id = OLD.project_id
+  SET r.project_count = r.project_count - 1,
+    r.estimated_hours = r.estimated_hours - COALESCE(p.estimated_hours, 0),
+    r.actual_hours = r.actual_hours - COALESCE(p.actual_hours, 0)
+  WHERE r.category_id = OLD.category_id
+    AND p.deleted_on IS NULL;
@@ -0,0 +1,5 @@
+-- Every update of a project row adds 1 to version. ProjectDao and
+-- InMemoryProjectRepository save a project only if it still has the version it
+-- was read with, so a second editor gets an OptimisticLockException instead of
+-- overwriting the first one's changes.
+ALTER TABLE project ADD COLUMN version INT NOT NULL DEFAULT 0;
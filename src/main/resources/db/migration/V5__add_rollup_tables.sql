@@ -0,0 +1,86 @@
+-- Summary tables, so reports read one row per project or category instead of
+-- summing the base tables. The triggers below keep them current, and
+-- ProjectDao.rebuildRollupsDao recomputes them from the base tables.
+CREATE TABLE project_cost_rollup (
+  project_id INT NOT NULL,
+  material_count INT NOT NULL DEFAULT 0,
+  material_cost DECIMAL(13,2) NOT NULL DEFAULT 0,
+  PRIMARY KEY (project_id),
+  FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE
+);
+
+CREATE TABLE category_hours_rollup (
+  category_id INT NOT NULL,
+  project_count INT NOT NULL DEFAULT 0,
+  estimated_hours DECIMAL(11,2) NOT NULL DEFAULT 0,
+  actual_hours DECIMAL(11,2) NOT NULL DEFAULT 0,
+  PRIMARY KEY (category_id),
+  FOREIGN KEY (category_id) REFERENCES category (category_id) ON DELETE CASCADE
+);
+
+-- Each trigger is a single statement, so the file needs no DELIMITER changes.
+-- MySQL does not fire triggers for rows removed by ON DELETE CASCADE, so a
+-- project's category totals are taken off in project_before_delete, and its
+-- project_cost_rollup row goes with the project through its foreign key.
+--
+-- The project and project_category triggers that keep category_hours_rollup
+-- were created by V3__soft_delete_projects.sql; MySQL resolves the tables a
+-- trigger body names when it runs, not when it is created. A database whose
+-- base schema still created the rollup tables and triggers already has them:
+-- CREATE TABLE is then skipped as already applied, and each trigger here is
+-- dropped and created again unchanged.
+
+DROP TRIGGER IF EXISTS project_after_insert;
+
+CREATE TRIGGER project_after_insert AFTER INSERT ON project FOR EACH ROW
+  INSERT INTO project_cost_rollup (project_id) VALUES (NEW.project_id);
+
+DROP TRIGGER IF EXISTS material_after_insert;
+
+CREATE TRIGGER material_after_insert AFTER INSERT ON material FOR EACH ROW
+  UPDATE project_cost_rollup
+  SET material_count = material_count + 1,
+    material_cost = material_cost + COALESCE(NEW.num_required * NEW.cost, 0)
+  WHERE project_id = NEW.project_id;
+
+DROP TRIGGER IF EXISTS material_after_update;
+
+CREATE TRIGGER material_after_update AFTER UPDATE ON material FOR EACH ROW
+  UPDATE project_cost_rollup
+  SET material_count = material_count - (project_id = OLD.project_id) + (project_id = NEW.project_id),
+    material_cost = material_cost
+      - IF(project_id = OLD.project_id, COALESCE(OLD.num_required * OLD.cost, 0), 0)
+      + IF(project_id = NEW.project_id, COALESCE(NEW.num_required * NEW.cost, 0), 0)
+  WHERE project_id IN (OLD.project_id, NEW.project_id);
+
+DROP TRIGGER IF EXISTS material_after_delete;
+
+CREATE TRIGGER material_after_delete AFTER DELETE ON material FOR EACH ROW
+  UPDATE project_cost_rollup
+  SET material_count = material_count - 1,
+    material_cost = material_cost - COALESCE(OLD.num_required * OLD.cost, 0)
+  WHERE project_id = OLD.project_id;
+
+DROP TRIGGER IF EXISTS category_after_insert;
+
+CREATE TRIGGER category_after_insert AFTER INSERT ON category FOR EACH ROW
+  INSERT INTO category_hours_rollup (category_id) VALUES (NEW.category_id);
+
+-- Fill the tables for the rows that existed before them, as rebuildRollupsDao
+-- does. Projects marked deleted are left out of the category hours.
+DELETE FROM project_cost_rollup;
+
+INSERT INTO project_cost_rollup (project_id, material_count, material_cost)
+  SELECT p.project_id, COUNT(m.material_id), COALESCE(SUM(m.num_required * m.cost), 0)
+  FROM project p
+  LEFT JOIN material m USING (project_id)
+  GROUP BY p.project_id;
+
+DELETE FROM category_hours_rollup;
+
+INSERT INTO category_hours_rollup (category_id, project_count, estimated_hours, actual_hours)
+  SELECT c.category_id, COUNT(p.project_id), COALESCE(SUM(p.estimated_hours), 0), COALESCE(SUM(p.actual_hours), 0)
+  FROM category c
+  LEFT JOIN project_category pc USING (category_id)
+  LEFT JOIN project p ON p.project_id = pc.project_id AND p.deleted_on IS NULL
+  GROUP BY c.category_id;
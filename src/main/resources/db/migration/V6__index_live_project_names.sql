@@ -0,0 +1,9 @@
+-- The paged project listing reads only projects whose deleted_on is null, so
+-- project_name_idx alone cannot serve it: the planner takes project_deleted_idx
+-- for the filter and sorts the names. With deleted_on first, one index range
+-- holds the live projects in name order, with project_id breaking ties. InnoDB
+-- appends the primary key to every secondary index anyway, so naming it here
+-- costs nothing and gives other databases the same order.
+CREATE INDEX project_live_name_idx ON project (deleted_on, project_name, project_id);
+
+ALTER TABLE project DROP INDEX project_name_idx;
@@ -1,3 +1,10 @@
+-- Recreates the base schema. Run the application (or SchemaMigrator) afterwards
+-- to apply the migrations in db/migration, which add the indexes, the version
+-- and deleted_on columns and the rollup tables with their triggers; dropping
+-- schema_version here makes them run again on the new tables.
+DROP TABLE IF EXISTS schema_version;
+DROP TABLE IF EXISTS category_hours_rollup;
+DROP TABLE IF EXISTS project_cost_rollup;
 DROP TABLE IF EXISTS project_category;
 DROP TABLE IF EXISTS category;
 DROP TABLE IF EXISTS step;
@@ -45,4 +52,4 @@ CREATE TABLE project_category (
   FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE,
   FOREIGN KEY (category_id) REFERENCES category (category_id) ON DELETE CASCADE,
   UNIQUE KEY (project_id, category_id)
-);
\ No newline at end of file
+);
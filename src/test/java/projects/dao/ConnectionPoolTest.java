@@ -0,0 +1,102 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Runs ConnectionPool on the H2 database from the pom. A pool whose minIdle
+ * equals maxSize has its evictor filling the pool while the borrowers open
+ * connections of their own, which is when too many could be opened.
+ */
+class ConnectionPoolTest {
+
+	private static final String URL = System.getProperty("projects.db.url");
+
+	@Test
+	void evictorAndBorrowersNeverOpenMoreThanMaxSize() throws Exception {
+		for (int round = 0; round < 20; round++) {
+			try (ConnectionPool pool = new ConnectionPool(URL, 3, 3, 60_000, 10_000, false, 2)) {
+				int mostOpen = borrowConcurrently(pool, 8, 50);
+				PoolStats stats = pool.getStats();
+
+				assertTrue(mostOpen <= 3, "Open connections reached " + mostOpen);
+				assertTrue(stats.getCreatedCount() <= 3, stats.toString());
+				assertEquals(0, stats.getTimeoutCount());
+			}
+		}
+	} // end evictorAndBorrowersNeverOpenMoreThanMaxSize
+
+	@Test
+	void borrowerWaitsForAConnectionWhenThePoolIsFull() throws Exception {
+		try (ConnectionPool pool = new ConnectionPool(URL, 0, 1, 60_000, 10_000, false, 2)) {
+			Connection first = pool.getConnection();
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+
+			try {
+				Future<Boolean> second = executor.submit(() -> {
+					try (Connection conn = pool.getConnection()) {
+						return conn.isValid(2);
+					}
+				});
+
+				Thread.sleep(50);
+				assertFalse(second.isDone());
+
+				first.close();
+				assertTrue(second.get());
+			} finally {
+				executor.shutdown();
+			}
+
+			assertEquals(1, pool.getStats().getCreatedCount());
+		}
+	} // end borrowerWaitsForAConnectionWhenThePoolIsFull
+
+	/*
+	 * Has each thread borrow and return a connection the given number of times,
+	 * and returns the most connections the pool reported open at any borrow.
+	 */
+	private int borrowConcurrently(ConnectionPool pool, int threads, int borrows) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicInteger mostOpen = new AtomicInteger();
+		List<Future<?>> futures = new ArrayList<>();
+
+		try {
+			for (int thread = 0; thread < threads; thread++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+
+					for (int borrow = 0; borrow < borrows; borrow++) {
+						try (Connection conn = pool.getConnection()) {
+							mostOpen.accumulateAndGet(pool.getStats().getTotalConnections(), Math::max);
+						}
+					}
+					return null;
+				}));
+			}
+
+			start.countDown();
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return mostOpen.get();
+	} // end borrowConcurrently
+
+} // end CLASS
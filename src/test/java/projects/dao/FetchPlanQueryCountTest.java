@@ -0,0 +1,122 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.ProjectChild;
+import projects.entity.Step;
+import projects.metrics.DaoMetrics;
+
+/*
+ * Counts the statements each FetchPlan access pattern runs, with
+ * DaoMetrics.queryCount, against ProjectDao on H2. The pom selects the
+ * sequential fetch, so FetchPlan.ALL runs one query per table.
+ */
+class FetchPlanQueryCountTest {
+
+	private final ProjectDao projectDao = new InstrumentedProjectDao();
+	private final List<Integer> projectIds = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		TestDatabase.resetSchema();
+
+		Category category = new Category();
+		category.setCategoryName("Garden");
+		projectDao.insertCategoryDao(category);
+
+		List<Project> projects = new ArrayList<>();
+
+		for (int index = 0; index < 3; index++) {
+			Project project = new Project();
+			project.setProjectName("Planter " + index);
+
+			Material material = new Material();
+			material.setMaterialName("Cedar");
+			material.setCost(new BigDecimal("8.00"));
+			project.getMaterials().add(material);
+
+			Step step = new Step();
+			step.setStepText("Cut the boards");
+			project.getSteps().add(step);
+
+			project.getCategories().add(category);
+			projects.add(project);
+		}
+
+		projectDao.insertProjects(projects, 10);
+		projects.forEach(project -> projectIds.add(project.getProjectId()));
+	} // end setUp
+
+	@Test
+	void headerOnlyRunsOneQuery() {
+		Project project = counted(1, () -> projectDao.fetchProjectByIdDao(projectIds.get(0), FetchPlan.HEADER_ONLY))
+				.orElseThrow();
+
+		counted(0, project::getProjectName);
+		counted(0, project::getVersion);
+	} // end headerOnlyRunsOneQuery
+
+	@Test
+	void eachEagerChildAddsOneQuery() {
+		Integer projectId = projectIds.get(0);
+
+		counted(2, () -> projectDao.fetchProjectByIdDao(projectId, FetchPlan.of(ProjectChild.MATERIALS)));
+		counted(3, () -> projectDao.fetchProjectByIdDao(projectId,
+				FetchPlan.of(ProjectChild.MATERIALS, ProjectChild.STEPS)));
+
+		Project project = counted(4, () -> projectDao.fetchProjectByIdDao(projectId, FetchPlan.ALL)).orElseThrow();
+		counted(0, project::getMaterials);
+		counted(0, project::getSteps);
+		counted(0, project::getCategories);
+	} // end eachEagerChildAddsOneQuery
+
+	@Test
+	void lazyChildIsQueriedOnFirstAccessOnly() {
+		Project project = counted(2,
+				() -> projectDao.fetchProjectByIdDao(projectIds.get(0), FetchPlan.of(ProjectChild.STEPS)))
+				.orElseThrow();
+
+		counted(0, project::getSteps);
+
+		assertEquals(1, counted(1, project::getMaterials).size());
+		counted(0, project::getMaterials);
+
+		assertEquals("Garden", counted(1, project::getCategories).get(0).getCategoryName());
+		counted(0, project::getCategories);
+	} // end lazyChildIsQueriedOnFirstAccessOnly
+
+	@Test
+	void batchedFetchQueriesEachEagerChildOncePerChunk() {
+		List<Project> projects = counted(2,
+				() -> projectDao.fetchProjectsByIdsDao(projectIds, FetchPlan.of(ProjectChild.MATERIALS)));
+		assertEquals(3, projects.size());
+
+		for (Project project : projects) {
+			counted(0, project::getMaterials);
+			counted(1, project::getSteps);
+			counted(0, project::getSteps);
+		}
+	} // end batchedFetchQueriesEachEagerChildOncePerChunk
+
+	/*
+	 * Runs the call and checks it ran the expected number of statements.
+	 */
+	private static <T> T counted(long expectedQueries, Supplier<T> call) {
+		long before = DaoMetrics.queryCount();
+		T result = call.get();
+		assertEquals(expectedQueries, DaoMetrics.queryCount() - before);
+		return result;
+	} // end counted
+
+} // end CLASS
@@ -0,0 +1,15 @@
+package projects.dao;
+
+/*
+ * Runs the repository contract against ProjectDao on H2 in MySQL mode. Every
+ * test starts from a freshly created schema.
+ */
+class ProjectDaoTest extends ProjectRepositoryContractTest {
+
+	@Override
+	protected ProjectRepository createRepository() {
+		TestDatabase.resetSchema();
+		return new ProjectDao();
+	} // end createRepository
+
+} // end CLASS
@@ -0,0 +1,341 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.ProjectStamp;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
+import projects.exception.DbException;
+import projects.exception.OptimisticLockException;
+
+/*
+ * The CRUD contract described on ProjectRepository, run against every engine.
+ * Each engine has a subclass that hands out an empty repository for every test:
+ * ProjectDaoTest runs ProjectDao on H2 in MySQL mode, and
+ * InMemoryProjectRepositoryTest runs the in-memory engine.
+ */
+public abstract class ProjectRepositoryContractTest {
+
+	protected ProjectRepository repository;
+
+	/*
+	 * Returns an empty repository. Called before every test.
+	 */
+	protected abstract ProjectRepository createRepository();
+
+	@BeforeEach
+	void setUp() {
+		repository = createRepository();
+	} // end setUp
+
+	@Test
+	void insertProjectAssignsIdAndVersion() {
+		Project project = repository.insertProject(newProject("Bookshelf"));
+
+		assertNotNull(project.getProjectId());
+		assertEquals(0, project.getVersion());
+		assertTrue(project.getChangedFields().isEmpty());
+
+		Project fetched = fetch(project.getProjectId());
+		assertEquals("Bookshelf", fetched.getProjectName());
+		assertEquals(0, new BigDecimal("4.50").compareTo(fetched.getEstimatedHours()));
+		assertEquals(3, fetched.getDifficulty());
+		assertEquals(0, fetched.getVersion());
+	} // end insertProjectAssignsIdAndVersion
+
+	@Test
+	void insertProjectsStoresChildren() {
+		Category category = repository.insertCategoryDao(newCategory("Woodwork"));
+		Project project = newProject("Table");
+		project.getMaterials().add(newMaterial("Oak board"));
+		project.getMaterials().add(newMaterial("Screws"));
+		project.getSteps().add(newStep("Cut"));
+		project.getSteps().add(newStep("Sand"));
+		project.getSteps().add(newStep("Oil"));
+		project.getCategories().add(category);
+
+		assertEquals(1, repository.insertProjects(List.of(project), 10));
+		assertNotNull(project.getProjectId());
+		assertNotNull(project.getMaterials().get(0).getMaterialId());
+
+		Project fetched = fetch(project.getProjectId());
+		assertEquals(List.of("Oak board", "Screws"),
+				fetched.getMaterials().stream().map(Material::getMaterialName).sorted().collect(Collectors.toList()));
+		assertEquals(List.of("Cut", "Sand", "Oil"), stepTexts(fetched.getSteps()));
+		assertEquals(List.of("Woodwork"),
+				fetched.getCategories().stream().map(Category::getCategoryName).collect(Collectors.toList()));
+	} // end insertProjectsStoresChildren
+
+	@Test
+	void missingProjectIsNotFound() {
+		Project missing = newProject("Missing");
+		missing.setProjectId(999_999);
+		missing.setVersion(0);
+
+		assertTrue(repository.fetchProjectByIdDao(999_999).isEmpty());
+		assertFalse(repository.modifyProjectDetailsDao(missing));
+		assertFalse(repository.deleteProjectDao(999_999));
+	} // end missingProjectIsNotFound
+
+	@Test
+	void modifyWritesChangedFieldsAndIncrementsVersion() {
+		Integer projectId = repository.insertProject(newProject("Birdhouse")).getProjectId();
+		Project edit = fetch(projectId);
+		edit.setNotes("Sand before painting");
+
+		assertTrue(repository.modifyProjectDetailsDao(edit));
+		assertEquals(1, edit.getVersion());
+
+		Project fetched = fetch(projectId);
+		assertEquals("Sand before painting", fetched.getNotes());
+		assertEquals("Birdhouse", fetched.getProjectName());
+		assertEquals(1, fetched.getVersion());
+	} // end modifyWritesChangedFieldsAndIncrementsVersion
+
+	@Test
+	void modifyWithStaleVersionIsRejected() {
+		Integer projectId = repository.insertProject(newProject("Bench")).getProjectId();
+		Project first = fetch(projectId);
+		Project second = fetch(projectId);
+
+		first.setNotes("First edit");
+		assertTrue(repository.modifyProjectDetailsDao(first));
+
+		second.setNotes("Second edit");
+		assertThrows(OptimisticLockException.class, () -> repository.modifyProjectDetailsDao(second));
+		assertEquals("First edit", fetch(projectId).getNotes());
+	} // end modifyWithStaleVersionIsRejected
+
+	@Test
+	void modifyWithoutVersionIsRejected() {
+		Integer projectId = repository.insertProject(newProject("Trellis")).getProjectId();
+		Project edit = fetch(projectId);
+		edit.setVersion(null);
+		edit.setNotes("Unchecked edit");
+
+		assertThrows(DbException.class, () -> repository.modifyProjectDetailsDao(edit));
+		assertEquals(0, fetch(projectId).getVersion());
+		assertNull(fetch(projectId).getNotes());
+	} // end modifyWithoutVersionIsRejected
+
+	@Test
+	void modifyWithoutChangesStillChecksVersion() {
+		Integer projectId = repository.insertProject(newProject("Stool")).getProjectId();
+		Project stale = fetch(projectId);
+		Project edit = fetch(projectId);
+		edit.setNotes("Oiled");
+		assertTrue(repository.modifyProjectDetailsDao(edit));
+
+		assertThrows(OptimisticLockException.class, () -> repository.modifyProjectDetailsDao(stale));
+		assertTrue(repository.modifyProjectDetailsDao(fetch(projectId)));
+		assertEquals(1, fetch(projectId).getVersion());
+	} // end modifyWithoutChangesStillChecksVersion
+
+	@Test
+	void loggedHoursLeaveTheVersionAlone() {
+		Integer projectId = repository.insertProject(newProject("Clock")).getProjectId();
+		Project edit = fetch(projectId);
+
+		assertEquals(1, repository.addActualHoursDao(Map.of(projectId, new BigDecimal("1.25"), projectId + 100,
+				BigDecimal.ONE)));
+
+		edit.setNotes("Varnished");
+		assertTrue(repository.modifyProjectDetailsDao(edit));
+
+		Project fetched = fetch(projectId);
+		assertEquals(1, fetched.getVersion());
+		assertEquals(0, new BigDecimal("1.25").compareTo(fetched.getActualHours()));
+	} // end loggedHoursLeaveTheVersionAlone
+
+	@Test
+	void replacingHoursLoggedSinceTheReadIsRejected() {
+		Integer projectId = repository.insertProject(newProject("Clock")).getProjectId();
+		Project stale = fetch(projectId);
+		repository.addActualHoursDao(Map.of(projectId, new BigDecimal("2.00")));
+
+		stale.setActualHours(new BigDecimal("5.00"));
+		assertThrows(OptimisticLockException.class, () -> repository.modifyProjectDetailsDao(stale));
+
+		Project current = fetch(projectId);
+		current.setActualHours(new BigDecimal("5.00"));
+		assertTrue(repository.modifyProjectDetailsDao(current));
+		assertEquals(0, new BigDecimal("5.00").compareTo(fetch(projectId).getActualHours()));
+	} // end replacingHoursLoggedSinceTheReadIsRejected
+
+	@Test
+	void deleteHidesProjectAndChildren() {
+		Project project = newProject("Shed");
+		project.getMaterials().add(newMaterial("Roof felt"));
+		project.getSteps().add(newStep("Level the base"));
+		repository.insertProjects(List.of(project), 10);
+		Integer projectId = project.getProjectId();
+		Project kept = repository.insertProject(newProject("Gate"));
+
+		assertTrue(repository.deleteProjectDao(projectId));
+
+		assertTrue(repository.fetchProjectByIdDao(projectId).isEmpty());
+		assertTrue(repository.fetchMaterialsDao(projectId).isEmpty());
+		assertTrue(repository.fetchStepsDao(projectId).isEmpty());
+		assertEquals(List.of(kept.getProjectId()), repository.fetchProjectsByIdsDao(List.of(projectId, kept.getProjectId()))
+				.stream().map(Project::getProjectId).collect(Collectors.toList()));
+		assertEquals(List.of(kept.getProjectId()),
+				repository.getAllProjectNames().stream().map(Project::getProjectId).collect(Collectors.toList()));
+		assertFalse(repository.deleteProjectDao(projectId));
+	} // end deleteHidesProjectAndChildren
+
+	@Test
+	void deletedProjectIsPurgedInBatches() {
+		Category category = repository.insertCategoryDao(newCategory("Garden"));
+		Project project = newProject("Greenhouse");
+		project.getMaterials().add(newMaterial("Glass"));
+		project.getSteps().add(newStep("Frame"));
+		project.getSteps().add(newStep("Glaze"));
+		project.getCategories().add(category);
+		repository.insertProjects(List.of(project), 10);
+		Integer projectId = project.getProjectId();
+		Integer kept = repository.insertProject(newProject("Cold frame")).getProjectId();
+
+		assertTrue(repository.fetchDeletedProjectIdsDao().isEmpty());
+		repository.deleteProjectDao(projectId);
+		assertEquals(List.of(projectId), repository.fetchDeletedProjectIdsDao());
+		assertEquals(0, repository.purgeProjectDao(kept, 1));
+
+		// Two steps one at a time, then the material, the link and the project row.
+		List<Integer> removed = new ArrayList<>();
+		int rows;
+
+		while ((rows = repository.purgeProjectDao(projectId, 1)) > 0) {
+			removed.add(rows);
+		}
+
+		assertEquals(List.of(1, 1, 1, 1, 1), removed);
+		assertTrue(repository.fetchDeletedProjectIdsDao().isEmpty());
+		assertEquals(0, repository.purgeProjectDao(projectId, 1));
+		assertTrue(repository.fetchProjectByIdDao(kept).isPresent());
+	} // end deletedProjectIsPurgedInBatches
+
+	@Test
+	void idsAreNotReusedAfterDelete() {
+		Integer deletedId = repository.insertProject(newProject("Kite")).getProjectId();
+		repository.deleteProjectDao(deletedId);
+
+		assertTrue(repository.insertProject(newProject("Kite")).getProjectId() > deletedId);
+	} // end idsAreNotReusedAfterDelete
+
+	@Test
+	void pagesFollowTheSortOrder() {
+		Integer cherry = repository.insertProject(newProject("Cherry")).getProjectId();
+		Integer apple = repository.insertProject(newProject("Apple")).getProjectId();
+		Integer banana = repository.insertProject(newProject("Banana")).getProjectId();
+
+		List<ProjectSummary> firstPage = repository.fetchProjectPageDao(ProjectSortOrder.ID, null, 2);
+		assertEquals(List.of(cherry, apple), ids(firstPage));
+		assertEquals(List.of(banana), ids(repository.fetchProjectPageDao(ProjectSortOrder.ID, firstPage.get(1), 2)));
+
+		assertEquals(List.of(apple, banana, cherry), ids(repository.fetchProjectPageDao(ProjectSortOrder.NAME, null, 5)));
+		assertEquals(List.of(banana, apple, cherry),
+				ids(repository.fetchProjectPageDao(ProjectSortOrder.ID_DESC, null, 5)));
+	} // end pagesFollowTheSortOrder
+
+	@Test
+	void stepsAreInsertedAndMovedInOrder() {
+		Project project = newProject("Chair");
+		project.getSteps().add(newStep("First"));
+		project.getSteps().add(newStep("Second"));
+		repository.insertProjects(List.of(project), 10);
+		Integer projectId = project.getProjectId();
+		Integer firstId = project.getSteps().get(0).getStepId();
+		Integer secondId = project.getSteps().get(1).getStepId();
+
+		Step middle = repository.insertStepDao(projectId, "Middle", secondId).orElseThrow();
+		assertNotNull(middle.getStepId());
+		assertEquals(List.of("First", "Middle", "Second"), stepTexts(repository.fetchStepsDao(projectId)));
+
+		assertTrue(repository.moveStepDao(projectId, firstId, null));
+		assertEquals(List.of("Middle", "Second", "First"), stepTexts(repository.fetchStepsDao(projectId)));
+
+		assertTrue(repository.insertStepDao(999_999, "Nowhere", null).isEmpty());
+	} // end stepsAreInsertedAndMovedInOrder
+
+	@Test
+	void stampChangesWithEveryIndexedChange() {
+		ProjectStamp empty = repository.fetchProjectStampDao();
+		assertEquals(new ProjectStamp(0, 0, 0, 0, 0), empty);
+
+		Integer projectId = repository.insertProject(newProject("Planter")).getProjectId();
+		ProjectStamp inserted = repository.fetchProjectStampDao();
+		assertEquals(1, inserted.getProjectCount());
+		assertEquals(projectId.longValue(), inserted.getMaxProjectId());
+
+		Project edit = fetch(projectId);
+		edit.setNotes("Line with plastic");
+		repository.modifyProjectDetailsDao(edit);
+		ProjectStamp modified = repository.fetchProjectStampDao();
+		assertEquals(1, modified.getVersionSum());
+
+		repository.insertStepDao(projectId, "Drill drainage holes", null);
+		ProjectStamp stepAdded = repository.fetchProjectStampDao();
+		assertEquals(1, stepAdded.getStepCount());
+
+		repository.deleteProjectDao(projectId);
+		assertEquals(empty, repository.fetchProjectStampDao());
+	} // end stampChangesWithEveryIndexedChange
+
+	protected Project fetch(Integer projectId) {
+		return repository.fetchProjectByIdDao(projectId).orElseThrow();
+	} // end fetch
+
+	protected static Project newProject(String name) {
+		Project project = new Project();
+		project.setProjectName(name);
+		project.setEstimatedHours(new BigDecimal("4.50"));
+		project.setDifficulty(3);
+		return project;
+	} // end newProject
+
+	protected static Material newMaterial(String name) {
+		Material material = new Material();
+		material.setMaterialName(name);
+		material.setNumRequired(2);
+		material.setCost(new BigDecimal("1.25"));
+		return material;
+	} // end newMaterial
+
+	protected static Step newStep(String text) {
+		Step step = new Step();
+		step.setStepText(text);
+		return step;
+	} // end newStep
+
+	protected static Category newCategory(String name) {
+		Category category = new Category();
+		category.setCategoryName(name);
+		return category;
+	} // end newCategory
+
+	private static List<String> stepTexts(List<Step> steps) {
+		return steps.stream().map(Step::getStepText).collect(Collectors.toList());
+	} // end stepTexts
+
+	private static List<Integer> ids(List<ProjectSummary> page) {
+		return page.stream().map(ProjectSummary::getProjectId).collect(Collectors.toList());
+	} // end ids
+
+} // end CLASS
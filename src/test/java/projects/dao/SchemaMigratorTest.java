@@ -0,0 +1,238 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/*
+ * Runs SchemaMigrator against H2, and runs EXPLAIN on the SQL ProjectDao sends
+ * to check that each query reads through an index. The plans come from H2's
+ * planner, so they show that the indexes fit the queries, not which plan MySQL
+ * picks. Where H2 keeps its own index for a foreign key, a query may use that
+ * instead of the V1 index on the same leading column, so those checks only
+ * ask for an index lookup on the column. The purger's scan for deleted
+ * projects is not checked: H2 cannot use an index for IS NOT NULL.
+ */
+class SchemaMigratorTest {
+
+	private final ProjectDao projectDao = new ProjectDao();
+
+	@BeforeEach
+	void setUp() {
+		TestDatabase.resetSchema();
+	} // end setUp
+
+	@Test
+	void migratingAgainAppliesNothing() {
+		seedProjects(1, 3);
+		List<Integer> orders = stepOrders();
+
+		assertEquals(0, new SchemaMigrator(false).migrate());
+		assertEquals(orders, stepOrders());
+	} // end migratingAgainAppliesNothing
+
+	@Test
+	void failedMigrationIsRolledBackAndNotRecorded() {
+		seedProjects(1, 3);
+		List<Integer> orders = stepOrders();
+		int version = new SchemaMigrator(false).currentVersion();
+		SchemaMigrator migrator = new SchemaMigrator(false, "/db/failing-migration/");
+
+		assertThrows(DbException.class, migrator::migrate);
+		assertEquals(orders, stepOrders());
+		assertEquals(version, migrator.currentVersion());
+	} // end failedMigrationIsRolledBackAndNotRecorded
+
+	@Test
+	void statementsWhoseObjectsAlreadyMatchAreSkipped() {
+		SchemaMigrator migrator = new SchemaMigrator(false, "/db/reapplied-migration/");
+
+		assertEquals(1, migrator.migrate());
+		assertEquals(98, migrator.currentVersion());
+	} // end statementsWhoseObjectsAlreadyMatchAreSkipped
+
+	@Test
+	void existingIndexWithOtherColumnsStopsTheMigration() {
+		SchemaMigrator migrator = new SchemaMigrator(false, "/db/conflicting-migration/");
+		int version = migrator.currentVersion();
+
+		DbException e = assertThrows(DbException.class, migrator::migrate);
+
+		assertTrue(e.getMessage().contains("[project_id, step_order]"), e.getMessage());
+		assertEquals(version, migrator.currentVersion());
+	} // end existingIndexWithOtherColumnsStopsTheMigration
+
+	@Test
+	void projectPagesByNameUseTheLiveNameIndex() {
+		seedProjects(200, 5);
+
+		for(ProjectSortOrder order : List.of(ProjectSortOrder.NAME, ProjectSortOrder.NAME_DESC)) {
+			String firstPage = explain(ProjectDao.projectPageSql(order, false), 50);
+			String nextPage = explain(ProjectDao.projectPageSql(order, true), "Project 5", "Project 5", 6, 50);
+
+			assertTrue(firstPage.contains("project_live_name_idx"), firstPage);
+			assertTrue(nextPage.contains("project_live_name_idx"), nextPage);
+		}
+	} // end projectPagesByNameUseTheLiveNameIndex
+
+	@Test
+	void projectPagesByIdReadLiveProjectsThroughAnIndex() {
+		seedProjects(200, 5);
+
+		for(ProjectSortOrder order : List.of(ProjectSortOrder.ID, ProjectSortOrder.ID_DESC)) {
+			assertIndexLookup(explain(ProjectDao.projectPageSql(order, false), 50), "deleted_on IS NULL");
+			assertIndexLookup(explain(ProjectDao.projectPageSql(order, true), 6, 50), "deleted_on IS NULL");
+		}
+	} // end projectPagesByIdReadLiveProjectsThroughAnIndex
+
+	@Test
+	void stepsAreReadByProject() {
+		seedProjects(200, 5);
+
+		assertIndexLookup(explain(ProjectDao.STEPS_BY_PROJECT_SQL, 20), "project_id = ?1");
+	} // end stepsAreReadByProject
+
+	@Test
+	void lastStepLookupUsesTheStepOrderIndex() {
+		seedProjects(200, 5);
+		String plan = explain(ProjectDao.LAST_STEP_ORDER_SQL, 20, 0);
+
+		assertTrue(plan.contains("step_project_order_idx"), plan);
+	} // end lastStepLookupUsesTheStepOrderIndex
+
+	@Test
+	void previousStepLookupUsesTheStepOrderIndex() {
+		seedProjects(200, 5);
+		String plan = explain(ProjectDao.PREVIOUS_STEP_ORDER_SQL, 20, 0, 4096, 4096, 3);
+
+		assertTrue(plan.contains("step_project_order_idx"), plan);
+	} // end previousStepLookupUsesTheStepOrderIndex
+
+	@Test
+	void categoryHoursRebuildLooksUpProjectsByCategory() {
+		seedProjects(200, 5);
+
+		assertIndexLookup(explain(ProjectDao.REBUILD_CATEGORY_HOURS_SQL), "category_id = c.category_id");
+	} // end categoryHoursRebuildLooksUpProjectsByCategory
+
+	@Test
+	void purgeRemovesChildRowsByProject() {
+		seedProjects(200, 5);
+
+		for(String table : ProjectDao.PURGE_TABLES) {
+			assertIndexLookup(explain(ProjectDao.purgeChildrenSql(table), 2, 500), "project_id = (SELECT");
+		}
+	} // end purgeRemovesChildRowsByProject
+
+	@Test
+	void purgeRemovesTheProjectByPrimaryKey() {
+		seedProjects(200, 5);
+		String plan = explain(ProjectDao.PURGE_PROJECT_SQL, 2);
+
+		assertTrue(plan.contains("PRIMARY_KEY"), plan);
+	} // end purgeRemovesTheProjectByPrimaryKey
+
+	/*
+	 * Checks that the plan reads no table in full, and reads one through an index
+	 * with the given condition.
+	 */
+	private static void assertIndexLookup(String plan, String condition) {
+		assertFalse(plan.contains("tableScan"), plan);
+		assertTrue(Pattern.compile("/\\* [\\w.]+: " + Pattern.quote(condition)).matcher(plan).find(), plan);
+	} // end assertIndexLookup
+
+	/*
+	 * Inserts projects with steps and materials, all in one category, marks every
+	 * tenth project deleted, and updates H2's statistics.
+	 */
+	private void seedProjects(int count, int stepsPerProject) {
+		Category category = new Category();
+		category.setCategoryName("Woodworking");
+		projectDao.insertCategoryDao(category);
+
+		List<Project> projects = new ArrayList<>();
+
+		for (int index = 0; index < count; index++) {
+			Project project = new Project();
+			project.setProjectName("Project " + index);
+
+			for (int child = 0; child < stepsPerProject; child++) {
+				Step step = new Step();
+				step.setStepText("Step " + child);
+				project.getSteps().add(step);
+
+				Material material = new Material();
+				material.setMaterialName("Material " + child);
+				project.getMaterials().add(material);
+			}
+			project.getCategories().add(category);
+			projects.add(project);
+		}
+
+		projectDao.insertProjects(projects, 100);
+
+		for(int index = 0; index < count; index += 10) {
+			projectDao.deleteProjectDao(projects.get(index).getProjectId());
+		}
+		execute("ANALYZE");
+	} // end seedProjects
+
+	private List<Integer> stepOrders() {
+		List<Integer> orders = new ArrayList<>();
+
+		try (Connection conn = DbConnection.getConnection();
+				PreparedStatement stmt = conn.prepareStatement("SELECT step_order FROM step ORDER BY step_id");
+				ResultSet rs = stmt.executeQuery()) {
+			while (rs.next()) {
+				orders.add(rs.getInt(1));
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+		return orders;
+	} // end stepOrders
+
+	private String explain(String sql, Object... parameters) {
+		try (Connection conn = DbConnection.getConnection();
+				PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + sql)) {
+			for (int index = 0; index < parameters.length; index++) {
+				stmt.setObject(index + 1, parameters[index]);
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				rs.next();
+				return rs.getString(1);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end explain
+
+	private void execute(String sql) {
+		try (Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement()) {
+			stmt.execute(sql);
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	} // end execute
+
+} // end CLASS
@@ -0,0 +1,61 @@
+package projects.dao;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.stream.Collectors;
+
+import projects.exception.DbException;
+
+/*
+ * Schema setup for the tests that run ProjectDao. The pom points
+ * -Dprojects.db.url at an in-memory H2 database in MySQL mode, so
+ * DbConnection hands out H2 connections and no MySQL server is needed.
+ */
+public final class TestDatabase {
+
+	private static final String SCHEMA_RESOURCE = "/projects-schema.sql";
+
+	private TestDatabase() {
+	}
+
+	/*
+	 * Drops and recreates the tables by running projects-schema.sql, then applies
+	 * the schema migrations. Comment lines are dropped before the script is split
+	 * on semicolons, since a comment may contain one. The migrations' trigger
+	 * statements are skipped, because H2 does not accept MySQL trigger bodies, so
+	 * the rollup tables are not kept current.
+	 */
+	public static void resetSchema() {
+		try (Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement()) {
+			for (String sql : readSchema().split(";")) {
+				if (!sql.isBlank()) {
+					stmt.execute(sql);
+				}
+			}
+		} catch (SQLException | IOException e) {
+			throw new DbException("Unable to create the test schema", e);
+		}
+
+		new SchemaMigrator(false).migrate();
+	} // end resetSchema
+
+	private static String readSchema() throws IOException {
+		try (InputStream in = TestDatabase.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+			if (in == null) {
+				throw new IOException(SCHEMA_RESOURCE + " not found on the classpath");
+			}
+
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+				return reader.lines().filter(line -> !line.strip().startsWith("--"))
+						.collect(Collectors.joining("\n"));
+			}
+		}
+	} // end readSchema
+
+} // end CLASS
@@ -0,0 +1,108 @@
+package projects.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Checks when a project calls its loader for deferred child Lists.
+ */
+class ProjectTest {
+
+	@Test
+	void deferredListIsLoadedOnFirstAccessOnly() {
+		CountingLoader loader = new CountingLoader();
+		Project project = new Project();
+		project.setProjectId(7);
+		project.deferChildren(loader, EnumSet.of(ProjectChild.MATERIALS, ProjectChild.STEPS));
+
+		assertFalse(project.isLoaded(ProjectChild.MATERIALS));
+		assertTrue(project.isLoaded(ProjectChild.CATEGORIES));
+
+		assertEquals("Glue", project.getMaterials().get(0).getMaterialName());
+		project.getMaterials();
+		project.getCategories();
+
+		assertEquals(1, loader.count(ProjectChild.MATERIALS));
+		assertEquals(0, loader.count(ProjectChild.STEPS));
+		assertEquals(0, loader.count(ProjectChild.CATEGORIES));
+		assertTrue(project.isLoaded(ProjectChild.MATERIALS));
+		assertFalse(project.isLoaded(ProjectChild.STEPS));
+	} // end deferredListIsLoadedOnFirstAccessOnly
+
+	@Test
+	void failedLoadIsRetriedOnNextAccess() {
+		CountingLoader loader = new CountingLoader();
+		loader.failNext = true;
+		Project project = new Project();
+		project.deferChildren(loader, EnumSet.of(ProjectChild.STEPS));
+
+		assertThrows(IllegalStateException.class, project::getSteps);
+		assertFalse(project.isLoaded(ProjectChild.STEPS));
+
+		assertEquals(1, project.getSteps().size());
+		assertEquals(2, loader.count(ProjectChild.STEPS));
+	} // end failedLoadIsRetriedOnNextAccess
+
+	@Test
+	void copySharesTheLoaderButNotTheLoadedState() {
+		CountingLoader loader = new CountingLoader();
+		Project project = new Project();
+		project.deferChildren(loader, EnumSet.of(ProjectChild.MATERIALS));
+		Project copy = project.copy();
+
+		copy.getMaterials();
+		assertFalse(project.isLoaded(ProjectChild.MATERIALS));
+		assertEquals(1, loader.count(ProjectChild.MATERIALS));
+	} // end copySharesTheLoaderButNotTheLoadedState
+
+	/*
+	 * Returns one child of each kind and counts the calls.
+	 */
+	private static class CountingLoader implements ProjectChildLoader {
+		private final Map<ProjectChild, Integer> calls = new EnumMap<>(ProjectChild.class);
+		private boolean failNext;
+
+		@Override
+		public List<Material> loadMaterials(Integer projectId) {
+			record(ProjectChild.MATERIALS);
+			Material material = new Material();
+			material.setMaterialName("Glue");
+			return List.of(material);
+		}
+
+		@Override
+		public List<Step> loadSteps(Integer projectId) {
+			record(ProjectChild.STEPS);
+			return List.of(new Step());
+		}
+
+		@Override
+		public List<Category> loadCategories(Integer projectId) {
+			record(ProjectChild.CATEGORIES);
+			return List.of(new Category());
+		}
+
+		int count(ProjectChild child) {
+			return calls.getOrDefault(child, 0);
+		}
+
+		private void record(ProjectChild child) {
+			calls.merge(child, 1, Integer::sum);
+
+			if (failNext) {
+				failNext = false;
+				throw new IllegalStateException("Load failed");
+			}
+		}
+	} // end CountingLoader
+
+} // end CLASS
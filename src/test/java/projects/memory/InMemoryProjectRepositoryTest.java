@@ -0,0 +1,100 @@
+package projects.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import projects.dao.ProjectRepository;
+import projects.dao.ProjectRepositoryContractTest;
+import projects.entity.Project;
+
+/*
+ * Runs the repository contract against the in-memory engine, persisted to a
+ * temporary directory, and checks that its state survives a restart.
+ */
+class InMemoryProjectRepositoryTest extends ProjectRepositoryContractTest {
+
+	@TempDir
+	Path directory;
+
+	private InMemoryProjectRepository memory;
+
+	@Override
+	protected ProjectRepository createRepository() {
+		memory = open();
+		return memory;
+	} // end createRepository
+
+	@AfterEach
+	void tearDown() {
+		memory.close();
+	} // end tearDown
+
+	/*
+	 * With no categories, the snapshot holds an empty category batch. It must not
+	 * end the snapshot early and lose the projects written after it.
+	 */
+	@Test
+	void snapshotWithoutCategoriesKeepsEveryProject() {
+		for (int index = 0; index < 3; index++) {
+			Project project = newProject("Project " + index);
+			project.getSteps().add(newStep("Step " + index));
+			memory.insertProjects(List.of(project), 1);
+		}
+
+		memory.close();
+		memory = open();
+
+		assertEquals(List.of("Project 0", "Project 1", "Project 2"),
+				memory.getAllProjectNames().stream().map(Project::getProjectName).collect(Collectors.toList()));
+		assertEquals("Step 2", memory.fetchProjectByIdDao(3).orElseThrow().getSteps().get(0).getStepText());
+	} // end snapshotWithoutCategoriesKeepsEveryProject
+
+	@Test
+	void logIsReplayedAfterRestart() {
+		Integer projectId = memory.insertProject(newProject("Lamp")).getProjectId();
+		Project edit = memory.fetchProjectByIdDao(projectId).orElseThrow();
+		edit.setNotes("Rewire");
+		memory.modifyProjectDetailsDao(edit);
+
+		memory.close();
+		memory = open();
+
+		Project fetched = memory.fetchProjectByIdDao(projectId).orElseThrow();
+		assertEquals("Rewire", fetched.getNotes());
+		assertEquals(1, fetched.getVersion());
+		assertEquals(projectId + 1, memory.insertProject(newProject("Next")).getProjectId());
+	} // end logIsReplayedAfterRestart
+
+	@Test
+	void deletedProjectWaitsForPurgeAfterRestart() {
+		Project project = newProject("Bench");
+		project.getSteps().add(newStep("Cut"));
+		memory.insertProjects(List.of(project), 1);
+		Integer projectId = project.getProjectId();
+		memory.deleteProjectDao(projectId);
+
+		memory.close();
+		memory = open();
+
+		assertTrue(memory.fetchProjectByIdDao(projectId).isEmpty());
+		assertTrue(memory.fetchStepsDao(projectId).isEmpty());
+		assertEquals(List.of(projectId), memory.fetchDeletedProjectIdsDao());
+		assertEquals(1, memory.purgeProjectDao(projectId, 10));
+		assertEquals(1, memory.purgeProjectDao(projectId, 10));
+		assertEquals(0, memory.purgeProjectDao(projectId, 10));
+	} // end deletedProjectWaitsForPurgeAfterRestart
+
+	// No periodic snapshot and no size limit, so only close writes one.
+	private InMemoryProjectRepository open() {
+		return new InMemoryProjectRepository(directory, Long.MAX_VALUE, 0);
+	} // end open
+
+} // end CLASS
@@ -0,0 +1,125 @@
+package projects.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.DbConnection;
+import projects.dao.TestDatabase;
+import provided.util.DaoBase;
+
+/*
+ * Runs statements through DaoBase with a SlowQueryLog installed and a zero
+ * threshold, so every execution is slow, and reads back what the log writes.
+ * The pom turns slow query logging off, so the test installs its own.
+ */
+class SlowQueryLogTest {
+
+	private static final Logger LOGGER = Logger.getLogger("projects.slowquery");
+
+	private final List<String> messages = new CopyOnWriteArrayList<>();
+	private final Handler handler = new Handler() {
+		@Override
+		public void publish(LogRecord record) {
+			messages.add(record.getMessage());
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	private SlowQueryLog slowQueryLog;
+
+	@BeforeEach
+	void setUp() {
+		TestDatabase.resetSchema();
+		LOGGER.addHandler(handler);
+		LOGGER.setUseParentHandlers(false);
+		slowQueryLog = new SlowQueryLog(16, DbConnection::getConnection, true);
+		DaoBase.setSlowStatementLog(slowQueryLog, 0);
+	} // end setUp
+
+	@AfterEach
+	void tearDown() {
+		DaoBase.setSlowStatementLog(null, 0);
+		LOGGER.removeHandler(handler);
+		LOGGER.setUseParentHandlers(true);
+	} // end tearDown
+
+	@Test
+	void slowStatementIsLoggedWithItsPlan() throws Exception {
+		new ProbeDao().run("SELECT project_id FROM project WHERE project_id IN (?, ?, ?)", 1, 2, 3);
+
+		String message = awaitMessages(1).get(0);
+
+		assertTrue(message.contains("Parameters: [1, 2, 3]"), message);
+		assertTrue(message.contains("Plan:"), message);
+		assertFalse(message.contains("unavailable"), message);
+	} // end slowStatementIsLoggedWithItsPlan
+
+	@Test
+	void reusedStatementLogsOnlyItsOwnParameters() throws Exception {
+		ProbeDao dao = new ProbeDao();
+		String sql = "SELECT project_id FROM project WHERE project_id = ? OR project_name = ? OR notes = ?";
+
+		dao.run(sql, 1, "Shed", "None");
+		dao.run(sql, 2, "Gate", "None");
+
+		String message = awaitMessages(2).get(1);
+
+		assertTrue(message.contains("Parameters: [2, Gate, None]"), message);
+		assertFalse(message.contains("unavailable"), message);
+	} // end reusedStatementLogsOnlyItsOwnParameters
+
+	/*
+	 * Waits for the log's worker thread to write count entries and returns them.
+	 */
+	private List<String> awaitMessages(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+
+		while (messages.size() < count) {
+			assertTrue(System.currentTimeMillis() < deadline, "No slow query was logged");
+			Thread.sleep(10);
+		}
+
+		assertEquals(0, slowQueryLog.getDroppedCount());
+		return messages;
+	} // end awaitMessages
+
+	// Runs a query through DaoBase.prepareStatement, which records the parameters.
+	private static class ProbeDao extends DaoBase {
+		void run(String sql, Object... parameters) throws SQLException {
+			try (Connection conn = DbConnection.getConnection(); PreparedStatement stmt = prepareStatement(conn, sql)) {
+				for (int index = 0; index < parameters.length; index++) {
+					setParameter(stmt, index + 1, parameters[index], parameters[index].getClass());
+				}
+
+				try (ResultSet rs = stmt.executeQuery()) {
+					while (rs.next()) {
+						rs.getInt(1);
+					}
+				}
+			}
+		}
+	} // end ProbeDao
+
+} // end CLASS
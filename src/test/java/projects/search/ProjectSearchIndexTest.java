@@ -0,0 +1,61 @@
+package projects.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import projects.entity.Project;
+import projects.entity.ProjectStamp;
+
+/*
+ * Checks that a search index snapshot is only used while the stamp it was
+ * saved with still matches.
+ */
+class ProjectSearchIndexTest {
+
+	private static final ProjectStamp SAVED = new ProjectStamp(1, 1, 0, 0, 0);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void snapshotWithMatchingStampIsLoaded() {
+		Path file = directory.resolve("index").resolve("projects-search.idx");
+		saveOneProject(file);
+
+		ProjectSearchIndex loaded = new ProjectSearchIndex();
+
+		assertTrue(loaded.loadSnapshot(file, () -> SAVED));
+		assertTrue(loaded.isReady());
+		assertEquals(List.of(1), loaded.search("walnut", 10));
+	} // end snapshotWithMatchingStampIsLoaded
+
+	@Test
+	void snapshotWithChangedStampIsIgnored() {
+		Path file = directory.resolve("projects-search.idx");
+		saveOneProject(file);
+
+		ProjectSearchIndex loaded = new ProjectSearchIndex();
+
+		// One more save of project 1 since the snapshot was taken.
+		assertFalse(loaded.loadSnapshot(file, () -> new ProjectStamp(1, 1, 1, 0, 0)));
+		assertFalse(loaded.isReady());
+	} // end snapshotWithChangedStampIsIgnored
+
+	private static void saveOneProject(Path file) {
+		Project project = new Project();
+		project.setProjectId(1);
+		project.setNotes("Oil the walnut top");
+
+		ProjectSearchIndex index = new ProjectSearchIndex();
+		index.rebuild(consumer -> consumer.accept(project));
+		index.saveSnapshot(file, () -> SAVED);
+	} // end saveOneProject
+
+} // end CLASS
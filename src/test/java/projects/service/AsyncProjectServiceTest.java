@@ -0,0 +1,185 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.ProjectDao;
+import projects.dao.TestDatabase;
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.OptimisticLockException;
+
+/*
+ * Runs AsyncProjectService on ProjectDao over H2. The limiter tests use a
+ * ProjectService whose getListOfProjectNames stands in for a database call, so
+ * they can see how many calls run at once.
+ */
+class AsyncProjectServiceTest {
+
+	private final ProjectDao projectDao = new ProjectDao();
+
+	@BeforeEach
+	void setUp() {
+		TestDatabase.resetSchema();
+	} // end setUp
+
+	@Test
+	void parallelFetchMatchesTheSequentialFetch() throws Exception {
+		Integer projectId = insertProject("Bookcase");
+
+		try (AsyncProjectService async = new AsyncProjectService(new ProjectService(), 4)) {
+			Project parallel = async.fetchProjectByIdAsync(projectId).get(10, TimeUnit.SECONDS);
+			Project sequential = projectDao.fetchProjectByIdDao(projectId).orElseThrow();
+
+			assertEquals(sequential.toString(), parallel.toString());
+			assertEquals(3, parallel.getSteps().size());
+		}
+	} // end parallelFetchMatchesTheSequentialFetch
+
+	@Test
+	void limiterBoundsTheCallsRunningAtOnce() throws Exception {
+		TrackingService service = new TrackingService(null);
+		List<CompletableFuture<List<Project>>> futures = new ArrayList<>();
+
+		try (AsyncProjectService async = new AsyncProjectService(service, 2)) {
+			for (int call = 0; call < 20; call++) {
+				futures.add(async.getListOfProjectNamesAsync());
+			}
+
+			for (CompletableFuture<List<Project>> future : futures) {
+				future.get(10, TimeUnit.SECONDS);
+			}
+		}
+
+		assertEquals(20, service.calls.get());
+		assertEquals(2, service.maxRunning.get());
+	} // end limiterBoundsTheCallsRunningAtOnce
+
+	@Test
+	void cachedProjectIsReturnedWithoutAPermit() throws Exception {
+		Integer cachedId = insertProject("Stool");
+		Integer uncachedId = insertProject("Chair");
+		CountDownLatch release = new CountDownLatch(1);
+		TrackingService service = new TrackingService(release);
+		service.fetchProjectByIdService(cachedId);
+
+		try (AsyncProjectService async = new AsyncProjectService(service, 1)) {
+			// Hold the only permit until release.
+			CompletableFuture<List<Project>> blocker = async.getListOfProjectNamesAsync();
+			service.entered.await(10, TimeUnit.SECONDS);
+
+			CompletableFuture<Project> uncached = async.fetchProjectByIdAsync(uncachedId);
+
+			assertEquals("Stool", async.fetchProjectByIdAsync(cachedId).get(10, TimeUnit.SECONDS).getProjectName());
+			Thread.sleep(50);
+			assertFalse(uncached.isDone());
+
+			release.countDown();
+			blocker.get(10, TimeUnit.SECONDS);
+			assertEquals("Chair", uncached.get(10, TimeUnit.SECONDS).getProjectName());
+		}
+	} // end cachedProjectIsReturnedWithoutAPermit
+
+	@Test
+	void exceptionsCompleteTheFuture() throws Exception {
+		Integer projectId = insertProject("Table");
+
+		try (AsyncProjectService async = new AsyncProjectService(new ProjectService(), 4)) {
+			ExecutionException missing = assertThrows(ExecutionException.class,
+					() -> async.fetchProjectByIdAsync(projectId + 100).get(10, TimeUnit.SECONDS));
+			assertInstanceOf(NoSuchElementException.class, missing.getCause());
+
+			Project stale = new Project();
+			stale.setProjectId(projectId);
+			stale.setVersion(5);
+			stale.setProjectName("Stale table");
+
+			ExecutionException conflict = assertThrows(ExecutionException.class,
+					() -> async.modifyProjectDetailsAsync(stale).get(10, TimeUnit.SECONDS));
+			assertInstanceOf(OptimisticLockException.class, conflict.getCause());
+
+			// The failures did not keep any permits.
+			assertTrue(async.getListOfProjectNamesAsync().get(10, TimeUnit.SECONDS).size() > 0);
+		}
+	} // end exceptionsCompleteTheFuture
+
+	private Integer insertProject(String name) {
+		Category category = new Category();
+		category.setCategoryName(name + " category");
+		projectDao.insertCategoryDao(category);
+
+		Project project = new Project();
+		project.setProjectName(name);
+		project.setEstimatedHours(new BigDecimal("3.00"));
+		project.setDifficulty(2);
+		project.getCategories().add(category);
+
+		for (int index = 1; index <= 3; index++) {
+			Step step = new Step();
+			step.setStepText(name + " step " + index);
+			project.getSteps().add(step);
+
+			Material material = new Material();
+			material.setMaterialName(name + " material " + index);
+			material.setNumRequired(index);
+			material.setCost(new BigDecimal("1.50"));
+			project.getMaterials().add(material);
+		}
+
+		projectDao.insertProjects(List.of(project), 1);
+		return project.getProjectId();
+	} // end insertProject
+
+	// Counts the getListOfProjectNames calls running at once. With a release
+	// latch, each call waits for it instead of sleeping.
+	private static class TrackingService extends ProjectService {
+		private final CountDownLatch release;
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private final AtomicInteger calls = new AtomicInteger();
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger maxRunning = new AtomicInteger();
+
+		private TrackingService(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public List<Project> getListOfProjectNames() {
+			calls.incrementAndGet();
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			entered.countDown();
+
+			try {
+				if (release == null) {
+					Thread.sleep(20);
+				} else {
+					release.await(10, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+			return List.of();
+		}
+	} // end TrackingService
+
+} // end CLASS
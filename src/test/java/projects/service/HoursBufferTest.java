@@ -0,0 +1,192 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.ProjectDao;
+import projects.dao.TestDatabase;
+import projects.entity.Project;
+import projects.exception.DbException;
+
+/*
+ * Checks that HoursBuffer adds up every increment exactly once: under
+ * concurrent adds, across a failed flush and after a discard. One test
+ * flushes through ProjectDao on H2 to check the count of dropped projects.
+ *
+ * The flush interval and threshold are too large to trigger a flush, so every
+ * flush is one the test makes.
+ */
+class HoursBufferTest {
+
+	private final List<Map<Integer, BigDecimal>> written = new ArrayList<>();
+	private HoursBuffer buffer;
+
+	@AfterEach
+	void tearDown() {
+		if (buffer != null) {
+			buffer.close();
+		}
+	} // end tearDown
+
+	@Test
+	void concurrentAddsAddUpExactly() throws Exception {
+		buffer = newBuffer(recording());
+		int threads = 8;
+		int addsPerThread = 1000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+
+		try {
+			for (int thread = 0; thread < threads; thread++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+
+					for (int add = 0; add < addsPerThread; add++) {
+						buffer.add(1, new BigDecimal("0.01"));
+						buffer.add(2, new BigDecimal("0.25"));
+
+						// Flush while adding, so increments land during flushes too.
+						if (add % 100 == 0) {
+							buffer.flush();
+						}
+					}
+					return null;
+				}));
+			}
+
+			start.countDown();
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		buffer.flush();
+
+		assertEquals(0, new BigDecimal("80.00").compareTo(writtenHours(1)));
+		assertEquals(0, new BigDecimal("2000.00").compareTo(writtenHours(2)));
+		assertEquals(0, buffer.getPendingHours(1).signum());
+	} // end concurrentAddsAddUpExactly
+
+	@Test
+	void failedFlushPutsTheTotalsBack() {
+		boolean[] fail = { true };
+		ToIntFunction<Map<Integer, BigDecimal>> recorder = recording();
+
+		buffer = newBuffer(increments -> {
+			if (fail[0]) {
+				throw new DbException("Database unavailable");
+			}
+			return recorder.applyAsInt(increments);
+		});
+
+		buffer.add(1, new BigDecimal("1.50"));
+		assertThrows(DbException.class, buffer::flush);
+
+		assertEquals(0, new BigDecimal("1.50").compareTo(buffer.getPendingHours(1)));
+		assertEquals(1, buffer.getFailedFlushCount());
+
+		fail[0] = false;
+		buffer.add(1, new BigDecimal("0.50"));
+
+		assertEquals(1, buffer.flush());
+		assertEquals(List.of(Map.of(1, new BigDecimal("2.00"))), written);
+	} // end failedFlushPutsTheTotalsBack
+
+	@Test
+	void discardForgetsTheHoursOfADeletedProject() {
+		buffer = newBuffer(recording());
+
+		buffer.add(1, new BigDecimal("3.00"));
+		buffer.add(2, new BigDecimal("1.25"));
+		buffer.discard(1);
+
+		assertEquals(1, buffer.flush());
+		assertEquals(List.of(Map.of(2, new BigDecimal("1.25"))), written);
+		assertEquals(0, buffer.getDroppedProjectCount());
+	} // end discardForgetsTheHoursOfADeletedProject
+
+	@Test
+	void hoursOfMissingProjectsAreCountedAsDropped() {
+		TestDatabase.resetSchema();
+		ProjectDao projectDao = new ProjectDao();
+		Integer kept = projectDao.insertProject(newProject("Desk")).getProjectId();
+		Integer deleted = projectDao.insertProject(newProject("Stool")).getProjectId();
+		projectDao.deleteProjectDao(deleted);
+
+		buffer = newBuffer(projectDao::addActualHoursDao);
+		buffer.add(kept, new BigDecimal("2.50"));
+		buffer.add(deleted, new BigDecimal("1.00"));
+		buffer.add(deleted + 100, new BigDecimal("1.00"));
+
+		assertEquals(1, buffer.flush());
+		assertEquals(2, buffer.getDroppedProjectCount());
+
+		Project project = projectDao.fetchProjectByIdDao(kept).orElseThrow();
+		assertEquals(0, new BigDecimal("2.50").compareTo(project.getActualHours()));
+		assertEquals(0, project.getVersion());
+	} // end hoursOfMissingProjectsAreCountedAsDropped
+
+	@Test
+	void projectIsLoggedAgainAfterItsCounterIsRemoved() {
+		buffer = newBuffer(recording());
+
+		buffer.add(1, new BigDecimal("1.00"));
+		buffer.flush();
+		buffer.flush();
+		buffer.add(1, new BigDecimal("0.75"));
+		buffer.flush();
+
+		assertEquals(List.of(Map.of(1, new BigDecimal("1.00")), Map.of(1, new BigDecimal("0.75"))), written);
+		assertTrue(buffer.getPendingAgeMillis() < 0);
+	} // end projectIsLoggedAgainAfterItsCounterIsRemoved
+
+	private HoursBuffer newBuffer(ToIntFunction<Map<Integer, BigDecimal>> writer) {
+		return new HoursBuffer(writer, Long.MAX_VALUE / 2, Long.MAX_VALUE);
+	} // end newBuffer
+
+	// Records each flush and reports every project as updated.
+	private ToIntFunction<Map<Integer, BigDecimal>> recording() {
+		return increments -> {
+			synchronized (written) {
+				written.add(Map.copyOf(increments));
+			}
+			return increments.size();
+		};
+	} // end recording
+
+	private BigDecimal writtenHours(Integer projectId) {
+		BigDecimal total = BigDecimal.ZERO;
+
+		for (Map<Integer, BigDecimal> increments : written) {
+			total = total.add(increments.getOrDefault(projectId, BigDecimal.ZERO));
+		}
+		return total;
+	} // end writtenHours
+
+	private static Project newProject(String name) {
+		Project project = new Project();
+		project.setProjectName(name);
+		project.setEstimatedHours(new BigDecimal("4.00"));
+		project.setDifficulty(2);
+		return project;
+	} // end newProject
+
+} // end CLASS
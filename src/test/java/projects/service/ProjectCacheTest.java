@@ -0,0 +1,209 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import projects.dao.TestDatabase;
+import projects.entity.Project;
+import projects.exception.OptimisticLockException;
+
+/*
+ * Checks ProjectCache's expiry, eviction and single-flight loading, that saves
+ * reaching ProjectCache.update out of order never leave an older project in the
+ * cache, and that ProjectService drops or replaces a cached project when it is
+ * modified or deleted. The service tests run ProjectDao on H2.
+ */
+class ProjectCacheTest {
+
+	private final ProjectCache cache = new ProjectCache(10, 60_000);
+
+	@Test
+	void saveOfTheCachedVersionIsApplied() {
+		cache.put(1, project("Original", 0));
+
+		cache.update(1, 1, cached -> project("First save", 1));
+
+		assertEquals("First save", cache.getIfPresent(1).orElseThrow().getProjectName());
+	} // end saveOfTheCachedVersionIsApplied
+
+	@Test
+	void olderSaveArrivingLateIsIgnored() {
+		cache.put(1, project("Original", 0));
+
+		cache.update(1, 1, cached -> project("First save", 1));
+		cache.update(1, 2, cached -> project("Second save", 2));
+		cache.update(1, 1, cached -> project("First save again", 1));
+
+		Project cached = cache.getIfPresent(1).orElseThrow();
+		assertEquals("Second save", cached.getProjectName());
+		assertEquals(2, cached.getVersion());
+	} // end olderSaveArrivingLateIsIgnored
+
+	@Test
+	void newerSaveArrivingFirstDropsTheProject() {
+		cache.put(1, project("Original", 0));
+
+		cache.update(1, 2, cached -> project("Second save", 2));
+		assertTrue(cache.getIfPresent(1).isEmpty());
+
+		cache.update(1, 1, cached -> project("First save", 1));
+		assertTrue(cache.getIfPresent(1).isEmpty());
+		assertEquals(1, cache.getStats().getInvalidationCount());
+	} // end newerSaveArrivingFirstDropsTheProject
+
+	@Test
+	void saveOfUncachedProjectCachesNothing() {
+		cache.update(1, 1, cached -> project("First save", 1));
+
+		assertEquals(Optional.empty(), cache.getIfPresent(1));
+	} // end saveOfUncachedProjectCachesNothing
+
+	@Test
+	void expiredProjectIsLoadedAgain() throws InterruptedException {
+		ProjectCache expiring = new ProjectCache(10, 20);
+		AtomicInteger loads = new AtomicInteger();
+		Function<Integer, Optional<Project>> loader = id -> Optional
+				.of(project("Load " + loads.incrementAndGet(), 0));
+
+		assertEquals("Load 1", expiring.get(1, loader).orElseThrow().getProjectName());
+		assertEquals("Load 1", expiring.get(1, loader).orElseThrow().getProjectName());
+
+		Thread.sleep(50);
+
+		assertTrue(expiring.getIfPresent(1).isEmpty());
+		assertEquals("Load 2", expiring.get(1, loader).orElseThrow().getProjectName());
+		assertEquals(1, expiring.getStats().getEvictionCount());
+	} // end expiredProjectIsLoadedAgain
+
+	@Test
+	void fullCacheEvictsTheLeastRecentlyUsedProject() {
+		ProjectCache small = new ProjectCache(2, 60_000);
+		small.put(1, project("First", 0));
+		small.put(2, project("Second", 0));
+
+		// Reading project 1 makes project 2 the least recently used.
+		small.getIfPresent(1);
+		small.put(3, project("Third", 0));
+
+		assertTrue(small.getIfPresent(1).isPresent());
+		assertTrue(small.getIfPresent(2).isEmpty());
+		assertTrue(small.getIfPresent(3).isPresent());
+		assertEquals(1, small.getStats().getEvictionCount());
+		assertEquals(2, small.getStats().getSize());
+	} // end fullCacheEvictsTheLeastRecentlyUsedProject
+
+	@Test
+	void concurrentMissesShareOneLoad() throws Exception {
+		int threads = 8;
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Optional<Project>>> futures = new ArrayList<>();
+
+		Function<Integer, Optional<Project>> loader = id -> {
+			loads.incrementAndGet();
+
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return Optional.of(project("Loaded", 0));
+		};
+
+		try {
+			for (int thread = 0; thread < threads; thread++) {
+				futures.add(executor.submit(() -> cache.get(1, loader)));
+			}
+
+			// Every caller has missed once the miss count reaches threads. The load is
+			// still blocked, so each one either runs it or waits on it.
+			long deadline = System.currentTimeMillis() + 10_000;
+
+			while (cache.getStats().getMissCount() < threads) {
+				assertTrue(System.currentTimeMillis() < deadline, "Not every caller reached the cache");
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			for (Future<Optional<Project>> future : futures) {
+				assertEquals("Loaded", future.get(10, TimeUnit.SECONDS).orElseThrow().getProjectName());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getStats().getLoadCount());
+	} // end concurrentMissesShareOneLoad
+
+	@Test
+	void modifiedProjectIsReadBackWithTheChange() {
+		TestDatabase.resetSchema();
+		ProjectService service = new ProjectService();
+		Integer projectId = service.addProject(newProject("Bench")).getProjectId();
+
+		Project edit = service.fetchProjectByIdService(projectId).copy();
+		edit.setProjectName("Workbench");
+		service.modifyProjectDetailsService(edit);
+
+		assertEquals("Workbench", service.fetchProjectByIdService(projectId).getProjectName());
+		assertEquals(1, service.getCacheStats().getLoadCount());
+
+		// A save with a stale version fails and drops the cached project.
+		Project stale = newProject("Stale bench");
+		stale.setProjectId(projectId);
+		stale.setVersion(0);
+		assertThrows(OptimisticLockException.class, () -> service.modifyProjectDetailsService(stale));
+
+		assertEquals("Workbench", service.fetchProjectByIdService(projectId).getProjectName());
+		assertEquals(2, service.getCacheStats().getLoadCount());
+	} // end modifiedProjectIsReadBackWithTheChange
+
+	@Test
+	void deletedProjectIsDroppedFromTheCache() {
+		TestDatabase.resetSchema();
+		ProjectService service = new ProjectService();
+		Integer projectId = service.addProject(newProject("Shelf")).getProjectId();
+
+		service.fetchProjectByIdService(projectId);
+		service.deleteProjectService(projectId);
+
+		assertThrows(NoSuchElementException.class, () -> service.fetchProjectByIdService(projectId));
+		assertEquals(1, service.getCacheStats().getInvalidationCount());
+		assertEquals(0, service.getCacheStats().getSize());
+	} // end deletedProjectIsDroppedFromTheCache
+
+	private static Project newProject(String name) {
+		Project project = new Project();
+		project.setProjectName(name);
+		project.setEstimatedHours(new BigDecimal("2.00"));
+		project.setDifficulty(1);
+		return project;
+	} // end newProject
+
+	private static Project project(String name, int version) {
+		Project project = new Project();
+		project.setProjectId(1);
+		project.setProjectName(name);
+		project.setVersion(version);
+		return project;
+	} // end project
+
+} // end CLASS
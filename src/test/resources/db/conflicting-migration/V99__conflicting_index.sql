@@ -0,0 +1,2 @@
+-- step_project_order_idx already exists on (project_id, step_order).
+CREATE INDEX step_project_order_idx ON step (step_order);
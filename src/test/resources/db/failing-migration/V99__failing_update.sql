@@ -0,0 +1,4 @@
+-- Changes every step, then fails, so the change must be rolled back.
+UPDATE step SET step_order = step_order + 1;
+
+INSERT INTO missing_table (missing_column) VALUES (1);
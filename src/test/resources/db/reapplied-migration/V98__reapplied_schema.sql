@@ -0,0 +1,7 @@
+-- Repeats statements of V3 and V6, as a migration that stopped part way
+-- runs them again.
+ALTER TABLE project ADD COLUMN deleted_on DATETIME NULL;
+
+CREATE INDEX project_live_name_idx ON project (deleted_on, project_name, project_id);
+
+ALTER TABLE project DROP INDEX project_name_idx;